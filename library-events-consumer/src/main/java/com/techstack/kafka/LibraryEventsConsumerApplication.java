@@ -1,9 +1,12 @@
 package com.techstack.kafka;
 
+import com.techstack.kafka.config.LibraryEventsProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 @SpringBootApplication
+@EnableConfigurationProperties(LibraryEventsProperties.class)
 public class LibraryEventsConsumerApplication {
 
 	public static void main(String[] args) {
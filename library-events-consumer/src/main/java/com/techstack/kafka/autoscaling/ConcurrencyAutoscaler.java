@@ -0,0 +1,226 @@
+package com.techstack.kafka.autoscaling;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.retry.RetryTopics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsOptions;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Adjusts the concurrency of the "library-events" listener container at runtime
+ * ("library-events.consumer.autoscaling.enabled"), so a quiet instance gives its threads (and partitions) back and a
+ * busy one takes more, up to the partition count.
+ *
+ * Every interval it samples the lag of the partitions which are assigned to this instance (AdminClient: end offsets
+ * against the committed offsets of the group) and the processing time per record ({@link ProcessingTime}), the
+ * {@link ScalingPolicy} decides. Every instance of the group runs its own autoscaler: the partitions of the other
+ * instances, and their lag, are theirs to scale for. A change stops the
+ * container, sets the concurrency and starts it again - the key-ordered and pipeline modes drain and commit their
+ * records in flight on the revocation as on any rebalance.
+ *
+ * Decisions are logged, counted (library.events.consumer.autoscaling.decisions{direction}) and published as
+ * {@link ConcurrencyChangedEvent}, the current and the desired concurrency and the lag are gauges.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "library-events.consumer.autoscaling.enabled", havingValue = "true")
+public class ConcurrencyAutoscaler implements DisposableBean {
+
+    private static final String METRIC_PREFIX = "library.events.consumer.autoscaling";
+
+    private static final long ADMIN_TIMEOUT_SECONDS = 10;
+
+    private final KafkaListenerEndpointRegistry endpointRegistry;
+
+    private final KafkaAdmin kafkaAdmin;
+
+    private final ProcessingTime processingTime;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final MeterRegistry meterRegistry;
+
+    private final String groupId;
+
+    private final Duration interval;
+
+    private final ScalingPolicy scalingPolicy;
+
+    private final AtomicInteger concurrency = new AtomicInteger();
+
+    private final AtomicInteger desired = new AtomicInteger();
+
+    private final AtomicLong lag = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "library-events-autoscaler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private AdminClient adminClient;
+
+    private LagSample lastSample;
+
+    private ProcessingTime.Snapshot lastProcessingTime;
+
+    public ConcurrencyAutoscaler(KafkaListenerEndpointRegistry endpointRegistry, KafkaAdmin kafkaAdmin,
+                                 ProcessingTime processingTime, ApplicationEventPublisher eventPublisher,
+                                 MeterRegistry meterRegistry, KafkaProperties kafkaProperties,
+                                 LibraryEventsProperties libraryEventsProperties) {
+        LibraryEventsProperties.Autoscaling autoscaling = libraryEventsProperties.getConsumer().getAutoscaling();
+        this.endpointRegistry = endpointRegistry;
+        this.kafkaAdmin = kafkaAdmin;
+        this.processingTime = processingTime;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.groupId = kafkaProperties.getConsumer().getGroupId();
+        this.interval = autoscaling.getInterval();
+        this.scalingPolicy = new ScalingPolicy(autoscaling);
+
+        Gauge.builder(METRIC_PREFIX + ".concurrency", concurrency, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".desired", desired, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".lag", lag, AtomicLong::get).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        adminClient = createAdminClient();
+        scheduler.scheduleWithFixedDelay(this::evaluate, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    protected AdminClient createAdminClient() {
+        return AdminClient.create(kafkaAdmin.getConfigurationProperties());
+    }
+
+    /**
+     * One sample and decision, every interval on the autoscaler thread
+     */
+    public void evaluate() {
+        try {
+            Optional<ConcurrentMessageListenerContainer<?, ?>> container = mainContainer();
+            if (container.isEmpty() || !container.get().isRunning()) {
+                return;
+            }
+            LagSample sample = sampleLag(container.get());
+            ProcessingTime.Snapshot processed = processingTime.snapshot();
+            lag.set(sample.getLag());
+
+            if (lastSample != null) {
+                int current = container.get().getConcurrency();
+                ScalingDecision decision = scalingPolicy.decide(current, sample,
+                        sample.incomingRateSince(lastSample), processed.secondsPerRecordSince(lastProcessingTime));
+                desired.set(decision.getDesired());
+                if (decision.isChange()) {
+                    apply(container.get(), decision);
+                }
+            }
+            concurrency.set(container.get().getConcurrency());
+            lastSample = sample;
+            lastProcessingTime = processed;
+        } catch (Exception e) {
+            //the next interval samples again
+            log.warn("Autoscaling evaluation failed : {}", e.getMessage());
+        }
+    }
+
+    private void apply(ConcurrentMessageListenerContainer<?, ?> container, ScalingDecision decision) {
+        log.info("Scaling the listener concurrency {} from {} to {} ({}, desired {})", decision.getDirection(),
+                decision.getFrom(), decision.getTo(), decision.getReason(), decision.getDesired());
+        //the concurrency is only read when the container starts
+        container.stop();
+        container.setConcurrency(decision.getTo());
+        container.start();
+
+        Counter.builder(METRIC_PREFIX + ".decisions")
+                .tag("direction", decision.getDirection())
+                .register(meterRegistry)
+                .increment();
+        eventPublisher.publishEvent(new ConcurrencyChangedEvent(this, decision));
+    }
+
+    /**
+     * The container of the main topic, the retry topic containers have groups of their own
+     */
+    private Optional<ConcurrentMessageListenerContainer<?, ?>> mainContainer() {
+        return endpointRegistry.getListenerContainers().stream()
+                .filter(container -> container instanceof ConcurrentMessageListenerContainer)
+                .filter(container -> groupId.equals(container.getGroupId()))
+                .filter(container -> Arrays.asList(container.getContainerProperties().getTopics()).contains(RetryTopics.MAIN_TOPIC))
+                .<ConcurrentMessageListenerContainer<?, ?>>map(container -> (ConcurrentMessageListenerContainer<?, ?>) container)
+                .findFirst();
+    }
+
+    private LagSample sampleLag(ConcurrentMessageListenerContainer<?, ?> container) throws Exception {
+        long timestampMillis = System.currentTimeMillis();
+        int partitionCount = adminClient.describeTopics(List.of(RetryTopics.MAIN_TOPIC)).all()
+                .get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .get(RetryTopics.MAIN_TOPIC).partitions().size();
+
+        Collection<TopicPartition> assignedPartitions = container.getAssignedPartitions();
+        List<TopicPartition> partitions = assignedPartitions == null ? List.of() : assignedPartitions.stream()
+                .filter(partition -> RetryTopics.MAIN_TOPIC.equals(partition.topic()))
+                .collect(Collectors.toList());
+        if (partitions.isEmpty()) {
+            return new LagSample(timestampMillis, partitionCount, Map.of(), 0);
+        }
+
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffsets = adminClient
+                .listOffsets(partitions.stream().collect(Collectors.toMap(Function.identity(), partition -> OffsetSpec.latest())))
+                .all().get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        Map<TopicPartition, OffsetAndMetadata> committedOffsets = adminClient
+                .listConsumerGroupOffsets(groupId, new ListConsumerGroupOffsetsOptions().topicPartitions(partitions))
+                .partitionsToOffsetAndMetadata().get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        Map<Integer, Long> endOffsetByPartition = new HashMap<>();
+        long lagSum = 0;
+        for (TopicPartition partition : partitions) {
+            long endOffset = endOffsets.get(partition).offset();
+            OffsetAndMetadata committed = committedOffsets.get(partition);
+            endOffsetByPartition.put(partition.partition(), endOffset);
+            //nothing committed yet: the group starts from the earliest offset, the whole partition is lag
+            lagSum += Math.max(0, endOffset - (committed == null ? 0 : committed.offset()));
+        }
+        return new LagSample(timestampMillis, partitionCount, endOffsetByPartition, lagSum);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        if (adminClient != null) {
+            adminClient.close(Duration.ofSeconds(ADMIN_TIMEOUT_SECONDS));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.techstack.kafka.autoscaling;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by the {@link ConcurrencyAutoscaler} once the listener container runs with the new concurrency
+ */
+public class ConcurrencyChangedEvent extends ApplicationEvent {
+
+    private final ScalingDecision decision;
+
+    public ConcurrencyChangedEvent(Object source, ScalingDecision decision) {
+        super(source);
+        this.decision = decision;
+    }
+
+    public ScalingDecision getDecision() {
+        return decision;
+    }
+}
@@ -0,0 +1,51 @@
+package com.techstack.kafka.autoscaling;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Offsets of the partitions assigned to this instance and its lag at one point in time
+ */
+@Getter
+@AllArgsConstructor
+public class LagSample {
+
+    private final long timestampMillis;
+
+    /**
+     * Of the whole topic, the concurrency is never raised beyond it
+     */
+    private final int partitions;
+
+    /**
+     * Per assigned partition
+     */
+    private final Map<Integer, Long> endOffsets;
+
+    /**
+     * Summed up over the assigned partitions
+     */
+    private final long lag;
+
+    /**
+     * Only the partitions which are in both samples count, the assignment may have changed in between
+     *
+     * @return records per second which were produced since the earlier sample
+     */
+    public double incomingRateSince(LagSample earlier) {
+        long millis = timestampMillis - earlier.timestampMillis;
+        if (millis <= 0) {
+            return 0;
+        }
+        long produced = 0;
+        for (Map.Entry<Integer, Long> endOffset : endOffsets.entrySet()) {
+            Long earlierEndOffset = earlier.endOffsets.get(endOffset.getKey());
+            if (earlierEndOffset != null) {
+                produced += Math.max(0, endOffset.getValue() - earlierEndOffset);
+            }
+        }
+        return produced * 1000.0 / millis;
+    }
+}
@@ -0,0 +1,49 @@
+package com.techstack.kafka.autoscaling;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How long the records take to be processed, summed up across all threads. The {@link ConcurrencyAutoscaler} turns
+ * the difference between two snapshots into the processing time per record, i.e. what a thread can handle per second.
+ */
+@Component
+public class ProcessingTime {
+
+    private final LongAdder records = new LongAdder();
+
+    private final LongAdder nanos = new LongAdder();
+
+    /**
+     * @param records processed together, e.g. a bulk write
+     */
+    public void record(int records, long nanos) {
+        this.records.add(records);
+        this.nanos.add(nanos);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(records.sum(), nanos.sum());
+    }
+
+    public static final class Snapshot {
+
+        private final long records;
+
+        private final long nanos;
+
+        public Snapshot(long records, long nanos) {
+            this.records = records;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return seconds per record since the earlier snapshot, NaN if no record was processed in between
+         */
+        public double secondsPerRecordSince(Snapshot earlier) {
+            long processed = records - earlier.records;
+            return processed <= 0 ? Double.NaN : (nanos - earlier.nanos) / 1e9 / processed;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.techstack.kafka.autoscaling;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of one {@link ScalingPolicy} evaluation, from == to if nothing changes
+ */
+@Getter
+@AllArgsConstructor
+public class ScalingDecision {
+
+    private final int from;
+
+    private final int to;
+
+    /**
+     * Threads the load asks for, before the bounds, the hysteresis and the cooldown are applied
+     */
+    private final int desired;
+
+    private final String reason;
+
+    public boolean isChange() {
+        return from != to;
+    }
+
+    public String getDirection() {
+        return to > from ? "up" : to < from ? "down" : "none";
+    }
+}
@@ -0,0 +1,84 @@
+package com.techstack.kafka.autoscaling;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+
+/**
+ * Decides the concurrency for a lag sample ("library-events.consumer.autoscaling").
+ *
+ * The threads needed are the records to handle per second - the incoming rate plus the lag spread over drain-time -
+ * times the processing time per record, at target-utilization. Every change restarts the container and rebalances
+ * the group, so it doesn't follow every sample:
+ * <ul>
+ *     <li>up only with at least scale-up-lag, right away</li>
+ *     <li>down only with at most scale-down-lag, after scale-down-samples samples in a row which ask for fewer threads</li>
+ *     <li>nothing at all within cooldown after a change</li>
+ * </ul>
+ * Without a processing time (nothing was processed since the last sample) the lag decides alone: one thread more
+ * if it's beyond scale-up-lag, min-concurrency if nothing comes in and nothing is left.
+ *
+ * Not thread safe, it's evaluated by the single autoscaler thread.
+ */
+public class ScalingPolicy {
+
+    private final LibraryEventsProperties.Autoscaling settings;
+
+    /**
+     * -1: no change yet
+     */
+    private long lastChangeMillis = -1;
+
+    private int scaleDownSamples;
+
+    public ScalingPolicy(LibraryEventsProperties.Autoscaling settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * @param incomingRate        records per second produced since the last sample
+     * @param secondsPerRecord    processing time per record since the last sample, NaN if unknown
+     */
+    public ScalingDecision decide(int concurrency, LagSample sample, double incomingRate, double secondsPerRecord) {
+        int max = settings.getMaxConcurrency() > 0 ? Math.min(settings.getMaxConcurrency(), sample.getPartitions()) : sample.getPartitions();
+        int min = Math.min(settings.getMinConcurrency(), max);
+        int desired = clamp(desired(concurrency, sample.getLag(), incomingRate, secondsPerRecord), min, max);
+
+        if (desired <= concurrency) {
+            scaleDownSamples = desired < concurrency ? scaleDownSamples + 1 : 0;
+        } else {
+            scaleDownSamples = 0;
+        }
+
+        if (lastChangeMillis >= 0 && sample.getTimestampMillis() - lastChangeMillis < settings.getCooldown().toMillis()) {
+            return new ScalingDecision(concurrency, concurrency, desired, "cooldown");
+        }
+        if (desired > concurrency && sample.getLag() >= settings.getScaleUpLag()) {
+            return change(concurrency, desired, sample, "lag " + sample.getLag());
+        }
+        if (desired < concurrency && sample.getLag() <= settings.getScaleDownLag()
+                && scaleDownSamples >= settings.getScaleDownSamples()) {
+            return change(concurrency, desired, sample, "lag " + sample.getLag() + " for " + scaleDownSamples + " samples");
+        }
+        return new ScalingDecision(concurrency, concurrency, desired, "hysteresis");
+    }
+
+    private int desired(int concurrency, long lag, double incomingRate, double secondsPerRecord) {
+        if (Double.isNaN(secondsPerRecord)) {
+            if (lag >= settings.getScaleUpLag()) {
+                return concurrency + 1;
+            }
+            return lag == 0 && incomingRate == 0 ? settings.getMinConcurrency() : concurrency;
+        }
+        double recordsPerSecond = incomingRate + lag / (double) Math.max(1, settings.getDrainTime().getSeconds());
+        return (int) Math.ceil(recordsPerSecond * secondsPerRecord / settings.getTargetUtilization());
+    }
+
+    private ScalingDecision change(int concurrency, int desired, LagSample sample, String reason) {
+        lastChangeMillis = sample.getTimestampMillis();
+        scaleDownSamples = 0;
+        return new ScalingDecision(concurrency, desired, desired, reason);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
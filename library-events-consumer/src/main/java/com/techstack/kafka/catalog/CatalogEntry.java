@@ -0,0 +1,44 @@
+package com.techstack.kafka.catalog;
+
+import com.techstack.kafka.entity.Book;
+import com.techstack.kafka.entity.LibraryEvent;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The latest Book of a LibraryEvent, as the catalog serves it. Immutable, unlike the entities it's copied from.
+ */
+@Getter
+@AllArgsConstructor
+public class CatalogEntry {
+
+    private final Long libraryEventId;
+
+    private final Long eventSequence;
+
+    private final Integer bookId;
+
+    private final String bookName;
+
+    private final String bookAuthor;
+
+    /**
+     * @return null for a LibraryEvent without a Book
+     */
+    public static CatalogEntry of(LibraryEvent libraryEvent) {
+        return of(libraryEvent, libraryEvent.getEventSequence());
+    }
+
+    /**
+     * @param eventSequence of the record, the LibraryEvent only gets it when it's stored
+     * @return null for a LibraryEvent without a Book
+     */
+    public static CatalogEntry of(LibraryEvent libraryEvent, Long eventSequence) {
+        Book book = libraryEvent.getBook();
+        if (book == null) {
+            return null;
+        }
+        return new CatalogEntry(libraryEvent.getLibraryEventId(), eventSequence,
+                book.getBookId(), book.getBookName(), book.getBookAuthor());
+    }
+}
@@ -0,0 +1,171 @@
+package com.techstack.kafka.catalog;
+
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.retry.RetryTopics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the {@link CatalogView} of this instance up to date, whichever partitions the consumer group assigned to it.
+ *
+ * A consumer of its own, outside the group: it's assigned all the partitions of "library-events" (it never subscribes,
+ * so it doesn't join the group, and it never commits), like the consumer of a global table. It starts at the offsets
+ * the group has committed, the LibraryEvents before them are stored, loads the view from the database and then
+ * applies the records. Once it has reached the end offsets of the time of the load the view serves.
+ *
+ * Runs on a single thread of its own, started when the application is ready and stopped with it. When the feed fails
+ * (or the partition count of "library-events" changes) the view stops serving and is rebuilt after a pause.
+ */
+@Slf4j
+@Component
+public class CatalogFeed implements DisposableBean {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private static final Duration REBUILD_BACKOFF = Duration.ofSeconds(5);
+
+    private static final Duration PARTITION_CHECK_INTERVAL = Duration.ofMinutes(1);
+
+    private final CatalogView catalogView;
+
+    private final ConsumerFactory<Long, LibraryEvent> consumerFactory;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "library-events-catalog-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean running;
+
+    private volatile Consumer<Long, LibraryEvent> consumer;
+
+    @Autowired
+    public CatalogFeed(CatalogView catalogView, KafkaProperties kafkaProperties) {
+        this(catalogView, new DefaultKafkaConsumerFactory<>(feedConsumerProperties(kafkaProperties)));
+    }
+
+    public CatalogFeed(CatalogView catalogView, ConsumerFactory<Long, LibraryEvent> consumerFactory) {
+        this.catalogView = catalogView;
+        this.consumerFactory = consumerFactory;
+    }
+
+    /**
+     * The group-id stays, it's only used to read the committed offsets
+     */
+    private static Map<String, Object> feedConsumerProperties(KafkaProperties kafkaProperties) {
+        Map<String, Object> consumerProperties = kafkaProperties.buildConsumerProperties();
+        consumerProperties.remove(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG);
+        //the consume latency metrics are about the records the group processes
+        consumerProperties.remove(ConsumerConfig.INTERCEPTOR_CLASSES_CONFIG);
+        consumerProperties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        return consumerProperties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!catalogView.isEnabled()) {
+            return;
+        }
+        running = true;
+        executor.execute(this::run);
+    }
+
+    private void run() {
+        while (running) {
+            try (Consumer<Long, LibraryEvent> feedConsumer = consumerFactory.createConsumer()) {
+                consumer = feedConsumer;
+                follow(feedConsumer);
+            } catch (WakeupException e) {
+                //stopping
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                catalogView.clear();
+                log.warn("The catalog feed failed, it's rebuilt in {} s : {}", REBUILD_BACKOFF.toSeconds(), e.getMessage());
+                pause();
+            }
+        }
+    }
+
+    private void follow(Consumer<Long, LibraryEvent> feedConsumer) {
+        List<TopicPartition> partitions = partitions(feedConsumer);
+        Map<TopicPartition, OffsetAndMetadata> committed = feedConsumer.committed(new HashSet<>(partitions));
+        feedConsumer.assign(partitions);
+        for (TopicPartition partition : partitions) {
+            OffsetAndMetadata offsetAndMetadata = committed.get(partition);
+            if (offsetAndMetadata == null) {
+                feedConsumer.seekToBeginning(List.of(partition));
+            } else {
+                feedConsumer.seek(partition, offsetAndMetadata.offset());
+            }
+        }
+
+        catalogView.load();
+        Map<TopicPartition, Long> loadedUpTo = feedConsumer.endOffsets(partitions);
+        boolean caughtUp = false;
+        long partitionCheckMillis = System.currentTimeMillis() + PARTITION_CHECK_INTERVAL.toMillis();
+        while (running) {
+            feedConsumer.poll(POLL_TIMEOUT).forEach(catalogView::apply);
+            if (!caughtUp && partitions.stream().allMatch(partition -> feedConsumer.position(partition) >= loadedUpTo.get(partition))) {
+                caughtUp = true;
+                catalogView.caughtUp();
+                log.info("The catalog caught up with {} partitions of {}", partitions.size(), RetryTopics.MAIN_TOPIC);
+            }
+            if (System.currentTimeMillis() >= partitionCheckMillis) {
+                partitionCheckMillis = System.currentTimeMillis() + PARTITION_CHECK_INTERVAL.toMillis();
+                if (partitions(feedConsumer).size() != partitions.size()) {
+                    throw new IllegalStateException("The partition count of " + RetryTopics.MAIN_TOPIC + " changed");
+                }
+            }
+        }
+    }
+
+    private static List<TopicPartition> partitions(Consumer<Long, LibraryEvent> feedConsumer) {
+        return feedConsumer.partitionsFor(RetryTopics.MAIN_TOPIC).stream()
+                .map(partitionInfo -> new TopicPartition(RetryTopics.MAIN_TOPIC, partitionInfo.partition()))
+                .collect(Collectors.toList());
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(REBUILD_BACKOFF.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        Consumer<Long, LibraryEvent> feedConsumer = consumer;
+        if (feedConsumer != null) {
+            feedConsumer.wakeup();
+        }
+        executor.shutdownNow();
+        executor.awaitTermination(POLL_TIMEOUT.toMillis() * 5, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,70 @@
+package com.techstack.kafka.catalog;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.repository.LibraryEventsRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The catalog lookups: from the {@link CatalogView} while it's serving, from the database otherwise
+ */
+@Service
+@RequiredArgsConstructor
+public class CatalogService {
+
+    public enum Source {
+        MEMORY,
+        DATABASE
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Result<T> {
+
+        private final T value;
+
+        private final Source source;
+    }
+
+    private final CatalogView catalogView;
+
+    private final LibraryEventsRepository libraryEventsRepository;
+
+    private final LibraryEventsProperties libraryEventsProperties;
+
+    public Result<Optional<CatalogEntry>> findByLibraryEventId(Long libraryEventId) {
+        if (catalogView.isServing()) {
+            return new Result<>(catalogView.findByLibraryEventId(libraryEventId), Source.MEMORY);
+        }
+        return new Result<>(libraryEventsRepository.findById(libraryEventId).map(CatalogEntry::of), Source.DATABASE);
+    }
+
+    public Result<Optional<CatalogEntry>> findByBookId(Integer bookId) {
+        if (catalogView.isServing()) {
+            return new Result<>(catalogView.findByBookId(bookId), Source.MEMORY);
+        }
+        return new Result<>(libraryEventsRepository.findByBook_BookId(bookId).map(CatalogEntry::of), Source.DATABASE);
+    }
+
+    /**
+     * @param limit capped at "library-events.catalog.max-results"
+     */
+    public Result<List<CatalogEntry>> findByAuthorPrefix(String prefix, int limit) {
+        int maxResults = Math.max(1, Math.min(limit, libraryEventsProperties.getCatalog().getMaxResults()));
+        if (catalogView.isServing()) {
+            return new Result<>(catalogView.findByAuthorPrefix(prefix, maxResults), Source.MEMORY);
+        }
+        List<CatalogEntry> entries = libraryEventsRepository
+                .findByBook_BookAuthorStartingWithIgnoreCaseOrderByBook_BookAuthor(prefix, PageRequest.of(0, maxResults)).stream()
+                .map(CatalogEntry::of)
+                .collect(Collectors.toList());
+        return new Result<>(entries, Source.DATABASE);
+    }
+}
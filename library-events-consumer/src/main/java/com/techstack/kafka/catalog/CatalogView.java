@@ -0,0 +1,226 @@
+package com.techstack.kafka.catalog;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import com.techstack.kafka.service.LibraryEventsService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory view of the catalog ("library-events.catalog"): the latest Book per libraryEventId, indexed by bookId
+ * and by bookAuthor (case insensitive, for the prefix search).
+ *
+ * Every instance has the whole view, whichever partitions the group assigned to it: the {@link CatalogFeed} loads it
+ * from the database and then follows all the partitions of "library-events" with a consumer of its own, like a
+ * global table. It answers ({@link #isServing()}) once the feed has caught up, {@link CatalogService} reads from the
+ * database before that and whenever the feed is rebuilt.
+ * The feed applies the records as the group stores them: a NEW goes in, an UPDATE only for a libraryEventId which is
+ * known already and only if its sequence is newer.
+ *
+ * Writes are serialized, reads don't lock: an entry and its index entries may be one write apart, the searches check
+ * the entries they found. An entry is about {@link #ENTRY_OVERHEAD_BYTES} plus its strings; a new libraryEventId which
+ * doesn't fit into max-memory any more isn't added, and the view stops serving until it's rebuilt.
+ */
+@Slf4j
+@Component
+public class CatalogView {
+
+    /**
+     * Entry object, boxed ids, the nodes of the three maps and the author key
+     */
+    static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private static final String LOAD_SELECT = "SELECT e.library_event_id, e.event_sequence, b.book_id, b.book_name, b.book_author"
+            + " FROM library_event e JOIN book b ON b.library_event_id = e.library_event_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final boolean enabled;
+
+    private final long maxMemoryBytes;
+
+    private final Map<Long, CatalogEntry> byLibraryEventId = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Long> libraryEventIdByBookId = new ConcurrentHashMap<>();
+
+    private final ConcurrentSkipListMap<String, Set<Long>> libraryEventIdsByAuthor = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong estimatedBytes = new AtomicLong();
+
+    private volatile boolean caughtUp;
+
+    private volatile boolean overBudget;
+
+    public CatalogView(JdbcTemplate jdbcTemplate, LibraryEventsProperties libraryEventsProperties, MeterRegistry meterRegistry) {
+        LibraryEventsProperties.Catalog catalog = libraryEventsProperties.getCatalog();
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = catalog.isEnabled();
+        this.maxMemoryBytes = catalog.getMaxMemory().toBytes();
+        Gauge.builder("library.events.consumer.catalog.entries", byLibraryEventId, Map::size).register(meterRegistry);
+        Gauge.builder("library.events.consumer.catalog.memory", estimatedBytes, AtomicLong::get)
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isServing() {
+        return enabled && caughtUp && !overBudget;
+    }
+
+    public Optional<CatalogEntry> findByLibraryEventId(Long libraryEventId) {
+        return Optional.ofNullable(byLibraryEventId.get(libraryEventId));
+    }
+
+    public Optional<CatalogEntry> findByBookId(Integer bookId) {
+        Long libraryEventId = libraryEventIdByBookId.get(bookId);
+        return Optional.ofNullable(libraryEventId == null ? null : byLibraryEventId.get(libraryEventId))
+                .filter(entry -> bookId.equals(entry.getBookId()));
+    }
+
+    /**
+     * @return the entries whose author starts with the prefix, ignoring case, ordered by author
+     */
+    public List<CatalogEntry> findByAuthorPrefix(String prefix, int limit) {
+        String key = authorKey(prefix);
+        NavigableMap<String, Set<Long>> matches = libraryEventIdsByAuthor.subMap(key, true, key + Character.MAX_VALUE, true);
+        List<CatalogEntry> entries = new ArrayList<>();
+        for (Set<Long> libraryEventIds : matches.values()) {
+            for (Long libraryEventId : libraryEventIds) {
+                CatalogEntry entry = byLibraryEventId.get(libraryEventId);
+                if (entry != null && entry.getBookAuthor() != null && authorKey(entry.getBookAuthor()).startsWith(key)) {
+                    entries.add(entry);
+                    if (entries.size() == limit) {
+                        return entries;
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * A record of "library-events", on the thread of the {@link CatalogFeed}
+     */
+    public void apply(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        LibraryEvent libraryEvent = consumerRecord.value();
+        //undecodable records and records without an id are never stored
+        if (libraryEvent == null || libraryEvent.getLibraryEventId() == null) {
+            return;
+        }
+        //an UPDATE of an unknown libraryEventId goes to the dead letter topic
+        if (libraryEvent.getLibraryEventType() == LibraryEventType.UPDATE
+                && !byLibraryEventId.containsKey(libraryEvent.getLibraryEventId())) {
+            return;
+        }
+        CatalogEntry entry = CatalogEntry.of(libraryEvent, LibraryEventsService.eventSequence(consumerRecord.headers()));
+        if (entry != null) {
+            put(entry);
+        }
+    }
+
+    /**
+     * Empties the view and reads the stored books, it stops serving until {@link #caughtUp()}
+     */
+    void load() {
+        clear();
+        long startMillis = System.currentTimeMillis();
+        jdbcTemplate.query(LOAD_SELECT, resultSet -> {
+            long eventSequence = resultSet.getLong(2);
+            put(new CatalogEntry(resultSet.getLong(1), resultSet.wasNull() ? null : eventSequence,
+                    resultSet.getInt(3), resultSet.getString(4), resultSet.getString(5)));
+        });
+        log.info("Loaded {} catalog entries in {} ms, about {} bytes{}", byLibraryEventId.size(),
+                System.currentTimeMillis() - startMillis, estimatedBytes.get(), overBudget ? ", over max-memory" : "");
+    }
+
+    /**
+     * The feed has applied everything which was in "library-events" when the load was done
+     */
+    void caughtUp() {
+        caughtUp = true;
+    }
+
+    synchronized void clear() {
+        caughtUp = false;
+        overBudget = false;
+        byLibraryEventId.clear();
+        libraryEventIdByBookId.clear();
+        libraryEventIdsByAuthor.clear();
+        estimatedBytes.set(0);
+    }
+
+    private synchronized void put(CatalogEntry entry) {
+        CatalogEntry current = byLibraryEventId.get(entry.getLibraryEventId());
+        if (current != null && !isNewer(entry, current)) {
+            return;
+        }
+        long bytesDelta = estimateBytes(entry) - (current == null ? 0 : estimateBytes(current));
+        if (current == null && estimatedBytes.get() + bytesDelta > maxMemoryBytes) {
+            if (!overBudget) {
+                log.warn("The catalog is at its max-memory of {} bytes with {} entries, it's read from the database",
+                        maxMemoryBytes, byLibraryEventId.size());
+            }
+            overBudget = true;
+            return;
+        }
+
+        byLibraryEventId.put(entry.getLibraryEventId(), entry);
+        estimatedBytes.addAndGet(bytesDelta);
+        if (current != null && current.getBookId() != null && !current.getBookId().equals(entry.getBookId())) {
+            libraryEventIdByBookId.remove(current.getBookId(), current.getLibraryEventId());
+        }
+        if (entry.getBookId() != null) {
+            libraryEventIdByBookId.put(entry.getBookId(), entry.getLibraryEventId());
+        }
+        if (current != null && current.getBookAuthor() != null && !current.getBookAuthor().equals(entry.getBookAuthor())) {
+            libraryEventIdsByAuthor.computeIfPresent(authorKey(current.getBookAuthor()), (author, libraryEventIds) -> {
+                libraryEventIds.remove(current.getLibraryEventId());
+                return libraryEventIds.isEmpty() ? null : libraryEventIds;
+            });
+        }
+        if (entry.getBookAuthor() != null) {
+            libraryEventIdsByAuthor.computeIfAbsent(authorKey(entry.getBookAuthor()), author -> ConcurrentHashMap.newKeySet())
+                    .add(entry.getLibraryEventId());
+        }
+    }
+
+    /**
+     * Like {@link LibraryEventsService#isStale}: without a sequence on either side the later record wins
+     */
+    private static boolean isNewer(CatalogEntry entry, CatalogEntry current) {
+        if (entry.getEventSequence() == null || current.getEventSequence() == null) {
+            return true;
+        }
+        return entry.getEventSequence() > current.getEventSequence();
+    }
+
+    private static long estimateBytes(CatalogEntry entry) {
+        return ENTRY_OVERHEAD_BYTES + 2L * (length(entry.getBookName()) + length(entry.getBookAuthor()));
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static String authorKey(String author) {
+        return author.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,49 @@
+package com.techstack.kafka.codec;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The error value of a record which can't be decoded: the {@link LibraryEventDeserializer} hands it over with a null
+ * value and the failure in two headers of the consumed record, instead of throwing through the
+ * ErrorHandlingDeserializer, the listener and the error handler. The raw value is the consumed byte[] as it is,
+ * so the record can go to the quarantine topic without copying it.
+ *
+ * Only ever on consumed records, the headers aren't published.
+ */
+@Getter
+@AllArgsConstructor
+public class DecodeFailure {
+
+    public static final String ERROR_HEADER = "decode-error";
+
+    public static final String VALUE_HEADER = "decode-error-value";
+
+    /**
+     * "class: message" of the decoding exception
+     */
+    private final String error;
+
+    private final byte[] value;
+
+    public static void attach(Headers headers, byte[] value, Exception exception) {
+        headers.add(ERROR_HEADER, (exception.getClass().getName() + ": " + exception.getMessage()).getBytes(StandardCharsets.UTF_8));
+        headers.add(VALUE_HEADER, value);
+    }
+
+    /**
+     * @return null if the record was decoded (or had no value to decode, e.g. a tombstone)
+     */
+    public static DecodeFailure of(Headers headers) {
+        Header error = headers.lastHeader(ERROR_HEADER);
+        if (error == null) {
+            return null;
+        }
+        Header value = headers.lastHeader(VALUE_HEADER);
+        return new DecodeFailure(new String(error.value(), StandardCharsets.UTF_8), value == null ? null : value.value());
+    }
+}
@@ -0,0 +1,57 @@
+package com.techstack.kafka.codec;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.techstack.kafka.entity.LibraryEvent;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.IOException;
+
+/**
+ * The original JSON format, written straight into a byte[] without the intermediate String.
+ *
+ * The reader and writer are built once for LibraryEvent: ObjectMapper.readValue(byte[], Class) looks up the
+ * deserializer for the type on every call.
+ */
+public class JsonLibraryEventCodec implements LibraryEventCodec {
+
+    public static final String FORMAT = "json";
+
+    private final ObjectReader reader;
+
+    private final ObjectWriter writer;
+
+    public JsonLibraryEventCodec() {
+        this(new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+    }
+
+    public JsonLibraryEventCodec(ObjectMapper objectMapper) {
+        this.reader = objectMapper.readerFor(LibraryEvent.class);
+        this.writer = objectMapper.writerFor(LibraryEvent.class);
+    }
+
+    @Override
+    public String format() {
+        return FORMAT;
+    }
+
+    @Override
+    public byte[] encode(LibraryEvent libraryEvent) {
+        try {
+            return writer.writeValueAsBytes(libraryEvent);
+        } catch (IOException e) {
+            throw new SerializationException("Can't serialize the LibraryEvent to JSON", e);
+        }
+    }
+
+    @Override
+    public LibraryEvent decode(byte[] data) {
+        try {
+            return reader.readValue(data);
+        } catch (IOException e) {
+            throw new SerializationException("Can't deserialize the LibraryEvent from JSON", e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.techstack.kafka.codec;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Lookup of the available codecs by format name
+ */
+public final class LibraryEventCodecs {
+
+    private static final Map<String, LibraryEventCodec> CODECS = Map.of(
+            JsonLibraryEventCodec.FORMAT, new JsonLibraryEventCodec(),
+            BinaryLibraryEventCodec.FORMAT, new BinaryLibraryEventCodec());
+
+    private LibraryEventCodecs() {
+    }
+
+    public static LibraryEventCodec forFormat(String format) {
+        LibraryEventCodec codec = CODECS.get(format);
+        if (codec == null) {
+            throw new SerializationException("Unsupported LibraryEvent format " + format + ", supported formats are " + CODECS.keySet());
+        }
+        return codec;
+    }
+
+    /**
+     * Records without the format header were written before the codecs existed, which means JSON
+     */
+    public static LibraryEventCodec forHeaders(Headers headers) {
+        Header header = headers == null ? null : headers.lastHeader(LibraryEventCodec.FORMAT_HEADER);
+        if (header == null) {
+            return CODECS.get(JsonLibraryEventCodec.FORMAT);
+        }
+        return forFormat(new String(header.value(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,45 @@
+package com.techstack.kafka.codec;
+
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.metrics.ConsumerMetrics;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * Kafka value deserializer for LibraryEvent. The codec is picked per record from the
+ * {@link LibraryEventCodec#FORMAT_HEADER} header, records without the header are read as JSON.
+ *
+ * A record which can't be decoded doesn't throw: it's handed over with a null value and a {@link DecodeFailure}
+ * in its headers, and goes to the quarantine topic from there without a retry. It still runs as the delegate of the
+ * ErrorHandlingDeserializer, for whatever fails outside the codecs.
+ */
+public class LibraryEventDeserializer implements Deserializer<LibraryEvent> {
+
+    @Override
+    public LibraryEvent deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public LibraryEvent deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        //created by Kafka, not by Spring: the global registry, which Spring Boot adds its registries to
+        return Metrics.globalRegistry.timer(ConsumerMetrics.STAGE_METRIC, "stage", ConsumerMetrics.DESERIALIZE_STAGE)
+                .record(() -> decode(headers, data));
+    }
+
+    private static LibraryEvent decode(Headers headers, byte[] data) {
+        try {
+            return LibraryEventCodecs.forHeaders(headers).decode(data);
+        } catch (RuntimeException e) {
+            if (headers == null) {
+                throw e;
+            }
+            DecodeFailure.attach(headers, data, e);
+            return null;
+        }
+    }
+}
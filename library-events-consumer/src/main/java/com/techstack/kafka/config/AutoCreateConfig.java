@@ -0,0 +1,60 @@
+package com.techstack.kafka.config;
+
+import com.techstack.kafka.retry.RetryTopics;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.config.TopicBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the retry topics, the dead letter topic and the quarantine topic, the producer creates "library-events" itself.
+ * The KafkaAdmin only picks up NewTopic beans, and the number of retry topics depends on
+ * "library-events.retry.delays", so they are registered as bean definitions before the beans are created.
+ */
+@Configuration
+@Profile("local")
+public class AutoCreateConfig {
+
+    @Bean
+    public static BeanDefinitionRegistryPostProcessor retryTopicsRegistrar(Environment environment) {
+        return new BeanDefinitionRegistryPostProcessor() {
+
+            @Override
+            public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
+                //the @ConfigurationProperties bean doesn't exist yet, the properties are bound by hand
+                LibraryEventsProperties libraryEventsProperties = Binder.get(environment)
+                        .bind("library-events", Bindable.ofInstance(new LibraryEventsProperties()))
+                        .orElseGet(LibraryEventsProperties::new);
+                RetryTopics retryTopics = new RetryTopics(libraryEventsProperties);
+
+                List<String> topics = new ArrayList<>(retryTopics.getRetryTopicNames());
+                topics.add(retryTopics.getDeadLetterTopic());
+                topics.add(retryTopics.getQuarantineTopic());
+                for (String topic : topics) {
+                    registry.registerBeanDefinition(topic + "-topic", BeanDefinitionBuilder
+                            .genericBeanDefinition(NewTopic.class, () -> TopicBuilder
+                                    .name(topic)
+                                    .partitions(3)
+                                    .replicas(3)
+                                    .build())
+                            .getBeanDefinition());
+                }
+            }
+
+            @Override
+            public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+            }
+        };
+    }
+}
@@ -1,22 +1,37 @@
 package com.techstack.kafka.config;
 
-import com.techstack.kafka.service.LibraryEventsService;
+import com.techstack.kafka.offsets.DatabaseOffsets;
+import com.techstack.kafka.parallel.KeyOrderedDispatcher;
+import com.techstack.kafka.pipeline.LibraryEventsPipeline;
+import com.techstack.kafka.rebalance.LibraryEventsRebalanceListener;
+import com.techstack.kafka.rebalance.PartitionVersions;
+import com.techstack.kafka.rebalance.PartitionWarmUp;
+import com.techstack.kafka.rebalance.StaticMembershipConsumerFactory;
+import com.techstack.kafka.retry.RetryTopicsErrorHandler;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.dao.RecoverableDataAccessException;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
-import org.springframework.retry.RetryPolicy;
-import org.springframework.retry.backoff.FixedBackOffPolicy;
-import org.springframework.retry.policy.SimpleRetryPolicy;
-import org.springframework.retry.support.RetryTemplate;
-
-import java.util.HashMap;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultAfterRollbackProcessor;
+import org.springframework.kafka.listener.SeekToCurrentBatchErrorHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.StringUtils;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.time.Duration;
 import java.util.Map;
 
 @Slf4j
@@ -25,7 +40,30 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class LibraryEventsConsumerConfig {
 
-    private final LibraryEventsService libraryEventsService;
+    /**
+     * Pause before a poll whose failed record couldn't be recovered is consumed again
+     */
+    private static final Duration RECOVERY_FAILED_BACKOFF = Duration.ofSeconds(1);
+
+    private final RetryTopicsErrorHandler retryTopicsErrorHandler;
+
+    private final LibraryEventsProperties libraryEventsProperties;
+
+    private final ObjectProvider<KeyOrderedDispatcher> keyOrderedDispatcher;
+
+    private final ObjectProvider<LibraryEventsPipeline> libraryEventsPipeline;
+
+    private final ObjectProvider<DatabaseOffsets> databaseOffsets;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private final KafkaProperties kafkaProperties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final PartitionWarmUp partitionWarmUp;
+
+    private final PartitionVersions partitionVersions;
 
     @Bean
     ConcurrentKafkaListenerContainerFactory<?, ?> kafkaListenerContainerFactory(
@@ -36,97 +74,125 @@ public class LibraryEventsConsumerConfig {
         /**
          * By enabling this Concurrency Consumer Container will run in a 3 different threads.
          * Each Thread will point to a partition.
+         * With autoscaling enabled, this is only where the {@link com.techstack.kafka.autoscaling.ConcurrencyAutoscaler} starts from.
+         */
+        factory.setConcurrency(libraryEventsProperties.getConsumer().getConcurrency());
+
+        LibraryEventsProperties.Consumer.Mode mode = libraryEventsProperties.getConsumer().getMode();
+        if (libraryEventsProperties.getConsumer().getOffsetStorage() == LibraryEventsProperties.Consumer.OffsetStorage.DATABASE
+                && mode != LibraryEventsProperties.Consumer.Mode.RECORD) {
+            //the other modes write (batch) or complete (key-ordered, pipeline) the records outside the listener's transaction
+            throw new IllegalStateException("library-events.consumer.offset-storage: database is only supported with mode: record, not " + mode);
+        }
+
+        /**
+         * The pipeline decodes the values on its parse stage, the consumer only reads the bytes in that mode
          */
-        factory.setConcurrency(3);
+        configurer.configure(factory, staticMembership(mode == LibraryEventsProperties.Consumer.Mode.PIPELINE
+                ? byteArrayValueConsumerFactory() : kafkaConsumerFactory));
 
-        configurer.configure(factory, kafkaConsumerFactory);
+        /**
+         * Rebalances: {@link LibraryEventsRebalanceListener} warms up the assigned partitions, the modes below which
+         * have work to flush on revocation hand it their own listener
+         */
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener(null));
 
         //Default AckMode is BATCH
         //factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
 
         /**
-         * Adding Custom Error handling mechanism
-         * By default Kafka Consumer Error handling mechanism would work. However, if you want to
-         * override these functionality and execute certain logic after error got thrown then below
-         * implementation would work.
+         * Batch mode: the listener ({@link com.techstack.kafka.consumer.LibraryEventsBatchConsumer}) gets the whole poll.
+         * The failed records are handled one by one by {@link com.techstack.kafka.service.LibraryEventsBatchService}
+         * and go on to the retry topics from there, so the poll itself doesn't fail. It only fails if a record can't be
+         * published to the retry topics either: the poll is consumed again (after a pause, for as long as it takes)
+         * instead of committing past a record which is nowhere.
          */
-        factory.setErrorHandler(((thrownException, data) -> {
-            log.info("Exception in consumerConfig is {} and the record is {}", thrownException.getMessage(), data);
-            //persist
+        if (mode == LibraryEventsProperties.Consumer.Mode.BATCH) {
+            factory.setBatchListener(true);
+            SeekToCurrentBatchErrorHandler batchErrorHandler = new SeekToCurrentBatchErrorHandler();
+            batchErrorHandler.setBackOff(new FixedBackOff(RECOVERY_FAILED_BACKOFF.toMillis(), FixedBackOff.UNLIMITED_ATTEMPTS));
+            factory.setBatchErrorHandler(batchErrorHandler);
+            return factory;
+        }
 
-            // DO SOME BUSINESS LOGIC AFTER ERROR GOT THROWN
-        }));
+        /**
+         * Key-ordered and pipeline mode: the listener ({@link com.techstack.kafka.consumer.LibraryEventsKeyOrderedConsumer},
+         * {@link com.techstack.kafka.consumer.LibraryEventsPipelineConsumer}) gets the whole poll and hands it over to other
+         * threads. The container doesn't commit (MANUAL, nothing is acknowledged), the {@link KeyOrderedDispatcher} or the
+         * {@link LibraryEventsPipeline} commits the completed offsets itself, also on the idle events and before
+         * partitions are revoked.
+         */
+        if (mode == LibraryEventsProperties.Consumer.Mode.KEY_ORDERED || mode == LibraryEventsProperties.Consumer.Mode.PIPELINE) {
+            ContainerProperties containerProperties = factory.getContainerProperties();
+            factory.setBatchListener(true);
+            containerProperties.setAckMode(ContainerProperties.AckMode.MANUAL);
+            //an empty poll returns after the commit interval, so the idle event can follow it
+            long commitInterval = libraryEventsProperties.getConsumer().getCommitInterval().toMillis();
+            containerProperties.setPollTimeout(commitInterval);
+            containerProperties.setIdleEventInterval(commitInterval);
+            containerProperties.setConsumerRebalanceListener(rebalanceListener(mode == LibraryEventsProperties.Consumer.Mode.KEY_ORDERED
+                    ? keyOrderedDispatcher.getObject() : libraryEventsPipeline.getObject()));
+            factory.setBatchErrorHandler(((thrownException, data) -> {
+                log.info("Exception in consumerConfig is {} and the batch is {}", thrownException.getMessage(), data);
+            }));
+            return factory;
+        }
 
         /**
-         * Retry Mechanism
+         * Error handling and retries: a failed record doesn't wait on this consumer thread any more (the RetryTemplate
+         * backed off here before, holding up the whole partition). The {@link RetryTopicsErrorHandler} publishes it to
+         * its next retry topic right away, or to the dead letter topic, and the partition goes on with the next record.
          */
-        factory.setRetryTemplate(retryTemplate());
+        factory.setErrorHandler(retryTopicsErrorHandler);
 
         /**
-         * Recovery Logic: Type - 1
+         * Offsets in the database: every record runs in a database transaction, which {@link DatabaseOffsets} writes the
+         * offset in. With a transaction manager, a failed record goes to the after rollback processor instead of the error
+         * handler, it does the same recovery and stores the offset of the recovered record.
          */
-        factory.setRecoveryCallback((context -> {
-            /**
-             * Here the cause of the exception is related to Data Access Exception
-             */
-            if(context.getLastThrowable().getCause() instanceof RecoverableDataAccessException){
-                //invoke recovery logic
-                log.info("Inside the recoverable logic");
-
-                //context contains lot of attributes. To print all the attributes
-                /*Arrays.asList(context.attributeNames())
-                        .forEach(attributeName -> {
-                            log.info("Attribute name is : {} ", attributeName);
-                            log.info("Attribute Value is : {} ", context.getAttribute(attributeName));
-                        });*/
-
-                ConsumerRecord<Integer, String> consumerRecord = (ConsumerRecord<Integer, String>) context.getAttribute("record");
-                libraryEventsService.handleRecovery(consumerRecord);
-            } else{
-                log.info("Inside the non recoverable logic");
-                throw new RuntimeException(context.getLastThrowable().getMessage());
-            }
-
-            return null;
-        }));
+        if (libraryEventsProperties.getConsumer().getOffsetStorage() == LibraryEventsProperties.Consumer.OffsetStorage.DATABASE) {
+            DatabaseOffsets offsets = databaseOffsets.getObject();
+            ContainerProperties containerProperties = factory.getContainerProperties();
+            containerProperties.setTransactionManager(transactionManager);
+            containerProperties.setConsumerRebalanceListener(rebalanceListener(offsets));
+            //the Kafka commit is only for the lag tooling any more, nothing waits for it
+            containerProperties.setSyncCommits(false);
+            factory.setRecordInterceptor(offsets);
+            factory.setAfterRollbackProcessor(new DefaultAfterRollbackProcessor<>(offsets.recoverer(), new FixedBackOff(0L, 0L)));
+        }
 
         return  factory;
     }
 
-    private RetryTemplate retryTemplate() {
-
-        FixedBackOffPolicy fixedBackOffPolicy = new FixedBackOffPolicy();
-        fixedBackOffPolicy.setBackOffPeriod(1000); //Back Off time is 1 second, before applying retry
-
-        RetryTemplate retryTemplate = new RetryTemplate();
-        retryTemplate.setRetryPolicy(simpleRetryPolicy()); //step1
-        retryTemplate.setBackOffPolicy(fixedBackOffPolicy); //step2
-        return  retryTemplate;
+    private LibraryEventsRebalanceListener rebalanceListener(ConsumerAwareRebalanceListener delegate) {
+        return new LibraryEventsRebalanceListener(delegate, partitionWarmUp, partitionVersions, meterRegistry);
     }
 
-    private RetryPolicy simpleRetryPolicy() {
-
-        /**
-         * Scenario 1: With the below given configuration, any exception occurs during the
-         * execution logic, retry mechanisms would start.
-         *
-         * However, if my data itself is wrong and because of that application would throw
-         * an exception then it is not a proper retry.
-         *
-         * When to execute retry? If you got any specific exception or error then only you have
-         * to call the retry. Refer Scenario2
-         */
-        //SimpleRetryPolicy simpleRetryPolicy = new SimpleRetryPolicy();
-        //simpleRetryPolicy.setMaxAttempts(3); //Retry 3 times
-
-        /**
-         * Scenario 2 Impl (Custom Retry logic)
-         */
-        Map<Class<? extends Throwable>, Boolean> exceptionsMap = new HashMap<>();
-        exceptionsMap.put(IllegalArgumentException.class, false);
-        exceptionsMap.put(RecoverableDataAccessException.class, true);
+    /**
+     * Static membership, if there is a group-instance-id: a restarted instance which is back within session.timeout.ms
+     * takes its partitions back without a rebalance of the group.
+     *
+     * Not together with autoscaling: a static member doesn't leave the group when it's closed, so the partitions of
+     * the consumers a scale down stops would sit unassigned until session.timeout.ms is over.
+     */
+    private ConsumerFactory<Object, Object> staticMembership(ConsumerFactory<Object, Object> consumerFactory) {
+        String groupInstanceId = libraryEventsProperties.getConsumer().getRebalance().getGroupInstanceId();
+        if (!StringUtils.hasText(groupInstanceId)) {
+            return consumerFactory;
+        }
+        if (libraryEventsProperties.getConsumer().getAutoscaling().isEnabled()) {
+            log.warn("group-instance-id {} is ignored, the consumers are dynamic members while autoscaling is enabled", groupInstanceId);
+            return consumerFactory;
+        }
+        return new StaticMembershipConsumerFactory<>(consumerFactory, groupInstanceId);
+    }
 
-        var simpleRetryPolicy = new SimpleRetryPolicy(3, exceptionsMap,true);
-        return simpleRetryPolicy;
+    private ConsumerFactory<Object, Object> byteArrayValueConsumerFactory() {
+        Map<String, Object> consumerProperties = kafkaProperties.buildConsumerProperties();
+        consumerProperties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        DefaultKafkaConsumerFactory<Object, Object> consumerFactory = new DefaultKafkaConsumerFactory<>(consumerProperties);
+        //Spring Boot binds the Kafka client metrics (e.g. records-lag per partition) for its own consumer factory only
+        consumerFactory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return consumerFactory;
     }
 }
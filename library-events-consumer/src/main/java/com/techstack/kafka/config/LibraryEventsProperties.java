@@ -0,0 +1,286 @@
+package com.techstack.kafka.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Application specific settings which are bound from the "library-events" block of application.yml
+ */
+@Data
+@ConfigurationProperties(prefix = "library-events")
+public class LibraryEventsProperties {
+
+    private final Consumer consumer = new Consumer();
+
+    private final Retry retry = new Retry();
+
+    private final Persistence persistence = new Persistence();
+
+    private final IdIndex idIndex = new IdIndex();
+
+    private final Logging logging = new Logging();
+
+    private final Catalog catalog = new Catalog();
+
+    @Data
+    public static class Consumer {
+
+        /**
+         * RECORD hands every record to the listener on its own, BATCH hands over the whole poll
+         * and persists it in one transaction, KEY_ORDERED fans the records of a partition out to
+         * a worker pool, in order per libraryEventId, PIPELINE hands the records to separate parse and
+         * persist stages
+         */
+        private Mode mode = Mode.RECORD;
+
+        /**
+         * KAFKA commits the offsets to Kafka after the records are processed, DATABASE (RECORD mode only) writes them
+         * in the transaction of the record's database writes and seeks to them on assignment
+         */
+        private OffsetStorage offsetStorage = OffsetStorage.KAFKA;
+
+        /**
+         * Consumer threads of the listener container, the starting point if autoscaling is enabled
+         */
+        private int concurrency = 3;
+
+        /**
+         * KEY_ORDERED and PIPELINE: how often the completed offsets are committed while the listener has nothing else to do
+         */
+        private Duration commitInterval = Duration.ofMillis(500);
+
+        /**
+         * KEY_ORDERED and PIPELINE: how long a rebalance waits for the records in flight of the revoked partitions
+         */
+        private Duration drainTimeout = Duration.ofSeconds(10);
+
+        private final KeyOrdered keyOrdered = new KeyOrdered();
+
+        private final Pipeline pipeline = new Pipeline();
+
+        private final Autoscaling autoscaling = new Autoscaling();
+
+        private final Rebalance rebalance = new Rebalance();
+
+        public enum Mode {
+            RECORD,
+            BATCH,
+            KEY_ORDERED,
+            PIPELINE
+        }
+
+        public enum OffsetStorage {
+            KAFKA,
+            DATABASE
+        }
+    }
+
+    @Data
+    public static class Autoscaling {
+
+        /**
+         * Adjusts the concurrency to the lag and the processing time, between min-concurrency and the partition count
+         */
+        private boolean enabled = false;
+
+        private int minConcurrency = 1;
+
+        /**
+         * 0: the partition count of the topic, more threads than partitions would only idle
+         */
+        private int maxConcurrency = 0;
+
+        /**
+         * How often the lag is sampled
+         */
+        private Duration interval = Duration.ofSeconds(30);
+
+        /**
+         * No further change for that long after a change, every change restarts the container and rebalances the group
+         */
+        private Duration cooldown = Duration.ofMinutes(5);
+
+        /**
+         * Scaling up needs at least that much lag, scaling down at most that much
+         */
+        private long scaleUpLag = 1000;
+
+        private long scaleDownLag = 100;
+
+        /**
+         * Scaling down needs as many samples in a row which ask for fewer threads
+         */
+        private int scaleDownSamples = 3;
+
+        /**
+         * The lag is to be worked off within that time, on top of the records coming in
+         */
+        private Duration drainTime = Duration.ofMinutes(1);
+
+        /**
+         * Share of the time the threads are to be busy, the rest is headroom
+         */
+        private double targetUtilization = 0.7;
+    }
+
+    @Data
+    public static class Rebalance {
+
+        /**
+         * Static membership: the group.instance.id of this instance, which has to be stable across restarts (e.g. the
+         * pod name of a StatefulSet), each consumer thread adds its suffix. Empty, or with autoscaling enabled: dynamic members
+         */
+        private String groupInstanceId = "";
+
+        /**
+         * How long an assignment waits for the libraryEventId index to finish loading before processing starts
+         */
+        private Duration warmUpTimeout = Duration.ofSeconds(30);
+
+        /**
+         * Last-seen versions kept per assigned partition
+         */
+        private int cachedVersionsPerPartition = 100_000;
+    }
+
+    @Data
+    public static class KeyOrdered {
+
+        /**
+         * Worker threads, shared by all the partitions of the instance. A libraryEventId always goes to the same one.
+         */
+        private int workers = 16;
+
+        /**
+         * Records handed to the workers but not processed yet, the listener waits (and keeps committing) above that
+         */
+        private int maxInFlight = 10000;
+
+    }
+
+    @Data
+    public static class Pipeline {
+
+        /**
+         * Threads decoding the record values
+         */
+        private int parseThreads = 2;
+
+        /**
+         * Threads storing the LibraryEvents
+         */
+        private int persistThreads = 8;
+
+        /**
+         * Queue capacity per thread of a stage, above the pause threshold it has to take max.poll.records
+         */
+        private int queueCapacity = 2500;
+
+        /**
+         * The partitions are paused once the fullest queue of a stage is filled above this fraction ...
+         */
+        private double pauseThreshold = 0.8;
+
+        /**
+         * ... and resumed once the queues of both stages are below this one
+         */
+        private double resumeThreshold = 0.5;
+    }
+
+    @Data
+    public static class Retry {
+
+        /**
+         * A retry topic per delay ("library-events-retry-<millis>"), a failed record goes through them in this order.
+         * The longest delay has to stay below max.poll.interval.ms, the retry listener waits for it on its poll thread
+         */
+        private List<Duration> delays = List.of(Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofSeconds(60));
+
+        /**
+         * Where the records end up after the last delay, or right away if retrying wouldn't help
+         */
+        private String deadLetterTopic = "library-events-dlt";
+
+        /**
+         * Records which can't be decoded go straight there, without the retry topics
+         */
+        private String quarantineTopic = "library-events-quarantine";
+    }
+
+    @Data
+    public static class Persistence {
+
+        /**
+         * JPA stores through Hibernate (repository save), JDBC with multi-row MERGE statements
+         */
+        private Engine engine = Engine.JPA;
+
+        private final Jdbc jdbc = new Jdbc();
+
+        public enum Engine {
+            JPA,
+            JDBC
+        }
+
+        @Data
+        public static class Jdbc {
+
+            /**
+             * Rows per MERGE statement
+             */
+            private int batchSize = 100;
+        }
+    }
+
+    @Data
+    public static class IdIndex {
+
+        /**
+         * In memory index of the stored libraryEventIds, so an UPDATE of a known LibraryEvent isn't looked up first
+         */
+        private boolean enabled = true;
+
+        /**
+         * The index is allocated for this many ids at startup, 10M take 12 MB at 1% false positives
+         */
+        private long expectedIds = 10_000_000;
+
+        /**
+         * Share of the unknown ids which the index takes for known ones (their UPDATE is written, and the write finds out)
+         */
+        private double falsePositiveRate = 0.01;
+    }
+
+    @Data
+    public static class Logging {
+
+        /**
+         * Log lines per second and stage for the per record logging, 0 logs every record
+         */
+        private long sampleRate = 10;
+    }
+
+    @Data
+    public static class Catalog {
+
+        /**
+         * In memory view of the stored LibraryEvents for the /v1/catalog endpoints, off: they read from the database.
+         * Opt-in, every instance consumes all the partitions of library-events for it.
+         */
+        private boolean enabled;
+
+        /**
+         * Estimated size of the view, beyond it the endpoints read from the database
+         */
+        private DataSize maxMemory = DataSize.ofMegabytes(256);
+
+        /**
+         * Upper bound of the limit of a search
+         */
+        private int maxResults = 100;
+    }
+}
@@ -0,0 +1,69 @@
+package com.techstack.kafka.config;
+
+import com.techstack.kafka.consumer.LibraryEventsRetryConsumer;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.retry.RetryTopics;
+import com.techstack.kafka.retry.RetryTopicsErrorHandler;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.KafkaListenerConfigurer;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistrar;
+import org.springframework.kafka.config.MethodKafkaListenerEndpoint;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+
+/**
+ * Registers a listener container per retry topic, the number of tiers comes from "library-events.retry.delays".
+ *
+ * Every tier is a consumer group of its own, so the tiers (and the main topic) don't rebalance each other.
+ * The containers always read records one by one, whatever "library-events.consumer.mode" is.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class RetryTopicsConfig implements KafkaListenerConfigurer {
+
+    private final RetryTopics retryTopics;
+
+    private final LibraryEventsRetryConsumer libraryEventsRetryConsumer;
+
+    private final RetryTopicsErrorHandler retryTopicsErrorHandler;
+
+    private final ConcurrentKafkaListenerContainerFactoryConfigurer configurer;
+
+    private final ConsumerFactory<Object, Object> kafkaConsumerFactory;
+
+    private final KafkaProperties kafkaProperties;
+
+    @Override
+    public void configureKafkaListeners(KafkaListenerEndpointRegistrar registrar) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, kafkaConsumerFactory);
+        factory.setErrorHandler(retryTopicsErrorHandler);
+
+        DefaultMessageHandlerMethodFactory messageHandlerMethodFactory = new DefaultMessageHandlerMethodFactory();
+        messageHandlerMethodFactory.afterPropertiesSet();
+
+        for (String retryTopic : retryTopics.getRetryTopicNames()) {
+            MethodKafkaListenerEndpoint<Long, LibraryEvent> endpoint = new MethodKafkaListenerEndpoint<>();
+            endpoint.setId(retryTopic);
+            endpoint.setGroupId(kafkaProperties.getConsumer().getGroupId() + "-" + retryTopic);
+            endpoint.setTopics(retryTopic);
+            endpoint.setBean(libraryEventsRetryConsumer);
+            endpoint.setMethod(onMessageMethod());
+            endpoint.setMessageHandlerMethodFactory(messageHandlerMethodFactory);
+            registrar.registerEndpoint(endpoint, factory);
+        }
+    }
+
+    private static java.lang.reflect.Method onMessageMethod() {
+        try {
+            return LibraryEventsRetryConsumer.class.getMethod("onMessage", ConsumerRecord.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
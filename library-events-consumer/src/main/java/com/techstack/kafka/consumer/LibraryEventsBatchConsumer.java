@@ -0,0 +1,43 @@
+package com.techstack.kafka.consumer;
+
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.service.LibraryEventsBatchService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Takes the place of {@link LibraryEventsConsumer} with "library-events.consumer.mode: batch".
+ *
+ * The container factory is switched to a batch listener in that mode, so every call gets all the records
+ * of a poll (up to max.poll.records). They're already LibraryEvents, decoded by the configured value-deserializer;
+ * a record which couldn't be decoded comes with a null value.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "library-events.consumer.mode", havingValue = "batch")
+public class LibraryEventsBatchConsumer {
+
+    private static final String CONSUMED_STAGE = "consumed";
+
+    private final LibraryEventsBatchService libraryEventsBatchService;
+    private final LogSampling logSampling;
+
+    @KafkaListener(topics = {"library-events"})
+    public void onMessages(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+
+        if (logSampling.sample(CONSUMED_STAGE)) {
+            log.info("stage={} records={} suppressed={}", CONSUMED_STAGE, consumerRecords.size(), logSampling.suppressed(CONSUMED_STAGE));
+        }
+        log.debug("ConsumerRecords : {} ", consumerRecords);
+        libraryEventsBatchService.processLibraryEvents(consumerRecords);
+
+    }
+}
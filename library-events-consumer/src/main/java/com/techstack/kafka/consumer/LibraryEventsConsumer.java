@@ -1,19 +1,25 @@
 package com.techstack.kafka.consumer;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.logging.LogSampling;
 import com.techstack.kafka.service.LibraryEventsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "library-events.consumer.mode", havingValue = "record", matchIfMissing = true)
 public class LibraryEventsConsumer {
 
+    private static final String CONSUMED_STAGE = "consumed";
+
     private final LibraryEventsService libraryEventsService;
+    private final LogSampling logSampling;
 
     /**
      * Key Point here:
@@ -23,11 +29,18 @@ public class LibraryEventsConsumer {
      * 3. @KafkaListener annotation uses the  ConcurrentMessageListener
      * 4. With ConcurrentMessageListener we can spin up multiple instances of the same Kafka message
      * 5. If your application running on Cloud / Kubernaties environment, this option (ConcurrentMessageListener) is not necessary
+     * 6. The value is already a LibraryEvent, it's decoded by the configured value-deserializer
+     * ({@link com.techstack.kafka.codec.LibraryEventDeserializer}) in whatever format the producer wrote it
      */
     @KafkaListener(topics = {"library-events"})
-    public void onMessage(ConsumerRecord<Integer,String> consumerRecord) throws JsonProcessingException {
+    public void onMessage(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
 
-        log.info("ConsumerRecord : {} ", consumerRecord );
+        //Sampled, with the record coordinates only; the whole ConsumerRecord is logged at DEBUG
+        if (logSampling.sample(CONSUMED_STAGE)) {
+            log.info("stage={} key={} partition={} offset={} suppressed={}", CONSUMED_STAGE, consumerRecord.key(),
+                    consumerRecord.partition(), consumerRecord.offset(), logSampling.suppressed(CONSUMED_STAGE));
+        }
+        log.debug("ConsumerRecord : {} ", consumerRecord);
         libraryEventsService.processLibraryEvent(consumerRecord);
 
     }
@@ -0,0 +1,54 @@
+package com.techstack.kafka.consumer;
+
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.parallel.KeyOrderedDispatcher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Takes the place of {@link LibraryEventsConsumer} with "library-events.consumer.mode: key-ordered".
+ *
+ * Hands the records of a poll to the {@link KeyOrderedDispatcher}, so the parallelism isn't capped by the
+ * number of partitions (the container concurrency) any more.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "library-events.consumer.mode", havingValue = "key-ordered")
+public class LibraryEventsKeyOrderedConsumer {
+
+    private static final String CONSUMED_STAGE = "consumed";
+
+    private final KeyOrderedDispatcher keyOrderedDispatcher;
+    private final LogSampling logSampling;
+
+    @KafkaListener(topics = {"library-events"})
+    public void onMessages(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords, Consumer<?, ?> consumer) throws InterruptedException {
+
+        if (logSampling.sample(CONSUMED_STAGE)) {
+            log.info("stage={} records={} suppressed={}", CONSUMED_STAGE, consumerRecords.size(), logSampling.suppressed(CONSUMED_STAGE));
+        }
+        log.debug("ConsumerRecords : {} ", consumerRecords);
+        keyOrderedDispatcher.dispatch(consumerRecords, consumer);
+
+    }
+
+    /**
+     * Published on the consumer thread when a poll didn't return anything for the idle interval,
+     * the records completed since the last poll are committed here
+     */
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        keyOrderedDispatcher.commit(event.getConsumer());
+    }
+}
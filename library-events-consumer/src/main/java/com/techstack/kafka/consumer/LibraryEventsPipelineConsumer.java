@@ -0,0 +1,55 @@
+package com.techstack.kafka.consumer;
+
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.pipeline.LibraryEventsPipeline;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Takes the place of {@link LibraryEventsConsumer} with "library-events.consumer.mode: pipeline".
+ *
+ * The values aren't decoded by the consumer in this mode (the container factory reads them as byte[]),
+ * the poll thread only hands them to the {@link LibraryEventsPipeline}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "library-events.consumer.mode", havingValue = "pipeline")
+public class LibraryEventsPipelineConsumer {
+
+    private static final String CONSUMED_STAGE = "consumed";
+
+    private final LibraryEventsPipeline libraryEventsPipeline;
+    private final LogSampling logSampling;
+
+    /**
+     * The id names the container, so the pipeline can pause and resume it; it isn't the group id
+     */
+    @KafkaListener(id = LibraryEventsPipeline.LISTENER_ID, idIsGroup = false, topics = {"library-events"})
+    public void onMessages(List<ConsumerRecord<Long, byte[]>> consumerRecords, Consumer<?, ?> consumer) throws InterruptedException {
+
+        if (logSampling.sample(CONSUMED_STAGE)) {
+            log.info("stage={} records={} suppressed={}", CONSUMED_STAGE, consumerRecords.size(), logSampling.suppressed(CONSUMED_STAGE));
+        }
+        libraryEventsPipeline.submit(consumerRecords, consumer);
+
+    }
+
+    /**
+     * Published on the consumer thread when a poll didn't return anything for the idle interval (also while paused),
+     * the records completed since the last poll are committed here
+     */
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        libraryEventsPipeline.commit(event.getConsumer());
+    }
+}
@@ -0,0 +1,44 @@
+package com.techstack.kafka.consumer;
+
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.retry.RetryTopics;
+import com.techstack.kafka.service.LibraryEventsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener of every retry topic, each with a container of its own ({@link com.techstack.kafka.config.RetryTopicsConfig}),
+ * so the records of a tier only wait for their own due time.
+ *
+ * The records of a tier were all delayed by the same time, so they come in the order they're due: waiting for the
+ * first one is all the waiting there is. The longest delay has to stay below max.poll.interval.ms.
+ * A failure goes on to the next tier through the same error handler as on the main topic.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LibraryEventsRetryConsumer {
+
+    private static final String RETRY_CONSUMED_STAGE = "retry-consumed";
+
+    private final LibraryEventsService libraryEventsService;
+    private final LogSampling logSampling;
+
+    public void onMessage(ConsumerRecord<Long, LibraryEvent> consumerRecord) throws InterruptedException {
+
+        long waitMillis = RetryTopics.dueAt(consumerRecord.headers()) - System.currentTimeMillis();
+        if (waitMillis > 0) {
+            Thread.sleep(waitMillis);
+        }
+
+        if (logSampling.sample(RETRY_CONSUMED_STAGE)) {
+            log.info("stage={} topic={} key={} attempts={} suppressed={}", RETRY_CONSUMED_STAGE, consumerRecord.topic(),
+                    consumerRecord.key(), RetryTopics.attempts(consumerRecord.headers()), logSampling.suppressed(RETRY_CONSUMED_STAGE));
+        }
+        libraryEventsService.processLibraryEvent(consumerRecord);
+
+    }
+}
@@ -0,0 +1,57 @@
+package com.techstack.kafka.controller;
+
+import com.techstack.kafka.catalog.CatalogEntry;
+import com.techstack.kafka.catalog.CatalogService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Read side of the stored LibraryEvents, served by {@link CatalogService}
+ */
+@RestController
+@RequiredArgsConstructor
+public class CatalogController {
+
+    /**
+     * memory or database, where the answer came from
+     */
+    public static final String SOURCE_HEADER = "X-Catalog-Source";
+
+    private final CatalogService catalogService;
+
+    @GetMapping("/v1/catalog/library-event/{libraryEventId}")
+    public ResponseEntity<CatalogEntry> getByLibraryEventId(@PathVariable Long libraryEventId) {
+        return toResponse(catalogService.findByLibraryEventId(libraryEventId));
+    }
+
+    @GetMapping("/v1/catalog/book/{bookId}")
+    public ResponseEntity<CatalogEntry> getByBookId(@PathVariable Integer bookId) {
+        return toResponse(catalogService.findByBookId(bookId));
+    }
+
+    @GetMapping("/v1/catalog/books")
+    public ResponseEntity<List<CatalogEntry>> searchByAuthor(@RequestParam String authorPrefix,
+                                                             @RequestParam(defaultValue = "20") int limit) {
+        CatalogService.Result<List<CatalogEntry>> result = catalogService.findByAuthorPrefix(authorPrefix, limit);
+        return ResponseEntity.ok()
+                .header(SOURCE_HEADER, source(result))
+                .body(result.getValue());
+    }
+
+    private static ResponseEntity<CatalogEntry> toResponse(CatalogService.Result<Optional<CatalogEntry>> result) {
+        return result.getValue()
+                .map(entry -> ResponseEntity.ok().header(SOURCE_HEADER, source(result)).body(entry))
+                .orElseGet(() -> ResponseEntity.notFound().header(SOURCE_HEADER, source(result)).build());
+    }
+
+    private static String source(CatalogService.Result<?> result) {
+        return result.getSource().name().toLowerCase();
+    }
+}
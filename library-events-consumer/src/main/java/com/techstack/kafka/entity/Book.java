@@ -1,5 +1,6 @@
 package com.techstack.kafka.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -24,6 +25,10 @@ public class Book {
 
     private String bookAuthor;
 
+    /**
+     * Back reference for JPA only, it's not part of the LibraryEvent record value
+     */
+    @JsonIgnore
     @OneToOne
     @JoinColumn(name = "libraryEventId")
     private LibraryEvent libraryEvent;
@@ -0,0 +1,44 @@
+package com.techstack.kafka.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Embeddable;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import java.io.Serializable;
+
+/**
+ * The next offset to consume per group and partition, written in the same transaction as the LibraryEvent of the
+ * record ("library-events.consumer.offset-storage: database"), see {@link com.techstack.kafka.offsets.DatabaseOffsets}.
+ *
+ * Mapped for the table Hibernate generates, it's written and read with plain JDBC.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Entity
+public class ConsumerOffset {
+
+    @EmbeddedId
+    private Key key;
+
+    /**
+     * "offset" and "partition" are SQL keywords
+     */
+    private Long nextOffset;
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    @Embeddable
+    public static class Key implements Serializable {
+
+        private String groupId;
+
+        private String topic;
+
+        private Integer partitionId;
+    }
+}
@@ -1,33 +1,46 @@
 package com.techstack.kafka.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.springframework.data.domain.Persistable;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
-import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.OneToOne;
+import javax.persistence.Transient;
 
 @AllArgsConstructor
 @NoArgsConstructor
 @Data
 @Builder
 @Entity
-public class LibraryEvent {
+public class LibraryEvent implements Persistable<Long> {
 
+    /**
+     * Assigned by the producer (time ordered, also the record key) and stored as it is,
+     * there is no database sequence behind it
+     */
     @Id
-    @GeneratedValue
-    private Integer libraryEventId;
+    private Long libraryEventId;
 
     @Enumerated(EnumType.STRING)
     private LibraryEventType libraryEventType;
 
+    /**
+     * "event-sequence" header of the record which was stored last. It's not part of the record value,
+     * the records of a hot key are spread over several partitions and this tells which update is the latest.
+     */
+    @JsonIgnore
+    private Long eventSequence;
+
     /**
      * Why @ToString.Exclude added here is in LibraryEvent we refer Book instance.
      * Also, in Book type, we have a LibraryEvent. It you enable like this, you
@@ -39,4 +52,25 @@ public class LibraryEvent {
     @ToString.Exclude
     private Book book;
 
+    /**
+     * Set by the batch listener for the ids it didn't find in the database, so save() persists them
+     * straight away instead of selecting them once more to merge them. Left false, save() merges as usual.
+     */
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private boolean newEntity;
+
+    @JsonIgnore
+    @Override
+    public Long getId() {
+        return libraryEventId;
+    }
+
+    @JsonIgnore
+    @Override
+    public boolean isNew() {
+        return newEntity;
+    }
 }
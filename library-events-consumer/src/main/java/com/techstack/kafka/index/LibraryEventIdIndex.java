@@ -0,0 +1,147 @@
+package com.techstack.kafka.index;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory index of the libraryEventIds which are stored ("library-events.id-index"), so an UPDATE of a known
+ * LibraryEvent doesn't have to look it up first.
+ *
+ * It's a {@link LongBloomFilter}: an id which isn't in the index may still be stored (by another instance, or while
+ * the index is loading) and is looked up in the database as before; an id which is in the index is only probably
+ * stored, so the write of the UPDATE checks it once more ({@link com.techstack.kafka.persistence.LibraryEventPersister#saveIfNewer}).
+ * If that writes nothing, the id is looked up after all: a stale update is skipped, an unknown id fails as without the index.
+ *
+ * Why not an exact set: the ids are snowflake ids (milliseconds, worker, sequence), far too sparse for a roaring
+ * bitmap - every millisecond and group of 16 workers gets a container of its own, which at less than one id per
+ * millisecond costs 50 bytes and more per id. For 50M ids:
+ * <pre>
+ * bloom filter, 1% false positives      60 MB (9.6 bits per id)
+ * bloom filter, 0.1% false positives    90 MB (14.4 bits per id)
+ * sorted long[]                         400 MB, and an insert moves half of it
+ * open addressing long set              1 GB (2^27 slots, doubles once more at 100M)
+ * roaring bitmap of snowflake ids       ~2.5 GB
+ * HashSet&lt;Long&gt;                         ~3 GB
+ * </pre>
+ * The filter is allocated in full at startup, sized by expected-ids. Beyond that many ids the false positive rate
+ * goes up, which costs writes of UPDATEs which aren't valid but is never wrong.
+ *
+ * Loaded from the database in the background once the application is ready, and updated by every save.
+ */
+@Slf4j
+@Component
+public class LibraryEventIdIndex {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final boolean enabled;
+
+    private final LongBloomFilter bloomFilter;
+
+    private final AtomicLong size = new AtomicLong();
+
+    private final CountDownLatch loaded = new CountDownLatch(1);
+
+    public LibraryEventIdIndex(JdbcTemplate jdbcTemplate, LibraryEventsProperties libraryEventsProperties) {
+        LibraryEventsProperties.IdIndex idIndex = libraryEventsProperties.getIdIndex();
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = idIndex.isEnabled();
+        this.bloomFilter = enabled ? new LongBloomFilter(idIndex.getExpectedIds(), idIndex.getFalsePositiveRate()) : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return false if the id has to be looked up in the database, true if it's probably stored
+     */
+    public boolean mightContain(Long libraryEventId) {
+        return enabled && libraryEventId != null && bloomFilter.mightContain(libraryEventId);
+    }
+
+    public void add(Long libraryEventId) {
+        if (enabled && libraryEventId != null) {
+            bloomFilter.put(libraryEventId);
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * After the LibraryEvent is stored. Inside a transaction (offsets in the database) only once it's committed,
+     * a rolled back insert must not leave an id behind which isn't stored
+     */
+    public void stored(Long libraryEventId) {
+        if (!enabled || libraryEventId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(libraryEventId);
+                }
+            });
+        } else {
+            add(libraryEventId);
+        }
+    }
+
+    /**
+     * @return the number of ids added, an id added twice counts twice
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * @return true once the ids are loaded (or loading failed, or the index is disabled), false on the timeout
+     */
+    public boolean awaitLoaded(Duration timeout) {
+        try {
+            return loaded.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * The ids are streamed from the table Hibernate generates for LibraryEvent, on a thread of their own: the
+     * listeners start meanwhile and fall back to the database for the ids which aren't loaded yet
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            loaded.countDown();
+            return;
+        }
+        Thread loader = new Thread(() -> {
+            long startMillis = System.currentTimeMillis();
+            try {
+                jdbcTemplate.query("SELECT library_event_id FROM library_event", resultSet -> {
+                    add(resultSet.getLong(1));
+                });
+                log.info("Loaded {} libraryEventIds into the index in {} ms, {} bits", size(),
+                        System.currentTimeMillis() - startMillis, bloomFilter.bitCount());
+            } catch (RuntimeException e) {
+                log.warn("Loading the libraryEventIds failed, the ids which aren't indexed are looked up in the database : {}", e.getMessage());
+            } finally {
+                loaded.countDown();
+            }
+        }, "library-events-id-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+}
@@ -0,0 +1,46 @@
+package com.techstack.kafka.metrics;
+
+import io.micrometer.core.instrument.Metrics;
+import org.apache.kafka.clients.consumer.ConsumerInterceptor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stamps every polled record with the {@link ConsumerMetrics#CONSUMED_AT_HEADER} header, whichever listener and thread
+ * it's processed by later, and records the consume latency (record timestamp -> polled).
+ *
+ * Configured as "interceptor.classes" of the consumers, so Kafka creates it and not Spring: the latency goes to the
+ * global registry, which Spring Boot adds its registries to.
+ */
+public class ConsumedAtInterceptor implements ConsumerInterceptor<Object, Object> {
+
+    @Override
+    public ConsumerRecords<Object, Object> onConsume(ConsumerRecords<Object, Object> records) {
+        long nowMillis = System.currentTimeMillis();
+        byte[] consumedAt = ByteBuffer.allocate(Long.BYTES).putLong(nowMillis).array();
+        for (ConsumerRecord<Object, Object> record : records) {
+            record.headers().add(ConsumerMetrics.CONSUMED_AT_HEADER, consumedAt);
+            Metrics.globalRegistry.timer(ConsumerMetrics.CONSUME_LATENCY_METRIC, ConsumerMetrics.partitionTags(record))
+                    .record(Math.max(0, nowMillis - record.timestamp()), TimeUnit.MILLISECONDS);
+        }
+        return records;
+    }
+
+    @Override
+    public void onCommit(Map<TopicPartition, OffsetAndMetadata> offsets) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+}
@@ -0,0 +1,87 @@
+package com.techstack.kafka.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency and outcome metrics of the records, exposed through actuator (/actuator/metrics, /actuator/prometheus):
+ * <pre>
+ * library.events.consumer.consume.latency{topic,partition}      record timestamp -> polled ({@link ConsumedAtInterceptor})
+ * library.events.consumer.persist.latency{topic,partition}      polled -> stored (the write is committed)
+ * library.events.consumer.end.to.end.latency{topic,partition}   record timestamp -> stored
+ * library.events.consumer.stage{stage}                          deserialize, validate and save, per call
+ * library.events.consumer.recovery{outcome,topic}               failed records handed to a retry topic / the dead letter topic,
+ *                                                               records which can't be decoded to the quarantine topic
+ * library.events.consumer.skipped{topic,partition}              records which were given up on
+ * </pre>
+ * The lag per partition is the kafka.consumer.fetch.manager.records.lag gauge of the Kafka client metrics, which
+ * Spring Boot binds for the consumers of the listener containers.
+ */
+@Component
+@RequiredArgsConstructor
+public class ConsumerMetrics {
+
+    /**
+     * Epoch millis the record was polled at, long, added by the {@link ConsumedAtInterceptor}
+     */
+    public static final String CONSUMED_AT_HEADER = "consumed-at";
+
+    public static final String CONSUME_LATENCY_METRIC = "library.events.consumer.consume.latency";
+    public static final String PERSIST_LATENCY_METRIC = "library.events.consumer.persist.latency";
+    public static final String END_TO_END_LATENCY_METRIC = "library.events.consumer.end.to.end.latency";
+    public static final String STAGE_METRIC = "library.events.consumer.stage";
+
+    public static final String DESERIALIZE_STAGE = "deserialize";
+    public static final String VALIDATE_STAGE = "validate";
+    public static final String SAVE_STAGE = "save";
+
+    private final MeterRegistry meterRegistry;
+
+    public <T> T time(String stage, Supplier<T> supplier) {
+        return meterRegistry.timer(STAGE_METRIC, "stage", stage).record(supplier);
+    }
+
+    public void time(String stage, Runnable runnable) {
+        meterRegistry.timer(STAGE_METRIC, "stage", stage).record(runnable);
+    }
+
+    public void persisted(ConsumerRecord<?, ?> consumerRecord) {
+        long nowMillis = System.currentTimeMillis();
+        Tags tags = partitionTags(consumerRecord);
+        long consumedAtMillis = consumedAt(consumerRecord.headers());
+        if (consumedAtMillis > 0) {
+            meterRegistry.timer(PERSIST_LATENCY_METRIC, tags).record(Math.max(0, nowMillis - consumedAtMillis), TimeUnit.MILLISECONDS);
+        }
+        //the producer's clock, a negative difference is skew between the hosts
+        meterRegistry.timer(END_TO_END_LATENCY_METRIC, tags).record(Math.max(0, nowMillis - consumerRecord.timestamp()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param outcome retried, dead-lettered, or failed if the record couldn't be published
+     */
+    public void recovery(String outcome, String topic) {
+        meterRegistry.counter("library.events.consumer.recovery", "outcome", outcome, "topic", topic).increment();
+    }
+
+    public void skipped(ConsumerRecord<?, ?> consumerRecord) {
+        meterRegistry.counter("library.events.consumer.skipped", partitionTags(consumerRecord)).increment();
+    }
+
+    static Tags partitionTags(ConsumerRecord<?, ?> consumerRecord) {
+        return Tags.of("topic", consumerRecord.topic(), "partition", String.valueOf(consumerRecord.partition()));
+    }
+
+    static long consumedAt(Headers headers) {
+        Header header = headers.lastHeader(CONSUMED_AT_HEADER);
+        return header == null ? 0 : ByteBuffer.wrap(header.value()).getLong();
+    }
+}
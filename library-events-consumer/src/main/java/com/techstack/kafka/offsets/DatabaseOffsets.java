@@ -0,0 +1,113 @@
+package com.techstack.kafka.offsets;
+
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.service.LibraryEventsService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps the consumed offsets in the database instead of Kafka ("library-events.consumer.offset-storage: database"),
+ * in the same transaction as the LibraryEvent, so a record is either stored with its offset or not at all. A crash
+ * between the write and a Kafka commit can't store a record twice or skip one any more.
+ *
+ * <ul>
+ *     <li>the listener container runs every record in a database transaction (its transaction manager is the JPA one),
+ *     this interceptor writes the next offset in it before the listener runs - a failed record rolls both back</li>
+ *     <li>a failed record which is handed to the retry topics ({@link #recoverer()}) gets its offset written once
+ *     it's published, in a transaction of its own</li>
+ *     <li>assigned partitions are sought to the stored offsets, partitions without one start from the Kafka commit
+ *     or auto.offset.reset as before</li>
+ * </ul>
+ * The container still commits to Kafka, but asynchronously: only for the lag tooling, the table is what counts.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "library-events.consumer.offset-storage", havingValue = "database")
+public class DatabaseOffsets implements RecordInterceptor<Object, Object>, ConsumerAwareRebalanceListener {
+
+    private static final String OFFSET_MERGE =
+            "MERGE INTO consumer_offset (group_id, topic, partition_id, next_offset) KEY (group_id, topic, partition_id) VALUES (?, ?, ?, ?)";
+
+    private static final String OFFSET_SELECT =
+            "SELECT topic, partition_id, next_offset FROM consumer_offset WHERE group_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final LibraryEventsService libraryEventsService;
+
+    private final String groupId;
+
+    public DatabaseOffsets(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                           LibraryEventsService libraryEventsService, KafkaProperties kafkaProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.libraryEventsService = libraryEventsService;
+        this.groupId = kafkaProperties.getConsumer().getGroupId();
+    }
+
+    /**
+     * Runs in the container's transaction, right before the listener
+     */
+    @Override
+    public ConsumerRecord<Object, Object> intercept(ConsumerRecord<Object, Object> record) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("The offset of " + record.topic() + "-" + record.partition() + "@" + record.offset()
+                    + " has to be stored in the listener's transaction, the container has no transaction manager");
+        }
+        store(record);
+        return record;
+    }
+
+    /**
+     * The recovery of the retry topics, for the container's after rollback processor
+     */
+    @SuppressWarnings("unchecked")
+    public BiConsumer<ConsumerRecord<?, ?>, Exception> recoverer() {
+        return (record, exception) -> {
+            log.info("Exception in consumerConfig is {} and the record is {}", exception.getMessage(), record);
+            libraryEventsService.handleRecovery((ConsumerRecord<Long, LibraryEvent>) record, exception);
+            transactionTemplate.executeWithoutResult(status -> store(record));
+        };
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Map<TopicPartition, Long> storedOffsets = storedOffsets();
+        for (TopicPartition partition : partitions) {
+            Long nextOffset = storedOffsets.get(partition);
+            if (nextOffset != null) {
+                consumer.seek(partition, nextOffset);
+            }
+        }
+        log.info("Partitions assigned: {}, sought to the stored offsets {}", partitions, storedOffsets);
+    }
+
+    public Map<TopicPartition, Long> storedOffsets() {
+        Map<TopicPartition, Long> storedOffsets = new HashMap<>();
+        jdbcTemplate.query(OFFSET_SELECT, resultSet -> {
+            storedOffsets.put(new TopicPartition(resultSet.getString(1), resultSet.getInt(2)), resultSet.getLong(3));
+        }, groupId);
+        return storedOffsets;
+    }
+
+    private void store(ConsumerRecord<?, ?> record) {
+        jdbcTemplate.update(OFFSET_MERGE, groupId, record.topic(), record.partition(), record.offset() + 1);
+    }
+}
@@ -0,0 +1,133 @@
+package com.techstack.kafka.parallel;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Commit bookkeeping for the listeners which process records off the consumer thread (key-ordered and pipeline mode).
+ *
+ * Every record is tracked when it's handed over and completed when it's done, in any order. The offsets are
+ * committed per partition up to the lowest record which isn't done yet ({@link PartitionOffsets}).
+ * A record which failed (not stored and not recovered either) is never completed: the partition is rewound to it and
+ * consumed again from there, the records after it which were done already are processed once more.
+ * All the Consumer calls have to be made on the consumer thread.
+ */
+@Slf4j
+public class CompletedOffsets {
+
+    private final long drainTimeoutMillis;
+
+    private final Map<TopicPartition, PartitionOffsets> partitionOffsets = new ConcurrentHashMap<>();
+
+    public CompletedOffsets(long drainTimeoutMillis) {
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    /**
+     * @return the offsets of the record's partition, {@link PartitionOffsets#completed(long)} has to be called with the record's offset once it's done
+     */
+    public PartitionOffsets track(ConsumerRecord<?, ?> consumerRecord) {
+        PartitionOffsets offsets = partitionOffsets.computeIfAbsent(
+                new TopicPartition(consumerRecord.topic(), consumerRecord.partition()), topicPartition -> new PartitionOffsets());
+        offsets.dispatched(consumerRecord.offset());
+        return offsets;
+    }
+
+    /**
+     * Commits the completed offsets of the partitions assigned to this consumer
+     */
+    public void commit(Consumer<?, ?> consumer) {
+        //up to the failed records, before they're rewound to
+        Map<TopicPartition, OffsetAndMetadata> offsetsToCommit = committableOffsets(consumer.assignment());
+        rewindFailed(consumer);
+        if (offsetsToCommit.isEmpty()) {
+            return;
+        }
+        consumer.commitAsync(offsetsToCommit, (committedOffsets, exception) -> {
+            if (exception != null) {
+                log.warn("Commit of {} failed, it's retried with the next commit : {}", committedOffsets, exception.getMessage());
+                return;
+            }
+            committedOffsets.forEach((topicPartition, offsetAndMetadata) -> {
+                PartitionOffsets offsets = partitionOffsets.get(topicPartition);
+                if (offsets != null) {
+                    offsets.committed(offsetAndMetadata.offset());
+                }
+            });
+        });
+    }
+
+    /**
+     * Seeks the partitions with a failed record back to it (or to a lower record still in flight). The records handed
+     * over before are tracked no more, the ones from the seek on are tracked again as they're polled.
+     */
+    private void rewindFailed(Consumer<?, ?> consumer) {
+        for (TopicPartition topicPartition : consumer.assignment()) {
+            PartitionOffsets offsets = partitionOffsets.get(topicPartition);
+            if (offsets != null && offsets.isFailed()) {
+                long rewindOffset = offsets.rewindOffset();
+                partitionOffsets.remove(topicPartition);
+                consumer.seek(topicPartition, rewindOffset);
+                log.warn("Consuming {} again from offset {}, a record failed and couldn't be recovered", topicPartition, rewindOffset);
+            }
+        }
+    }
+
+    /**
+     * The next owner starts from the committed offset, so the records in flight of the revoked partitions are
+     * finished and committed before letting them go. Records which aren't done within the drain timeout are
+     * still processed here, and once more by the next owner.
+     */
+    public void commitRevoked(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (TopicPartition topicPartition : partitions) {
+            PartitionOffsets offsets = partitionOffsets.get(topicPartition);
+            try {
+                if (offsets != null && !offsets.awaitDrained(drainTimeoutMillis)) {
+                    log.warn("{} records of {} are still in flight after {} ms, they will be consumed again",
+                            offsets.inFlight(), topicPartition, drainTimeoutMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        Map<TopicPartition, OffsetAndMetadata> offsetsToCommit = committableOffsets(partitions);
+        try {
+            if (!offsetsToCommit.isEmpty()) {
+                consumer.commitSync(offsetsToCommit);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Commit of {} on revocation failed : {}", offsetsToCommit, e.getMessage());
+        } finally {
+            partitions.forEach(partitionOffsets::remove);
+        }
+    }
+
+    /**
+     * Someone else owns them already, nothing can be committed
+     */
+    public void lost(Collection<TopicPartition> partitions) {
+        partitions.forEach(partitionOffsets::remove);
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> committableOffsets(Collection<TopicPartition> topicPartitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsetsToCommit = new HashMap<>();
+        for (TopicPartition topicPartition : topicPartitions) {
+            PartitionOffsets offsets = partitionOffsets.get(topicPartition);
+            long committable = offsets == null ? -1 : offsets.committable();
+            if (committable >= 0) {
+                offsetsToCommit.put(topicPartition, new OffsetAndMetadata(committable));
+            }
+        }
+        return offsetsToCommit;
+    }
+}
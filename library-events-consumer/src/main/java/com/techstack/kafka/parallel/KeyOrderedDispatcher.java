@@ -0,0 +1,122 @@
+package com.techstack.kafka.parallel;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.service.LibraryEventsService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans the records of a partition out to a pool of single threaded workers ("library-events.consumer.mode: key-ordered").
+ *
+ * A libraryEventId (the record key) always goes to the same worker, so its records are processed in the order of
+ * the partition while the other keys go ahead on the other workers; a slow write only holds up its own worker.
+ * The container doesn't commit anything in this mode (AckMode MANUAL without acknowledging), the offsets are
+ * committed from here, up to the lowest record which isn't processed yet ({@link CompletedOffsets}).
+ * Committing has to happen on the consumer thread: after every poll, while waiting for the workers and on the
+ * container's idle events.
+ */
+@Component
+@ConditionalOnProperty(name = "library-events.consumer.mode", havingValue = "key-ordered")
+public class KeyOrderedDispatcher implements ConsumerAwareRebalanceListener, DisposableBean {
+
+    private final LibraryEventsService libraryEventsService;
+
+    private final ExecutorService[] workers;
+
+    private final Semaphore inFlightPermits;
+
+    private final long commitIntervalMillis;
+
+    private final long drainTimeoutMillis;
+
+    private final CompletedOffsets completedOffsets;
+
+    public KeyOrderedDispatcher(LibraryEventsService libraryEventsService, LibraryEventsProperties libraryEventsProperties) {
+        LibraryEventsProperties.KeyOrdered keyOrdered = libraryEventsProperties.getConsumer().getKeyOrdered();
+        this.libraryEventsService = libraryEventsService;
+        this.workers = new ExecutorService[keyOrdered.getWorkers()];
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("library-events-worker-");
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+        this.inFlightPermits = new Semaphore(keyOrdered.getMaxInFlight());
+        this.commitIntervalMillis = libraryEventsProperties.getConsumer().getCommitInterval().toMillis();
+        this.drainTimeoutMillis = libraryEventsProperties.getConsumer().getDrainTimeout().toMillis();
+        this.completedOffsets = new CompletedOffsets(drainTimeoutMillis);
+    }
+
+    /**
+     * Called on the consumer thread with the records of a poll
+     */
+    public void dispatch(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords, Consumer<?, ?> consumer) throws InterruptedException {
+        for (ConsumerRecord<Long, LibraryEvent> consumerRecord : consumerRecords) {
+            //back pressure: the poll loop waits for the workers, the completed offsets are committed meanwhile
+            while (!inFlightPermits.tryAcquire(commitIntervalMillis, TimeUnit.MILLISECONDS)) {
+                commit(consumer);
+            }
+
+            PartitionOffsets offsets = completedOffsets.track(consumerRecord);
+            worker(consumerRecord.key()).execute(() -> {
+                try {
+                    libraryEventsService.processLibraryEventOrRecover(consumerRecord);
+                    offsets.completed(consumerRecord.offset());
+                } catch (RuntimeException e) {
+                    //neither stored nor recovered, the partition is consumed again from it
+                    offsets.failed();
+                } finally {
+                    inFlightPermits.release();
+                }
+            });
+        }
+        commit(consumer);
+    }
+
+    /**
+     * Commits the completed offsets of the partitions assigned to this consumer. Called on the consumer thread.
+     */
+    public void commit(Consumer<?, ?> consumer) {
+        completedOffsets.commit(consumer);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        completedOffsets.commitRevoked(consumer, partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        completedOffsets.lost(partitions);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        for (ExecutorService worker : workers) {
+            worker.awaitTermination(drainTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records without a key all go to the first worker, in partition order
+     */
+    private ExecutorService worker(Long key) {
+        return workers[Math.floorMod(Objects.hashCode(key), workers.length)];
+    }
+}
@@ -0,0 +1,83 @@
+package com.techstack.kafka.parallel;
+
+import java.util.TreeSet;
+
+/**
+ * Offsets of one partition which were handed to the workers, as they complete in any order.
+ *
+ * The committable offset is the lowest one still in flight: every record below it is done, while
+ * records above it may be done already but wouldn't be consumed again after a restart if it was higher.
+ * With nothing in flight it's the offset after the last dispatched record.
+ */
+public class PartitionOffsets {
+
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+
+    private long nextOffset = -1;
+
+    private long committedOffset = -1;
+
+    private boolean failed;
+
+    public synchronized void dispatched(long offset) {
+        inFlight.add(offset);
+        nextOffset = Math.max(nextOffset, offset + 1);
+    }
+
+    public synchronized void completed(long offset) {
+        inFlight.remove(offset);
+        if (inFlight.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * A record which could neither be processed nor recovered: it stays in flight, so nothing is committed past it,
+     * and the partition has to be consumed again from {@link #rewindOffset()}
+     */
+    public synchronized void failed() {
+        failed = true;
+    }
+
+    public synchronized boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the lowest offset which isn't done yet, the failed record or one below it which is still in flight
+     */
+    public synchronized long rewindOffset() {
+        return inFlight.isEmpty() ? nextOffset : inFlight.first();
+    }
+
+    /**
+     * @return the offset to commit, -1 if there is nothing new to commit since the last {@link #committed(long)}
+     */
+    public synchronized long committable() {
+        long committable = inFlight.isEmpty() ? nextOffset : inFlight.first();
+        return committable > committedOffset ? committable : -1;
+    }
+
+    public synchronized void committed(long offset) {
+        committedOffset = Math.max(committedOffset, offset);
+    }
+
+    public synchronized int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * @return whether all the dispatched records completed within the timeout
+     */
+    public synchronized boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!inFlight.isEmpty()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,122 @@
+package com.techstack.kafka.persistence;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.Book;
+import com.techstack.kafka.entity.LibraryEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Stores with plain JDBC, as multi-row MERGE statements: one per "library-events.persistence.jdbc.batch-size"
+ * LibraryEvents and one per as many Books. There is no select before the write, no persistence context and
+ * no dirty checking, which is what a bulk replay of the topic spends its time on with Hibernate.
+ *
+ * The statements are built once per row count and reused; chunking by the batch size keeps that down to
+ * the full batch and the remainders, so the driver sees the same few statements over and over.
+ *
+ * MERGE ... KEY is H2's upsert, the only database this service runs against. The tables are the ones
+ * Hibernate generates from the entities (see spring.jpa.generate-ddl).
+ */
+@Component
+@ConditionalOnProperty(name = "library-events.persistence.engine", havingValue = "jdbc")
+public class JdbcLibraryEventPersister implements LibraryEventPersister {
+
+    private static final String LIBRARY_EVENT_MERGE =
+            "MERGE INTO library_event (library_event_id, library_event_type, event_sequence) KEY (library_event_id) VALUES ";
+    private static final String LIBRARY_EVENT_ROW = "(?, ?, ?)";
+
+    private static final String BOOK_MERGE =
+            "MERGE INTO book (book_id, book_name, book_author, library_event_id) KEY (book_id) VALUES ";
+    private static final String BOOK_ROW = "(?, ?, ?, ?)";
+
+    /**
+     * The event sequence check of LibraryEventsService.isStale, as part of the update
+     */
+    private static final String LIBRARY_EVENT_UPDATE_IF_NEWER =
+            "UPDATE library_event SET library_event_type = ?, event_sequence = ? WHERE library_event_id = ?"
+                    + " AND (CAST(? AS BIGINT) IS NULL OR event_sequence IS NULL OR event_sequence < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int batchSize;
+
+    private final Map<Integer, String> libraryEventStatements = new ConcurrentHashMap<>();
+
+    private final Map<Integer, String> bookStatements = new ConcurrentHashMap<>();
+
+    public JdbcLibraryEventPersister(JdbcTemplate jdbcTemplate, LibraryEventsProperties libraryEventsProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = libraryEventsProperties.getPersistence().getJdbc().getBatchSize();
+    }
+
+    /**
+     * The LibraryEvents go first, the Books refer to them. Joins the caller's transaction, if there is one.
+     */
+    @Override
+    @Transactional
+    public void saveAll(Collection<LibraryEvent> libraryEvents) {
+        List<LibraryEvent> libraryEventRows = new ArrayList<>(libraryEvents);
+        List<Book> bookRows = new ArrayList<>(libraryEvents.size());
+        for (LibraryEvent libraryEvent : libraryEvents) {
+            if (libraryEvent.getBook() != null) {
+                bookRows.add(libraryEvent.getBook());
+            }
+        }
+
+        merge(libraryEventRows, libraryEventStatements, LIBRARY_EVENT_MERGE, LIBRARY_EVENT_ROW, libraryEvent -> new Object[]{
+                libraryEvent.getLibraryEventId(),
+                Objects.toString(libraryEvent.getLibraryEventType(), null),
+                libraryEvent.getEventSequence()});
+        merge(bookRows, bookStatements, BOOK_MERGE, BOOK_ROW, this::bookColumns);
+    }
+
+    private Object[] bookColumns(Book book) {
+        return new Object[]{
+                book.getBookId(),
+                book.getBookName(),
+                book.getBookAuthor(),
+                book.getLibraryEvent() == null ? null : book.getLibraryEvent().getLibraryEventId()};
+    }
+
+    /**
+     * No select: the LibraryEvent row is updated only if it exists and isn't newer, the Book only if it was
+     */
+    @Override
+    @Transactional
+    public boolean saveIfNewer(LibraryEvent libraryEvent) {
+        Long eventSequence = libraryEvent.getEventSequence();
+        int updated = jdbcTemplate.update(LIBRARY_EVENT_UPDATE_IF_NEWER, Objects.toString(libraryEvent.getLibraryEventType(), null),
+                eventSequence, libraryEvent.getLibraryEventId(), eventSequence, eventSequence);
+        if (updated == 0) {
+            return false;
+        }
+        if (libraryEvent.getBook() != null) {
+            merge(List.of(libraryEvent.getBook()), bookStatements, BOOK_MERGE, BOOK_ROW, this::bookColumns);
+        }
+        return true;
+    }
+
+    private <T> void merge(List<T> rows, Map<Integer, String> statements, String merge, String row, Function<T, Object[]> columns) {
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            List<T> chunk = rows.subList(from, Math.min(from + batchSize, rows.size()));
+            String sql = statements.computeIfAbsent(chunk.size(), rowCount -> merge + String.join(", ", Collections.nCopies(rowCount, row)));
+
+            List<Object> arguments = new ArrayList<>();
+            for (T item : chunk) {
+                Collections.addAll(arguments, columns.apply(item));
+            }
+            jdbcTemplate.update(sql, arguments.toArray());
+        }
+    }
+}
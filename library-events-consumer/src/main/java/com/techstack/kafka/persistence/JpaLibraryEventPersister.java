@@ -0,0 +1,56 @@
+package com.techstack.kafka.persistence;
+
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.repository.LibraryEventsRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+
+/**
+ * Stores through Hibernate: a LibraryEvent which isn't new ({@link LibraryEvent#isNew()}) is merged, i.e. selected
+ * first, and the Book follows through the cascade
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "library-events.persistence.engine", havingValue = "jpa", matchIfMissing = true)
+public class JpaLibraryEventPersister implements LibraryEventPersister {
+
+    private final LibraryEventsRepository libraryEventsRepository;
+
+    private final EntityManager entityManager;
+
+    @Override
+    public void saveAll(Collection<LibraryEvent> libraryEvents) {
+        libraryEventsRepository.saveAll(libraryEvents);
+    }
+
+    @Override
+    public void save(LibraryEvent libraryEvent) {
+        libraryEventsRepository.save(libraryEvent);
+    }
+
+    /**
+     * The check and the LibraryEvent's update are a single UPDATE, like the JDBC engine's: a select before the merge
+     * would let a concurrent update of the same (hot) key write in between, and the older one overwrite it.
+     * The row stays locked until the commit, the Book is merged behind it.
+     */
+    @Override
+    @Transactional
+    public boolean saveIfNewer(LibraryEvent libraryEvent) {
+        int updated = libraryEvent.getEventSequence() == null
+                ? libraryEventsRepository.updateUnsequenced(libraryEvent.getLibraryEventId(), libraryEvent.getLibraryEventType())
+                : libraryEventsRepository.updateIfNewer(libraryEvent.getLibraryEventId(), libraryEvent.getLibraryEventType(),
+                        libraryEvent.getEventSequence());
+        if (updated == 0) {
+            return false;
+        }
+        if (libraryEvent.getBook() != null) {
+            entityManager.merge(libraryEvent.getBook());
+        }
+        return true;
+    }
+}
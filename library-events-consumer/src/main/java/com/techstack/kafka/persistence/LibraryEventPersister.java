@@ -0,0 +1,30 @@
+package com.techstack.kafka.persistence;
+
+import com.techstack.kafka.entity.LibraryEvent;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stores LibraryEvents together with their Book, inserting or overwriting them by id.
+ *
+ * The implementation is picked with "library-events.persistence.engine":
+ * jpa ({@link JpaLibraryEventPersister}, the default) or jdbc ({@link JdbcLibraryEventPersister}).
+ * The Book's back reference to its LibraryEvent is expected to be set.
+ */
+public interface LibraryEventPersister {
+
+    void saveAll(Collection<LibraryEvent> libraryEvents);
+
+    default void save(LibraryEvent libraryEvent) {
+        saveAll(List.of(libraryEvent));
+    }
+
+    /**
+     * Overwrites the stored LibraryEvent, unless the stored one is newer (see LibraryEventsService.isStale).
+     * The check and the write are one step, the caller doesn't need to look the stored LibraryEvent up first.
+     *
+     * @return false if nothing was written: the stored LibraryEvent is newer, or there is none
+     */
+    boolean saveIfNewer(LibraryEvent libraryEvent);
+}
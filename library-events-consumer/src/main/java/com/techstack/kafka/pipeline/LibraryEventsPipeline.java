@@ -0,0 +1,248 @@
+package com.techstack.kafka.pipeline;
+
+import com.techstack.kafka.codec.DecodeFailure;
+import com.techstack.kafka.codec.LibraryEventCodecs;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.metrics.ConsumerMetrics;
+import com.techstack.kafka.parallel.CompletedOffsets;
+import com.techstack.kafka.parallel.PartitionOffsets;
+import com.techstack.kafka.service.LibraryEventsService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Staged processing off the poll thread ("library-events.consumer.mode: pipeline"):
+ * poll -> parse stage (decodes the record value) -> persist stage (validates and stores the LibraryEvent).
+ *
+ * The poll thread only queues the raw records, a slow database write holds up the persist stage but not the poll
+ * loop, so it doesn't get near max.poll.interval.ms. Both stages queue by libraryEventId, which keeps the records of a
+ * key in order through the whole pipeline. The stages have their own threads and queues and are sized independently.
+ *
+ * Back pressure: the listener container is paused once a stage's queue fills up and resumed once they're drained,
+ * the consumer keeps polling (without records) meanwhile and stays in the group. The queues have to take a whole poll
+ * above the pause threshold, the records of a poll may all have the same key: otherwise the poll thread would block on
+ * a full queue instead of pausing, and could miss max.poll.interval.ms. It's checked at startup.
+ *
+ * Offsets are committed only for the records the persist stage is done with (stored, skipped as invalid or handed
+ * to the recovery, by the stage or when the stage failed), by the {@link CompletedOffsets} on the consumer thread.
+ * A record whose recovery fails as well isn't done: its partition is consumed again from it.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "library-events.consumer.mode", havingValue = "pipeline")
+public class LibraryEventsPipeline implements ConsumerAwareRebalanceListener, DisposableBean {
+
+    public static final String LISTENER_ID = "library-events-pipeline";
+
+    private static final String QUEUE_DEPTH_METRIC = "library.events.consumer.pipeline.queue.depth";
+
+    private static final int DEFAULT_MAX_POLL_RECORDS = 500;
+
+    private final LibraryEventsService libraryEventsService;
+
+    private final ConsumerMetrics consumerMetrics;
+
+    private final KafkaListenerEndpointRegistry endpointRegistry;
+
+    private final PipelineStage<TrackedRecord<byte[]>> parseStage;
+
+    private final PipelineStage<TrackedRecord<LibraryEvent>> persistStage;
+
+    private final CompletedOffsets completedOffsets;
+
+    private final double pauseThreshold;
+
+    private final double resumeThreshold;
+
+    private final long drainTimeoutMillis;
+
+    private final AtomicBoolean paused = new AtomicBoolean();
+
+    public LibraryEventsPipeline(LibraryEventsService libraryEventsService, KafkaListenerEndpointRegistry endpointRegistry,
+                                 LibraryEventsProperties libraryEventsProperties, ConsumerMetrics consumerMetrics,
+                                 MeterRegistry meterRegistry, KafkaProperties kafkaProperties) {
+        LibraryEventsProperties.Consumer consumer = libraryEventsProperties.getConsumer();
+        LibraryEventsProperties.Pipeline pipeline = consumer.getPipeline();
+        requireRoomForAPoll(pipeline, kafkaProperties);
+        this.libraryEventsService = libraryEventsService;
+        this.consumerMetrics = consumerMetrics;
+        this.endpointRegistry = endpointRegistry;
+        this.parseStage = new PipelineStage<>("parse", pipeline.getParseThreads(), pipeline.getQueueCapacity(), this::parse,
+                this::parseFailed);
+        this.persistStage = new PipelineStage<>("persist", pipeline.getPersistThreads(), pipeline.getQueueCapacity(), this::persist,
+                (trackedRecord, exception) -> failed(trackedRecord));
+        this.pauseThreshold = pipeline.getPauseThreshold();
+        this.resumeThreshold = pipeline.getResumeThreshold();
+        this.drainTimeoutMillis = consumer.getDrainTimeout().toMillis();
+        this.completedOffsets = new CompletedOffsets(drainTimeoutMillis);
+
+        for (PipelineStage<?> stage : List.of(parseStage, persistStage)) {
+            Gauge.builder(QUEUE_DEPTH_METRIC, stage, PipelineStage::depth)
+                    .description("Records waiting in the queues of the pipeline stage")
+                    .tag("stage", stage.getName())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("library.events.consumer.pipeline.paused", paused, value -> value.get() ? 1 : 0)
+                .description("1 while the partitions are paused because the pipeline is full")
+                .register(meterRegistry);
+
+        parseStage.start();
+        persistStage.start();
+    }
+
+    private static void requireRoomForAPoll(LibraryEventsProperties.Pipeline pipeline, KafkaProperties kafkaProperties) {
+        Integer configuredMaxPollRecords = kafkaProperties.getConsumer().getMaxPollRecords();
+        int maxPollRecords = configuredMaxPollRecords != null ? configuredMaxPollRecords : DEFAULT_MAX_POLL_RECORDS;
+        long roomAbovePauseThreshold = Math.round(pipeline.getQueueCapacity() * (1 - pipeline.getPauseThreshold()));
+        if (roomAbovePauseThreshold < maxPollRecords) {
+            throw new IllegalStateException(String.format("The pipeline queues only take %d records above the pause "
+                    + "threshold, less than max.poll.records (%d): raise library-events.consumer.pipeline.queue-capacity "
+                    + "or lower the pause-threshold", roomAbovePauseThreshold, maxPollRecords));
+        }
+    }
+
+    /**
+     * Called on the consumer thread with the records of a poll
+     */
+    public void submit(List<ConsumerRecord<Long, byte[]>> consumerRecords, Consumer<?, ?> consumer) throws InterruptedException {
+        for (ConsumerRecord<Long, byte[]> consumerRecord : consumerRecords) {
+            PartitionOffsets offsets = completedOffsets.track(consumerRecord);
+            parseStage.submit(consumerRecord.key(), new TrackedRecord<>(consumerRecord, offsets));
+        }
+        if (parseStage.fill() >= pauseThreshold || persistStage.fill() >= pauseThreshold) {
+            pause();
+        }
+        commit(consumer);
+    }
+
+    /**
+     * Commits the offsets of the records which went through the pipeline. Called on the consumer thread.
+     */
+    public void commit(Consumer<?, ?> consumer) {
+        //the stages may have drained before the pause got applied, the idle events go on while paused
+        resumeIfDrained();
+        completedOffsets.commit(consumer);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        completedOffsets.commitRevoked(consumer, partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        completedOffsets.lost(partitions);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        parseStage.stop(drainTimeoutMillis);
+        persistStage.stop(drainTimeoutMillis);
+    }
+
+    private void parse(TrackedRecord<byte[]> trackedRecord) {
+        ConsumerRecord<Long, byte[]> consumerRecord = trackedRecord.getConsumerRecord();
+        LibraryEvent libraryEvent = null;
+        try {
+            if (consumerRecord.value() != null) {
+                libraryEvent = consumerMetrics.time(ConsumerMetrics.DESERIALIZE_STAGE,
+                        () -> LibraryEventCodecs.forHeaders(consumerRecord.headers()).decode(consumerRecord.value()));
+            }
+        } catch (RuntimeException e) {
+            DecodeFailure.attach(consumerRecord.headers(), consumerRecord.value(), e);
+        }
+
+        //a record which can't be decoded goes on with a null value, the persist stage quarantines it in order
+        try {
+            persistStage.submit(consumerRecord.key(), new TrackedRecord<>(parsed(consumerRecord, libraryEvent), trackedRecord.getOffsets()));
+        } catch (InterruptedException e) {
+            //shutting down, the record isn't completed and will be consumed again
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The record didn't get to the persist stage: it's quarantined with its raw value, like one which can't be
+     * decoded (a tombstone is skipped), and completed. If that fails too the partition is consumed again from it.
+     */
+    private void parseFailed(TrackedRecord<byte[]> trackedRecord, RuntimeException exception) {
+        ConsumerRecord<Long, byte[]> consumerRecord = trackedRecord.getConsumerRecord();
+        try {
+            if (consumerRecord.value() != null && DecodeFailure.of(consumerRecord.headers()) == null) {
+                DecodeFailure.attach(consumerRecord.headers(), consumerRecord.value(), exception);
+            }
+            libraryEventsService.processLibraryEventOrRecover(parsed(consumerRecord, null));
+        } catch (RuntimeException e) {
+            failed(trackedRecord);
+            return;
+        }
+        completed(trackedRecord);
+    }
+
+    private static ConsumerRecord<Long, LibraryEvent> parsed(ConsumerRecord<Long, byte[]> consumerRecord, LibraryEvent libraryEvent) {
+        return new ConsumerRecord<>(consumerRecord.topic(), consumerRecord.partition(),
+                consumerRecord.offset(), consumerRecord.timestamp(), consumerRecord.timestampType(), null,
+                consumerRecord.serializedKeySize(), consumerRecord.serializedValueSize(), consumerRecord.key(), libraryEvent,
+                consumerRecord.headers());
+    }
+
+    /**
+     * processLibraryEventOrRecover only throws if the record could neither be stored nor recovered, the persist stage's
+     * failure handler leaves it uncompleted then
+     */
+    private void persist(TrackedRecord<LibraryEvent> trackedRecord) {
+        libraryEventsService.processLibraryEventOrRecover(trackedRecord.getConsumerRecord());
+        completed(trackedRecord);
+    }
+
+    private void completed(TrackedRecord<?> trackedRecord) {
+        trackedRecord.getOffsets().completed(trackedRecord.getConsumerRecord().offset());
+        resumeIfDrained();
+    }
+
+    /**
+     * Nothing is committed past the record, the consumer thread rewinds its partition to it ({@link CompletedOffsets})
+     */
+    private void failed(TrackedRecord<?> trackedRecord) {
+        trackedRecord.getOffsets().failed();
+        resumeIfDrained();
+    }
+
+    /**
+     * The container applies it on the consumer threads with their next poll
+     */
+    private void pause() {
+        if (paused.compareAndSet(false, true)) {
+            log.info("Pausing {}, parse queue: {} persist queue: {}", LISTENER_ID, parseStage.depth(), persistStage.depth());
+            container().pause();
+        }
+    }
+
+    private void resumeIfDrained() {
+        if (paused.get() && parseStage.fill() < resumeThreshold && persistStage.fill() < resumeThreshold
+                && paused.compareAndSet(true, false)) {
+            log.info("Resuming {}, parse queue: {} persist queue: {}", LISTENER_ID, parseStage.depth(), persistStage.depth());
+            container().resume();
+        }
+    }
+
+    private MessageListenerContainer container() {
+        return endpointRegistry.getListenerContainer(LISTENER_ID);
+    }
+}
@@ -0,0 +1,114 @@
+package com.techstack.kafka.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * One stage of the {@link LibraryEventsPipeline}: a number of threads, each taking the items of its own bounded queue.
+ *
+ * An item is queued by its key, so the items of a key are handled one after the other, in the order they were
+ * submitted, while the other keys go ahead on the other threads.
+ *
+ * An item whose handler throws goes to the failure handler, which has to finish it (recover it and complete its
+ * offset, or have its partition consumed again), otherwise the commits of its partition would stop at it.
+ */
+@Slf4j
+public class PipelineStage<T> {
+
+    private final String name;
+
+    private final List<BlockingQueue<T>> queues;
+
+    private final List<Thread> threads;
+
+    private final int queueCapacity;
+
+    private final BiConsumer<T, RuntimeException> failureHandler;
+
+    public PipelineStage(String name, int threadCount, int queueCapacity, Consumer<T> handler,
+                         BiConsumer<T, RuntimeException> failureHandler) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.failureHandler = failureHandler;
+        this.queues = new ArrayList<>(threadCount);
+        this.threads = new ArrayList<>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            BlockingQueue<T> queue = new ArrayBlockingQueue<>(queueCapacity);
+            Thread thread = new Thread(() -> run(queue, handler), "library-events-" + name + "-" + i);
+            queues.add(queue);
+            threads.add(thread);
+        }
+    }
+
+    public void start() {
+        threads.forEach(Thread::start);
+    }
+
+    /**
+     * Waits for room in the key's queue. The pipeline pauses the partitions before the queues are full,
+     * so the poll thread doesn't get to wait here as long as the thresholds leave room for a poll.
+     */
+    public void submit(Object key, T item) throws InterruptedException {
+        queues.get(Math.floorMod(Objects.hashCode(key), queues.size())).put(item);
+    }
+
+    /**
+     * @return the items waiting in all the queues of the stage
+     */
+    public int depth() {
+        return queues.stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    /**
+     * @return how full the fullest queue of the stage is, between 0 and 1
+     */
+    public double fill() {
+        return queues.stream().mapToInt(BlockingQueue::size).max().orElse(0) / (double) queueCapacity;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The items still queued are dropped, their offsets aren't committed so they're consumed again
+     */
+    public void stop(long timeoutMillis) throws InterruptedException {
+        threads.forEach(Thread::interrupt);
+        for (Thread thread : threads) {
+            thread.join(timeoutMillis);
+        }
+    }
+
+    private void run(BlockingQueue<T> queue, Consumer<T> handler) {
+        while (!Thread.currentThread().isInterrupted()) {
+            T item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                handler.accept(item);
+            } catch (RuntimeException e) {
+                log.error("Stage {} failed to handle {} : {}", name, item, e.getMessage(), e);
+                failed(item, e);
+            }
+        }
+    }
+
+    private void failed(T item, RuntimeException exception) {
+        try {
+            failureHandler.accept(item, exception);
+        } catch (RuntimeException e) {
+            log.error("Stage {} failed to finish the failed {} : {}", name, item, e.getMessage(), e);
+        }
+    }
+}
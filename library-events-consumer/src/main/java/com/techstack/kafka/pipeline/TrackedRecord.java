@@ -0,0 +1,18 @@
+package com.techstack.kafka.pipeline;
+
+import com.techstack.kafka.parallel.PartitionOffsets;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * A record on its way through the {@link LibraryEventsPipeline}, with the offsets of its partition to complete it on
+ */
+@Getter
+@AllArgsConstructor
+public class TrackedRecord<V> {
+
+    private final ConsumerRecord<Long, V> consumerRecord;
+
+    private final PartitionOffsets offsets;
+}
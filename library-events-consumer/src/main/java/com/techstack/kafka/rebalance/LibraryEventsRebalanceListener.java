@@ -0,0 +1,110 @@
+package com.techstack.kafka.rebalance;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Rebalance listener of the "library-events" container, whatever the mode:
+ * <ul>
+ *     <li>revoked: the mode's own listener flushes the work in flight and commits it first (key-ordered, pipeline),
+ *     the record and batch listeners have nothing buffered and the container commits their offsets; then the
+ *     versions of the revoked partitions are dropped</li>
+ *     <li>assigned: the {@link PartitionWarmUp} before the mode's listener (e.g. the seek to the database offsets),
+ *     processing resumes once both are done</li>
+ * </ul>
+ * With the cooperative-sticky assignor alone (see application.yml) only the partitions which move are revoked, the
+ * others go on meanwhile.
+ *
+ * Metrics: library.events.consumer.rebalance.pause (revoked -> assigned and warmed up, per consumer),
+ * library.events.consumer.rebalance.warmup and library.events.consumer.rebalance.partitions{event}.
+ */
+@Slf4j
+public class LibraryEventsRebalanceListener implements ConsumerAwareRebalanceListener {
+
+    private static final String METRIC_PREFIX = "library.events.consumer.rebalance";
+
+    /**
+     * The mode's own listener, null if there is none
+     */
+    private final ConsumerAwareRebalanceListener delegate;
+
+    private final PartitionWarmUp partitionWarmUp;
+
+    private final PartitionVersions partitionVersions;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * When each consumer's partitions were revoked, the callbacks of a consumer run on its own thread
+     */
+    private final Map<Consumer<?, ?>, Long> revokedAtNanos = new ConcurrentHashMap<>();
+
+    public LibraryEventsRebalanceListener(ConsumerAwareRebalanceListener delegate, PartitionWarmUp partitionWarmUp,
+                                          PartitionVersions partitionVersions, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.partitionWarmUp = partitionWarmUp;
+        this.partitionVersions = partitionVersions;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        revokedAtNanos.put(consumer, System.nanoTime());
+        count("revoked", partitions);
+        if (delegate != null) {
+            delegate.onPartitionsRevokedBeforeCommit(consumer, partitions);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (delegate != null) {
+            delegate.onPartitionsRevokedAfterCommit(consumer, partitions);
+        }
+        partitionVersions.evict(partitionNumbers(partitions));
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        count("lost", partitions);
+        if (delegate != null) {
+            delegate.onPartitionsLost(consumer, partitions);
+        }
+        partitionVersions.evict(partitionNumbers(partitions));
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        count("assigned", partitions);
+        long warmUpStartNanos = System.nanoTime();
+        partitionWarmUp.warmUp(consumer, partitions);
+        meterRegistry.timer(METRIC_PREFIX + ".warmup").record(System.nanoTime() - warmUpStartNanos, TimeUnit.NANOSECONDS);
+        if (delegate != null) {
+            delegate.onPartitionsAssigned(consumer, partitions);
+        }
+
+        Long revokedAt = revokedAtNanos.remove(consumer);
+        if (revokedAt != null) {
+            long pauseNanos = System.nanoTime() - revokedAt;
+            meterRegistry.timer(METRIC_PREFIX + ".pause").record(pauseNanos, TimeUnit.NANOSECONDS);
+            log.info("Partitions assigned: {}, processing resumes after a {} ms pause", partitions, TimeUnit.NANOSECONDS.toMillis(pauseNanos));
+        }
+    }
+
+    private void count(String event, Collection<TopicPartition> partitions) {
+        meterRegistry.counter(METRIC_PREFIX + ".partitions", "event", event).increment(partitions.size());
+    }
+
+    private static Collection<Integer> partitionNumbers(Collection<TopicPartition> partitions) {
+        return partitions.stream().map(TopicPartition::partition).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,104 @@
+package com.techstack.kafka.rebalance;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.retry.RetryTopics;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The last event sequence seen per libraryEventId, for the partitions of "library-events" this instance is assigned,
+ * so an UPDATE which is older than what's stored is skipped without a database round trip.
+ *
+ * It's never ahead of the database: the stored sequence only ever goes up (the stale check of every write), and a
+ * sequence gets in here once it's stored. A version which is behind - evicted, not loaded, or written by another
+ * instance - only means the database does the check as before. That's also why the partition of a record doesn't
+ * have to match the partition the id is cached under, e.g. for the hot keys the producer spreads over partitions.
+ *
+ * Loaded by the {@link PartitionWarmUp} on assignment and evicted on revocation, at most
+ * "library-events.consumer.rebalance.cached-versions-per-partition" ids per partition.
+ */
+@Component
+public class PartitionVersions {
+
+    private final Map<Integer, Map<Long, Long>> versions = new ConcurrentHashMap<>();
+
+    private final int maxEntriesPerPartition;
+
+    public PartitionVersions(LibraryEventsProperties libraryEventsProperties) {
+        this.maxEntriesPerPartition = libraryEventsProperties.getConsumer().getRebalance().getCachedVersionsPerPartition();
+    }
+
+    public int getMaxEntriesPerPartition() {
+        return maxEntriesPerPartition;
+    }
+
+    /**
+     * @return true if the record is known to be stale, false if the database has to tell
+     */
+    public boolean isStale(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        LibraryEvent libraryEvent = consumerRecord.value();
+        if (!RetryTopics.MAIN_TOPIC.equals(consumerRecord.topic()) || libraryEvent.getEventSequence() == null) {
+            return false;
+        }
+        Map<Long, Long> partitionVersions = versions.get(consumerRecord.partition());
+        Long seenSequence = partitionVersions == null ? null : partitionVersions.get(libraryEvent.getLibraryEventId());
+        return seenSequence != null && libraryEvent.getEventSequence() <= seenSequence;
+    }
+
+    /**
+     * After the LibraryEvent of the record is stored. Inside a transaction (offsets in the database) only once it's
+     * committed, a version which is rolled back must not be cached
+     */
+    public void stored(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        if (!RetryTopics.MAIN_TOPIC.equals(consumerRecord.topic())) {
+            return;
+        }
+        int partition = consumerRecord.partition();
+        Long libraryEventId = consumerRecord.value().getLibraryEventId();
+        Long eventSequence = consumerRecord.value().getEventSequence();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    put(partition, libraryEventId, eventSequence);
+                }
+            });
+        } else {
+            put(partition, libraryEventId, eventSequence);
+        }
+    }
+
+    void put(int partition, Long libraryEventId, Long eventSequence) {
+        if (libraryEventId == null || eventSequence == null) {
+            return;
+        }
+        Map<Long, Long> partitionVersions = versions.get(partition);
+        if (partitionVersions == null) {
+            //not assigned (any more), or not warmed up yet
+            return;
+        }
+        if (partitionVersions.size() < maxEntriesPerPartition || partitionVersions.containsKey(libraryEventId)) {
+            partitionVersions.merge(libraryEventId, eventSequence, Math::max);
+        }
+    }
+
+    public void assigned(int partition) {
+        versions.putIfAbsent(partition, new ConcurrentHashMap<>());
+    }
+
+    public void evict(Collection<Integer> partitions) {
+        partitions.forEach(versions::remove);
+    }
+
+    public int size(int partition) {
+        Map<Long, Long> partitionVersions = versions.get(partition);
+        return partitionVersions == null ? 0 : partitionVersions.size();
+    }
+}
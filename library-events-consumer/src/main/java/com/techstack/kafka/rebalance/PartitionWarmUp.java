@@ -0,0 +1,128 @@
+package com.techstack.kafka.rebalance;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.index.LibraryEventIdIndex;
+import com.techstack.kafka.retry.RetryTopics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Gets the state for newly assigned partitions in place, called on the consumer thread in onPartitionsAssigned:
+ * <ul>
+ *     <li>known ids: waits (up to warm-up-timeout) for the {@link LibraryEventIdIndex} to finish loading, a freshly
+ *     started instance would otherwise look up every UPDATE in the database until it's done</li>
+ *     <li>last-seen versions: loads the most recent event sequences of the ids which hash to the assigned partitions
+ *     into the {@link PartitionVersions}, on a thread of its own</li>
+ * </ul>
+ * The versions only save database round trips, the stale check doesn't need them, so processing doesn't wait for that
+ * query. The partition of an id is its key hash, which the database doesn't know: the query reads the most recent
+ * versions of all the ids and keeps those of the assigned partitions. The assignments of the container's consumers
+ * come in together, the ones which arrive while a load is queued share it.
+ */
+@Slf4j
+@Component
+public class PartitionWarmUp implements DisposableBean {
+
+    private static final String RECENT_VERSIONS_SELECT = "SELECT library_event_id, event_sequence FROM library_event"
+            + " WHERE event_sequence IS NOT NULL ORDER BY event_sequence DESC LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final LibraryEventIdIndex libraryEventIdIndex;
+
+    private final PartitionVersions partitionVersions;
+
+    private final Duration warmUpTimeout;
+
+    private final LongSerializer keySerializer = new LongSerializer();
+
+    /**
+     * Assigned partitions whose versions aren't loaded yet
+     */
+    private final Set<Integer> pendingPartitions = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean loadQueued = new AtomicBoolean();
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "library-events-warm-up");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PartitionWarmUp(JdbcTemplate jdbcTemplate, LibraryEventIdIndex libraryEventIdIndex,
+                           PartitionVersions partitionVersions, LibraryEventsProperties libraryEventsProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.libraryEventIdIndex = libraryEventIdIndex;
+        this.partitionVersions = partitionVersions;
+        this.warmUpTimeout = libraryEventsProperties.getConsumer().getRebalance().getWarmUpTimeout();
+    }
+
+    public void warmUp(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Set<Integer> assigned = partitions.stream()
+                .filter(partition -> RetryTopics.MAIN_TOPIC.equals(partition.topic()))
+                .map(TopicPartition::partition)
+                .collect(Collectors.toSet());
+        if (assigned.isEmpty()) {
+            return;
+        }
+
+        if (!libraryEventIdIndex.awaitLoaded(warmUpTimeout)) {
+            log.warn("The libraryEventId index isn't loaded after {}, partitions {} start with the database lookups", warmUpTimeout, assigned);
+        }
+
+        //the DefaultPartitioner's choice for a key, which is where the producer sends all but the hot keys
+        int partitionCount = consumer.partitionsFor(RetryTopics.MAIN_TOPIC).size();
+        assigned.forEach(partitionVersions::assigned);
+        pendingPartitions.addAll(assigned);
+        if (loadQueued.compareAndSet(false, true)) {
+            loader.execute(() -> loadVersions(partitionCount));
+        }
+    }
+
+    private void loadVersions(int partitionCount) {
+        loadQueued.set(false);
+        Set<Integer> loading = new HashSet<>();
+        for (Integer partition : pendingPartitions) {
+            pendingPartitions.remove(partition);
+            loading.add(partition);
+        }
+        if (loading.isEmpty()) {
+            return;
+        }
+        long startMillis = System.currentTimeMillis();
+        try {
+            jdbcTemplate.query(RECENT_VERSIONS_SELECT, resultSet -> {
+                long libraryEventId = resultSet.getLong(1);
+                int partition = Utils.toPositive(Utils.murmur2(keySerializer.serialize(RetryTopics.MAIN_TOPIC, libraryEventId))) % partitionCount;
+                if (loading.contains(partition)) {
+                    //ignored if the partition was revoked meanwhile
+                    partitionVersions.put(partition, libraryEventId, resultSet.getLong(2));
+                }
+            }, (long) partitionVersions.getMaxEntriesPerPartition() * partitionCount);
+            log.info("Loaded the versions of partitions {} in {} ms", loading, System.currentTimeMillis() - startMillis);
+        } catch (RuntimeException e) {
+            log.warn("Loading the versions of partitions {} failed, their stale checks go to the database : {}", loading, e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        loader.shutdownNow();
+    }
+}
@@ -0,0 +1,63 @@
+package com.techstack.kafka.rebalance;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.core.ConsumerFactory;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Gives every consumer of the listener container a group.instance.id of its own: the instance id
+ * ("library-events.consumer.rebalance.group-instance-id", e.g. the pod name) plus the container's client id suffix
+ * (-0, -1, ...). Static members which come back within session.timeout.ms get their partitions back without a
+ * rebalance, so a rolling restart doesn't move the partitions of the other instances around.
+ *
+ * Spring Kafka 2.5 passes a group.instance.id on to all the consumers of a container as it is, which would
+ * fence them against each other.
+ */
+public class StaticMembershipConsumerFactory<K, V> implements ConsumerFactory<K, V> {
+
+    private final ConsumerFactory<K, V> delegate;
+
+    private final String groupInstanceId;
+
+    public StaticMembershipConsumerFactory(ConsumerFactory<K, V> delegate, String groupInstanceId) {
+        this.delegate = delegate;
+        this.groupInstanceId = groupInstanceId;
+    }
+
+    @Override
+    public Consumer<K, V> createConsumer(String groupId, String clientIdPrefix, String clientIdSuffix) {
+        return createConsumer(groupId, clientIdPrefix, clientIdSuffix, new Properties());
+    }
+
+    @Override
+    public Consumer<K, V> createConsumer(String groupId, String clientIdPrefix, String clientIdSuffix, Properties properties) {
+        Properties staticMemberProperties = new Properties();
+        staticMemberProperties.putAll(properties);
+        staticMemberProperties.put(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, groupInstanceId + (clientIdSuffix == null ? "" : clientIdSuffix));
+        return delegate.createConsumer(groupId, clientIdPrefix, clientIdSuffix, staticMemberProperties);
+    }
+
+    @Override
+    public boolean isAutoCommit() {
+        return delegate.isAutoCommit();
+    }
+
+    @Override
+    public Map<String, Object> getConfigurationProperties() {
+        return delegate.getConfigurationProperties();
+    }
+
+    @Override
+    public Deserializer<K> getKeyDeserializer() {
+        return delegate.getKeyDeserializer();
+    }
+
+    @Override
+    public Deserializer<V> getValueDeserializer() {
+        return delegate.getValueDeserializer();
+    }
+}
@@ -1,7 +1,42 @@
 package com.techstack.kafka.repository;
 
 import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
-public interface LibraryEventsRepository extends CrudRepository<LibraryEvent, Integer> {
+import java.util.List;
+import java.util.Optional;
+
+public interface LibraryEventsRepository extends CrudRepository<LibraryEvent, Long> {
+
+    /**
+     * The catalog lookups for when the {@link com.techstack.kafka.catalog.CatalogView} can't answer
+     */
+    Optional<LibraryEvent> findByBook_BookId(Integer bookId);
+
+    List<LibraryEvent> findByBook_BookAuthorStartingWithIgnoreCaseOrderByBook_BookAuthor(String prefix, Pageable pageable);
+
+    /**
+     * The event sequence check of LibraryEventsService.isStale and the write in one statement, so a concurrent
+     * update of the same LibraryEvent can't get in between
+     *
+     * @return 0 if the stored LibraryEvent is newer, or there is none
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE LibraryEvent e SET e.libraryEventType = :libraryEventType, e.eventSequence = :eventSequence"
+            + " WHERE e.libraryEventId = :libraryEventId AND (e.eventSequence IS NULL OR e.eventSequence < :eventSequence)")
+    int updateIfNewer(@Param("libraryEventId") Long libraryEventId, @Param("libraryEventType") LibraryEventType libraryEventType,
+                      @Param("eventSequence") Long eventSequence);
+
+    /**
+     * An update without an event sequence always wins, as in {@link #updateIfNewer}
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE LibraryEvent e SET e.libraryEventType = :libraryEventType, e.eventSequence = NULL"
+            + " WHERE e.libraryEventId = :libraryEventId")
+    int updateUnsequenced(@Param("libraryEventId") Long libraryEventId, @Param("libraryEventType") LibraryEventType libraryEventType);
 }
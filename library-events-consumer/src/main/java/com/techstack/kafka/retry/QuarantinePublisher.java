@@ -0,0 +1,99 @@
+package com.techstack.kafka.retry;
+
+import com.techstack.kafka.codec.DecodeFailure;
+import com.techstack.kafka.codec.LibraryEventCodec;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.metrics.ConsumerMetrics;
+import com.techstack.kafka.service.LibraryEventsService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Publishes the records which can't be decoded ({@link DecodeFailure}) to the quarantine topic
+ * ("library-events.retry.quarantine-topic"), as the bytes they were consumed as. Decoding again won't help,
+ * so they skip the retry topics and the dead letter topic: one send, no exception on the way.
+ *
+ * The key and the content-format and event-sequence headers go along, so a fixed record can be published again as
+ * it is, plus where it came from and why it can't be decoded.
+ */
+@Slf4j
+@Component
+public class QuarantinePublisher {
+
+    public static final String SOURCE_TOPIC_HEADER = "quarantine-source-topic";
+    public static final String SOURCE_PARTITION_HEADER = "quarantine-source-partition";
+    public static final String SOURCE_OFFSET_HEADER = "quarantine-source-offset";
+
+    private static final String QUARANTINED_STAGE = "quarantined";
+
+    private final KafkaTemplate<Long, byte[]> kafkaTemplate;
+
+    private final String quarantineTopic;
+
+    private final ConsumerMetrics consumerMetrics;
+
+    private final LogSampling logSampling;
+
+    public QuarantinePublisher(ProducerFactory<Long, byte[]> producerFactory, LibraryEventsProperties libraryEventsProperties,
+                               ConsumerMetrics consumerMetrics, LogSampling logSampling) {
+        //the values are the consumed bytes, whatever value serializer the application's producer has
+        this.kafkaTemplate = new KafkaTemplate<>(producerFactory,
+                Map.of(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class));
+        this.quarantineTopic = libraryEventsProperties.getRetry().getQuarantineTopic();
+        this.consumerMetrics = consumerMetrics;
+        this.logSampling = logSampling;
+    }
+
+    /**
+     * Waits for the send to be acknowledged, like {@link LibraryEventsService#handleRecovery}: if it fails, the
+     * exception makes the container consume the record again instead of losing it
+     */
+    public void publish(ConsumerRecord<Long, ?> consumerRecord, DecodeFailure decodeFailure) {
+        ProducerRecord<Long, byte[]> producerRecord = new ProducerRecord<>(quarantineTopic, null, null,
+                consumerRecord.key(), decodeFailure.getValue());
+        copyHeader(consumerRecord, producerRecord, LibraryEventCodec.FORMAT_HEADER);
+        copyHeader(consumerRecord, producerRecord, LibraryEventsService.EVENT_SEQUENCE_HEADER);
+        producerRecord.headers().add(SOURCE_TOPIC_HEADER, consumerRecord.topic().getBytes(StandardCharsets.UTF_8));
+        producerRecord.headers().add(SOURCE_PARTITION_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(consumerRecord.partition()).array());
+        producerRecord.headers().add(SOURCE_OFFSET_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(consumerRecord.offset()).array());
+        producerRecord.headers().add(RetryTopics.EXCEPTION_HEADER, decodeFailure.getError().getBytes(StandardCharsets.UTF_8));
+
+        try {
+            kafkaTemplate.send(producerRecord).get();
+        } catch (InterruptedException e) {
+            consumerMetrics.recovery("failed", quarantineTopic);
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted while quarantining the record with key " + consumerRecord.key(), e);
+        } catch (ExecutionException e) {
+            consumerMetrics.recovery("failed", quarantineTopic);
+            throw new KafkaException("Quarantining the record with key " + consumerRecord.key() + " failed", e.getCause());
+        }
+
+        consumerMetrics.recovery(QUARANTINED_STAGE, quarantineTopic);
+        if (logSampling.sample(QUARANTINED_STAGE)) {
+            log.info("stage={} key={} partition={} offset={} error={} suppressed={}", QUARANTINED_STAGE, consumerRecord.key(),
+                    consumerRecord.partition(), consumerRecord.offset(), decodeFailure.getError(), logSampling.suppressed(QUARANTINED_STAGE));
+        }
+    }
+
+    private static void copyHeader(ConsumerRecord<Long, ?> consumerRecord, ProducerRecord<Long, byte[]> producerRecord, String key) {
+        Header header = consumerRecord.headers().lastHeader(key);
+        if (header != null) {
+            producerRecord.headers().add(header);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.techstack.kafka.retry;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.classify.BinaryExceptionClassifier;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The retry tiers of the records which failed ("library-events.retry"): a topic per delay, e.g. 1s, 10s and 60s
+ * ("library-events-retry-1000", ...), and a dead letter topic after the last one.
+ *
+ * A failed record goes to the topic of its next tier with a due time, the retry listener of that topic waits for it
+ * before processing the record again. The main topic goes on meanwhile, nothing waits on its consumer thread.
+ * Exceptions which won't go away by retrying (e.g. IllegalArgumentException for an UPDATE of an unknown id)
+ * go straight to the dead letter topic, records which can't be decoded to the quarantine topic ({@link QuarantinePublisher}).
+ */
+@Component
+public class RetryTopics {
+
+    public static final String MAIN_TOPIC = "library-events";
+
+    /**
+     * Failed attempts so far, int
+     */
+    public static final String ATTEMPTS_HEADER = "retry-attempts";
+
+    /**
+     * Epoch millis before which the record isn't processed again, long
+     */
+    public static final String DUE_AT_HEADER = "retry-due-at";
+
+    /**
+     * Exception of the last attempt, "class: message"
+     */
+    public static final String EXCEPTION_HEADER = "retry-exception";
+
+    private final List<Duration> delays;
+
+    private final List<String> retryTopicNames;
+
+    private final String deadLetterTopic;
+
+    private final String quarantineTopic;
+
+    private final BinaryExceptionClassifier retryableClassifier;
+
+    public RetryTopics(LibraryEventsProperties libraryEventsProperties) {
+        this.delays = List.copyOf(libraryEventsProperties.getRetry().getDelays());
+        this.retryTopicNames = delays.stream()
+                .map(delay -> MAIN_TOPIC + "-retry-" + delay.toMillis())
+                .collect(Collectors.toUnmodifiableList());
+        this.deadLetterTopic = libraryEventsProperties.getRetry().getDeadLetterTopic();
+        this.quarantineTopic = libraryEventsProperties.getRetry().getQuarantineTopic();
+
+        //the exceptions which were retried by the RetryTemplate before, plus the other temporary database failures
+        this.retryableClassifier = new BinaryExceptionClassifier(Map.of(
+                IllegalArgumentException.class, false,
+                RecoverableDataAccessException.class, true,
+                TransientDataAccessException.class, true), false);
+        this.retryableClassifier.setTraverseCauses(true);
+    }
+
+    public List<String> getRetryTopicNames() {
+        return retryTopicNames;
+    }
+
+    public String getDeadLetterTopic() {
+        return deadLetterTopic;
+    }
+
+    public String getQuarantineTopic() {
+        return quarantineTopic;
+    }
+
+    public boolean isRetryable(Throwable exception) {
+        return retryableClassifier.classify(exception);
+    }
+
+    /**
+     * @param attempts failed attempts so far, including the one which just failed
+     * @return the topic for the next attempt, or the dead letter topic once the tiers are used up
+     */
+    public String nextTopic(int attempts, Throwable exception) {
+        return isRetryable(exception) && attempts <= retryTopicNames.size() ? retryTopicNames.get(attempts - 1) : deadLetterTopic;
+    }
+
+    /**
+     * @param attempts failed attempts so far, the record is bound for {@link #nextTopic(int, Throwable)}
+     */
+    public Duration delay(int attempts) {
+        return delays.get(attempts - 1);
+    }
+
+    public static int attempts(Headers headers) {
+        Header header = headers.lastHeader(ATTEMPTS_HEADER);
+        return header == null ? 0 : ByteBuffer.wrap(header.value()).getInt();
+    }
+
+    public static long dueAt(Headers headers) {
+        Header header = headers.lastHeader(DUE_AT_HEADER);
+        return header == null ? 0 : ByteBuffer.wrap(header.value()).getLong();
+    }
+}
@@ -0,0 +1,30 @@
+package com.techstack.kafka.retry;
+
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.service.LibraryEventsService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.SeekToCurrentErrorHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.util.backoff.FixedBackOff;
+
+/**
+ * Error handler of the record listeners (main topic in record mode, and the retry topics).
+ *
+ * It doesn't retry in place (no back off): a failed record is handed to
+ * {@link LibraryEventsService#handleRecovery(ConsumerRecord, Exception)} right away, which publishes it to its next
+ * retry tier or the dead letter topic, and the partition goes on with the next record. Only if that publishing fails,
+ * the container seeks back and the record is consumed again.
+ */
+@Slf4j
+@Component
+public class RetryTopicsErrorHandler extends SeekToCurrentErrorHandler {
+
+    @SuppressWarnings("unchecked")
+    public RetryTopicsErrorHandler(LibraryEventsService libraryEventsService) {
+        super((record, exception) -> {
+            log.info("Exception in consumerConfig is {} and the record is {}", exception.getMessage(), record);
+            libraryEventsService.handleRecovery((ConsumerRecord<Long, LibraryEvent>) record, exception);
+        }, new FixedBackOff(0L, 0L));
+    }
+}
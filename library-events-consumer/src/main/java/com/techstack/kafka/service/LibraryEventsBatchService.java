@@ -0,0 +1,250 @@
+package com.techstack.kafka.service;
+
+import com.techstack.kafka.autoscaling.ProcessingTime;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.index.LibraryEventIdIndex;
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.metrics.ConsumerMetrics;
+import com.techstack.kafka.persistence.LibraryEventPersister;
+import com.techstack.kafka.rebalance.PartitionVersions;
+import com.techstack.kafka.repository.LibraryEventsRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Persists the records of a poll together ("library-events.consumer.mode: batch").
+ *
+ * All the ids of the poll are looked up with one findAllById and the accepted LibraryEvents are stored with one
+ * saveAll of the {@link LibraryEventPersister}, in a single transaction (grouped into JDBC batches by
+ * hibernate.jdbc.batch_size, or multi-row MERGE statements with the jdbc engine). The records are
+ * validated in the order they were consumed, the same way as {@link LibraryEventsService} does it, against the
+ * stored state or against an earlier record of the same poll.
+ *
+ * An update of a stored LibraryEvent is written with saveIfNewer instead, one statement each: the lookup is only a
+ * shortcut, a newer version written since (by another consumer after a rebalance) still wins.
+ *
+ * An update of an unknown id goes to the retry topics or the dead letter topic once the transaction is committed, the
+ * same way as in record mode. Any other record which can't be stored is skipped on its own. If the transaction fails as a whole, the poll is processed
+ * again one record per transaction by {@link LibraryEventsService}, so a single bad record doesn't fail the others.
+ * Only the transaction falls back that way: once it's committed the records aren't processed again.
+ *
+ * A record whose recovery fails too (its retry or dead letter send) fails the poll, the batch error handler seeks back
+ * and the whole poll is consumed again.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LibraryEventsBatchService {
+
+    private static final String PERSISTED_STAGE = "persisted";
+    private static final String STALE_STAGE = "stale";
+
+    private final LibraryEventsService libraryEventsService;
+
+    private final LibraryEventsRepository libraryEventsRepository;
+
+    private final LibraryEventPersister libraryEventPersister;
+
+    private final LibraryEventIdIndex libraryEventIdIndex;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ProcessingTime processingTime;
+
+    private final ConsumerMetrics consumerMetrics;
+
+    private final LogSampling logSampling;
+
+    private final PartitionVersions partitionVersions;
+
+    public void processLibraryEvents(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        List<ConsumerRecord<Long, LibraryEvent>> acceptedRecords = new ArrayList<>(consumerRecords.size());
+        for (ConsumerRecord<Long, LibraryEvent> consumerRecord : consumerRecords) {
+            if (accept(consumerRecord)) {
+                acceptedRecords.add(consumerRecord);
+            }
+        }
+        if (acceptedRecords.isEmpty()) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        List<ConsumerRecord<Long, LibraryEvent>> persistedRecords = new ArrayList<>(acceptedRecords.size());
+        List<ConsumerRecord<Long, LibraryEvent>> unknownRecords = new ArrayList<>();
+        Collection<LibraryEvent> savedLibraryEvents;
+        try {
+            savedLibraryEvents = transactionTemplate.execute(status -> persist(acceptedRecords, persistedRecords, unknownRecords));
+        } catch (RuntimeException e) {
+            log.warn("Bulk persist of {} records failed, processing them one by one : {}", acceptedRecords.size(), e.getMessage());
+            acceptedRecords.forEach(this::processIsolated);
+            return;
+        }
+
+        //the records are committed, a failure from here on mustn't send them through the fallback again
+        afterCommit("processing time", () -> processingTime.record(acceptedRecords.size(), System.nanoTime() - startNanos));
+        //only once they're committed, the index mustn't know ids which were rolled back
+        afterCommit("libraryEventId index",
+                () -> savedLibraryEvents.forEach(libraryEvent -> libraryEventIdIndex.add(libraryEvent.getLibraryEventId())));
+        afterCommit("metrics", () -> persistedRecords.forEach(consumerMetrics::persisted));
+        afterCommit("partition versions", () -> persistedRecords.forEach(partitionVersions::stored));
+
+        //not after the rollback: the one by one fallback recovers them itself. A failed recovery fails the poll.
+        unknownRecords.forEach(consumerRecord ->
+                libraryEventsService.handleRecovery(consumerRecord, new IllegalArgumentException("Not a valid library Event")));
+    }
+
+    /**
+     * The state kept besides the database only saves lookups, a step which fails is logged and the others go on
+     */
+    private void afterCommit(String step, Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            log.warn("Updating the {} after the bulk persist failed, the records are stored : {}", step, e.getMessage());
+        }
+    }
+
+    /**
+     * Checks which don't need the stored state
+     */
+    private boolean accept(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        LibraryEvent libraryEvent = consumerRecord.value();
+        if (libraryEvent == null) {
+            //quarantined or skipped, the same way as in record mode
+            libraryEventsService.processLibraryEventOrRecover(consumerRecord);
+            return false;
+        }
+        if (libraryEvent.getLibraryEventId() == null) {
+            skip(consumerRecord, "Library Event Id is missing");
+            return false;
+        }
+        if (libraryEvent.getLibraryEventType() == null) {
+            skip(consumerRecord, "Invalid Library Event Type");
+            return false;
+        }
+
+        /**
+         * The simulated "Temporary Network Issue" of LibraryEventsService (libraryEventId 000), it takes the
+         * same recovery path as in record mode
+         */
+        if (libraryEvent.getLibraryEventId() == 000) {
+            processIsolated(consumerRecord);
+            return false;
+        }
+
+        libraryEvent.setEventSequence(LibraryEventsService.eventSequence(consumerRecord.headers()));
+        return true;
+    }
+
+    /**
+     * @param persistedRecords gets the records which are stored, including the ones superseded by a later record of the same id
+     * @param unknownRecords gets the updates of ids which aren't stored
+     */
+    private Collection<LibraryEvent> persist(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords,
+                                             List<ConsumerRecord<Long, LibraryEvent>> persistedRecords,
+                                             List<ConsumerRecord<Long, LibraryEvent>> unknownRecords) {
+        Set<Long> libraryEventIds = consumerRecords.stream()
+                .map(consumerRecord -> consumerRecord.value().getLibraryEventId())
+                .collect(Collectors.toSet());
+
+        Map<Long, LibraryEvent> persistedLibraryEvents = new HashMap<>();
+        consumerMetrics.time(ConsumerMetrics.VALIDATE_STAGE, () -> libraryEventsRepository.findAllById(libraryEventIds))
+                .forEach(libraryEvent -> persistedLibraryEvents.put(libraryEvent.getLibraryEventId(), libraryEvent));
+
+        //the latest accepted LibraryEvent per id, in the order they were consumed
+        Map<Long, LibraryEvent> libraryEventsToSave = new LinkedHashMap<>();
+        Map<Long, List<ConsumerRecord<Long, LibraryEvent>>> acceptedRecords = new HashMap<>();
+        //stored ids which a NEW record of this poll overwrites anyway, like in record mode
+        Set<Long> overwrittenIds = new HashSet<>();
+        for (ConsumerRecord<Long, LibraryEvent> consumerRecord : consumerRecords) {
+            LibraryEvent libraryEvent = consumerRecord.value();
+            Long libraryEventId = libraryEvent.getLibraryEventId();
+            LibraryEvent currentLibraryEvent = libraryEventsToSave.containsKey(libraryEventId)
+                    ? libraryEventsToSave.get(libraryEventId) : persistedLibraryEvents.get(libraryEventId);
+
+            switch (libraryEvent.getLibraryEventType()) {
+                case NEW:
+                    overwrittenIds.add(libraryEventId);
+                    break;
+                case UPDATE:
+                    if (currentLibraryEvent == null) {
+                        unknownRecords.add(consumerRecord);
+                        continue;
+                    }
+                    if (LibraryEventsService.isStale(libraryEvent, currentLibraryEvent)) {
+                        if (logSampling.sample(STALE_STAGE)) {
+                            log.info("stage={} libraryEventId={} sequence={} storedSequence={} suppressed={}", STALE_STAGE,
+                                    libraryEventId, libraryEvent.getEventSequence(),
+                                    currentLibraryEvent.getEventSequence(), logSampling.suppressed(STALE_STAGE));
+                        }
+                        continue;
+                    }
+                    break;
+                default:
+                    skip(consumerRecord, "Invalid Library Event Type");
+                    continue;
+            }
+
+            libraryEvent.setNewEntity(!persistedLibraryEvents.containsKey(libraryEventId));
+            libraryEvent.getBook().setLibraryEvent(libraryEvent);
+            libraryEventsToSave.put(libraryEventId, libraryEvent);
+            acceptedRecords.computeIfAbsent(libraryEventId, id -> new ArrayList<>()).add(consumerRecord);
+        }
+
+        List<LibraryEvent> libraryEventsToOverwrite = new ArrayList<>(libraryEventsToSave.size());
+        List<LibraryEvent> libraryEventsToUpdate = new ArrayList<>();
+        for (LibraryEvent libraryEvent : libraryEventsToSave.values()) {
+            boolean stored = persistedLibraryEvents.containsKey(libraryEvent.getLibraryEventId());
+            if (stored && !overwrittenIds.contains(libraryEvent.getLibraryEventId())) {
+                libraryEventsToUpdate.add(libraryEvent);
+            } else {
+                libraryEventsToOverwrite.add(libraryEvent);
+            }
+        }
+
+        consumerMetrics.time(ConsumerMetrics.SAVE_STAGE, () -> libraryEventPersister.saveAll(libraryEventsToOverwrite));
+        List<LibraryEvent> savedLibraryEvents = new ArrayList<>(libraryEventsToOverwrite);
+        for (LibraryEvent libraryEvent : libraryEventsToUpdate) {
+            //the lookup found it older, the write checks the event sequence once more in the same statement
+            if (consumerMetrics.time(ConsumerMetrics.SAVE_STAGE, () -> libraryEventPersister.saveIfNewer(libraryEvent))) {
+                savedLibraryEvents.add(libraryEvent);
+            } else if (logSampling.sample(STALE_STAGE)) {
+                log.info("stage={} libraryEventId={} sequence={} storedSequence=newer suppressed={}", STALE_STAGE,
+                        libraryEvent.getLibraryEventId(), libraryEvent.getEventSequence(), logSampling.suppressed(STALE_STAGE));
+            }
+        }
+        savedLibraryEvents.forEach(libraryEvent -> persistedRecords.addAll(acceptedRecords.get(libraryEvent.getLibraryEventId())));
+
+        if (logSampling.sample(PERSISTED_STAGE)) {
+            log.info("stage={} records={} libraryEvents={} suppressed={}", PERSISTED_STAGE, consumerRecords.size(),
+                    savedLibraryEvents.size(), logSampling.suppressed(PERSISTED_STAGE));
+        }
+        return savedLibraryEvents;
+    }
+
+    /**
+     * One record in its own transaction
+     */
+    private void processIsolated(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        //the bulk transaction was rolled back, whatever it found out about the stored state is void
+        consumerRecord.value().setNewEntity(false);
+        libraryEventsService.processLibraryEventOrRecover(consumerRecord);
+    }
+
+    private void skip(ConsumerRecord<Long, LibraryEvent> consumerRecord, String reason) {
+        libraryEventsService.skip(consumerRecord, reason);
+    }
+}
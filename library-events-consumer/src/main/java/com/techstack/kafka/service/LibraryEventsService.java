@@ -2,34 +2,97 @@ package com.techstack.kafka.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techstack.kafka.codec.DecodeFailure;
+import com.techstack.kafka.autoscaling.ProcessingTime;
 import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.index.LibraryEventIdIndex;
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.metrics.ConsumerMetrics;
+import com.techstack.kafka.persistence.LibraryEventPersister;
+import com.techstack.kafka.rebalance.PartitionVersions;
 import com.techstack.kafka.repository.LibraryEventsRepository;
+import com.techstack.kafka.retry.QuarantinePublisher;
+import com.techstack.kafka.retry.RetryTopics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.springframework.core.NestedExceptionUtils;
 import org.springframework.dao.RecoverableDataAccessException;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
-import org.springframework.util.concurrent.ListenableFuture;
-import org.springframework.util.concurrent.ListenableFutureCallback;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class LibraryEventsService {
 
+    /**
+     * Written by the producer, time ordered per LibraryEvent
+     */
+    public static final String EVENT_SEQUENCE_HEADER = "event-sequence";
+
+    private static final String PERSISTED_STAGE = "persisted";
+    private static final String STALE_STAGE = "stale";
+    private static final String RETRIED_STAGE = "retried";
+    private static final String DEAD_LETTERED_STAGE = "dead-lettered";
+    private static final String SKIPPED_STAGE = "skipped";
+
     private final ObjectMapper objectMapper;
 
-    private final KafkaTemplate<Integer,String> kafkaTemplate;
+    private final KafkaTemplate<Long,String> kafkaTemplate;
 
     private final LibraryEventsRepository libraryEventsRepository;
 
-    public void processLibraryEvent(ConsumerRecord<Integer, String> consumerRecord) throws JsonProcessingException {
-        LibraryEvent libraryEvent = objectMapper.readValue(consumerRecord.value(), LibraryEvent.class);
-        log.info("libraryEvent : {} ", libraryEvent);
+    private final LibraryEventPersister libraryEventPersister;
+
+    private final LibraryEventIdIndex libraryEventIdIndex;
+
+    private final RetryTopics retryTopics;
+
+    private final ProcessingTime processingTime;
+
+    private final ConsumerMetrics consumerMetrics;
+
+    private final LogSampling logSampling;
+
+    private final PartitionVersions partitionVersions;
+
+    private final QuarantinePublisher quarantinePublisher;
+
+    public void processLibraryEvent(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        if (consumerRecord.value() == null) {
+            handleUndecodable(consumerRecord);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            if (process(consumerRecord)) {
+                consumerMetrics.persisted(consumerRecord);
+                partitionVersions.stored(consumerRecord);
+            }
+        } finally {
+            processingTime.record(1, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * @return whether the LibraryEvent was stored
+     */
+    private boolean process(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        LibraryEvent libraryEvent = consumerRecord.value();
+        libraryEvent.setEventSequence(eventSequence(consumerRecord.headers()));
+        log.debug("libraryEvent : {} ", libraryEvent);
 
         /**
          * Inorder to simulate a retry logic, we have configured this IF condition.
@@ -41,66 +104,230 @@ public class LibraryEventsService {
 
         switch(libraryEvent.getLibraryEventType()){
             case NEW:
+                requireLibraryEventId(libraryEvent);
                 save(libraryEvent);
-                break;
+                return true;
             case UPDATE:
+                requireLibraryEventId(libraryEvent);
+                if (partitionVersions.isStale(consumerRecord)) {
+                    //a later version was stored already, no need to ask the database
+                    if (logSampling.sample(STALE_STAGE)) {
+                        log.info("stage={} libraryEventId={} sequence={} source=partition-versions suppressed={}", STALE_STAGE,
+                                libraryEvent.getLibraryEventId(), libraryEvent.getEventSequence(), logSampling.suppressed(STALE_STAGE));
+                    }
+                    return false;
+                }
+                if (libraryEventIdIndex.mightContain(libraryEvent.getLibraryEventId())
+                        && consumerMetrics.time(ConsumerMetrics.SAVE_STAGE, () -> libraryEventPersister.saveIfNewer(withBook(libraryEvent)))) {
+                    //known id: no lookup, the write checks the event sequence (and that it's really stored) itself
+                    logPersisted(libraryEvent);
+                    return true;
+                }
+                //not indexed, or nothing written: stale, or a false positive of the index for an id which isn't stored
                 //validate the libraryevent
-                validate(libraryEvent);
-                save(libraryEvent);
-                break;
+                LibraryEvent persistedLibraryEvent = validate(libraryEvent);
+                libraryEventIdIndex.stored(libraryEvent.getLibraryEventId());
+                if (isStale(libraryEvent, persistedLibraryEvent)) {
+                    if (logSampling.sample(STALE_STAGE)) {
+                        log.info("stage={} libraryEventId={} sequence={} storedSequence={} suppressed={}", STALE_STAGE,
+                                libraryEvent.getLibraryEventId(), libraryEvent.getEventSequence(),
+                                persistedLibraryEvent.getEventSequence(), logSampling.suppressed(STALE_STAGE));
+                    }
+                    return false;
+                }
+                //the lookup tells an unknown id apart, the write checks the sequence once more in the same statement
+                return saveIfNewer(libraryEvent);
             default:
                 log.info("Invalid Library Event Type");
+                return false;
         }
 
     }
 
-    private void validate(LibraryEvent libraryEvent) {
-        if(libraryEvent.getLibraryEventId() == null){
-            throw new IllegalArgumentException("Library Event Id is missing");
+    /**
+     * {@link #processLibraryEvent(ConsumerRecord)} for the listeners which handle failed records themselves
+     * (batch, key-ordered and pipeline mode), with the same recovery as the error handler in record mode:
+     * the record goes on to the retry topics or the dead letter topic, so one bad record doesn't hold up the others.
+     *
+     * It only throws if the recovery fails too: the record is neither stored nor on a retry or dead letter topic, the
+     * caller mustn't commit past it but has to consume it again.
+     */
+    public void processLibraryEventOrRecover(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        try {
+            processLibraryEvent(consumerRecord);
+        } catch (RuntimeException e) {
+            try {
+                handleRecovery(consumerRecord, e);
+            } catch (RuntimeException recoveryException) {
+                log.error("Recovery of the record with key {} failed, it's consumed again : {}", consumerRecord.key(), recoveryException.getMessage());
+                recoveryException.addSuppressed(e);
+                throw recoveryException;
+            }
+        }
+    }
+
+    /**
+     * A record without a value: one which couldn't be decoded ({@link DecodeFailure}) goes to the quarantine topic,
+     * anything else (a tombstone, a failure the ErrorHandlingDeserializer caught) is skipped
+     */
+    void handleUndecodable(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        DecodeFailure decodeFailure = DecodeFailure.of(consumerRecord.headers());
+        if (decodeFailure == null) {
+            skip(consumerRecord, "value could not be deserialized");
+            return;
         }
+        quarantinePublisher.publish(consumerRecord, decodeFailure);
+    }
+
+    void skip(ConsumerRecord<Long, LibraryEvent> consumerRecord, String reason) {
+        consumerMetrics.skipped(consumerRecord);
+        if (logSampling.sample(SKIPPED_STAGE)) {
+            log.info("stage={} key={} partition={} offset={} reason={} suppressed={}", SKIPPED_STAGE, consumerRecord.key(),
+                    consumerRecord.partition(), consumerRecord.offset(), reason, logSampling.suppressed(SKIPPED_STAGE));
+        }
+    }
+
+    private LibraryEvent validate(LibraryEvent libraryEvent) {
+        requireLibraryEventId(libraryEvent);
 
-        Optional<LibraryEvent> libraryEventOptional = libraryEventsRepository.findById(libraryEvent.getLibraryEventId());
+        Optional<LibraryEvent> libraryEventOptional = consumerMetrics.time(ConsumerMetrics.VALIDATE_STAGE,
+                () -> libraryEventsRepository.findById(libraryEvent.getLibraryEventId()));
         if(!libraryEventOptional.isPresent()){
             throw new IllegalArgumentException("Not a valid library Event");
         }
-        log.info("Validation is successful for the library Event : {} ", libraryEventOptional.get());
+        log.debug("Validation is successful for the library Event : {} ", libraryEventOptional.get());
+        return libraryEventOptional.get();
     }
 
-    private void save(LibraryEvent libraryEvent) {
-        libraryEvent.getBook().setLibraryEvent(libraryEvent);
-        libraryEventsRepository.save(libraryEvent);
-        log.info("Successfully Persisted the library Event {} ", libraryEvent);
+    /**
+     * Updates of a hot key can arrive out of order, as they are spread over several partitions.
+     * Every update carries the whole LibraryEvent, so applying only the ones newer than the stored state
+     * ends up with the same result as applying all of them in order.
+     */
+    public static boolean isStale(LibraryEvent libraryEvent, LibraryEvent persistedLibraryEvent) {
+        return libraryEvent.getEventSequence() != null && persistedLibraryEvent.getEventSequence() != null
+                && libraryEvent.getEventSequence() <= persistedLibraryEvent.getEventSequence();
     }
 
-    public void handleRecovery(ConsumerRecord<Integer, String> record){
+    /**
+     * @return null without a header, or with one which isn't a long
+     */
+    public static Long eventSequence(Headers headers) {
+        Header header = headers.lastHeader(EVENT_SEQUENCE_HEADER);
+        if (header == null || header.value() == null || header.value().length != Long.BYTES) {
+            return null;
+        }
+        return ByteBuffer.wrap(header.value()).getLong();
+    }
+
+    /**
+     * The producer assigns the libraryEventId before publishing, a record without one can't be stored
+     */
+    private void requireLibraryEventId(LibraryEvent libraryEvent) {
+        if(libraryEvent.getLibraryEventId() == null){
+            throw new IllegalArgumentException("Library Event Id is missing");
+        }
+    }
 
-        Integer key = record.key();
-        String message = record.value();
+    private LibraryEvent withBook(LibraryEvent libraryEvent) {
+        libraryEvent.getBook().setLibraryEvent(libraryEvent);
+        return libraryEvent;
+    }
 
-        ListenableFuture<SendResult<Integer,String>> listenableFuture = kafkaTemplate.sendDefault(key, message);
-        listenableFuture.addCallback(new ListenableFutureCallback<SendResult<Integer, String>>() {
-            @Override
-            public void onFailure(Throwable ex) {
-                handleFailure(key, message, ex);
-            }
+    private void save(LibraryEvent libraryEvent) {
+        consumerMetrics.time(ConsumerMetrics.SAVE_STAGE, () -> libraryEventPersister.save(withBook(libraryEvent)));
+        libraryEventIdIndex.stored(libraryEvent.getLibraryEventId());
+        logPersisted(libraryEvent);
+    }
 
-            @Override
-            public void onSuccess(SendResult<Integer, String> result) {
-                handleSuccess(key, message, result);
+    /**
+     * After the lookup found the LibraryEvent, nothing written means a newer one was stored meanwhile
+     */
+    private boolean saveIfNewer(LibraryEvent libraryEvent) {
+        if (!consumerMetrics.time(ConsumerMetrics.SAVE_STAGE, () -> libraryEventPersister.saveIfNewer(withBook(libraryEvent)))) {
+            if (logSampling.sample(STALE_STAGE)) {
+                log.info("stage={} libraryEventId={} sequence={} storedSequence=newer suppressed={}", STALE_STAGE,
+                        libraryEvent.getLibraryEventId(), libraryEvent.getEventSequence(), logSampling.suppressed(STALE_STAGE));
             }
-        });
+            return false;
+        }
+        logPersisted(libraryEvent);
+        return true;
+    }
+
+    private void logPersisted(LibraryEvent libraryEvent) {
+        if (logSampling.sample(PERSISTED_STAGE)) {
+            log.info("stage={} libraryEventId={} type={} sequence={} suppressed={}", PERSISTED_STAGE, libraryEvent.getLibraryEventId(),
+                    libraryEvent.getLibraryEventType(), libraryEvent.getEventSequence(), logSampling.suppressed(PERSISTED_STAGE));
+        }
+        log.debug("Successfully Persisted the library Event {} ", libraryEvent);
     }
 
-    private void handleFailure(Integer key, String value, Throwable ex) {
-        log.error("Error Sending the Message and the exception is {}", ex.getMessage());
+    /**
+     * Hands a failed record on to its next retry tier, or to the dead letter topic once the tiers are used up or the
+     * exception isn't worth a retry ({@link RetryTopics}). Nothing waits here, the retry listener of the tier
+     * waits for the due time.
+     *
+     * The record is published as JSON, whatever format it was consumed in. Records without the format header are
+     * read as JSON, so the re-published record doesn't need one. The event-sequence header goes along, so the retried
+     * update can't overwrite a newer one.
+     *
+     * It waits for the send to be acknowledged: the offset of the failed record is committed after this returns,
+     * if the send failed the exception makes the container consume the record again instead of losing it.
+     */
+    public void handleRecovery(ConsumerRecord<Long, LibraryEvent> record, Exception exception) {
+        if (record.value() == null) {
+            //nothing to retry for a record which couldn't be decoded
+            handleUndecodable(record);
+            return;
+        }
+
+        Long key = record.key();
+        int attempts = RetryTopics.attempts(record.headers()) + 1;
+        String topic = retryTopics.nextTopic(attempts, exception);
+        boolean deadLettered = topic.equals(retryTopics.getDeadLetterTopic());
+        Throwable cause = NestedExceptionUtils.getMostSpecificCause(exception);
+
+        ProducerRecord<Long, String> producerRecord = new ProducerRecord<>(topic, null, null, key, toJson(record.value()));
+        Header eventSequence = record.headers().lastHeader(EVENT_SEQUENCE_HEADER);
+        if (eventSequence != null) {
+            producerRecord.headers().add(eventSequence);
+        }
+        producerRecord.headers().add(RetryTopics.ATTEMPTS_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(attempts).array());
+        if (!deadLettered) {
+            long dueAt = System.currentTimeMillis() + retryTopics.delay(attempts).toMillis();
+            producerRecord.headers().add(RetryTopics.DUE_AT_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(dueAt).array());
+        }
+        producerRecord.headers().add(RetryTopics.EXCEPTION_HEADER,
+                (cause.getClass().getName() + ": " + cause.getMessage()).getBytes(StandardCharsets.UTF_8));
+
+        SendResult<Long, String> result;
         try {
-            throw ex;
-        } catch (Throwable throwable) {
-            log.error("Error in OnFailure: {}", throwable.getMessage());
+            result = kafkaTemplate.send(producerRecord).get();
+        } catch (InterruptedException e) {
+            consumerMetrics.recovery("failed", topic);
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted while publishing the record with key " + key + " to " + topic, e);
+        } catch (ExecutionException e) {
+            consumerMetrics.recovery("failed", topic);
+            log.error("Error Sending the Message and the exception is {}", e.getCause().getMessage());
+            throw new KafkaException("Publishing the record with key " + key + " to " + topic + " failed", e.getCause());
         }
+
+        String stage = deadLettered ? DEAD_LETTERED_STAGE : RETRIED_STAGE;
+        consumerMetrics.recovery(stage, topic);
+        if (logSampling.sample(stage)) {
+            log.info("stage={} key={} topic={} attempts={} exception={} suppressed={}", stage, key, topic, attempts,
+                    cause.getMessage(), logSampling.suppressed(stage));
+        }
+        log.debug("Message Sent SuccessFully for the key : {} to partition {}", key, result.getRecordMetadata().partition());
     }
 
-    private void handleSuccess(Integer key, String value, SendResult<Integer, String> result) {
-        log.info("Message Sent SuccessFully for the key : {} and the value is {} , partition is {}", key, value, result.getRecordMetadata().partition());
+    private String toJson(LibraryEvent libraryEvent) {
+        try {
+            return objectMapper.writeValueAsString(libraryEvent);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Library Event could not be written as JSON", e);
+        }
     }
 }
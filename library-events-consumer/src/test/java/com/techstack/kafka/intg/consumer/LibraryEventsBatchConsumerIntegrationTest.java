@@ -0,0 +1,121 @@
+package com.techstack.kafka.intg.consumer;
+
+import com.techstack.kafka.consumer.LibraryEventsBatchConsumer;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.repository.LibraryEventsRepository;
+import com.techstack.kafka.service.LibraryEventsService;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Same broker setup as {@link LibraryEventsConsumerIntegrationTest}, with the listener switched to batch mode
+ */
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events", "library-events-retry-1000", "library-events-retry-10000",
+        "library-events-retry-60000", "library-events-dlt", "library-events-quarantine"}, partitions = 3)
+@TestPropertySource(properties = {
+        "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.admin.properties.bootstrap.servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "library-events.consumer.mode=batch"
+})
+public class LibraryEventsBatchConsumerIntegrationTest {
+
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    KafkaTemplate<Long, String> kafkaTemplate;
+
+    @Autowired
+    KafkaListenerEndpointRegistry endpointRegistry;
+
+    @Autowired
+    LibraryEventsBatchConsumer libraryEventsBatchConsumer;
+
+    @Autowired
+    LibraryEventsRepository libraryEventsRepository;
+
+    @BeforeEach
+    void setUp() {
+        for (MessageListenerContainer messageListenerContainer : endpointRegistry.getListenerContainers()) {
+            ContainerTestUtils.waitForAssignment(messageListenerContainer, embeddedKafkaBroker.getPartitionsPerTopic());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        libraryEventsRepository.deleteAll();
+    }
+
+    @Test
+    void publishNewAndUpdateLibraryEvents() throws ExecutionException, InterruptedException {
+        //given
+        String newJson = "{\"libraryEventId\":789,\"libraryEventType\":\"NEW\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
+        String updateJson = "{\"libraryEventId\":789,\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot 2.x\",\"bookAuthor\":\"Dilip\"}}";
+        String unknownUpdateJson = "{\"libraryEventId\":123,\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":457,\"bookName\":\"Kafka Streams\",\"bookAuthor\":\"Dilip\"}}";
+
+        /**
+         * Same key, same partition: the UPDATE is consumed after the NEW, in the same poll or in a later one
+         */
+        kafkaTemplate.sendDefault(789L, newJson);
+        kafkaTemplate.sendDefault(123L, unknownUpdateJson);
+        kafkaTemplate.sendDefault(789L, updateJson).get();
+
+        //when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(3, TimeUnit.SECONDS);
+
+        //then
+        LibraryEvent persistedLibraryEvent = libraryEventsRepository.findById(789L).get();
+        assertEquals("Kafka Using Spring Boot 2.x", persistedLibraryEvent.getBook().getBookName());
+        //the UPDATE of an unknown id is skipped on its own
+        assertFalse(libraryEventsRepository.findById(123L).isPresent());
+    }
+
+    @Test
+    void publishUpdateLibraryEvents_Stale_EventSequence() throws ExecutionException, InterruptedException {
+        //given
+        String newJson = "{\"libraryEventId\":790,\"libraryEventType\":\"NEW\",\"book\":{\"bookId\":458,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
+        String latestJson = "{\"libraryEventId\":790,\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":458,\"bookName\":\"Kafka Using Spring Boot 3.x\",\"bookAuthor\":\"Dilip\"}}";
+        String staleJson = "{\"libraryEventId\":790,\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":458,\"bookName\":\"Kafka Using Spring Boot 2.x\",\"bookAuthor\":\"Dilip\"}}";
+
+        kafkaTemplate.send(withEventSequence(790L, newJson, 100L));
+        kafkaTemplate.send(withEventSequence(790L, latestJson, 300L));
+        kafkaTemplate.send(withEventSequence(790L, staleJson, 200L)).get();
+
+        //when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(3, TimeUnit.SECONDS);
+
+        //then
+        LibraryEvent persistedLibraryEvent = libraryEventsRepository.findById(790L).get();
+        assertEquals("Kafka Using Spring Boot 3.x", persistedLibraryEvent.getBook().getBookName());
+        assertEquals(300L, persistedLibraryEvent.getEventSequence());
+    }
+
+    private static ProducerRecord<Long, String> withEventSequence(Long key, String json, long eventSequence) {
+        ProducerRecord<Long, String> producerRecord = new ProducerRecord<>("library-events", null, null, key, json);
+        producerRecord.headers().add(LibraryEventsService.EVENT_SEQUENCE_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(eventSequence).array());
+        return producerRecord;
+    }
+}
@@ -6,9 +6,18 @@ import com.techstack.kafka.consumer.LibraryEventsConsumer;
 import com.techstack.kafka.entity.Book;
 import com.techstack.kafka.entity.LibraryEvent;
 import com.techstack.kafka.entity.LibraryEventType;
+import com.techstack.kafka.index.LibraryEventIdIndex;
+import com.techstack.kafka.metrics.ConsumerMetrics;
 import com.techstack.kafka.repository.LibraryEventsRepository;
+import com.techstack.kafka.retry.RetryTopics;
 import com.techstack.kafka.service.LibraryEventsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.LongDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,22 +25,32 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.kafka.test.EmbeddedKafkaBroker;
 import org.springframework.kafka.test.context.EmbeddedKafka;
 import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
 import org.springframework.test.context.TestPropertySource;
 
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -40,7 +59,7 @@ import static org.mockito.Mockito.verify;
  * During IntegrationTest if your test don't want to call the actual Kafka broker, then
  * you can use @EmbeddedKafka with other attributes
  */
-@EmbeddedKafka(topics = {"library-events"}, partitions = 3)
+@EmbeddedKafka(topics = {"library-events", "library-events-retry-100", "library-events-retry-200", "library-events-dlt", "library-events-quarantine"}, partitions = 3)
 
 /**
  * If you refer {@link org.springframework.kafka.test.EmbeddedKafkaBroker} class which contains
@@ -53,7 +72,10 @@ import static org.mockito.Mockito.verify;
  */
 @TestPropertySource(properties = {
         "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
-        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}"
+        "spring.kafka.admin.properties.bootstrap.servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        //short retry tiers, so a failed record reaches the dead letter topic within the test
+        "library-events.retry.delays=100ms,200ms"
 })
 public class LibraryEventsConsumerIntegrationTest {
 
@@ -61,7 +83,7 @@ public class LibraryEventsConsumerIntegrationTest {
     EmbeddedKafkaBroker embeddedKafkaBroker;
 
     @Autowired
-    KafkaTemplate<Integer, String> kafkaTemplate;
+    KafkaTemplate<Long, String> kafkaTemplate;
 
     /**
      * This KafkaListenerEndpointRegistry will hold all the Listener Containers
@@ -83,6 +105,12 @@ public class LibraryEventsConsumerIntegrationTest {
     @Autowired
     ObjectMapper objectMapper;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    LibraryEventIdIndex libraryEventIdIndex;
+
     @BeforeEach
     void setUp() {
 
@@ -109,14 +137,14 @@ public class LibraryEventsConsumerIntegrationTest {
     @Test
     void publishNewLibraryEvent() throws ExecutionException, InterruptedException, JsonProcessingException {
         //given
-        String json = " {\"libraryEventId\":null,\"libraryEventType\":\"NEW\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
+        String json = " {\"libraryEventId\":789,\"libraryEventType\":\"NEW\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
 
         /**
          * Here this would send message to default topic which is configured in the application.yml
          *
          * sendDefault call is Async call.
          */
-        kafkaTemplate.sendDefault(json).get();
+        kafkaTemplate.sendDefault(789L, json).get();
 
         //when
         /**
@@ -154,10 +182,19 @@ public class LibraryEventsConsumerIntegrationTest {
         List<LibraryEvent> libraryEventList = (List<LibraryEvent>) libraryEventsRepository.findAll();
         assert libraryEventList.size() == 1;
         libraryEventList.forEach(libraryEvent -> {
-            assert libraryEvent.getLibraryEventId() != null;
+            assertEquals(789L, libraryEvent.getLibraryEventId());
             assertEquals(456, libraryEvent.getBook().getBookId());
         });
 
+        /**
+         * The latencies are recorded per partition, the record timestamp -> polled -> stored
+         */
+        assertTrue(meterRegistry.find(ConsumerMetrics.CONSUME_LATENCY_METRIC).tag("topic", "library-events").timers()
+                .stream().mapToLong(Timer::count).sum() >= 1);
+        assertTrue(meterRegistry.find(ConsumerMetrics.END_TO_END_LATENCY_METRIC).timers()
+                .stream().mapToLong(Timer::count).sum() >= 1);
+        assertTrue(meterRegistry.find(ConsumerMetrics.PERSIST_LATENCY_METRIC).timers()
+                .stream().mapToLong(Timer::count).sum() >= 1);
     }
 
     @Test
@@ -167,7 +204,7 @@ public class LibraryEventsConsumerIntegrationTest {
          * Step1: For Update Event, we should have a LibraryEvent record in the database.
          * Here we are insert a LibraryEvent record.
          */
-        String json = "{\"libraryEventId\":null,\"libraryEventType\":\"NEW\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
+        String json = "{\"libraryEventId\":789,\"libraryEventType\":\"NEW\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
         LibraryEvent libraryEvent = objectMapper.readValue(json, LibraryEvent.class);
         libraryEvent.getBook().setLibraryEvent(libraryEvent);
         libraryEventsRepository.save(libraryEvent);
@@ -198,10 +235,40 @@ public class LibraryEventsConsumerIntegrationTest {
         assertEquals("Kafka Using Spring Boot 2.x", persistedLibraryEvent.getBook().getBookName());
     }
 
+    @Test
+    void publishUpdateLibraryEvent_Stale_EventSequence() throws JsonProcessingException, ExecutionException, InterruptedException {
+        //given
+        String json = "{\"libraryEventId\":789,\"libraryEventType\":\"NEW\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
+        LibraryEvent libraryEvent = objectMapper.readValue(json, LibraryEvent.class);
+        libraryEvent.setEventSequence(100L);
+        libraryEvent.getBook().setLibraryEvent(libraryEvent);
+        libraryEventsRepository.save(libraryEvent);
+
+        /**
+         * An update which was sent before the stored one, but arrives after it (e.g. through another partition)
+         */
+        String updatedJson = "{\"libraryEventId\":789,\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot 2.x\",\"bookAuthor\":\"Dilip\"}}";
+        ProducerRecord<Long, String> producerRecord = new ProducerRecord<>("library-events", null, null, 789L, updatedJson);
+        producerRecord.headers().add(LibraryEventsService.EVENT_SEQUENCE_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(50L).array());
+        kafkaTemplate.send(producerRecord).get();
+
+        //when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(3, TimeUnit.SECONDS);
+
+        //then
+        //matched by key, records re-published by the recovery of other tests may still be around
+        verify(libraryEventsServiceSpy, times(1)).processLibraryEvent(argThat(record -> Long.valueOf(789L).equals(record.key())));
+
+        LibraryEvent persistedLibraryEvent = libraryEventsRepository.findById(789L).get();
+        assertEquals("Kafka Using Spring Boot", persistedLibraryEvent.getBook().getBookName());
+        assertEquals(100L, persistedLibraryEvent.getEventSequence());
+    }
+
     @Test
     void publishModifyLibraryEvent_Not_A_Valid_LibraryEventId() throws JsonProcessingException, InterruptedException, ExecutionException {
         //given
-        Integer libraryEventId = 123;
+        Long libraryEventId = 123L;
         String json = "{\"libraryEventId\":" + libraryEventId + ",\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
         System.out.println(json);
         kafkaTemplate.sendDefault(libraryEventId, json).get();
@@ -216,12 +283,32 @@ public class LibraryEventsConsumerIntegrationTest {
 
         Optional<LibraryEvent> libraryEventOptional = libraryEventsRepository.findById(libraryEventId);
         assertFalse(libraryEventOptional.isPresent());
+
+        //retrying wouldn't help, the record goes to the dead letter topic right away
+        assertEquals(1, RetryTopics.attempts(deadLetterRecord(libraryEventId).headers()));
+    }
+
+    @Test
+    void publishModifyLibraryEvent_Indexed_But_Not_Stored_LibraryEventId() throws InterruptedException, ExecutionException {
+        //given: a false positive of the bloom filter
+        Long libraryEventId = 124L;
+        libraryEventIdIndex.add(libraryEventId);
+        String json = "{\"libraryEventId\":" + libraryEventId + ",\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":457,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
+        kafkaTemplate.sendDefault(libraryEventId, json).get();
+
+        //when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(3, TimeUnit.SECONDS);
+
+        //then: not a stale update, the same dead letter as without the index
+        assertFalse(libraryEventsRepository.findById(libraryEventId).isPresent());
+        assertEquals(1, RetryTopics.attempts(deadLetterRecord(libraryEventId).headers()));
     }
 
     @Test
     void publishModifyLibraryEvent_Null_LibraryEventId() throws JsonProcessingException, InterruptedException, ExecutionException {
         //given
-        Integer libraryEventId = null;
+        Long libraryEventId = null;
         String json = "{\"libraryEventId\":" + libraryEventId + ",\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
         kafkaTemplate.sendDefault(libraryEventId, json).get();
 
@@ -237,7 +324,7 @@ public class LibraryEventsConsumerIntegrationTest {
     @Test
     void publishModifyLibraryEvent_000_LibraryEventId() throws JsonProcessingException, InterruptedException, ExecutionException {
         //given
-        Integer libraryEventId = 000;
+        Long libraryEventId = 000L;
         String json = "{\"libraryEventId\":" + libraryEventId + ",\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
         kafkaTemplate.sendDefault(libraryEventId, json).get();
 
@@ -246,12 +333,48 @@ public class LibraryEventsConsumerIntegrationTest {
         latch.await(3, TimeUnit.SECONDS);
 
         //then
-        //For Retry
-        //verify(libraryEventsConsumerSpy, times(3)).onMessage(isA(ConsumerRecord.class));
-        //verify(libraryEventsServiceSpy, times(3)).processLibraryEvent(isA(ConsumerRecord.class));
+        //the main topic, then one attempt per retry tier
+        verify(libraryEventsConsumerSpy, times(1)).onMessage(isA(ConsumerRecord.class));
+        verify(libraryEventsServiceSpy, times(3)).processLibraryEvent(argThat(record -> Long.valueOf(0L).equals(record.key())));
+
+        ConsumerRecord<Long, String> deadLetterRecord = deadLetterRecord(libraryEventId);
+        assertEquals(3, RetryTopics.attempts(deadLetterRecord.headers()));
+        assertFalse(libraryEventsRepository.findById(libraryEventId).isPresent());
+    }
 
-        //For Recovery
-        //verify(libraryEventsServiceSpy, times(4)).processLibraryEvent(isA(ConsumerRecord.class));
-        //verify(libraryEventsServiceSpy, times(1)).handleRecovery(isA(ConsumerRecord.class));
+    @Test
+    void publishMalformedLibraryEvent_Quarantined() throws InterruptedException, ExecutionException {
+        //given
+        Long libraryEventId = 789L;
+        String json = "{\"libraryEventId\":" + libraryEventId + ",\"libraryEventType\":\"UPDATE\",\"book\":";
+        kafkaTemplate.sendDefault(libraryEventId, json).get();
+
+        //when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(3, TimeUnit.SECONDS);
+
+        //then
+        //no retry topic, no dead letter topic
+        verify(libraryEventsServiceSpy, times(1)).processLibraryEvent(argThat(record -> libraryEventId.equals(record.key())));
+        verify(libraryEventsServiceSpy, never()).handleRecovery(argThat(record -> libraryEventId.equals(record.key())), any());
+
+        ConsumerRecord<Long, String> quarantinedRecord = record("library-events-quarantine", libraryEventId);
+        assertEquals(json, quarantinedRecord.value());
+        assertNotNull(quarantinedRecord.headers().lastHeader(RetryTopics.EXCEPTION_HEADER));
+    }
+
+    private ConsumerRecord<Long, String> deadLetterRecord(Long key) {
+        return record("library-events-dlt", key);
+    }
+
+    private ConsumerRecord<Long, String> record(String topic, Long key) {
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps(topic + "-test-group", "true", embeddedKafkaBroker);
+        try (Consumer<Long, String> consumer = new DefaultKafkaConsumerFactory<>(consumerProps, new LongDeserializer(), new StringDeserializer()).createConsumer()) {
+            embeddedKafkaBroker.consumeFromAnEmbeddedTopic(consumer, topic);
+            return StreamSupport.stream(KafkaTestUtils.getRecords(consumer).spliterator(), false)
+                    .filter(record -> key.equals(record.key()))
+                    .findFirst()
+                    .orElseThrow(() -> new AssertionError("No " + topic + " record for the key " + key));
+        }
     }
 }
@@ -0,0 +1,140 @@
+package com.techstack.kafka.intg.consumer;
+
+import com.techstack.kafka.offsets.DatabaseOffsets;
+import com.techstack.kafka.repository.LibraryEventsRepository;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Same broker setup as {@link LibraryEventsConsumerIntegrationTest}, with the offsets stored in the database
+ */
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events", "library-events-retry-1000", "library-events-retry-10000",
+        "library-events-retry-60000", "library-events-dlt", "library-events-quarantine"}, partitions = 3)
+@TestPropertySource(properties = {
+        "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.admin.properties.bootstrap.servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "library-events.consumer.offset-storage=database"
+})
+public class LibraryEventsDatabaseOffsetsIntegrationTest {
+
+    private static final String TOPIC = "library-events";
+
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    KafkaTemplate<Long, String> kafkaTemplate;
+
+    @Autowired
+    KafkaListenerEndpointRegistry endpointRegistry;
+
+    @Autowired
+    LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    DatabaseOffsets databaseOffsets;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        for (MessageListenerContainer messageListenerContainer : endpointRegistry.getListenerContainers()) {
+            ContainerTestUtils.waitForAssignment(messageListenerContainer, embeddedKafkaBroker.getPartitionsPerTopic());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        libraryEventsRepository.deleteAll();
+    }
+
+    @Test
+    void publishLibraryEvents_OffsetsStoredWithTheRecords() throws ExecutionException, InterruptedException {
+        //given
+        for (long libraryEventId = 1; libraryEventId <= 10; libraryEventId++) {
+            kafkaTemplate.sendDefault(libraryEventId, json(libraryEventId, "NEW"));
+        }
+        //fails and is handed to the dead letter topic, its offset is stored all the same
+        kafkaTemplate.sendDefault(4242L, json(4242L, "UPDATE")).get();
+
+        //when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(3, TimeUnit.SECONDS);
+
+        //then
+        assertEquals(10, libraryEventsRepository.count());
+        assertEquals(endOffsets(), databaseOffsets.storedOffsets().entrySet().stream()
+                .filter(entry -> entry.getKey().topic().equals(TOPIC))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+    }
+
+    @Test
+    void assignedPartitions_SeekToTheStoredOffsets() throws ExecutionException, InterruptedException {
+        //given
+        MessageListenerContainer container = endpointRegistry.getListenerContainers().stream()
+                .filter(listenerContainer -> "library-events-listener-group".equals(listenerContainer.getGroupId()))
+                .findFirst().get();
+        container.stop();
+
+        SendResult<Long, String> skipped = kafkaTemplate.send(TOPIC, 0, 77L, json(77L, "NEW")).get();
+        //as if the record was stored before, by another instance
+        jdbcTemplate.update("MERGE INTO consumer_offset (group_id, topic, partition_id, next_offset) KEY (group_id, topic, partition_id) VALUES (?, ?, ?, ?)",
+                "library-events-listener-group", TOPIC, 0, skipped.getRecordMetadata().offset() + 1);
+
+        //when
+        container.start();
+        ContainerTestUtils.waitForAssignment(container, embeddedKafkaBroker.getPartitionsPerTopic());
+        kafkaTemplate.send(TOPIC, 0, 78L, json(78L, "NEW")).get();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(3, TimeUnit.SECONDS);
+
+        //then
+        assertFalse(libraryEventsRepository.findById(77L).isPresent());
+        assertTrue(libraryEventsRepository.findById(78L).isPresent());
+    }
+
+    private Map<TopicPartition, Long> endOffsets() {
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("end-offsets-test-group", "false", embeddedKafkaBroker);
+        try (Consumer<byte[], byte[]> consumer = new DefaultKafkaConsumerFactory<byte[], byte[]>(consumerProps).createConsumer()) {
+            return consumer.endOffsets(IntStream.range(0, embeddedKafkaBroker.getPartitionsPerTopic())
+                    .mapToObj(partition -> new TopicPartition(TOPIC, partition))
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    private static String json(long libraryEventId, String libraryEventType) {
+        return "{\"libraryEventId\":" + libraryEventId + ",\"libraryEventType\":\"" + libraryEventType + "\",\"book\":{\"bookId\":"
+                + (2000 + libraryEventId) + ",\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
+    }
+}
@@ -0,0 +1,114 @@
+package com.techstack.kafka.intg.consumer;
+
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.repository.LibraryEventsRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Same broker setup as {@link LibraryEventsConsumerIntegrationTest}, with the listener switched to pipeline mode
+ */
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events", "library-events-retry-1000", "library-events-retry-10000",
+        "library-events-retry-60000", "library-events-dlt", "library-events-quarantine"}, partitions = 3)
+@TestPropertySource(properties = {
+        "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.admin.properties.bootstrap.servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "library-events.consumer.mode=pipeline",
+        "library-events.consumer.commit-interval=100ms"
+})
+public class LibraryEventsPipelineConsumerIntegrationTest {
+
+    private static final int LIBRARY_EVENTS = 20;
+
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    KafkaTemplate<Long, String> kafkaTemplate;
+
+    @Autowired
+    KafkaListenerEndpointRegistry endpointRegistry;
+
+    @Autowired
+    LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        for (MessageListenerContainer messageListenerContainer : endpointRegistry.getListenerContainers()) {
+            ContainerTestUtils.waitForAssignment(messageListenerContainer, embeddedKafkaBroker.getPartitionsPerTopic());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        libraryEventsRepository.deleteAll();
+    }
+
+    @Test
+    void publishNewAndUpdateLibraryEvents() throws ExecutionException, InterruptedException {
+        //given
+        for (long libraryEventId = 1; libraryEventId <= LIBRARY_EVENTS; libraryEventId++) {
+            kafkaTemplate.sendDefault(libraryEventId, json(libraryEventId, "NEW", "Kafka Using Spring Boot"));
+        }
+        //can't be decoded, it's skipped by the pipeline but still committed
+        kafkaTemplate.sendDefault(999L, "not a LibraryEvent");
+        for (long libraryEventId = 1; libraryEventId <= LIBRARY_EVENTS; libraryEventId++) {
+            kafkaTemplate.sendDefault(libraryEventId, json(libraryEventId, "UPDATE", "Kafka Using Spring Boot 2.x")).get();
+        }
+
+        //when
+        CountDownLatch latch = new CountDownLatch(1);
+        latch.await(3, TimeUnit.SECONDS);
+
+        //then
+        for (long libraryEventId = 1; libraryEventId <= LIBRARY_EVENTS; libraryEventId++) {
+            LibraryEvent persistedLibraryEvent = libraryEventsRepository.findById(libraryEventId).get();
+            assertEquals("Kafka Using Spring Boot 2.x", persistedLibraryEvent.getBook().getBookName());
+        }
+
+        try (AdminClient adminClient = AdminClient.create(
+                Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, embeddedKafkaBroker.getBrokersAsString()))) {
+            Map<TopicPartition, OffsetAndMetadata> committedOffsets = adminClient
+                    .listConsumerGroupOffsets("library-events-listener-group").partitionsToOffsetAndMetadata().get();
+            long committedRecords = committedOffsets.values().stream().mapToLong(OffsetAndMetadata::offset).sum();
+            assertEquals(2 * LIBRARY_EVENTS + 1, committedRecords);
+        }
+
+        assertEquals(0, meterRegistry.get("library.events.consumer.pipeline.queue.depth").tag("stage", "parse").gauge().value());
+        assertEquals(0, meterRegistry.get("library.events.consumer.pipeline.queue.depth").tag("stage", "persist").gauge().value());
+        assertNotNull(meterRegistry.get("library.events.consumer.pipeline.paused").gauge());
+    }
+
+    private static String json(long libraryEventId, String libraryEventType, String bookName) {
+        return "{\"libraryEventId\":" + libraryEventId + ",\"libraryEventType\":\"" + libraryEventType + "\",\"book\":{\"bookId\":"
+                + (1000 + libraryEventId) + ",\"bookName\":\"" + bookName + "\",\"bookAuthor\":\"Dilip\"}}";
+    }
+}
@@ -0,0 +1,96 @@
+package com.techstack.kafka.intg.persistence;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.Book;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import com.techstack.kafka.persistence.JdbcLibraryEventPersister;
+import com.techstack.kafka.repository.LibraryEventsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the MERGE statements against the tables Hibernate generates from the entities
+ */
+@DataJpaTest
+public class JdbcLibraryEventPersisterIntegrationTest {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    LibraryEventsRepository libraryEventsRepository;
+
+    JdbcLibraryEventPersister jdbcLibraryEventPersister;
+
+    @BeforeEach
+    void setUp() {
+        LibraryEventsProperties libraryEventsProperties = new LibraryEventsProperties();
+        libraryEventsProperties.getPersistence().getJdbc().setBatchSize(10);
+        jdbcLibraryEventPersister = new JdbcLibraryEventPersister(jdbcTemplate, libraryEventsProperties);
+    }
+
+    @Test
+    void saveAll_InsertsAndOverwrites() {
+        //given: 25 rows, two full batches and a remainder
+        jdbcLibraryEventPersister.saveAll(libraryEvents(25, LibraryEventType.NEW, "Kafka Using Spring Boot", 1L));
+
+        //when
+        jdbcLibraryEventPersister.saveAll(libraryEvents(25, LibraryEventType.UPDATE, "Kafka Using Spring Boot 2.x", 2L));
+
+        //then
+        assertEquals(25, libraryEventsRepository.count());
+        LibraryEvent persistedLibraryEvent = libraryEventsRepository.findById(7L).get();
+        assertEquals(LibraryEventType.UPDATE, persistedLibraryEvent.getLibraryEventType());
+        assertEquals(2L, persistedLibraryEvent.getEventSequence());
+        assertEquals(107, persistedLibraryEvent.getBook().getBookId());
+        assertEquals("Kafka Using Spring Boot 2.x", persistedLibraryEvent.getBook().getBookName());
+    }
+
+    @Test
+    void saveIfNewer() {
+        //given
+        jdbcLibraryEventPersister.saveAll(libraryEvents(1, LibraryEventType.NEW, "Kafka Using Spring Boot", 100L));
+
+        //when
+        boolean staleWritten = jdbcLibraryEventPersister.saveIfNewer(libraryEvents(1, LibraryEventType.UPDATE, "Kafka Using Spring Boot 2.x", 50L).get(0));
+        boolean newerWritten = jdbcLibraryEventPersister.saveIfNewer(libraryEvents(1, LibraryEventType.UPDATE, "Kafka Using Spring Boot 3.x", 150L).get(0));
+        LibraryEvent unknownLibraryEvent = libraryEvents(2, LibraryEventType.UPDATE, "Kafka Streams", 150L).get(1);
+        boolean unknownWritten = jdbcLibraryEventPersister.saveIfNewer(unknownLibraryEvent);
+
+        //then
+        assertFalse(staleWritten);
+        assertTrue(newerWritten);
+        assertFalse(unknownWritten);
+        LibraryEvent persistedLibraryEvent = libraryEventsRepository.findById(1L).get();
+        assertEquals(150L, persistedLibraryEvent.getEventSequence());
+        assertEquals("Kafka Using Spring Boot 3.x", persistedLibraryEvent.getBook().getBookName());
+        assertEquals(1, libraryEventsRepository.count());
+    }
+
+    private static List<LibraryEvent> libraryEvents(int count, LibraryEventType libraryEventType, String bookName, Long eventSequence) {
+        List<LibraryEvent> libraryEvents = new ArrayList<>();
+        for (long libraryEventId = 1; libraryEventId <= count; libraryEventId++) {
+            Book book = Book.builder().bookId(100 + (int) libraryEventId).bookName(bookName).bookAuthor("Dilip").build();
+            LibraryEvent libraryEvent = LibraryEvent.builder()
+                    .libraryEventId(libraryEventId)
+                    .libraryEventType(libraryEventType)
+                    .eventSequence(eventSequence)
+                    .book(book)
+                    .build();
+            book.setLibraryEvent(libraryEvent);
+            libraryEvents.add(libraryEvent);
+        }
+        return libraryEvents;
+    }
+}
@@ -0,0 +1,85 @@
+package com.techstack.kafka.intg.persistence;
+
+import com.techstack.kafka.entity.Book;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import com.techstack.kafka.persistence.JpaLibraryEventPersister;
+import com.techstack.kafka.repository.LibraryEventsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import javax.persistence.EntityManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The guarded update of saveIfNewer against the tables Hibernate generates from the entities
+ */
+@DataJpaTest
+public class JpaLibraryEventPersisterIntegrationTest {
+
+    @Autowired
+    LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    JpaLibraryEventPersister jpaLibraryEventPersister;
+
+    @BeforeEach
+    void setUp() {
+        jpaLibraryEventPersister = new JpaLibraryEventPersister(libraryEventsRepository, entityManager);
+    }
+
+    @Test
+    void saveIfNewer() {
+        //given
+        jpaLibraryEventPersister.save(libraryEvent(1L, LibraryEventType.NEW, "Kafka Using Spring Boot", 100L));
+
+        //when
+        boolean staleWritten = jpaLibraryEventPersister.saveIfNewer(libraryEvent(1L, LibraryEventType.UPDATE, "Kafka Using Spring Boot 2.x", 50L));
+        boolean newerWritten = jpaLibraryEventPersister.saveIfNewer(libraryEvent(1L, LibraryEventType.UPDATE, "Kafka Using Spring Boot 3.x", 150L));
+        boolean unknownWritten = jpaLibraryEventPersister.saveIfNewer(libraryEvent(2L, LibraryEventType.UPDATE, "Kafka Streams", 150L));
+
+        //then
+        assertFalse(staleWritten);
+        assertTrue(newerWritten);
+        assertFalse(unknownWritten);
+        LibraryEvent persistedLibraryEvent = libraryEventsRepository.findById(1L).get();
+        assertEquals(150L, persistedLibraryEvent.getEventSequence());
+        assertEquals("Kafka Using Spring Boot 3.x", persistedLibraryEvent.getBook().getBookName());
+        assertEquals(1, libraryEventsRepository.count());
+    }
+
+    @Test
+    void saveIfNewer_WithoutEventSequence() {
+        //given
+        jpaLibraryEventPersister.save(libraryEvent(1L, LibraryEventType.NEW, "Kafka Using Spring Boot", 100L));
+
+        //when
+        boolean written = jpaLibraryEventPersister.saveIfNewer(libraryEvent(1L, LibraryEventType.UPDATE, "Kafka Using Spring Boot 2.x", null));
+
+        //then
+        assertTrue(written);
+        LibraryEvent persistedLibraryEvent = libraryEventsRepository.findById(1L).get();
+        assertNull(persistedLibraryEvent.getEventSequence());
+        assertEquals("Kafka Using Spring Boot 2.x", persistedLibraryEvent.getBook().getBookName());
+    }
+
+    private static LibraryEvent libraryEvent(Long libraryEventId, LibraryEventType libraryEventType, String bookName, Long eventSequence) {
+        Book book = Book.builder().bookId(100 + libraryEventId.intValue()).bookName(bookName).bookAuthor("Dilip").build();
+        LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventId(libraryEventId)
+                .libraryEventType(libraryEventType)
+                .eventSequence(eventSequence)
+                .book(book)
+                .build();
+        book.setLibraryEvent(libraryEvent);
+        return libraryEvent;
+    }
+}
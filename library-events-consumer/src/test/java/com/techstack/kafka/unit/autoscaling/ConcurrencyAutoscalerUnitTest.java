@@ -0,0 +1,195 @@
+package com.techstack.kafka.unit.autoscaling;
+
+import com.techstack.kafka.autoscaling.ConcurrencyAutoscaler;
+import com.techstack.kafka.autoscaling.ConcurrencyChangedEvent;
+import com.techstack.kafka.autoscaling.ProcessingTime;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.DescribeTopicsResult;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsOptions;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsResult;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConcurrencyAutoscalerUnitTest {
+
+    static final String GROUP_ID = "library-events-listener-group";
+
+    AdminClient adminClient = mock(AdminClient.class);
+
+    ConcurrentMessageListenerContainer<?, ?> container = mock(ConcurrentMessageListenerContainer.class);
+
+    KafkaListenerEndpointRegistry endpointRegistry = mock(KafkaListenerEndpointRegistry.class);
+
+    ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    Map<TopicPartition, Long> endOffsets = new HashMap<>();
+
+    Map<TopicPartition, OffsetAndMetadata> committedOffsets = new HashMap<>();
+
+    ConcurrencyAutoscaler autoscaler;
+
+    @BeforeEach
+    void setUp() {
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.getConsumer().setGroupId(GROUP_ID);
+        LibraryEventsProperties libraryEventsProperties = new LibraryEventsProperties();
+        //evaluated by the test only
+        libraryEventsProperties.getConsumer().getAutoscaling().setInterval(Duration.ofHours(1));
+
+        when(endpointRegistry.getListenerContainers()).thenReturn(List.of(container));
+        when(container.getGroupId()).thenReturn(GROUP_ID);
+        when(container.getContainerProperties()).thenReturn(new ContainerProperties("library-events"));
+        when(container.isRunning()).thenReturn(true);
+        when(container.getConcurrency()).thenReturn(1);
+
+        //12 partitions, the other instances of the group have a large lag on theirs
+        for (int partition = 0; partition < 12; partition++) {
+            endOffsets.put(new TopicPartition("library-events", partition), 100_000L);
+            committedOffsets.put(new TopicPartition("library-events", partition), new OffsetAndMetadata(0L));
+        }
+        stubAdminClient();
+
+        autoscaler = new ConcurrencyAutoscaler(endpointRegistry, mock(KafkaAdmin.class), new ProcessingTime(), eventPublisher,
+                meterRegistry, kafkaProperties, libraryEventsProperties) {
+            @Override
+            protected AdminClient createAdminClient() {
+                return adminClient;
+            }
+        };
+        autoscaler.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        autoscaler.destroy();
+    }
+
+    @Test
+    void evaluate_SamplesTheLagOfTheAssignedPartitionsOnly() {
+        assign(0, 1, 2);
+        commit(0, 99_900L);
+        commit(1, 99_900L);
+        commit(2, 99_900L);
+
+        autoscaler.evaluate();
+
+        assertEquals(300.0, meterRegistry.get("library.events.consumer.autoscaling.lag").gauge().value());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<TopicPartition, OffsetSpec>> requested = ArgumentCaptor.forClass(Map.class);
+        verify(adminClient).listOffsets(requested.capture());
+        assertEquals(List.of(0, 1, 2), requested.getValue().keySet().stream()
+                .map(TopicPartition::partition).sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    void evaluate_ScalesUpOnTheLagOfThisInstance() {
+        assign(0, 1, 2, 3);
+        autoscaler.evaluate();
+
+        autoscaler.evaluate();
+
+        //no processing time yet: one thread more, as the assigned partitions are far beyond scale-up-lag
+        var order = inOrder(container);
+        order.verify(container).stop();
+        order.verify(container).setConcurrency(2);
+        order.verify(container).start();
+        verify(eventPublisher).publishEvent(isA(ConcurrencyChangedEvent.class));
+    }
+
+    @Test
+    void evaluate_NoScaleUpForTheLagOfOtherInstances() {
+        //this instance is up to date, all the lag is on partitions of other instances
+        assign(0, 1);
+        commit(0, 100_000L);
+        commit(1, 100_000L);
+
+        autoscaler.evaluate();
+        autoscaler.evaluate();
+
+        verify(container, never()).setConcurrency(any(Integer.class));
+        assertEquals(0.0, meterRegistry.get("library.events.consumer.autoscaling.lag").gauge().value());
+    }
+
+    private void assign(int... partitions) {
+        when(container.getAssignedPartitions()).thenReturn(IntStream.of(partitions)
+                .mapToObj(partition -> new TopicPartition("library-events", partition))
+                .collect(Collectors.toList()));
+    }
+
+    private void commit(int partition, long offset) {
+        committedOffsets.put(new TopicPartition("library-events", partition), new OffsetAndMetadata(offset));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubAdminClient() {
+        List<TopicPartitionInfo> partitionInfos = IntStream.range(0, 12)
+                .mapToObj(partition -> new TopicPartitionInfo(partition, null, List.of(), List.of()))
+                .collect(Collectors.toList());
+        DescribeTopicsResult describeTopicsResult = mock(DescribeTopicsResult.class);
+        when(describeTopicsResult.all()).thenReturn(KafkaFuture.completedFuture(
+                Map.of("library-events", new TopicDescription("library-events", false, partitionInfos))));
+        when(adminClient.describeTopics(anyCollection())).thenReturn(describeTopicsResult);
+
+        when(adminClient.listOffsets(anyMap())).thenAnswer(invocation -> {
+            Map<TopicPartition, OffsetSpec> requested = invocation.getArgument(0);
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> resultInfos = requested.keySet().stream()
+                    .collect(Collectors.toMap(partition -> partition, partition -> listOffsetsResultInfo(endOffsets.get(partition))));
+            ListOffsetsResult listOffsetsResult = mock(ListOffsetsResult.class);
+            when(listOffsetsResult.all()).thenReturn(KafkaFuture.completedFuture(resultInfos));
+            return listOffsetsResult;
+        });
+
+        when(adminClient.listConsumerGroupOffsets(eq(GROUP_ID), any(ListConsumerGroupOffsetsOptions.class))).thenAnswer(invocation -> {
+            ListConsumerGroupOffsetsResult result = mock(ListConsumerGroupOffsetsResult.class);
+            when(result.partitionsToOffsetAndMetadata()).thenReturn(KafkaFuture.completedFuture(new HashMap<>(committedOffsets)));
+            return result;
+        });
+    }
+
+    /**
+     * The constructor is package private
+     */
+    private static ListOffsetsResult.ListOffsetsResultInfo listOffsetsResultInfo(long offset) {
+        ListOffsetsResult.ListOffsetsResultInfo resultInfo = mock(ListOffsetsResult.ListOffsetsResultInfo.class);
+        when(resultInfo.offset()).thenReturn(offset);
+        return resultInfo;
+    }
+}
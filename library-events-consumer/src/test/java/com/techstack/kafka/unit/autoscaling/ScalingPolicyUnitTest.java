@@ -0,0 +1,61 @@
+package com.techstack.kafka.unit.autoscaling;
+
+import com.techstack.kafka.autoscaling.LagSample;
+import com.techstack.kafka.autoscaling.ScalingDecision;
+import com.techstack.kafka.autoscaling.ScalingPolicy;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class ScalingPolicyUnitTest {
+
+    LibraryEventsProperties.Autoscaling settings = new LibraryEventsProperties.Autoscaling();
+
+    ScalingPolicy scalingPolicy;
+
+    @BeforeEach
+    void setUp() {
+        settings.setCooldown(Duration.ofMinutes(5));
+        settings.setDrainTime(Duration.ofSeconds(60));
+        settings.setTargetUtilization(0.5);
+        scalingPolicy = new ScalingPolicy(settings);
+    }
+
+    @Test
+    void decide_ScalesUpToTheThreadsTheLoadNeeds_AtMostThePartitionCount() {
+        //(100 records/s + 6000 lag / 60s) * 10 ms / 0.5 = 4 threads
+        ScalingDecision decision = scalingPolicy.decide(2, new LagSample(0, 12, Map.of(), 6000), 100, 0.01);
+        assertEquals(4, decision.getTo());
+
+        //cooldown
+        decision = scalingPolicy.decide(4, new LagSample(60_000, 12, Map.of(), 600_000), 1000, 0.01);
+        assertEquals(4, decision.getTo());
+        assertEquals(12, decision.getDesired());
+
+        decision = scalingPolicy.decide(4, new LagSample(300_000, 12, Map.of(), 600_000), 1000, 0.01);
+        assertEquals(12, decision.getTo());
+    }
+
+    @Test
+    void decide_ScalesDownOnlyAfterSeveralQuietSamples() {
+        for (int sample = 1; sample < settings.getScaleDownSamples(); sample++) {
+            ScalingDecision decision = scalingPolicy.decide(6, new LagSample(sample * 30_000L, 6, Map.of(), 0), 10, 0.01);
+            assertFalse(decision.isChange());
+        }
+        ScalingDecision decision = scalingPolicy.decide(6, new LagSample(settings.getScaleDownSamples() * 30_000L, 6, Map.of(), 0), 10, 0.01);
+        assertEquals(1, decision.getTo());
+    }
+
+    @Test
+    void decide_NoScaleUpBelowTheScaleUpLag() {
+        ScalingDecision decision = scalingPolicy.decide(1, new LagSample(0, 3, Map.of(), 500), 1000, 0.01);
+        assertEquals(3, decision.getDesired());
+        assertFalse(decision.isChange());
+    }
+}
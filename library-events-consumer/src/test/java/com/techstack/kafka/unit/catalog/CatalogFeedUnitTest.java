@@ -0,0 +1,127 @@
+package com.techstack.kafka.unit.catalog;
+
+import com.techstack.kafka.catalog.CatalogFeed;
+import com.techstack.kafka.catalog.CatalogView;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.ConsumerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CatalogFeedUnitTest {
+
+    TopicPartition partition0 = new TopicPartition("library-events", 0);
+
+    TopicPartition partition1 = new TopicPartition("library-events", 1);
+
+    Map<TopicPartition, OffsetAndMetadata> groupOffsets = new HashMap<>();
+
+    /**
+     * MockConsumer forgets the committed offsets on assign() and only returns them for assigned partitions,
+     * a KafkaConsumer reads the ones of the group either way
+     */
+    MockConsumer<Long, LibraryEvent> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST) {
+        @Override
+        public synchronized Map<TopicPartition, OffsetAndMetadata> committed(Set<TopicPartition> partitions) {
+            return groupOffsets;
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    ConsumerFactory<Long, LibraryEvent> consumerFactory = mock(ConsumerFactory.class);
+
+    CatalogView catalogView = new CatalogView(mock(JdbcTemplate.class), catalogProperties(), new SimpleMeterRegistry());
+
+    CatalogFeed catalogFeed = new CatalogFeed(catalogView, consumerFactory);
+
+    @BeforeEach
+    void setUp() {
+        when(consumerFactory.createConsumer()).thenReturn(consumer);
+        consumer.updatePartitions("library-events", List.of(
+                new PartitionInfo("library-events", 0, null, null, null),
+                new PartitionInfo("library-events", 1, null, null, null)));
+        consumer.updateBeginningOffsets(Map.of(partition0, 0L, partition1, 0L));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        catalogFeed.destroy();
+    }
+
+    @Test
+    void feed_ServesOnceCaughtUpWithAllPartitions() throws InterruptedException {
+        //the group has committed 1 on partition 0, 0 is stored and comes with the load
+        groupOffsets.put(partition0, new OffsetAndMetadata(1L));
+        consumer.updateEndOffsets(Map.of(partition0, 2L, partition1, 1L));
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(at(partition0, 1L, CatalogViewUnitTest.record(LibraryEventType.NEW, 1L, 10L, 100, "Kafka Using Spring Boot", "Dilip")));
+            consumer.addRecord(at(partition1, 0L, CatalogViewUnitTest.record(LibraryEventType.NEW, 2L, 11L, 200, "Kafka Streams", "Dilbert")));
+        });
+
+        assertFalse(catalogView.isServing());
+        catalogFeed.start();
+        await(catalogView::isServing);
+        assertTrue(catalogView.findByLibraryEventId(1L).isPresent());
+        assertTrue(catalogView.findByLibraryEventId(2L).isPresent());
+
+        //records which arrive later, on any partition, are applied as well
+        consumer.schedulePollTask(() -> consumer.addRecord(at(partition1, 1L,
+                CatalogViewUnitTest.record(LibraryEventType.UPDATE, 1L, 12L, 100, "Kafka Using Spring Boot, 2nd Edition", "Dilip"))));
+        await(() -> "Kafka Using Spring Boot, 2nd Edition".equals(catalogView.findByLibraryEventId(1L).get().getBookName()));
+    }
+
+    @Test
+    void feed_StartsAtTheCommittedOffsets() throws InterruptedException {
+        groupOffsets.put(partition0, new OffsetAndMetadata(5L));
+        groupOffsets.put(partition1, new OffsetAndMetadata(3L));
+        consumer.updateEndOffsets(Map.of(partition0, 5L, partition1, 3L));
+
+        catalogFeed.start();
+        await(catalogView::isServing);
+
+        assertEquals(5L, consumer.position(partition0));
+        assertEquals(3L, consumer.position(partition1));
+    }
+
+    private static ConsumerRecord<Long, LibraryEvent> at(TopicPartition partition, long offset, ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        ConsumerRecord<Long, LibraryEvent> positioned = new ConsumerRecord<>(partition.topic(), partition.partition(), offset,
+                consumerRecord.key(), consumerRecord.value());
+        consumerRecord.headers().forEach(positioned.headers()::add);
+        return positioned;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 200 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static LibraryEventsProperties catalogProperties() {
+        LibraryEventsProperties libraryEventsProperties = new LibraryEventsProperties();
+        libraryEventsProperties.getCatalog().setEnabled(true);
+        return libraryEventsProperties;
+    }
+}
@@ -0,0 +1,99 @@
+package com.techstack.kafka.unit.catalog;
+
+import com.techstack.kafka.catalog.CatalogEntry;
+import com.techstack.kafka.catalog.CatalogView;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.Book;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class CatalogViewUnitTest {
+
+    JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    LibraryEventsProperties libraryEventsProperties = new LibraryEventsProperties();
+
+    @BeforeEach
+    void setUp() {
+        libraryEventsProperties.getCatalog().setEnabled(true);
+    }
+
+    @Test
+    void apply_IndexesFollowTheLatestBook() {
+        CatalogView catalogView = catalogView();
+
+        catalogView.apply(record(LibraryEventType.NEW, 1L, 10L, 100, "Kafka Using Spring Boot", "Dilip"));
+        catalogView.apply(record(LibraryEventType.NEW, 2L, 11L, 200, "Kafka Streams", "dilbert"));
+        catalogView.apply(record(LibraryEventType.NEW, 3L, 12L, 300, "Designing Data-Intensive Applications", "Martin"));
+        assertEquals(List.of(2L, 1L), libraryEventIds(catalogView.findByAuthorPrefix("DIL", 10)));
+
+        //the book and the author of 1 change
+        catalogView.apply(record(LibraryEventType.UPDATE, 1L, 13L, 101, "Kafka Using Spring Boot, 2nd Edition", "Martin"));
+        assertEquals(List.of(2L), libraryEventIds(catalogView.findByAuthorPrefix("dil", 10)));
+        assertEquals(List.of(1L, 3L), libraryEventIds(catalogView.findByAuthorPrefix("mar", 10)).stream().sorted().collect(Collectors.toList()));
+        assertFalse(catalogView.findByBookId(100).isPresent());
+        assertEquals(1L, catalogView.findByBookId(101).get().getLibraryEventId());
+        assertEquals("Kafka Using Spring Boot, 2nd Edition", catalogView.findByLibraryEventId(1L).get().getBookName());
+    }
+
+    @Test
+    void apply_SkipsStaleAndUnknownUpdates() {
+        CatalogView catalogView = catalogView();
+        catalogView.apply(record(LibraryEventType.NEW, 1L, 10L, 100, "Kafka Using Spring Boot", "Dilip"));
+
+        //the consumer skips an older update and sends an update of an unknown id to the dead letter topic
+        catalogView.apply(record(LibraryEventType.UPDATE, 1L, 9L, 100, "Kafka Using Spring Boot, Draft", "Dilip"));
+        catalogView.apply(record(LibraryEventType.UPDATE, 2L, 11L, 200, "Kafka Streams", "Dilbert"));
+
+        assertEquals("Kafka Using Spring Boot", catalogView.findByLibraryEventId(1L).get().getBookName());
+        assertFalse(catalogView.findByLibraryEventId(2L).isPresent());
+    }
+
+    @Test
+    void apply_StopsAddingBeyondMaxMemory() {
+        libraryEventsProperties.getCatalog().setMaxMemory(DataSize.ofBytes(1000));
+        CatalogView catalogView = catalogView();
+
+        for (long libraryEventId = 1; libraryEventId <= 10; libraryEventId++) {
+            catalogView.apply(record(LibraryEventType.NEW, libraryEventId, libraryEventId, (int) libraryEventId, "Kafka", "Dilip"));
+        }
+
+        assertFalse(catalogView.isServing());
+        assertTrue(catalogView.findByLibraryEventId(1L).isPresent());
+        assertFalse(catalogView.findByLibraryEventId(10L).isPresent());
+    }
+
+    private CatalogView catalogView() {
+        return new CatalogView(jdbcTemplate, libraryEventsProperties, new SimpleMeterRegistry());
+    }
+
+    static ConsumerRecord<Long, LibraryEvent> record(LibraryEventType libraryEventType, Long libraryEventId, long eventSequence,
+                                                     Integer bookId, String bookName, String bookAuthor) {
+        Book book = Book.builder().bookId(bookId).bookName(bookName).bookAuthor(bookAuthor).build();
+        LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventId(libraryEventId).libraryEventType(libraryEventType).book(book).build();
+        ConsumerRecord<Long, LibraryEvent> consumerRecord = new ConsumerRecord<>("library-events", 0, eventSequence, libraryEventId, libraryEvent);
+        consumerRecord.headers().add(new RecordHeader("event-sequence", ByteBuffer.allocate(Long.BYTES).putLong(eventSequence).array()));
+        return consumerRecord;
+    }
+
+    private static List<Long> libraryEventIds(List<CatalogEntry> entries) {
+        return entries.stream().map(CatalogEntry::getLibraryEventId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,89 @@
+package com.techstack.kafka.unit.codec;
+
+import com.techstack.kafka.codec.DecodeFailure;
+import com.techstack.kafka.codec.LibraryEventCodec;
+import com.techstack.kafka.codec.LibraryEventDeserializer;
+import com.techstack.kafka.entity.Book;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LibraryEventDeserializerUnitTest {
+
+    /**
+     * Written by the producer's BinaryLibraryEventCodec, its codec test pins the same vector
+     */
+    private static final String BINARY_HEX = "013ff601019007174b61666b61205573696e6720537072696e6720426f6f740544696c6970";
+
+    private static final String JSON = "{\"libraryEventId\":123,\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
+
+    private final LibraryEventDeserializer deserializer = new LibraryEventDeserializer();
+
+    private final LibraryEvent libraryEvent = LibraryEvent.builder()
+            .libraryEventId(123L)
+            .libraryEventType(LibraryEventType.UPDATE)
+            .book(Book.builder().bookId(456).bookName("Kafka Using Spring Boot").bookAuthor("Dilip").build())
+            .build();
+
+    @Test
+    void deserialize_binary() {
+        LibraryEvent decoded = deserializer.deserialize("library-events", formatHeader("binary"), fromHex(BINARY_HEX));
+
+        assertEquals(libraryEvent, decoded);
+    }
+
+    @Test
+    void deserialize_jsonWithoutHeader() {
+        LibraryEvent decoded = deserializer.deserialize("library-events", new RecordHeaders(), JSON.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(libraryEvent, decoded);
+    }
+
+    @Test
+    void deserialize_unknownFormat() {
+        Headers headers = formatHeader("avro");
+        byte[] data = JSON.getBytes(StandardCharsets.UTF_8);
+
+        assertNull(deserializer.deserialize("library-events", headers, data));
+        DecodeFailure decodeFailure = DecodeFailure.of(headers);
+        assertSame(data, decodeFailure.getValue());
+        assertTrue(decodeFailure.getError().startsWith(SerializationException.class.getName()));
+    }
+
+    @Test
+    void deserialize_malformedJson() {
+        Headers headers = new RecordHeaders();
+
+        assertNull(deserializer.deserialize("library-events", headers, "{\"libraryEventId\":".getBytes(StandardCharsets.UTF_8)));
+        assertNotNull(DecodeFailure.of(headers));
+        //nowhere to put the failure
+        assertThrows(SerializationException.class,
+                () -> deserializer.deserialize("library-events", "{\"libraryEventId\":".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Headers formatHeader(String format) {
+        Headers headers = new RecordHeaders();
+        headers.add(LibraryEventCodec.FORMAT_HEADER, format.getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] data = new BigInteger(hex, 16).toByteArray();
+        byte[] bytes = new byte[hex.length() / 2];
+        System.arraycopy(data, data.length - bytes.length, bytes, 0, bytes.length);
+        return bytes;
+    }
+}
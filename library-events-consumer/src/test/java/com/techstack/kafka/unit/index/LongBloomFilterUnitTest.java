@@ -0,0 +1,57 @@
+package com.techstack.kafka.unit.index;
+
+import com.techstack.kafka.index.LongBloomFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongBloomFilterUnitTest {
+
+    @Test
+    void mightContain_AddedValuesAreAlwaysFound() {
+        LongBloomFilter bloomFilter = new LongBloomFilter(100_000, 0.01);
+
+        //snowflake like ids: only the low bits differ
+        long firstId = 1_234_567L << 22;
+        for (long id = firstId; id < firstId + 100_000; id++) {
+            bloomFilter.put(id);
+        }
+
+        for (long id = firstId; id < firstId + 100_000; id++) {
+            assertTrue(bloomFilter.mightContain(id));
+        }
+    }
+
+    @Test
+    void mightContain_FalsePositiveRateAsSized() {
+        LongBloomFilter bloomFilter = new LongBloomFilter(100_000, 0.01);
+        for (long id = 0; id < 100_000; id++) {
+            bloomFilter.put(id);
+        }
+
+        int falsePositives = 0;
+        for (long id = 1_000_000; id < 1_100_000; id++) {
+            if (bloomFilter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 1_500, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void size_For50MillionIds() {
+        //the numbers in LibraryEventIdIndex
+        LongBloomFilter bloomFilter = new LongBloomFilter(50_000_000, 0.01);
+
+        assertEquals(60, Math.round(bloomFilter.bitCount() / 8 / 1_000_000.0));
+        assertEquals(7, bloomFilter.hashCount());
+    }
+
+    @Test
+    void invalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new LongBloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new LongBloomFilter(1_000, 1));
+    }
+}
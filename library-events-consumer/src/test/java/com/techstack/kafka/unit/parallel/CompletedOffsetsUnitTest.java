@@ -0,0 +1,48 @@
+package com.techstack.kafka.unit.parallel;
+
+import com.techstack.kafka.parallel.CompletedOffsets;
+import com.techstack.kafka.parallel.PartitionOffsets;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CompletedOffsetsUnitTest {
+
+    TopicPartition partition0 = new TopicPartition("library-events", 0);
+
+    MockConsumer<Long, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+    CompletedOffsets completedOffsets = new CompletedOffsets(100);
+
+    @Test
+    void commit_RewindsToAFailedRecord() {
+        consumer.assign(List.of(partition0));
+        consumer.seek(partition0, 13L);
+        PartitionOffsets offsets = null;
+        for (long offset = 10; offset < 13; offset++) {
+            offsets = completedOffsets.track(new ConsumerRecord<>("library-events", 0, offset, offset, "value"));
+        }
+        offsets.completed(10L);
+        offsets.completed(12L);
+        //11 wasn't stored and couldn't be published to a retry topic either
+        offsets.failed();
+
+        completedOffsets.commit(consumer);
+
+        assertEquals(11L, consumer.position(partition0));
+        assertEquals(11L, consumer.committed(Set.of(partition0)).get(partition0).offset());
+
+        //the records from the failed one on are tracked again as they're polled
+        completedOffsets.track(new ConsumerRecord<>("library-events", 0, 11L, 11L, "value")).completed(11L);
+        completedOffsets.commit(consumer);
+        assertEquals(new OffsetAndMetadata(12L), consumer.committed(Set.of(partition0)).get(partition0));
+    }
+}
@@ -0,0 +1,50 @@
+package com.techstack.kafka.unit.parallel;
+
+import com.techstack.kafka.parallel.PartitionOffsets;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PartitionOffsetsUnitTest {
+
+    PartitionOffsets partitionOffsets = new PartitionOffsets();
+
+    @Test
+    void committable_StopsAtTheLowestOffsetInFlight() {
+        partitionOffsets.dispatched(10);
+        partitionOffsets.dispatched(11);
+        partitionOffsets.dispatched(12);
+
+        //a later record of another key completes first
+        partitionOffsets.completed(12);
+        assertEquals(10, partitionOffsets.committable());
+
+        partitionOffsets.completed(10);
+        assertEquals(11, partitionOffsets.committable());
+
+        partitionOffsets.completed(11);
+        assertEquals(13, partitionOffsets.committable());
+    }
+
+    @Test
+    void committable_NothingNewAfterCommitted() {
+        assertEquals(-1, partitionOffsets.committable());
+
+        partitionOffsets.dispatched(5);
+        partitionOffsets.completed(5);
+        partitionOffsets.committed(6);
+
+        assertEquals(-1, partitionOffsets.committable());
+    }
+
+    @Test
+    void awaitDrained() throws InterruptedException {
+        partitionOffsets.dispatched(1);
+        assertFalse(partitionOffsets.awaitDrained(10));
+
+        new Thread(() -> partitionOffsets.completed(1)).start();
+        assertTrue(partitionOffsets.awaitDrained(5000));
+    }
+}
@@ -0,0 +1,160 @@
+package com.techstack.kafka.unit.pipeline;
+
+import com.techstack.kafka.codec.DecodeFailure;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.metrics.ConsumerMetrics;
+import com.techstack.kafka.pipeline.LibraryEventsPipeline;
+import com.techstack.kafka.pipeline.PipelineStage;
+import com.techstack.kafka.service.LibraryEventsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class LibraryEventsPipelineUnitTest {
+
+    TopicPartition partition0 = new TopicPartition("library-events", 0);
+
+    LibraryEventsService libraryEventsService = mock(LibraryEventsService.class);
+
+    MockConsumer<Long, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+    LibraryEventsPipeline pipeline;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (pipeline != null) {
+            pipeline.destroy();
+        }
+    }
+
+    @Test
+    void stage_FailedItemGoesToTheFailureHandler() throws InterruptedException {
+        List<Integer> failed = new CopyOnWriteArrayList<>();
+        List<Integer> handled = new CopyOnWriteArrayList<>();
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 1, 10, item -> {
+            if (item == 1) {
+                throw new IllegalStateException("Handler failed");
+            }
+            handled.add(item);
+        }, (item, exception) -> failed.add(item));
+        stage.start();
+
+        stage.submit(0L, 1);
+        stage.submit(0L, 2);
+
+        await(() -> handled.contains(2));
+        assertEquals(List.of(1), failed);
+        stage.stop(1000);
+    }
+
+    @Test
+    void persist_RewindsToARecordWhichCouldntBeRecovered() throws InterruptedException {
+        //the record of offset 1 can neither be stored nor published to a retry topic
+        doThrow(new KafkaException("Broker not available")).when(libraryEventsService)
+                .processLibraryEventOrRecover(argThat(consumerRecord -> consumerRecord.offset() == 1L));
+        pipeline = pipeline();
+        consumer.assign(List.of(partition0));
+        consumer.seek(partition0, 3L);
+
+        pipeline.submit(List.of(record(0L, "{}"), record(1L, "{}"), record(2L, "{}")), consumer);
+
+        await(() -> {
+            pipeline.commit(consumer);
+            return consumer.position(partition0) == 1L;
+        });
+        assertEquals(1L, consumer.committed(Set.of(partition0)).get(partition0).offset());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void parse_RecoversARecordWhichDidntGetToThePersistStage() throws InterruptedException {
+        pipeline = pipeline();
+        consumer.assign(List.of(partition0));
+        //the parse stage fails after decoding, while it builds the record for the persist stage
+        AtomicBoolean failed = new AtomicBoolean();
+        ConsumerRecord<Long, byte[]> unqueueable = new ConsumerRecord<>("library-events", 0, 0L, 0L, "{}".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public TimestampType timestampType() {
+                if (failed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("Parse stage failed");
+                }
+                return super.timestampType();
+            }
+        };
+
+        pipeline.submit(List.of(unqueueable), consumer);
+
+        ArgumentCaptor<ConsumerRecord<Long, LibraryEvent>> recovered = ArgumentCaptor.forClass(ConsumerRecord.class);
+        verify(libraryEventsService, timeout(2000)).processLibraryEventOrRecover(recovered.capture());
+        assertNull(recovered.getValue().value());
+        assertNotNull(DecodeFailure.of(recovered.getValue().headers()));
+        await(() -> {
+            pipeline.commit(consumer);
+            OffsetAndMetadata committed = consumer.committed(Set.of(partition0)).get(partition0);
+            return committed != null && committed.offset() == 1L;
+        });
+    }
+
+    @Test
+    void pipeline_RequiresRoomForAPollAboveThePauseThreshold() {
+        LibraryEventsProperties libraryEventsProperties = new LibraryEventsProperties();
+        libraryEventsProperties.getConsumer().getPipeline().setQueueCapacity(1000);
+
+        //200 free slots per queue, less than the 500 records a poll may queue on one key
+        assertThrows(IllegalStateException.class, () -> pipeline = pipeline(libraryEventsProperties, new KafkaProperties()));
+
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.getConsumer().setMaxPollRecords(200);
+        pipeline = pipeline(libraryEventsProperties, kafkaProperties);
+    }
+
+    private LibraryEventsPipeline pipeline() {
+        return pipeline(new LibraryEventsProperties(), new KafkaProperties());
+    }
+
+    private LibraryEventsPipeline pipeline(LibraryEventsProperties libraryEventsProperties, KafkaProperties kafkaProperties) {
+        return new LibraryEventsPipeline(libraryEventsService, mock(KafkaListenerEndpointRegistry.class), libraryEventsProperties,
+                new ConsumerMetrics(new SimpleMeterRegistry()), new SimpleMeterRegistry(), kafkaProperties);
+    }
+
+    private static ConsumerRecord<Long, byte[]> record(long offset, String value) {
+        return new ConsumerRecord<>("library-events", 0, offset, offset, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 200 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,97 @@
+package com.techstack.kafka.unit.rebalance;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import com.techstack.kafka.rebalance.LibraryEventsRebalanceListener;
+import com.techstack.kafka.rebalance.PartitionVersions;
+import com.techstack.kafka.rebalance.PartitionWarmUp;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class LibraryEventsRebalanceListenerUnitTest {
+
+    ConsumerAwareRebalanceListener delegate = mock(ConsumerAwareRebalanceListener.class);
+
+    PartitionWarmUp partitionWarmUp = mock(PartitionWarmUp.class);
+
+    PartitionVersions partitionVersions = new PartitionVersions(new LibraryEventsProperties());
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    Consumer<?, ?> consumer = mock(Consumer.class);
+
+    List<TopicPartition> partitions = List.of(new TopicPartition("library-events", 0), new TopicPartition("library-events", 1));
+
+    @Test
+    void assigned_WarmsUpBeforeTheModesListener() {
+        LibraryEventsRebalanceListener listener = new LibraryEventsRebalanceListener(delegate, partitionWarmUp, partitionVersions, meterRegistry);
+
+        listener.onPartitionsAssigned(consumer, partitions);
+
+        InOrder order = inOrder(partitionWarmUp, delegate);
+        order.verify(partitionWarmUp).warmUp(consumer, partitions);
+        order.verify(delegate).onPartitionsAssigned(consumer, partitions);
+        assertEquals(2.0, meterRegistry.counter("library.events.consumer.rebalance.partitions", "event", "assigned").count());
+        assertEquals(1, meterRegistry.timer("library.events.consumer.rebalance.warmup").count());
+    }
+
+    @Test
+    void revoked_DropsTheVersionsOnceTheModesListenerCommitted() {
+        LibraryEventsRebalanceListener listener = new LibraryEventsRebalanceListener(delegate, partitionWarmUp, partitionVersions, meterRegistry);
+        partitionVersions.assigned(0);
+        partitionVersions.stored(record(0, 1L, 20L));
+
+        listener.onPartitionsRevokedBeforeCommit(consumer, partitions);
+        //the work in flight may still be stored, the versions stay until it's committed
+        assertTrue(partitionVersions.isStale(record(0, 1L, 10L)));
+        listener.onPartitionsRevokedAfterCommit(consumer, partitions);
+
+        InOrder order = inOrder(delegate);
+        order.verify(delegate).onPartitionsRevokedBeforeCommit(consumer, partitions);
+        order.verify(delegate).onPartitionsRevokedAfterCommit(consumer, partitions);
+        assertFalse(partitionVersions.isStale(record(0, 1L, 10L)));
+        assertEquals(0, partitionVersions.size(0));
+
+        //the pause lasts until the next assignment
+        listener.onPartitionsAssigned(consumer, partitions);
+        assertEquals(1, meterRegistry.timer("library.events.consumer.rebalance.pause").count());
+    }
+
+    @Test
+    void lost_DropsTheVersions_WithoutAModesListener() {
+        LibraryEventsRebalanceListener listener = new LibraryEventsRebalanceListener(null, partitionWarmUp, partitionVersions, meterRegistry);
+        partitionVersions.assigned(1);
+
+        listener.onPartitionsLost(consumer, partitions);
+        listener.onPartitionsAssigned(consumer, partitions);
+
+        verify(partitionWarmUp).warmUp(consumer, partitions);
+        assertEquals(2.0, meterRegistry.counter("library.events.consumer.rebalance.partitions", "event", "lost").count());
+        assertEquals(0, meterRegistry.timer("library.events.consumer.rebalance.pause").count());
+        assertEquals(0, partitionVersions.size(1));
+    }
+
+    private static ConsumerRecord<Long, LibraryEvent> record(int partition, Long libraryEventId, Long eventSequence) {
+        LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventId(libraryEventId)
+                .libraryEventType(LibraryEventType.UPDATE)
+                .eventSequence(eventSequence)
+                .build();
+        return new ConsumerRecord<>("library-events", partition, 0L, libraryEventId, libraryEvent);
+    }
+}
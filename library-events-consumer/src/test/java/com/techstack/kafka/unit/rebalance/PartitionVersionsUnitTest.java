@@ -0,0 +1,67 @@
+package com.techstack.kafka.unit.rebalance;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import com.techstack.kafka.rebalance.PartitionVersions;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PartitionVersionsUnitTest {
+
+    PartitionVersions partitionVersions = partitionVersions(2);
+
+    @Test
+    void isStale_OnlyAtOrBelowTheStoredSequence() {
+        partitionVersions.assigned(0);
+        partitionVersions.stored(record("library-events", 0, 1L, 20L));
+
+        assertTrue(partitionVersions.isStale(record("library-events", 0, 1L, 10L)));
+        assertTrue(partitionVersions.isStale(record("library-events", 0, 1L, 20L)));
+        assertFalse(partitionVersions.isStale(record("library-events", 0, 1L, 21L)));
+        //unknown id, other partition, retry topic: the database decides
+        assertFalse(partitionVersions.isStale(record("library-events", 0, 2L, 10L)));
+        assertFalse(partitionVersions.isStale(record("library-events", 1, 1L, 10L)));
+        assertFalse(partitionVersions.isStale(record("library-events-retry-1000", 0, 1L, 10L)));
+    }
+
+    @Test
+    void stored_NotForUnassignedPartitionsAndBounded() {
+        partitionVersions.stored(record("library-events", 0, 1L, 20L));
+        assertEquals(0, partitionVersions.size(0));
+
+        partitionVersions.assigned(0);
+        partitionVersions.stored(record("library-events", 0, 1L, 20L));
+        partitionVersions.stored(record("library-events", 0, 2L, 20L));
+        partitionVersions.stored(record("library-events", 0, 3L, 20L));
+        assertEquals(2, partitionVersions.size(0));
+
+        //the ids which are cached still move on
+        partitionVersions.stored(record("library-events", 0, 1L, 30L));
+        assertTrue(partitionVersions.isStale(record("library-events", 0, 1L, 25L)));
+
+        partitionVersions.evict(List.of(0));
+        assertFalse(partitionVersions.isStale(record("library-events", 0, 1L, 25L)));
+    }
+
+    private static PartitionVersions partitionVersions(int maxEntriesPerPartition) {
+        LibraryEventsProperties libraryEventsProperties = new LibraryEventsProperties();
+        libraryEventsProperties.getConsumer().getRebalance().setCachedVersionsPerPartition(maxEntriesPerPartition);
+        return new PartitionVersions(libraryEventsProperties);
+    }
+
+    private static ConsumerRecord<Long, LibraryEvent> record(String topic, int partition, Long libraryEventId, Long eventSequence) {
+        LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventId(libraryEventId)
+                .libraryEventType(LibraryEventType.UPDATE)
+                .eventSequence(eventSequence)
+                .build();
+        return new ConsumerRecord<>(topic, partition, 0L, libraryEventId, libraryEvent);
+    }
+}
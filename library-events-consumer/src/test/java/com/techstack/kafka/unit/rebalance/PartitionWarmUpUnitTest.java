@@ -0,0 +1,145 @@
+package com.techstack.kafka.unit.rebalance;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import com.techstack.kafka.index.LibraryEventIdIndex;
+import com.techstack.kafka.rebalance.PartitionVersions;
+import com.techstack.kafka.rebalance.PartitionWarmUp;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PartitionWarmUpUnitTest {
+
+    static final List<Long> STORED_IDS = LongStream.rangeClosed(1, 20).boxed().collect(Collectors.toList());
+
+    JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    LibraryEventIdIndex libraryEventIdIndex = mock(LibraryEventIdIndex.class);
+
+    LibraryEventsProperties libraryEventsProperties = new LibraryEventsProperties();
+
+    PartitionVersions partitionVersions = new PartitionVersions(libraryEventsProperties);
+
+    Consumer<?, ?> consumer = mock(Consumer.class);
+
+    /**
+     * Released by the test, the version query waits for it
+     */
+    CountDownLatch queryReleased = new CountDownLatch(1);
+
+    PartitionWarmUp partitionWarmUp;
+
+    @BeforeEach
+    void setUp() {
+        libraryEventsProperties.getConsumer().getRebalance().setWarmUpTimeout(Duration.ofSeconds(1));
+        when(libraryEventIdIndex.awaitLoaded(Duration.ofSeconds(1))).thenReturn(true);
+        when(consumer.partitionsFor("library-events")).thenReturn(List.of(
+                new PartitionInfo("library-events", 0, null, null, null),
+                new PartitionInfo("library-events", 1, null, null, null)));
+        //the stored ids with event sequence 100 + id
+        doAnswer(invocation -> {
+            queryReleased.await(5, TimeUnit.SECONDS);
+            RowCallbackHandler rowCallbackHandler = invocation.getArgument(1);
+            for (Long libraryEventId : STORED_IDS) {
+                ResultSet resultSet = mock(ResultSet.class);
+                when(resultSet.getLong(1)).thenReturn(libraryEventId);
+                when(resultSet.getLong(2)).thenReturn(100 + libraryEventId);
+                rowCallbackHandler.processRow(resultSet);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object.class));
+        partitionWarmUp = new PartitionWarmUp(jdbcTemplate, libraryEventIdIndex, partitionVersions, libraryEventsProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        partitionWarmUp.destroy();
+    }
+
+    @Test
+    void warmUp_LoadsTheVersionsOfTheAssignedPartitions_OffTheConsumerThread() throws InterruptedException {
+        //returns while the query is still running
+        partitionWarmUp.warmUp(consumer, List.of(new TopicPartition("library-events", 0)));
+        verify(libraryEventIdIndex).awaitLoaded(Duration.ofSeconds(1));
+        assertEquals(0, partitionVersions.size(0));
+
+        queryReleased.countDown();
+        long inPartition0 = STORED_IDS.stream().filter(libraryEventId -> partition(libraryEventId) == 0).count();
+        await(() -> partitionVersions.size(0) == inPartition0);
+        assertEquals(0, partitionVersions.size(1));
+        Long libraryEventId = STORED_IDS.stream().filter(id -> partition(id) == 0).findFirst().orElseThrow();
+        assertTrue(partitionVersions.isStale(record(0, libraryEventId, 100 + libraryEventId)));
+        assertFalse(partitionVersions.isStale(record(0, libraryEventId, 101 + libraryEventId)));
+    }
+
+    @Test
+    void warmUp_AssignmentsWhichArriveTogetherShareOneQuery() throws InterruptedException {
+        partitionWarmUp.warmUp(consumer, List.of(new TopicPartition("library-events", 0)));
+        partitionWarmUp.warmUp(consumer, List.of(new TopicPartition("library-events", 1)));
+        queryReleased.countDown();
+
+        await(() -> partitionVersions.size(0) + partitionVersions.size(1) == STORED_IDS.size());
+        //the first query may have started before the second assignment came in
+        verify(jdbcTemplate, atMost(2)).query(anyString(), any(RowCallbackHandler.class), any(Object.class));
+    }
+
+    @Test
+    void warmUp_NothingForOtherTopics() {
+        partitionWarmUp.warmUp(consumer, List.of(new TopicPartition("library-events-retry-1000", 0)));
+
+        verify(libraryEventIdIndex, never()).awaitLoaded(any(Duration.class));
+        verify(jdbcTemplate, times(0)).query(anyString(), any(RowCallbackHandler.class), any(Object.class));
+    }
+
+    private static int partition(Long libraryEventId) {
+        return Utils.toPositive(Utils.murmur2(new LongSerializer().serialize("library-events", libraryEventId))) % 2;
+    }
+
+    private static ConsumerRecord<Long, LibraryEvent> record(int partition, Long libraryEventId, Long eventSequence) {
+        LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventId(libraryEventId)
+                .libraryEventType(LibraryEventType.UPDATE)
+                .eventSequence(eventSequence)
+                .build();
+        return new ConsumerRecord<>("library-events", partition, 0L, libraryEventId, libraryEvent);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 200 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,51 @@
+package com.techstack.kafka.unit.rebalance;
+
+import com.techstack.kafka.rebalance.StaticMembershipConsumerFactory;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.ConsumerFactory;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class StaticMembershipConsumerFactoryUnitTest {
+
+    @SuppressWarnings("unchecked")
+    ConsumerFactory<Long, String> delegate = mock(ConsumerFactory.class);
+
+    StaticMembershipConsumerFactory<Long, String> consumerFactory = new StaticMembershipConsumerFactory<>(delegate, "library-events-consumer-0");
+
+    @Test
+    void createConsumer_GroupInstanceIdPerConsumerThread() {
+        Properties properties = new Properties();
+        properties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "100");
+
+        consumerFactory.createConsumer("library-events-listener-group", "consumer", "-0", properties);
+        consumerFactory.createConsumer("library-events-listener-group", "consumer", "-1", properties);
+
+        assertEquals("library-events-consumer-0-0", propertiesOf("-0").getProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG));
+        Properties secondConsumer = propertiesOf("-1");
+        assertEquals("library-events-consumer-0-1", secondConsumer.getProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG));
+        //the container's overrides are passed on, its own properties stay as they were
+        assertEquals("100", secondConsumer.getProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG));
+        assertEquals(1, properties.size());
+    }
+
+    @Test
+    void createConsumer_InstanceIdAsItIsWithoutSuffix() {
+        consumerFactory.createConsumer("library-events-listener-group", "consumer", null);
+
+        assertEquals("library-events-consumer-0", propertiesOf(null).getProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG));
+    }
+
+    private Properties propertiesOf(String clientIdSuffix) {
+        ArgumentCaptor<Properties> properties = ArgumentCaptor.forClass(Properties.class);
+        verify(delegate).createConsumer(eq("library-events-listener-group"), eq("consumer"), eq(clientIdSuffix), properties.capture());
+        return properties.getValue();
+    }
+}
@@ -0,0 +1,123 @@
+package com.techstack.kafka.unit.service;
+
+import com.techstack.kafka.autoscaling.ProcessingTime;
+import com.techstack.kafka.entity.Book;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import com.techstack.kafka.index.LibraryEventIdIndex;
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.metrics.ConsumerMetrics;
+import com.techstack.kafka.persistence.LibraryEventPersister;
+import com.techstack.kafka.rebalance.PartitionVersions;
+import com.techstack.kafka.repository.LibraryEventsRepository;
+import com.techstack.kafka.service.LibraryEventsBatchService;
+import com.techstack.kafka.service.LibraryEventsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LibraryEventsBatchServiceUnitTest {
+
+    LibraryEventsService libraryEventsService = mock(LibraryEventsService.class);
+
+    LibraryEventsRepository libraryEventsRepository = mock(LibraryEventsRepository.class);
+
+    LibraryEventPersister libraryEventPersister = mock(LibraryEventPersister.class);
+
+    LibraryEventIdIndex libraryEventIdIndex = mock(LibraryEventIdIndex.class);
+
+    TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+
+    PartitionVersions partitionVersions = mock(PartitionVersions.class);
+
+    LibraryEventsBatchService batchService = new LibraryEventsBatchService(libraryEventsService, libraryEventsRepository,
+            libraryEventPersister, libraryEventIdIndex, transactionTemplate, new ProcessingTime(),
+            new ConsumerMetrics(new SimpleMeterRegistry()), mock(LogSampling.class), partitionVersions);
+
+    List<ConsumerRecord<Long, LibraryEvent>> consumerRecords = List.of(record(1L), record(2L));
+
+    @BeforeEach
+    void setUp() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(libraryEventsRepository.findAllById(any())).thenReturn(List.of());
+    }
+
+    @Test
+    void processLibraryEvents_FailedTransactionFallsBackToOneByOne() {
+        doThrow(new DataIntegrityViolationException("Duplicate book")).when(libraryEventPersister).saveAll(anyCollection());
+
+        batchService.processLibraryEvents(consumerRecords);
+
+        verify(libraryEventsService, times(2)).processLibraryEventOrRecover(any());
+        verify(libraryEventIdIndex, never()).add(any());
+    }
+
+    @Test
+    void processLibraryEvents_NoFallbackOnceCommitted() {
+        doThrow(new IllegalStateException("Index failed")).when(libraryEventIdIndex).add(any());
+
+        batchService.processLibraryEvents(consumerRecords);
+
+        //the records are stored, the steps after the commit go on and nothing is processed again
+        verify(libraryEventPersister).saveAll(anyCollection());
+        verify(libraryEventsService, never()).processLibraryEventOrRecover(any());
+        verify(partitionVersions, times(2)).stored(any());
+    }
+
+    @Test
+    void processLibraryEvents_UnknownUpdateIsRecovered() {
+        ConsumerRecord<Long, LibraryEvent> unknownUpdate = record(3L, LibraryEventType.UPDATE);
+
+        batchService.processLibraryEvents(List.of(record(1L), unknownUpdate));
+
+        verify(libraryEventsService).handleRecovery(eq(unknownUpdate), isA(IllegalArgumentException.class));
+        verify(partitionVersions, times(1)).stored(any());
+    }
+
+    @Test
+    void processLibraryEvents_StoredUpdateIsWrittenOnlyIfNewer() {
+        LibraryEvent storedLibraryEvent = record(2L).value();
+        when(libraryEventsRepository.findAllById(any())).thenReturn(List.of(storedLibraryEvent));
+        //another consumer wrote a newer version since the lookup
+        when(libraryEventPersister.saveIfNewer(any())).thenReturn(false);
+
+        ConsumerRecord<Long, LibraryEvent> newRecord = record(1L);
+        batchService.processLibraryEvents(List.of(newRecord, record(2L, LibraryEventType.UPDATE)));
+
+        verify(libraryEventPersister).saveAll(List.of(newRecord.value()));
+        verify(libraryEventPersister).saveIfNewer(any());
+        verify(libraryEventIdIndex).add(1L);
+        verify(libraryEventIdIndex, never()).add(2L);
+        verify(partitionVersions, times(1)).stored(any());
+    }
+
+    private static ConsumerRecord<Long, LibraryEvent> record(Long libraryEventId) {
+        return record(libraryEventId, LibraryEventType.NEW);
+    }
+
+    private static ConsumerRecord<Long, LibraryEvent> record(Long libraryEventId, LibraryEventType libraryEventType) {
+        LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventId(libraryEventId)
+                .libraryEventType(libraryEventType)
+                .book(Book.builder().bookId(libraryEventId.intValue()).bookName("Kafka Using Spring Boot").bookAuthor("Dilip").build())
+                .build();
+        return new ConsumerRecord<>("library-events", 0, libraryEventId, libraryEventId, libraryEvent);
+    }
+}
@@ -0,0 +1,75 @@
+package com.techstack.kafka.unit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techstack.kafka.autoscaling.ProcessingTime;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.entity.Book;
+import com.techstack.kafka.entity.LibraryEvent;
+import com.techstack.kafka.entity.LibraryEventType;
+import com.techstack.kafka.index.LibraryEventIdIndex;
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.metrics.ConsumerMetrics;
+import com.techstack.kafka.persistence.LibraryEventPersister;
+import com.techstack.kafka.retry.QuarantinePublisher;
+import com.techstack.kafka.rebalance.PartitionVersions;
+import com.techstack.kafka.repository.LibraryEventsRepository;
+import com.techstack.kafka.retry.RetryTopics;
+import com.techstack.kafka.service.LibraryEventsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LibraryEventsServiceUnitTest {
+
+    @SuppressWarnings("unchecked")
+    KafkaTemplate<Long, String> kafkaTemplate = mock(KafkaTemplate.class);
+
+    LibraryEventsService libraryEventsService = new LibraryEventsService(new ObjectMapper(), kafkaTemplate,
+            mock(LibraryEventsRepository.class), mock(LibraryEventPersister.class), mock(LibraryEventIdIndex.class),
+            new RetryTopics(new LibraryEventsProperties()), new ProcessingTime(), new ConsumerMetrics(new SimpleMeterRegistry()),
+            mock(LogSampling.class), mock(PartitionVersions.class), mock(QuarantinePublisher.class));
+
+    /**
+     * libraryEventId 000 is the simulated "Temporary Network Issue", it always goes to the recovery
+     */
+    ConsumerRecord<Long, LibraryEvent> failingRecord = new ConsumerRecord<>("library-events", 0, 0L, 0L, LibraryEvent.builder()
+            .libraryEventId(0L)
+            .libraryEventType(LibraryEventType.NEW)
+            .book(Book.builder().bookId(456).bookName("Kafka Using Spring Boot").bookAuthor("Dilip").build())
+            .build());
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void processLibraryEventOrRecover_RecoveredToTheRetryTopic() {
+        SettableListenableFuture<SendResult<Long, String>> sent = new SettableListenableFuture<>();
+        sent.set(new SendResult<>(mock(ProducerRecord.class), new RecordMetadata(new TopicPartition("library-events-retry-1000", 0),
+                0, 0, 0, 0L, 0, 0)));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(sent);
+
+        assertDoesNotThrow(() -> libraryEventsService.processLibraryEventOrRecover(failingRecord));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void processLibraryEventOrRecover_ThrowsWhenTheRecoverySendFails() {
+        SettableListenableFuture<SendResult<Long, String>> failed = new SettableListenableFuture<>();
+        failed.setException(new KafkaException("Broker not available"));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(failed);
+
+        //not stored and on no retry topic: the caller must consume it again rather than commit past it
+        assertThrows(KafkaException.class, () -> libraryEventsService.processLibraryEventOrRecover(failingRecord));
+    }
+}
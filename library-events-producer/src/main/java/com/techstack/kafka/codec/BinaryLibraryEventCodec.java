@@ -0,0 +1,211 @@
+package com.techstack.kafka.codec;
+
+import com.techstack.kafka.domain.Book;
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.domain.LibraryEventType;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary format. Field names aren't repeated in every record and numbers are varints,
+ * which makes a typical record about a third of its JSON size.
+ *
+ * <pre>
+ * byte    version
+ * byte    presence flags, one bit per nullable field
+ * varlong libraryEventId (zigzag), the same bytes as a varint for values in the int range
+ * byte    libraryEventType ordinal
+ * varint  book.bookId (zigzag)
+ * varint  length + UTF-8 bytes of book.bookName
+ * varint  length + UTF-8 bytes of book.bookAuthor
+ * </pre>
+ *
+ * Absent (null) fields are skipped entirely. The consumer has its own copy of this codec, both have to be
+ * changed together; a new layout needs a new version.
+ */
+public class BinaryLibraryEventCodec implements LibraryEventCodec {
+
+    public static final String FORMAT = "binary";
+
+    private static final byte VERSION = 1;
+
+    private static final int LIBRARY_EVENT_ID = 1;
+    private static final int LIBRARY_EVENT_TYPE = 1 << 1;
+    private static final int BOOK = 1 << 2;
+    private static final int BOOK_ID = 1 << 3;
+    private static final int BOOK_NAME = 1 << 4;
+    private static final int BOOK_AUTHOR = 1 << 5;
+
+    private static final LibraryEventType[] LIBRARY_EVENT_TYPES = LibraryEventType.values();
+
+    @Override
+    public String format() {
+        return FORMAT;
+    }
+
+    @Override
+    public byte[] encode(LibraryEvent libraryEvent) {
+        Book book = libraryEvent.getBook();
+        byte[] bookName = book == null || book.getBookName() == null ? null : book.getBookName().getBytes(StandardCharsets.UTF_8);
+        byte[] bookAuthor = book == null || book.getBookAuthor() == null ? null : book.getBookAuthor().getBytes(StandardCharsets.UTF_8);
+
+        int flags = 0;
+        int size = 2;
+        if (libraryEvent.getLibraryEventId() != null) {
+            flags |= LIBRARY_EVENT_ID;
+            size += 10;
+        }
+        if (libraryEvent.getLibraryEventType() != null) {
+            flags |= LIBRARY_EVENT_TYPE;
+            size += 1;
+        }
+        if (book != null) {
+            flags |= BOOK;
+            if (book.getBookId() != null) {
+                flags |= BOOK_ID;
+                size += 5;
+            }
+            if (bookName != null) {
+                flags |= BOOK_NAME;
+                size += 5 + bookName.length;
+            }
+            if (bookAuthor != null) {
+                flags |= BOOK_AUTHOR;
+                size += 5 + bookAuthor.length;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        buffer.put((byte) flags);
+        if ((flags & LIBRARY_EVENT_ID) != 0) {
+            writeVarLong(buffer, zigZag(libraryEvent.getLibraryEventId()));
+        }
+        if ((flags & LIBRARY_EVENT_TYPE) != 0) {
+            buffer.put((byte) libraryEvent.getLibraryEventType().ordinal());
+        }
+        if ((flags & BOOK_ID) != 0) {
+            writeVarInt(buffer, zigZag(book.getBookId()));
+        }
+        if ((flags & BOOK_NAME) != 0) {
+            writeBytes(buffer, bookName);
+        }
+        if ((flags & BOOK_AUTHOR) != 0) {
+            writeBytes(buffer, bookAuthor);
+        }
+
+        if (buffer.position() == size) {
+            return buffer.array();
+        }
+        byte[] data = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, data, 0, data.length);
+        return data;
+    }
+
+    @Override
+    public LibraryEvent decode(byte[] data) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new SerializationException("Unsupported binary LibraryEvent version " + version);
+            }
+            int flags = buffer.get();
+
+            LibraryEvent libraryEvent = new LibraryEvent();
+            if ((flags & LIBRARY_EVENT_ID) != 0) {
+                libraryEvent.setLibraryEventId(unZigZag(readVarLong(buffer)));
+            }
+            if ((flags & LIBRARY_EVENT_TYPE) != 0) {
+                libraryEvent.setLibraryEventType(LIBRARY_EVENT_TYPES[buffer.get()]);
+            }
+            if ((flags & BOOK) != 0) {
+                Book book = new Book();
+                if ((flags & BOOK_ID) != 0) {
+                    book.setBookId(unZigZag(readVarInt(buffer)));
+                }
+                if ((flags & BOOK_NAME) != 0) {
+                    book.setBookName(readString(buffer));
+                }
+                if ((flags & BOOK_AUTHOR) != 0) {
+                    book.setBookAuthor(readString(buffer));
+                }
+                libraryEvent.setBook(book);
+            }
+            return libraryEvent;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new SerializationException("Truncated or corrupt binary LibraryEvent", e);
+        }
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("Malformed varint in binary LibraryEvent");
+    }
+
+    private static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("Malformed varint in binary LibraryEvent");
+    }
+
+    private static void writeBytes(ByteBuffer buffer, byte[] bytes) {
+        writeVarInt(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
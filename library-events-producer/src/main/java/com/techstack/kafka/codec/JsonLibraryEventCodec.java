@@ -0,0 +1,57 @@
+package com.techstack.kafka.codec;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.techstack.kafka.domain.LibraryEvent;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.IOException;
+
+/**
+ * The original JSON format, written straight into a byte[] without the intermediate String.
+ *
+ * The writer and reader are built once for LibraryEvent, so a send doesn't resolve the root serializer
+ * again. Jackson writes through the thread local buffers of its BufferRecycler, the only array left per
+ * record is the exactly sized byte[] handed to the producer.
+ */
+public class JsonLibraryEventCodec implements LibraryEventCodec {
+
+    public static final String FORMAT = "json";
+
+    private final ObjectWriter objectWriter;
+    private final ObjectReader objectReader;
+
+    public JsonLibraryEventCodec() {
+        this(new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+    }
+
+    public JsonLibraryEventCodec(ObjectMapper objectMapper) {
+        this.objectWriter = objectMapper.writerFor(LibraryEvent.class);
+        this.objectReader = objectMapper.readerFor(LibraryEvent.class);
+    }
+
+    @Override
+    public String format() {
+        return FORMAT;
+    }
+
+    @Override
+    public byte[] encode(LibraryEvent libraryEvent) {
+        try {
+            return objectWriter.writeValueAsBytes(libraryEvent);
+        } catch (IOException e) {
+            throw new SerializationException("Can't serialize the LibraryEvent to JSON", e);
+        }
+    }
+
+    @Override
+    public LibraryEvent decode(byte[] data) {
+        try {
+            return objectReader.readValue(data);
+        } catch (IOException e) {
+            throw new SerializationException("Can't deserialize the LibraryEvent from JSON", e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.techstack.kafka.codec;
+
+import com.techstack.kafka.domain.LibraryEvent;
+
+/**
+ * Wire format of the LibraryEvent record value.
+ *
+ * The format name is written into the {@link #FORMAT_HEADER} record header, so records of different formats
+ * can share the topic and the consumer picks the matching codec per record.
+ */
+public interface LibraryEventCodec {
+
+    String FORMAT_HEADER = "content-format";
+
+    /**
+     * @return the format name written into the {@link #FORMAT_HEADER} header
+     */
+    String format();
+
+    byte[] encode(LibraryEvent libraryEvent);
+
+    LibraryEvent decode(byte[] data);
+}
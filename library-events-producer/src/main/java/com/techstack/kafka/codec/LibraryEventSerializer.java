@@ -0,0 +1,86 @@
+package com.techstack.kafka.codec;
+
+import com.techstack.kafka.domain.LibraryEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka value serializer for LibraryEvent. Writes the record with the codec selected by
+ * {@link LibraryEventCodecs#CODEC_CONFIG} (json by default) and tags it with the format header.
+ *
+ * Kafka instantiates the serializer itself, so the encode time and the payload size are recorded on
+ * the global registry, to which Spring Boot adds the application's MeterRegistry.
+ */
+public class LibraryEventSerializer implements Serializer<LibraryEvent> {
+
+    public static final String SERIALIZATION_METRIC = "library.events.producer.serialization";
+    public static final String PAYLOAD_SIZE_METRIC = "library.events.producer.payload.size";
+
+    private LibraryEventCodec codec = LibraryEventCodecs.forFormat(JsonLibraryEventCodec.FORMAT);
+    private Header formatHeader = formatHeader(codec);
+    private Timer serializationTimer = serializationTimer(codec);
+    private DistributionSummary payloadSize = payloadSize(codec);
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object format = configs.get(LibraryEventCodecs.CODEC_CONFIG);
+        if (format != null) {
+            codec = LibraryEventCodecs.forFormat(format.toString());
+            formatHeader = formatHeader(codec);
+            serializationTimer = serializationTimer(codec);
+            payloadSize = payloadSize(codec);
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, LibraryEvent libraryEvent) {
+        return libraryEvent == null ? null : encode(libraryEvent);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, LibraryEvent libraryEvent) {
+        if (libraryEvent == null) {
+            return null;
+        }
+        headers.add(formatHeader);
+        return encode(libraryEvent);
+    }
+
+    private byte[] encode(LibraryEvent libraryEvent) {
+        long startNanos = System.nanoTime();
+        byte[] data = codec.encode(libraryEvent);
+        serializationTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        payloadSize.record(data.length);
+        return data;
+    }
+
+    private static Timer serializationTimer(LibraryEventCodec codec) {
+        return Timer.builder(SERIALIZATION_METRIC)
+                .description("Time to encode a LibraryEvent into the record value")
+                .tag("format", codec.format())
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    private static DistributionSummary payloadSize(LibraryEventCodec codec) {
+        return DistributionSummary.builder(PAYLOAD_SIZE_METRIC)
+                .description("Size of the encoded LibraryEvent record value")
+                .baseUnit("bytes")
+                .tag("format", codec.format())
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    private static Header formatHeader(LibraryEventCodec codec) {
+        return new RecordHeader(LibraryEventCodec.FORMAT_HEADER, codec.format().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,181 @@
+package com.techstack.kafka.config;
+
+import com.techstack.kafka.domain.DeliveryMode;
+import com.techstack.kafka.outbox.LibraryEventOutbox;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Application specific settings which are bound from the "library-events" block of application.yml
+ */
+@Data
+@ConfigurationProperties(prefix = "library-events")
+public class LibraryEventsProperties {
+
+    private final Batch batch = new Batch();
+
+    private final Stream stream = new Stream();
+
+    private final Delivery delivery = new Delivery();
+
+    private final Id id = new Id();
+
+    private final Coalesce coalesce = new Coalesce();
+
+    private final Outbox outbox = new Outbox();
+
+    private final Logging logging = new Logging();
+
+    private final CallbackExecutor callbackExecutor = new CallbackExecutor();
+
+    @Data
+    public static class Batch {
+
+        /**
+         * Maximum number of LibraryEvents accepted in a single batch request
+         */
+        private int maxSize = 1000;
+
+        /**
+         * How long the batch endpoint waits for the broker acknowledgements of the whole batch
+         */
+        private Duration ackTimeout = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Stream {
+
+        /**
+         * Maximum number of records handed to the KafkaTemplate but not yet acknowledged.
+         * Once reached, the request body is not read any further until acknowledgements come back.
+         */
+        private int maxInFlight = 5000;
+
+        /**
+         * Maximum number of error messages reported back in the summary
+         */
+        private int maxErrors = 100;
+
+        /**
+         * How long the stream endpoint waits for the outstanding acknowledgements once the body is consumed
+         */
+        private Duration ackTimeout = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Delivery {
+
+        /**
+         * How long a request waits for the acknowledgement in the modes which await it
+         */
+        private Duration ackTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Producer properties per delivery mode, applied on top of "spring.kafka.producer"
+         */
+        private Map<DeliveryMode, Map<String, String>> producer = new EnumMap<>(DeliveryMode.class);
+    }
+
+    @Data
+    public static class Id {
+
+        /**
+         * Part of every generated libraryEventId, has to be unique per running producer instance (0 - 1023)
+         */
+        private long workerId = 0;
+    }
+
+    @Data
+    public static class Coalesce {
+
+        /**
+         * Whether PUT UPDATEs of the same LibraryEvent are collapsed to the last one within the window
+         */
+        private boolean enabled = false;
+
+        /**
+         * How long an UPDATE is held back for later UPDATEs of the same LibraryEvent
+         */
+        private Duration window = Duration.ofMillis(50);
+
+        /**
+         * Maximum number of LibraryEvents with a pending UPDATE, UPDATEs beyond that are published right away
+         */
+        private int maxPending = 10_000;
+    }
+
+    @Data
+    public static class Outbox {
+
+        /**
+         * Whether LibraryEvents are kept in a local outbox when they can't be sent to Kafka
+         */
+        private boolean enabled = false;
+
+        /**
+         * ON_FAILURE keeps only the failed sends, ALWAYS writes every fire-and-forget send to the outbox first
+         */
+        private LibraryEventOutbox.Mode mode = LibraryEventOutbox.Mode.ON_FAILURE;
+
+        /**
+         * Local directory of the outbox segments, has to be unique per running instance.
+         * Outside of the working directory by default, so a checkout never picks up (or ships) the segments
+         */
+        private String directory = System.getProperty("user.home") + "/.library-events/outbox";
+
+        /**
+         * Size of one memory mapped segment file
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        private LibraryEventOutbox.FsyncPolicy fsync = LibraryEventOutbox.FsyncPolicy.INTERVAL;
+
+        /**
+         * How often the outbox is forced to the disk with the INTERVAL fsync policy
+         */
+        private Duration fsyncInterval = Duration.ofSeconds(1);
+
+        /**
+         * How often the drainer replays the outbox to Kafka
+         */
+        private Duration drainInterval = Duration.ofMillis(500);
+
+        /**
+         * Maximum number of LibraryEvents replayed per second
+         */
+        private int replayRate = 5000;
+
+        /**
+         * How long the drainer waits for the acknowledgements of one run
+         */
+        private Duration ackTimeout = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Logging {
+
+        /**
+         * Log lines per second and stage for the per record logging, 0 logs every record
+         */
+        private long sampleRate = 10;
+    }
+
+    @Data
+    public static class CallbackExecutor {
+
+        /**
+         * Threads which run the send callbacks instead of the producer network thread
+         */
+        private int threads = 1;
+
+        /**
+         * Callbacks waiting for a thread, beyond that the network thread runs them itself
+         */
+        private int queueCapacity = 10_000;
+    }
+}
@@ -0,0 +1,21 @@
+package com.techstack.kafka.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.MicrometerProducerListener;
+
+/**
+ * Binds the metrics of the Kafka producer (batch-size-avg, record-queue-time-avg, buffer-available-bytes, ...)
+ * to the MeterRegistry, as "kafka.producer.*" meters tagged with the client.id.
+ * The producers of the DeliveryModeTemplates register the same listener themselves.
+ */
+@Configuration
+public class ProducerMetricsConfig {
+
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer producerMetricsCustomizer(MeterRegistry meterRegistry) {
+        return producerFactory -> producerFactory.addListener(new MicrometerProducerListener<>(meterRegistry));
+    }
+}
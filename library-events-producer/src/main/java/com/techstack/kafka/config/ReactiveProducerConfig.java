@@ -0,0 +1,27 @@
+package com.techstack.kafka.config;
+
+import com.techstack.kafka.domain.LibraryEvent;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
+import reactor.kafka.sender.SenderOptions;
+
+/**
+ * Reactive producer which is used by the WebFlux controller.
+ * It is built from the same "spring.kafka.producer" properties as the KafkaTemplate, so both stacks can be
+ * compared against the same brokers with the same producer settings.
+ *
+ * Enable it with the "reactive" profile, e.g. --spring.profiles.active=local,reactive
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveProducerConfig {
+
+    @Bean
+    public ReactiveKafkaProducerTemplate<Long, LibraryEvent> reactiveKafkaProducerTemplate(KafkaProperties kafkaProperties) {
+        SenderOptions<Long, LibraryEvent> senderOptions = SenderOptions.create(kafkaProperties.buildProducerProperties());
+        return new ReactiveKafkaProducerTemplate<>(senderOptions);
+    }
+}
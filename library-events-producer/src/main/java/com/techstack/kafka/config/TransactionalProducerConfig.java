@@ -0,0 +1,33 @@
+package com.techstack.kafka.config;
+
+import com.techstack.kafka.domain.LibraryEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Exactly-once publishing. The "transactional" profile sets "spring.kafka.producer.transaction-id-prefix",
+ * so the auto configured KafkaTemplate gets an idempotent, transactional producer and the batch endpoint
+ * publishes each batch in a single transaction (see {@link com.techstack.kafka.producer.LibraryEventProducer#sendLibraryEvents}).
+ *
+ * A single LibraryEvent doesn't need a transaction to be written exactly once, idempotence already takes care of
+ * the duplicates from retries. Those sends are allowed outside of a transaction, so POST / PUT / stream don't wait
+ * for a commit per record.
+ *
+ * Enable it with the "transactional" profile, e.g. --spring.profiles.active=local,transactional
+ */
+@Configuration
+@Profile("transactional")
+@RequiredArgsConstructor
+public class TransactionalProducerConfig {
+
+    private final KafkaTemplate<Long, LibraryEvent> kafkaTemplate;
+
+    @PostConstruct
+    public void allowNonTransactionalSends() {
+        kafkaTemplate.setAllowNonTransactional(true);
+    }
+}
@@ -1,38 +1,69 @@
 package com.techstack.kafka.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.domain.DeliveryMode;
 import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.domain.LibraryEventResult;
+import com.techstack.kafka.domain.LibraryEventStreamResult;
 import com.techstack.kafka.domain.LibraryEventType;
 import com.techstack.kafka.producer.LibraryEventProducer;
+import com.techstack.kafka.producer.LibraryEventStreamPublisher;
+import com.techstack.kafka.producer.LibraryEventUpdateCoalescer;
+import com.techstack.kafka.validation.LibraryEventValidator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 @RestController
 @Slf4j
+@Profile("!reactive")
 @RequiredArgsConstructor
 public class LibraryEventsController {
 
+    public static final String DELIVERY_MODE_HEADER = "X-Delivery-Mode";
+    public static final String DELIVERY_MODE_PARAM = "deliveryMode";
+
     private final LibraryEventProducer libraryEventProducer;
+    private final LibraryEventsProperties libraryEventsProperties;
+    private final LibraryEventValidator libraryEventValidator;
+    private final LibraryEventStreamPublisher libraryEventStreamPublisher;
+    private final LibraryEventUpdateCoalescer libraryEventUpdateCoalescer;
 
     @PostMapping("/v1/library-event")
-    public ResponseEntity<LibraryEvent> postLibraryEvent(@RequestBody @Valid LibraryEvent libraryEvent)
-            throws JsonProcessingException, ExecutionException, InterruptedException, TimeoutException {
+    public ResponseEntity<?> postLibraryEvent(@RequestBody @Valid LibraryEvent libraryEvent,
+                                              @RequestHeader(value = DELIVERY_MODE_HEADER, required = false) String deliveryModeHeader,
+                                              @RequestParam(value = DELIVERY_MODE_PARAM, required = false) String deliveryModeParam)
+            throws ExecutionException, InterruptedException, TimeoutException {
 
-        log.info("before sendLibraryEvent");
+        log.debug("before sendLibraryEvent");
         libraryEvent.setLibraryEventType(LibraryEventType.NEW);
 
+        String deliveryMode = deliveryModeParam != null ? deliveryModeParam : deliveryModeHeader;
+        if (deliveryMode != null) {
+            return sendWithDeliveryMode(libraryEvent, deliveryMode, HttpStatus.CREATED);
+        }
+
         //asynchronousCall_Approach1(libraryEvent);
 
         asynchronousCall_Approach2(libraryEvent);
@@ -40,24 +71,165 @@ public class LibraryEventsController {
         //synchronousCall_Approach(libraryEvent);
 
 
-        log.info("after sendLibraryEvent");
+        log.debug("after sendLibraryEvent");
         return ResponseEntity.status(HttpStatus.CREATED).body(libraryEvent);
     }
 
     @PutMapping("/v1/library-event")
-    public ResponseEntity<?> putLibraryEvent(@RequestBody @Valid LibraryEvent libraryEvent)
-            throws JsonProcessingException {
+    public ResponseEntity<?> putLibraryEvent(@RequestBody @Valid LibraryEvent libraryEvent,
+                                             @RequestHeader(value = DELIVERY_MODE_HEADER, required = false) String deliveryModeHeader,
+                                             @RequestParam(value = DELIVERY_MODE_PARAM, required = false) String deliveryModeParam)
+            throws InterruptedException {
 
         if(Objects.isNull(libraryEvent.getLibraryEventId())) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Please pass the LibraryEventId");
         }
 
         libraryEvent.setLibraryEventType(LibraryEventType.UPDATE);
+
+        String deliveryMode = deliveryModeParam != null ? deliveryModeParam : deliveryModeHeader;
+        if (deliveryMode != null) {
+            if (libraryEventUpdateCoalescer.isEnabled()) {
+                libraryEventUpdateCoalescer.discardPending(libraryEvent.getLibraryEventId());
+            }
+            return sendWithDeliveryMode(libraryEvent, deliveryMode, HttpStatus.OK);
+        }
+
+        if (libraryEventUpdateCoalescer.isEnabled()) {
+            //Published once the coalescing window of this LibraryEvent closes, unless a later UPDATE replaces it
+            libraryEventUpdateCoalescer.submit(libraryEvent);
+            return ResponseEntity.status(HttpStatus.OK).body(libraryEvent);
+        }
+
         libraryEventProducer.sendLibraryEvent_Approach2(libraryEvent);
         return ResponseEntity.status(HttpStatus.OK).body(libraryEvent);
     }
 
-    private void asynchronousCall_Approach1(LibraryEvent libraryEvent) throws JsonProcessingException {
+    /**
+     * Bulk ingest: the whole batch is validated in one pass, every valid LibraryEvent is handed to the
+     * producer without waiting in between the sends and only then we wait for the acknowledgements.
+     *
+     * The response contains one result per LibraryEvent (same order as the request) with either the
+     * partition/offset or the error. 201 CREATED if every event got published, 207 MULTI_STATUS otherwise.
+     */
+    @PostMapping("/v1/library-events/batch")
+    public ResponseEntity<?> postLibraryEvents(@RequestBody List<LibraryEvent> libraryEvents)
+            throws InterruptedException {
+
+        int maxSize = libraryEventsProperties.getBatch().getMaxSize();
+        if (libraryEvents.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Please pass at least one LibraryEvent");
+        }
+        if (libraryEvents.size() > maxSize) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Batch size " + libraryEvents.size() + " exceeds the maximum of " + maxSize);
+        }
+
+        LibraryEventResult[] results = new LibraryEventResult[libraryEvents.size()];
+        List<Integer> validIndexes = new ArrayList<>(libraryEvents.size());
+        List<LibraryEvent> validEvents = new ArrayList<>(libraryEvents.size());
+
+        for (int index = 0; index < libraryEvents.size(); index++) {
+            LibraryEvent libraryEvent = libraryEvents.get(index);
+            String errorMessage = libraryEventValidator.validate(libraryEvent);
+            if (errorMessage != null) {
+                results[index] = LibraryEventResult.builder()
+                        .index(index)
+                        .libraryEventId(libraryEvent == null ? null : libraryEvent.getLibraryEventId())
+                        .error(errorMessage)
+                        .build();
+                continue;
+            }
+            validIndexes.add(index);
+            validEvents.add(libraryEvent);
+        }
+
+        List<ListenableFuture<SendResult<Long, LibraryEvent>>> futures = libraryEventProducer.sendLibraryEvents(validEvents);
+
+        long deadline = System.nanoTime() + libraryEventsProperties.getBatch().getAckTimeout().toNanos();
+        for (int i = 0; i < validEvents.size(); i++) {
+            int index = validIndexes.get(i);
+            results[index] = awaitResult(index, validEvents.get(i), futures.get(i), deadline);
+        }
+
+        boolean allPublished = Arrays.stream(results).allMatch(result -> result.getError() == null);
+        log.info("Batch of {} LibraryEvents processed, allPublished : {}", results.length, allPublished);
+        return ResponseEntity.status(allPublished ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS)
+                .body(Arrays.asList(results));
+    }
+
+    /**
+     * Streaming ingest for large catalog dumps: newline-delimited LibraryEvent JSON (NDJSON).
+     * The body is never buffered as a whole; each LibraryEvent is produced as soon as it has been
+     * parsed and reading of the request body stops while too many records are waiting for an ack.
+     */
+    @PostMapping(value = "/v1/library-events/stream", consumes = LibraryEventStreamPublisher.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<LibraryEventStreamResult> streamLibraryEvents(InputStream inputStream)
+            throws IOException, InterruptedException {
+
+        LibraryEventStreamResult result = libraryEventStreamPublisher.publish(inputStream);
+        boolean allPublished = result.getPublished() == result.getReceived();
+        log.info("Stream of {} LibraryEvents processed, allPublished : {}", result.getReceived(), allPublished);
+        return ResponseEntity.status(allPublished ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS).body(result);
+    }
+
+    private LibraryEventResult awaitResult(int index, LibraryEvent libraryEvent,
+                                           ListenableFuture<SendResult<Long, LibraryEvent>> future, long deadline)
+            throws InterruptedException {
+        LibraryEventResult.LibraryEventResultBuilder result = LibraryEventResult.builder()
+                .index(index)
+                .libraryEventId(libraryEvent.getLibraryEventId());
+        try {
+            SendResult<Long, LibraryEvent> sendResult = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return result
+                    .partition(sendResult.getRecordMetadata().partition())
+                    .offset(sendResult.getRecordMetadata().offset())
+                    .build();
+        } catch (ExecutionException e) {
+            return result.error(e.getCause().getMessage()).build();
+        } catch (TimeoutException e) {
+            return result.error("Timed out waiting for the acknowledgement").build();
+        }
+    }
+
+    /**
+     * Delivery guarantee chosen by the caller: fire-and-forget returns right away, the acknowledged modes
+     * wait for the acknowledgement of their producer before responding.
+     *
+     * 503 SERVICE_UNAVAILABLE if the send failed, 504 GATEWAY_TIMEOUT if no acknowledgement came within
+     * library-events.delivery.ack-timeout (the record may still get published).
+     */
+    private ResponseEntity<?> sendWithDeliveryMode(LibraryEvent libraryEvent, String deliveryModeValue, HttpStatus status)
+            throws InterruptedException {
+
+        DeliveryMode deliveryMode;
+        try {
+            deliveryMode = DeliveryMode.fromValue(deliveryModeValue);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+
+        ListenableFuture<SendResult<Long, LibraryEvent>> listenableFuture =
+                libraryEventProducer.sendLibraryEvent(libraryEvent, deliveryMode);
+        if (deliveryMode.isAwaitAck()) {
+            long ackTimeoutMillis = libraryEventsProperties.getDelivery().getAckTimeout().toMillis();
+            try {
+                SendResult<Long, LibraryEvent> sendResult = listenableFuture.get(ackTimeoutMillis, TimeUnit.MILLISECONDS);
+                log.debug("SendResult for delivery mode {} is {}", deliveryMode, sendResult.getRecordMetadata());
+            } catch (ExecutionException e) {
+                log.error("Send with delivery mode {} failed : {}", deliveryMode.getValue(), e.getCause().getMessage());
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .body("Delivery mode " + deliveryMode.getValue() + " : the send failed, " + e.getCause().getMessage());
+            } catch (TimeoutException e) {
+                log.warn("No acknowledgement for delivery mode {} within {} ms", deliveryMode.getValue(), ackTimeoutMillis);
+                return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                        .body("Delivery mode " + deliveryMode.getValue() + " : timed out waiting for the acknowledgement");
+            }
+        }
+        return ResponseEntity.status(status).body(libraryEvent);
+    }
+
+    private void asynchronousCall_Approach1(LibraryEvent libraryEvent) {
         //Approach1: Asynchronous call
         /**
          * Here, you will see the asynchronous behaviour of your message.
@@ -69,18 +241,18 @@ public class LibraryEventsController {
         libraryEventProducer.sendLibraryEvent(libraryEvent);
     }
 
-    private void asynchronousCall_Approach2(LibraryEvent libraryEvent) throws JsonProcessingException {
+    private void asynchronousCall_Approach2(LibraryEvent libraryEvent) {
         //Approach2: Asynchronous call - using producerRecord
         libraryEventProducer.sendLibraryEvent_Approach2(libraryEvent);
     }
 
     private void synchronousCall_Approach(LibraryEvent libraryEvent) throws InterruptedException,
-            ExecutionException, TimeoutException, JsonProcessingException {
+            ExecutionException, TimeoutException {
         /**
          * Approach3: Synchronous call:
          * In this synchronous approach, after SendResult invoked, and then after sendLibraryEvent will be printed
          */
-        SendResult<Integer, String> sendResult = libraryEventProducer.sendLibraryEventSynchronous(libraryEvent);
+        SendResult<Long, LibraryEvent> sendResult = libraryEventProducer.sendLibraryEventSynchronous(libraryEvent);
         log.info("SendResult is {}", sendResult.toString());
     }
 }
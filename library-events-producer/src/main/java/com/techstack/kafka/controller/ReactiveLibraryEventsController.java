@@ -0,0 +1,60 @@
+package com.techstack.kafka.controller;
+
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.domain.LibraryEventType;
+import com.techstack.kafka.producer.ReactiveLibraryEventProducer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.util.Objects;
+
+/**
+ * WebFlux variant of {@link LibraryEventsController} serving the same endpoints.
+ *
+ * Unlike the synchronous approach of the servlet controller, the response is only sent once the broker has
+ * acknowledged the record, but without blocking a thread per request while waiting for it.
+ *
+ * Enable it with the "reactive" profile, which also switches the application to the reactive web stack.
+ */
+@RestController
+@Slf4j
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveLibraryEventsController {
+
+    private final ReactiveLibraryEventProducer reactiveLibraryEventProducer;
+
+    @PostMapping("/v1/library-event")
+    public Mono<ResponseEntity<?>> postLibraryEvent(@RequestBody @Valid LibraryEvent libraryEvent) {
+
+        libraryEvent.setLibraryEventType(LibraryEventType.NEW);
+        return send(libraryEvent, HttpStatus.CREATED);
+    }
+
+    @PutMapping("/v1/library-event")
+    public Mono<ResponseEntity<?>> putLibraryEvent(@RequestBody @Valid LibraryEvent libraryEvent) {
+
+        if(Objects.isNull(libraryEvent.getLibraryEventId())) {
+            return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Please pass the LibraryEventId"));
+        }
+
+        libraryEvent.setLibraryEventType(LibraryEventType.UPDATE);
+        return send(libraryEvent, HttpStatus.OK);
+    }
+
+    private Mono<ResponseEntity<?>> send(LibraryEvent libraryEvent, HttpStatus status) {
+        return reactiveLibraryEventProducer.sendLibraryEvent(libraryEvent)
+                .<ResponseEntity<?>>map(senderResult -> ResponseEntity.status(status).body(libraryEvent))
+                .onErrorResume(throwable -> Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body("Error sending the LibraryEvent : " + throwable.getMessage())));
+    }
+}
@@ -0,0 +1,57 @@
+package com.techstack.kafka.domain;
+
+import java.util.Arrays;
+
+/**
+ * Delivery guarantee requested by the caller, either through the X-Delivery-Mode header or the deliveryMode
+ * query parameter. Each mode is backed by its own producer (see DeliveryModeTemplates).
+ */
+public enum DeliveryMode {
+
+    /**
+     * acks=0 : the record is considered sent as soon as it is written to the socket, the caller doesn't wait
+     */
+    FIRE_AND_FORGET("fire-and-forget", "0", false),
+
+    /**
+     * acks=1 : the caller waits until the partition leader has written the record
+     */
+    LEADER_ACK("leader-ack", "1", true),
+
+    /**
+     * acks=all : the caller waits until all the in-sync replicas have the record
+     */
+    ALL_REPLICAS_ACK("all-replicas-ack", "all", true);
+
+    private final String value;
+    private final String acks;
+    private final boolean awaitAck;
+
+    DeliveryMode(String value, String acks, boolean awaitAck) {
+        this.value = value;
+        this.acks = acks;
+        this.awaitAck = awaitAck;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getAcks() {
+        return acks;
+    }
+
+    public boolean isAwaitAck() {
+        return awaitAck;
+    }
+
+    /**
+     * Accepts both the kebab case value (fire-and-forget) and the constant name (FIRE_AND_FORGET)
+     */
+    public static DeliveryMode fromValue(String value) {
+        return Arrays.stream(values())
+                .filter(mode -> mode.value.equalsIgnoreCase(value) || mode.name().equalsIgnoreCase(value))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown delivery mode : " + value));
+    }
+}
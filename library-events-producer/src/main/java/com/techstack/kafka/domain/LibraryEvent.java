@@ -14,7 +14,7 @@ import javax.validation.constraints.NotNull;
 @Builder
 public class LibraryEvent {
 
-    private Integer libraryEventId;
+    private Long libraryEventId;
 
     private LibraryEventType libraryEventType;
 
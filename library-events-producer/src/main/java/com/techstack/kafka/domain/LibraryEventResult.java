@@ -0,0 +1,29 @@
+package com.techstack.kafka.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of a single LibraryEvent inside a batch request.
+ * Either partition/offset (published) or error (rejected / failed) is populated.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LibraryEventResult {
+
+    private int index;
+
+    private Long libraryEventId;
+
+    private Integer partition;
+
+    private Long offset;
+
+    private String error;
+}
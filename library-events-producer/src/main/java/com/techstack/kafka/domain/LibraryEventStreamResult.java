@@ -0,0 +1,29 @@
+package com.techstack.kafka.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Summary of a streaming ingest. Only counters and a bounded number of error messages are kept,
+ * so the size of this object doesn't depend on the size of the upload.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Builder
+public class LibraryEventStreamResult {
+
+    private long received;
+
+    private long published;
+
+    private long rejected;
+
+    private long failed;
+
+    private List<String> errors;
+}
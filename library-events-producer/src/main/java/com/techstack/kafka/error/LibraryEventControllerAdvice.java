@@ -7,6 +7,7 @@ import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -17,8 +18,18 @@ public class LibraryEventControllerAdvice {
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<?> handleRequestBody(MethodArgumentNotValidException ex) {
+        return handleFieldErrors(ex.getBindingResult().getFieldErrors());
+    }
+
+    /**
+     * Counterpart of MethodArgumentNotValidException for the reactive controller
+     */
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<?> handleRequestBody(WebExchangeBindException ex) {
+        return handleFieldErrors(ex.getFieldErrors());
+    }
 
-        List<FieldError> errorList = ex.getBindingResult().getFieldErrors();
+    private ResponseEntity<?> handleFieldErrors(List<FieldError> errorList) {
         String errorMessage = errorList.stream()
                 .map(fieldError -> fieldError.getField() + " - " + fieldError.getDefaultMessage())
                 .sorted()
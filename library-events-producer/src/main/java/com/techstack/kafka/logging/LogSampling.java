@@ -0,0 +1,84 @@
+package com.techstack.kafka.logging;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limit for the per record log lines of the hot path ("library-events.logging.sample-rate").
+ *
+ * Every stage (e.g. "produced", "send-failed") may log up to sample-rate lines per second, the records beyond
+ * that are only counted. The next line that is logged reports them as "suppressed", so the volume stays visible.
+ * A sample-rate of 0 logs every record.
+ *
+ * Usage, so the arguments aren't even built for a suppressed record:
+ * <pre>
+ * if (logSampling.sample(STAGE)) {
+ *     log.info("stage={} key={} suppressed={}", STAGE, key, logSampling.suppressed(STAGE));
+ * }
+ * </pre> *
+ * The same class is copied on purpose into library-events-consumer: the two applications are built and deployed on
+ * their own and share no module. Change both copies together, LogSamplingUnitTest is the same in both modules too.
+ */
+@Component
+public class LogSampling {
+
+    private final long permitsPerSecond;
+    private final LongSupplier nanoClock;
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LogSampling(LibraryEventsProperties libraryEventsProperties) {
+        this(libraryEventsProperties.getLogging().getSampleRate(), System::nanoTime);
+    }
+
+    public LogSampling(long permitsPerSecond, LongSupplier nanoClock) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return whether the record of this stage should be logged
+     */
+    public boolean sample(String stage) {
+        if (permitsPerSecond <= 0) {
+            return true;
+        }
+        return stages.computeIfAbsent(stage, name -> new Stage()).sample();
+    }
+
+    /**
+     * @return the number of records of this stage which weren't logged since the last call
+     */
+    public long suppressed(String stage) {
+        Stage sampledStage = stages.get(stage);
+        return sampledStage == null ? 0 : sampledStage.suppressed.getAndSet(0);
+    }
+
+    private class Stage {
+
+        private final AtomicLong second = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLong logged = new AtomicLong();
+        private final AtomicLong suppressed = new AtomicLong();
+
+        boolean sample() {
+            long now = TimeUnit.NANOSECONDS.toSeconds(nanoClock.getAsLong());
+            long current = second.get();
+            if (now != current && second.compareAndSet(current, now)) {
+                // a few records racing with the reset may get a permit of the new second, good enough for logging
+                logged.set(0);
+            }
+            if (logged.incrementAndGet() <= permitsPerSecond) {
+                return true;
+            }
+            suppressed.incrementAndGet();
+            return false;
+        }
+    }
+}
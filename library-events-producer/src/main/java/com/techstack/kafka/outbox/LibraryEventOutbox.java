@@ -0,0 +1,383 @@
+package com.techstack.kafka.outbox;
+
+import com.techstack.kafka.codec.BinaryLibraryEventCodec;
+import com.techstack.kafka.codec.LibraryEventCodec;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.domain.LibraryEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local durable outbox ("library-events.outbox.enabled") for LibraryEvents which couldn't be handed to Kafka.
+ *
+ * The outbox is an append-only log of fixed size segment files (outbox-00000000000000000000.log, ...) which are
+ * memory mapped, so an append is a copy into the page cache and the OS writes the pages out sequentially.
+ * {@link FsyncPolicy} decides how often the mapped pages are forced to the disk.
+ *
+ * A record is [int length][int crc32c][long key][long event-sequence][LibraryEvent in the binary codec format].
+ * The length is written last, so a reader never sees a record whose body is still being written.
+ * A length of 0 means nothing has been written there yet and -1 means the rest of the segment is unused,
+ * the log continues in the next segment.
+ *
+ * The {@link LibraryEventOutboxDrainer} reads the records in order with {@link #peek(int)} and moves the
+ * read position forward with {@link #commit(List)} once Kafka acknowledged them. The read position is
+ * kept in a small memory mapped checkpoint file, segments before it are deleted.
+ */
+@Slf4j
+@Component
+public class LibraryEventOutbox implements DisposableBean {
+
+    public static final String PENDING_METRIC = "library.events.producer.outbox.pending";
+
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "outbox.checkpoint";
+
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final int FIXED_PAYLOAD_SIZE = Long.BYTES * 2;
+    private static final int ROLL_MARKER = -1;
+
+    public enum Mode {
+        /**
+         * Only the LibraryEvents whose send failed are written to the outbox
+         */
+        ON_FAILURE,
+        /**
+         * Every fire-and-forget send is written to the outbox and published by the drainer,
+         * the request returns once the LibraryEvent is in the outbox
+         */
+        ALWAYS
+    }
+
+    public enum FsyncPolicy {
+        /**
+         * Force after every append, nothing is lost even if the machine crashes
+         */
+        ALWAYS,
+        /**
+         * Force every "fsync-interval", a machine crash loses at most that interval
+         */
+        INTERVAL,
+        /**
+         * Leave it to the OS (and force on segment roll / shutdown), survives a crash of the JVM but not of the machine
+         */
+        NEVER
+    }
+
+    private final boolean enabled;
+    private final Mode mode;
+    private final FsyncPolicy fsyncPolicy;
+    private final Path directory;
+    private final int segmentSize;
+    private final LibraryEventCodec codec = new BinaryLibraryEventCodec();
+    private final AtomicLong pending = new AtomicLong();
+
+    private ScheduledExecutorService fsyncScheduler;
+    private MappedByteBuffer checkpoint;
+
+    // all the fields below are guarded by "this"
+    private long writeSegmentId;
+    private MappedByteBuffer writeBuffer;
+    private boolean dirty;
+    private long readSegmentId;
+    private MappedByteBuffer readBuffer;
+    private int readPosition;
+
+    public LibraryEventOutbox(LibraryEventsProperties libraryEventsProperties, MeterRegistry meterRegistry) {
+        LibraryEventsProperties.Outbox outbox = libraryEventsProperties.getOutbox();
+        this.enabled = outbox.isEnabled();
+        this.mode = outbox.getMode();
+        this.fsyncPolicy = outbox.getFsync();
+        this.directory = Paths.get(outbox.getDirectory());
+        this.segmentSize = Math.toIntExact(outbox.getSegmentSize().toBytes());
+
+        if (enabled) {
+            open();
+            if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+                long intervalMillis = outbox.getFsyncInterval().toMillis();
+                fsyncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "library-events-outbox-fsync");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                fsyncScheduler.scheduleWithFixedDelay(this::forceIfDirty, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+            Gauge.builder(PENDING_METRIC, pending, AtomicLong::get)
+                    .description("LibraryEvents in the outbox which haven't been published to Kafka yet")
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return whether every fire-and-forget send goes through the outbox
+     */
+    public boolean isStrict() {
+        return enabled && mode == Mode.ALWAYS;
+    }
+
+    public long pending() {
+        return pending.get();
+    }
+
+    public synchronized void append(long key, long eventSequence, LibraryEvent libraryEvent) {
+        byte[] value = codec.encode(libraryEvent);
+        int payloadSize = FIXED_PAYLOAD_SIZE + value.length;
+        int recordSize = HEADER_SIZE + payloadSize;
+        if (recordSize + Integer.BYTES > segmentSize) {
+            throw new IllegalArgumentException("LibraryEvent of " + recordSize + " bytes doesn't fit into an outbox segment");
+        }
+
+        if (writeBuffer.remaining() < recordSize + Integer.BYTES) {
+            roll();
+        }
+
+        int position = writeBuffer.position();
+        writeBuffer.position(position + HEADER_SIZE);
+        writeBuffer.putLong(key).putLong(eventSequence).put(value);
+        writeBuffer.putInt(position + Integer.BYTES, crc(writeBuffer, position + HEADER_SIZE, payloadSize));
+        writeBuffer.putInt(position, payloadSize);
+
+        pending.incrementAndGet();
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            writeBuffer.force();
+        } else {
+            dirty = true;
+        }
+    }
+
+    /**
+     * @return up to maxRecords records from the read position on, without moving the read position
+     */
+    public synchronized List<OutboxRecord> peek(int maxRecords) {
+        List<OutboxRecord> records = new ArrayList<>(Math.min(maxRecords, 1024));
+        long segmentId = readSegmentId;
+        MappedByteBuffer buffer = readBuffer;
+        int position = readPosition;
+
+        while (records.size() < maxRecords) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length == ROLL_MARKER) {
+                segmentId++;
+                buffer = segmentId == writeSegmentId ? writeBuffer : map(segmentPath(segmentId));
+                position = 0;
+                continue;
+            }
+            int payloadPosition = position + HEADER_SIZE;
+            long key = buffer.getLong(payloadPosition);
+            long eventSequence = buffer.getLong(payloadPosition + Long.BYTES);
+            byte[] value = new byte[length - FIXED_PAYLOAD_SIZE];
+            buffer.duplicate().position(payloadPosition + FIXED_PAYLOAD_SIZE).get(value);
+            position = payloadPosition + length;
+            records.add(new OutboxRecord(key, eventSequence, codec.decode(value), segmentId, position));
+        }
+        return records;
+    }
+
+    /**
+     * Moves the read position behind the published records, which have to be the head of the last {@link #peek(int)}
+     */
+    public synchronized void commit(List<OutboxRecord> published) {
+        if (published.isEmpty()) {
+            return;
+        }
+        OutboxRecord record = published.get(published.size() - 1);
+        while (readSegmentId < record.getSegmentId()) {
+            deleteSegment(readSegmentId++);
+        }
+        readSegmentId = record.getSegmentId();
+        readBuffer = readSegmentId == writeSegmentId ? writeBuffer : map(segmentPath(readSegmentId));
+        readPosition = record.getNextPosition();
+        checkpoint.putLong(0, readSegmentId).putInt(Long.BYTES, readPosition);
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            checkpoint.force();
+        } else {
+            dirty = true;
+        }
+        pending.addAndGet(-published.size());
+        log.debug("Outbox read position is {}:{} after {} records", readSegmentId, readPosition, published.size());
+    }
+
+    private void open() {
+        try {
+            Files.createDirectories(directory);
+            checkpoint = mapFile(directory.resolve(CHECKPOINT_FILE), Long.BYTES + Integer.BYTES);
+
+            List<Long> segmentIds = segmentIds();
+            writeSegmentId = segmentIds.isEmpty() ? 0 : segmentIds.get(segmentIds.size() - 1);
+            writeBuffer = map(segmentPath(writeSegmentId));
+
+            readSegmentId = checkpoint.getLong(0);
+            readPosition = checkpoint.getInt(Long.BYTES);
+            if (readSegmentId > writeSegmentId || (!segmentIds.isEmpty() && readSegmentId < segmentIds.get(0))) {
+                log.warn("Outbox checkpoint {}:{} doesn't match the segments {}, replaying all of them", readSegmentId, readPosition, segmentIds);
+                readSegmentId = segmentIds.isEmpty() ? 0 : segmentIds.get(0);
+                readPosition = 0;
+            }
+            readBuffer = readSegmentId == writeSegmentId ? writeBuffer : map(segmentPath(readSegmentId));
+
+            recoverWritePosition();
+            pending.set(countUnread());
+            log.info("Outbox opened in {} with {} LibraryEvents to be published", directory.toAbsolutePath(), pending.get());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Outbox can't be opened in " + directory.toAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Walks the record lengths from the read position to the end of the log, without decoding the records
+     */
+    private long countUnread() {
+        long count = 0;
+        long segmentId = readSegmentId;
+        MappedByteBuffer buffer = readBuffer;
+        int position = readPosition;
+        int length;
+        while ((length = buffer.getInt(position)) != 0) {
+            if (length == ROLL_MARKER) {
+                segmentId++;
+                buffer = segmentId == writeSegmentId ? writeBuffer : map(segmentPath(segmentId));
+                position = 0;
+            } else {
+                count++;
+                position += HEADER_SIZE + length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the end of the last segment. A record which was torn by a crash (wrong crc) and everything
+     * after it is zeroed, so it gets overwritten by the next append.
+     */
+    private void recoverWritePosition() {
+        int position = 0;
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = writeBuffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length == ROLL_MARKER) {
+                // crashed after writing the roll marker, before the next segment was created
+                writeBuffer.position(position);
+                roll();
+                return;
+            }
+            int payloadPosition = position + HEADER_SIZE;
+            if (length < FIXED_PAYLOAD_SIZE || payloadPosition + length > segmentSize
+                    || writeBuffer.getInt(position + Integer.BYTES) != crc(writeBuffer, payloadPosition, length)) {
+                log.warn("Outbox segment {} has a torn record at {}, discarding the rest of the segment", writeSegmentId, position);
+                for (int i = position; i < segmentSize; i++) {
+                    writeBuffer.put(i, (byte) 0);
+                }
+                writeBuffer.force();
+                break;
+            }
+            position = payloadPosition + length;
+        }
+        writeBuffer.position(position);
+    }
+
+    private void roll() {
+        writeBuffer.putInt(writeBuffer.position(), ROLL_MARKER);
+        writeBuffer.force();
+        // a reader of the previous segment keeps using its mapping
+        writeSegmentId++;
+        writeBuffer = map(segmentPath(writeSegmentId));
+        dirty = false;
+        log.info("Outbox rolled to segment {}", writeSegmentId);
+    }
+
+    private synchronized void forceIfDirty() {
+        if (dirty) {
+            writeBuffer.force();
+            checkpoint.force();
+            dirty = false;
+        }
+    }
+
+    private void deleteSegment(long segmentId) {
+        try {
+            Files.deleteIfExists(segmentPath(segmentId));
+        } catch (IOException e) {
+            log.warn("Drained outbox segment {} can't be deleted : {}", segmentId, e.getMessage());
+        }
+    }
+
+    private List<Long> segmentIds() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(long segmentId) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+    }
+
+    private MappedByteBuffer map(Path segment) {
+        try {
+            return mapFile(segment, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Outbox segment " + segment + " can't be mapped", e);
+        }
+    }
+
+    /**
+     * The mapping stays valid after the channel is closed, a new file is zero filled up to the size
+     */
+    private static MappedByteBuffer mapFile(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static int crc(MappedByteBuffer buffer, int position, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(position).limit(position + length));
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (!enabled) {
+            return;
+        }
+        if (fsyncScheduler != null) {
+            fsyncScheduler.shutdownNow();
+        }
+        writeBuffer.force();
+        checkpoint.force();
+        log.info("Outbox closed with {} LibraryEvents to be published", pending.get());
+    }
+}
@@ -0,0 +1,116 @@
+package com.techstack.kafka.outbox;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.producer.LibraryEventProducer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Replays the {@link LibraryEventOutbox} to Kafka, in the order the LibraryEvents were written to it.
+ *
+ * Every "drain-interval" the next records are sent without waiting in between, then all the acknowledgements
+ * are awaited and the read position is moved behind the acknowledged ones. When a send fails (the brokers
+ * are still unavailable) the rest is left in the outbox for the next run. At most "replay-rate" LibraryEvents
+ * are replayed per second, so a backlog doesn't starve the live traffic once the brokers are back.
+ *
+ * A failure right after an acknowledgement may replay a LibraryEvent twice. The record keeps its original key and
+ * event-sequence header, the consumer persists by libraryEventId and skips an UPDATE which isn't newer.
+ */
+@Slf4j
+@Component
+public class LibraryEventOutboxDrainer implements DisposableBean {
+
+    private final LibraryEventOutbox libraryEventOutbox;
+    private final LibraryEventProducer libraryEventProducer;
+    private final int recordsPerRun;
+    private final Duration ackTimeout;
+    private final ScheduledExecutorService scheduler;
+
+    public LibraryEventOutboxDrainer(LibraryEventOutbox libraryEventOutbox,
+                                     LibraryEventProducer libraryEventProducer,
+                                     LibraryEventsProperties libraryEventsProperties) {
+        LibraryEventsProperties.Outbox outbox = libraryEventsProperties.getOutbox();
+        this.libraryEventOutbox = libraryEventOutbox;
+        this.libraryEventProducer = libraryEventProducer;
+        long intervalMillis = outbox.getDrainInterval().toMillis();
+        this.recordsPerRun = (int) Math.max(1, outbox.getReplayRate() * intervalMillis / 1000);
+        this.ackTimeout = outbox.getAckTimeout();
+
+        if (libraryEventOutbox.isEnabled()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "library-events-outbox-drainer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    drain();
+                } catch (RuntimeException e) {
+                    //an exception would cancel the scheduled drain for good
+                    log.error("Draining the outbox failed : {}", e.getMessage(), e);
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return the number of LibraryEvents published to Kafka and removed from the outbox
+     */
+    public int drain() {
+        List<OutboxRecord> records = libraryEventOutbox.peek(recordsPerRun);
+        if (records.isEmpty()) {
+            return 0;
+        }
+
+        List<ListenableFuture<SendResult<Long, LibraryEvent>>> futures = new ArrayList<>(records.size());
+        try {
+            for (OutboxRecord record : records) {
+                futures.add(libraryEventProducer.replayLibraryEvent(record.getKey(), record.getEventSequence(), record.getLibraryEvent()));
+            }
+        } catch (RuntimeException e) {
+            //e.g. the producer buffer stayed full for max.block.ms, the records sent so far are still awaited
+            log.warn("Replaying the outbox stopped after {} of {} records : {}", futures.size(), records.size(), e.getMessage());
+        }
+
+        int acknowledged = 0;
+        long deadline = System.nanoTime() + ackTimeout.toNanos();
+        try {
+            for (ListenableFuture<SendResult<Long, LibraryEvent>> future : futures) {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                acknowledged++;
+            }
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Kafka is still unavailable, {} LibraryEvents stay in the outbox : {}", libraryEventOutbox.pending() - acknowledged, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        libraryEventOutbox.commit(records.subList(0, acknowledged));
+        if (acknowledged > 0) {
+            log.info("Replayed {} LibraryEvents from the outbox, {} left", acknowledged, libraryEventOutbox.pending());
+        }
+        return acknowledged;
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
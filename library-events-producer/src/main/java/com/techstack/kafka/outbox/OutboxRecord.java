@@ -0,0 +1,20 @@
+package com.techstack.kafka.outbox;
+
+import com.techstack.kafka.domain.LibraryEvent;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A LibraryEvent read from the {@link LibraryEventOutbox}, together with the position right behind it
+ * which becomes the read position once it has been published
+ */
+@Getter
+@AllArgsConstructor
+public class OutboxRecord {
+
+    private final long key;
+    private final long eventSequence;
+    private final LibraryEvent libraryEvent;
+    private final long segmentId;
+    private final int nextPosition;
+}
@@ -0,0 +1,47 @@
+package com.techstack.kafka.partition;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Fixed size frequency estimate for an unbounded number of keys. The estimate never undercounts, it can only
+ * overcount when keys collide in every row, which for the few hot keys we look for is negligible.
+ *
+ * Counts are decayed by {@link #halve()} instead of being reset, so a key doesn't turn cold at every window boundary.
+ */
+class CountMinSketch {
+
+    private final int depth;
+    private final int mask;
+    private final AtomicIntegerArray counters;
+
+    /**
+     * @param depth number of rows (hash functions)
+     * @param width counters per row, rounded up to a power of two
+     */
+    CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.mask = Integer.highestOneBit(Math.max(1, width - 1)) * 2 - 1;
+        this.counters = new AtomicIntegerArray(depth * (mask + 1));
+    }
+
+    /**
+     * Counts one occurrence of the key with the given hash
+     *
+     * @return the estimated count of the key, including this occurrence
+     */
+    int increment(int hash) {
+        int estimate = Integer.MAX_VALUE;
+        int secondHash = Integer.reverse(hash) * 0x9E3779B9 | 1;
+        for (int row = 0; row < depth; row++) {
+            int index = row * (mask + 1) + ((hash + row * secondHash) & mask);
+            estimate = Math.min(estimate, counters.incrementAndGet(index));
+        }
+        return estimate;
+    }
+
+    void halve() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, count -> count >>> 1);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.techstack.kafka.partition;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Partitioner which keeps a handful of very busy keys (bestsellers getting constant updates) from saturating
+ * a single partition, and with it a single consumer thread.
+ *
+ * Every key is counted in a {@link CountMinSketch}. Keys below the threshold are handed to Kafka's
+ * DefaultPartitioner, so they land exactly where they always did and keep their ordering. Once the decayed count
+ * of a key reaches {@link #HOT_KEY_THRESHOLD_CONFIG} its records are spread round robin over the
+ * {@link #HOT_KEY_PARTITIONS_CONFIG} partitions. Those records aren't ordered anymore, the consumer restores the
+ * order with the "event-sequence" header, see LibraryEventProducer.
+ *
+ * It is opt-in: the "hot-keys" profile of application.yml enables it with the producer properties, e.g.
+ * <pre>
+ * spring.kafka.producer.properties.partitioner.class: com.techstack.kafka.partition.HotKeyAwarePartitioner
+ * spring.kafka.producer.properties.library-events.hot-keys.threshold: 500
+ * </pre>
+ *
+ * Kafka creates the partitioner itself, so the skew meters are registered on the global Micrometer registry,
+ * which Spring Boot feeds into its own:
+ * "library.events.producer.partition.records" (per partition, hot or not) and
+ * "library.events.producer.partition.skew" (busiest partition / average partition, during the last window).
+ */
+@Slf4j
+public class HotKeyAwarePartitioner extends DefaultPartitioner {
+
+    /**
+     * Decayed per key count from which on a key is treated as hot. Counts are halved every window, so a key sending
+     * steadily at r records per window settles at a count of about 2r.
+     */
+    public static final String HOT_KEY_THRESHOLD_CONFIG = "library-events.hot-keys.threshold";
+
+    public static final String HOT_KEY_WINDOW_MS_CONFIG = "library-events.hot-keys.window-ms";
+
+    /**
+     * Partitions which take the hot keys, as an inclusive range "first-last", e.g. "1-2". All partitions by default.
+     */
+    public static final String HOT_KEY_PARTITIONS_CONFIG = "library-events.hot-keys.partitions";
+
+    public static final String PARTITION_RECORDS_METRIC = "library.events.producer.partition.records";
+    public static final String PARTITION_SKEW_METRIC = "library.events.producer.partition.skew";
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 4096;
+    private static final int MAX_TRACKED_PARTITIONS = 1024;
+
+    private final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+    private final AtomicLong windowStart = new AtomicLong(System.currentTimeMillis());
+    private final AtomicInteger hotKeyRoundRobin = new AtomicInteger();
+    private final AtomicLongArray windowRecords = new AtomicLongArray(MAX_TRACKED_PARTITIONS);
+    private final Map<Integer, Counter> coldRecordCounters = new ConcurrentHashMap<>();
+    private final Map<Integer, Counter> hotRecordCounters = new ConcurrentHashMap<>();
+
+    private volatile double skew = 1.0;
+    private Gauge skewGauge;
+
+    private int hotKeyThreshold = 1000;
+    private long windowMs = 1000;
+    private int hotPartitionsFrom = 0;
+    private int hotPartitionsTo = Integer.MAX_VALUE;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        super.configure(configs);
+        Object threshold = configs.get(HOT_KEY_THRESHOLD_CONFIG);
+        if (threshold != null) {
+            hotKeyThreshold = Integer.parseInt(threshold.toString());
+        }
+        Object window = configs.get(HOT_KEY_WINDOW_MS_CONFIG);
+        if (window != null) {
+            windowMs = Long.parseLong(window.toString());
+        }
+        Object partitions = configs.get(HOT_KEY_PARTITIONS_CONFIG);
+        if (partitions != null) {
+            String[] range = partitions.toString().split("-");
+            if (range.length != 2) {
+                throw new ConfigException(HOT_KEY_PARTITIONS_CONFIG, partitions, "Expected an inclusive range like 1-2");
+            }
+            hotPartitionsFrom = Integer.parseInt(range[0].trim());
+            hotPartitionsTo = Integer.parseInt(range[1].trim());
+        }
+
+        Object clientId = configs.get(ProducerConfig.CLIENT_ID_CONFIG);
+        skewGauge = Gauge.builder(PARTITION_SKEW_METRIC, this, partitioner -> partitioner.skew)
+                .description("Records of the busiest partition divided by the average records per partition, last window")
+                .tag("client.id", clientId == null ? "unknown" : clientId.toString())
+                .register(Metrics.globalRegistry);
+        log.info("Hot keys from a decayed count of {} per {} ms are spread over partitions {}-{}",
+                hotKeyThreshold, windowMs, hotPartitionsFrom, hotPartitionsTo == Integer.MAX_VALUE ? "last" : hotPartitionsTo);
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int numPartitions = cluster.partitionsForTopic(topic).size();
+        rollWindow(numPartitions);
+
+        int partition;
+        boolean hot = false;
+        if (keyBytes == null) {
+            partition = super.partition(topic, key, null, value, valueBytes, cluster);
+        } else {
+            hot = sketch.increment(Utils.murmur2(keyBytes)) >= hotKeyThreshold;
+            partition = hot ? hotPartition(numPartitions) : super.partition(topic, key, keyBytes, value, valueBytes, cluster);
+        }
+
+        record(partition, hot);
+        return partition;
+    }
+
+    private int hotPartition(int numPartitions) {
+        int from = Math.min(hotPartitionsFrom, numPartitions - 1);
+        int to = Math.min(hotPartitionsTo, numPartitions - 1);
+        int size = Math.max(1, to - from + 1);
+        return from + Utils.toPositive(hotKeyRoundRobin.getAndIncrement()) % size;
+    }
+
+    private void record(int partition, boolean hot) {
+        Map<Integer, Counter> counters = hot ? hotRecordCounters : coldRecordCounters;
+        counters.computeIfAbsent(partition, p -> Counter.builder(PARTITION_RECORDS_METRIC)
+                .description("Records routed to the partition by the HotKeyAwarePartitioner")
+                .tag("partition", String.valueOf(p))
+                .tag("hot", String.valueOf(hot))
+                .register(Metrics.globalRegistry))
+                .increment();
+        if (partition < MAX_TRACKED_PARTITIONS) {
+            windowRecords.incrementAndGet(partition);
+        }
+    }
+
+    /**
+     * Once per window: decays the key counts and computes the skew of the window which just ended
+     */
+    private void rollWindow(int numPartitions) {
+        long start = windowStart.get();
+        long now = System.currentTimeMillis();
+        if (now - start < windowMs || !windowStart.compareAndSet(start, now)) {
+            return;
+        }
+        sketch.halve();
+
+        int partitions = Math.min(numPartitions, MAX_TRACKED_PARTITIONS);
+        long total = 0;
+        long max = 0;
+        for (int partition = 0; partition < partitions; partition++) {
+            long records = windowRecords.getAndSet(partition, 0);
+            total += records;
+            max = Math.max(max, records);
+        }
+        skew = total == 0 ? 1.0 : max * (double) partitions / total;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (skewGauge != null) {
+            Metrics.globalRegistry.remove(skewGauge);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.techstack.kafka.producer;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.domain.DeliveryMode;
+import com.techstack.kafka.domain.LibraryEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One KafkaTemplate and one acknowledgement latency Timer per {@link DeliveryMode}.
+ *
+ * Every template starts from the "spring.kafka.producer" properties, gets the acks of its mode and then the
+ * overrides from "library-events.delivery.producer.[mode]", e.g. a bigger linger.ms for fire-and-forget.
+ * The templates are deliberately not exposed as beans, so the auto configured KafkaTemplate stays in place.
+ * They are never transactional, "spring.kafka.producer.transaction-id-prefix" only applies to that KafkaTemplate.
+ */
+@Component
+public class DeliveryModeTemplates implements DisposableBean {
+
+    public static final String ACK_LATENCY_METRIC = "library.events.producer.ack.latency";
+
+    private final Map<DeliveryMode, DefaultKafkaProducerFactory<Long, LibraryEvent>> producerFactories = new EnumMap<>(DeliveryMode.class);
+    private final Map<DeliveryMode, KafkaTemplate<Long, LibraryEvent>> kafkaTemplates = new EnumMap<>(DeliveryMode.class);
+    private final Map<DeliveryMode, Timer> ackTimers = new EnumMap<>(DeliveryMode.class);
+
+    public DeliveryModeTemplates(KafkaProperties kafkaProperties, LibraryEventsProperties libraryEventsProperties,
+                                 MeterRegistry meterRegistry) {
+        Map<DeliveryMode, Map<String, String>> overrides = libraryEventsProperties.getDelivery().getProducer();
+
+        for (DeliveryMode mode : DeliveryMode.values()) {
+            Map<String, Object> configs = new HashMap<>(kafkaProperties.buildProducerProperties());
+            configs.put(ProducerConfig.ACKS_CONFIG, mode.getAcks());
+            if (!"all".equals(mode.getAcks())) {
+                // idempotence (e.g. from the "transactional" profile) is only allowed with acks=all
+                configs.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, false);
+            }
+            configs.putAll(overrides.getOrDefault(mode, Map.of()));
+
+            DefaultKafkaProducerFactory<Long, LibraryEvent> producerFactory = new DefaultKafkaProducerFactory<>(configs);
+            producerFactory.addListener(new MicrometerProducerListener<>(meterRegistry));
+            KafkaTemplate<Long, LibraryEvent> kafkaTemplate = new KafkaTemplate<>(producerFactory);
+            kafkaTemplate.setDefaultTopic(kafkaProperties.getTemplate().getDefaultTopic());
+
+            producerFactories.put(mode, producerFactory);
+            kafkaTemplates.put(mode, kafkaTemplate);
+            ackTimers.put(mode, Timer.builder(ACK_LATENCY_METRIC)
+                    .description("Time between handing the record to the producer and the broker acknowledgement")
+                    .tag("mode", mode.getValue())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    public KafkaTemplate<Long, LibraryEvent> kafkaTemplate(DeliveryMode mode) {
+        return kafkaTemplates.get(mode);
+    }
+
+    public Timer ackTimer(DeliveryMode mode) {
+        return ackTimers.get(mode);
+    }
+
+    @Override
+    public void destroy() {
+        producerFactories.values().forEach(DefaultKafkaProducerFactory::destroy);
+    }
+}
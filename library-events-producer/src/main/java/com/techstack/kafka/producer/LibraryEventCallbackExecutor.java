@@ -0,0 +1,53 @@
+package com.techstack.kafka.producer;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the work of the send callbacks (logging, writing failed sends to the outbox).
+ *
+ * The callbacks of a KafkaTemplate send are invoked on the producer network thread, every millisecond spent there
+ * delays the next batch to the brokers. The callbacks only hand their work over to this executor.
+ * When its queue is full the network thread runs the work itself, so nothing is dropped, it just slows down
+ * the producer the way the inline callbacks did before.
+ */
+@Component
+public class LibraryEventCallbackExecutor implements Executor, DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+
+    public LibraryEventCallbackExecutor(LibraryEventsProperties libraryEventsProperties) {
+        LibraryEventsProperties.CallbackExecutor properties = libraryEventsProperties.getCallbackExecutor();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "library-events-callback-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // also after the shutdown, the callbacks of the last sends still have to run
+                (runnable, pool) -> runnable.run());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /**
+     * The queued callbacks still run, e.g. a failed send which has to go to the outbox
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,79 @@
+package com.techstack.kafka.producer;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.domain.LibraryEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Snowflake style, time ordered ids for the LibraryEvents which come in without one.
+ *
+ * <pre>
+ *  1 bit   always 0, ids are positive
+ * 41 bits  milliseconds since {@link #EPOCH} (~69 years)
+ * 10 bits  worker id ("library-events.id.worker-id"), unique per running producer instance
+ * 12 bits  sequence within the millisecond
+ * </pre>
+ *
+ * Lock free: the last timestamp and sequence live in a single AtomicLong which is advanced with compareAndSet.
+ * Once the 4096 ids of a millisecond are used up, or the wall clock goes backwards, the sequence carries over into
+ * the timestamp part. The ids keep increasing and the generator runs a little ahead of the clock until the clock
+ * catches up, nothing ever blocks.
+ */
+@Component
+public class LibraryEventIdGenerator {
+
+    public static final long EPOCH = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+
+    private final long workerId;
+    private final LongSupplier clock;
+    private final AtomicLong lastTimestampAndSequence = new AtomicLong();
+
+    @Autowired
+    public LibraryEventIdGenerator(LibraryEventsProperties libraryEventsProperties) {
+        this(libraryEventsProperties.getId().getWorkerId(), System::currentTimeMillis);
+    }
+
+    public LibraryEventIdGenerator(long workerId, LongSupplier clock) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("Worker id must be between 0 and " + MAX_WORKER_ID + " : " + workerId);
+        }
+        this.workerId = workerId;
+        this.clock = clock;
+    }
+
+    /**
+     * LibraryEvents without an id (every POST) get a generated one, so the record is keyed and the later
+     * updates of the same LibraryEvent land on the same partition, after it.
+     *
+     * @return the libraryEventId, which is also the record key
+     */
+    public Long assignIfAbsent(LibraryEvent libraryEvent) {
+        if (libraryEvent.getLibraryEventId() == null) {
+            libraryEvent.setLibraryEventId(nextId());
+        }
+        return libraryEvent.getLibraryEventId();
+    }
+
+    public long nextId() {
+        long timestamp = clock.getAsLong() - EPOCH;
+        while (true) {
+            long last = lastTimestampAndSequence.get();
+            long next = Math.max(timestamp << SEQUENCE_BITS, last + 1);
+            if (lastTimestampAndSequence.compareAndSet(last, next)) {
+                return (next >>> SEQUENCE_BITS) << (WORKER_ID_BITS + SEQUENCE_BITS)
+                        | workerId << SEQUENCE_BITS
+                        | next & ((1L << SEQUENCE_BITS) - 1);
+            }
+        }
+    }
+}
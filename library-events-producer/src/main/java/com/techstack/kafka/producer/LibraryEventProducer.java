@@ -1,19 +1,29 @@
 package com.techstack.kafka.producer;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techstack.kafka.domain.DeliveryMode;
 import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.outbox.LibraryEventOutbox;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.internals.RecordHeader;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaProducerException;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -26,53 +36,89 @@ public class LibraryEventProducer {
 
     private static final String TOPIC_NAME = "library-events";
 
-    private final KafkaTemplate<Integer, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
+    /**
+     * Order of the records of one LibraryEvent, the consumer skips an update which is older than the stored one.
+     * Records of a hot key are spread over several partitions by the HotKeyAwarePartitioner, so the partition
+     * order alone doesn't tell which update is the latest anymore.
+     */
+    public static final String EVENT_SEQUENCE_HEADER = "event-sequence";
 
-    public void sendLibraryEvent(final LibraryEvent libraryEvent) throws JsonProcessingException {
-        Integer key = libraryEvent.getLibraryEventId();
-        String value = objectMapper.writeValueAsString(libraryEvent);
+    /**
+     * Headers are copied into the RecordHeaders of each ProducerRecord, so the immutable event-source header serves every send
+     */
+    private static final Header EVENT_SOURCE_HEADER = new RecordHeader("event-source", "scanner".getBytes(StandardCharsets.UTF_8));
+
+    private static final String PRODUCED_STAGE = "produced";
+    private static final String SEND_FAILED_STAGE = "send-failed";
+    private static final String SPOOLED_STAGE = "spooled";
+
+    /**
+     * The LibraryEvent is handed to the KafkaTemplate as it is, the configured value-serializer
+     * ({@link com.techstack.kafka.codec.LibraryEventSerializer}) writes it straight into the record bytes
+     */
+    private final KafkaTemplate<Long, LibraryEvent> kafkaTemplate;
+    private final DeliveryModeTemplates deliveryModeTemplates;
+    private final LibraryEventIdGenerator libraryEventIdGenerator;
+    private final LibraryEventOutbox libraryEventOutbox;
+    private final LibraryEventProducerMetrics producerMetrics;
+    private final LibraryEventCallbackExecutor callbackExecutor;
+    private final LogSampling logSampling;
+
+    private final ListenableFutureCallback<SendResult<Long, LibraryEvent>> loggingCallback = new LoggingCallback();
+
+    /**
+     * Used by the fire-and-forget sends, whose caller has been answered before the acknowledgement arrives
+     */
+    private final ListenableFutureCallback<SendResult<Long, LibraryEvent>> spoolingCallback = new SpoolingCallback();
+
+    public void sendLibraryEvent(final LibraryEvent libraryEvent) {
+        Long key = libraryEventIdGenerator.assignIfAbsent(libraryEvent);
+
+        if (libraryEventOutbox.isStrict()) {
+            spool(key, libraryEvent, libraryEventIdGenerator.nextId());
+            return;
+        }
 
         /**
-         * Here we didn't mention where to send the topic in Kafka.
-         * Because, we have configured 'default-topic' information in application.yml file.
-         * Hence, Kafka template know where to send this message.
+         * Sent as a ProducerRecord rather than with sendDefault(key, value), which can't carry headers: the consumer
+         * needs the event-sequence header to tell an older update of a hot key from a newer one.
          *
          * This is an asynchronous call. Which is going to return immediately as soon as this KafkaTemplate method
          * call returned
          */
-        ListenableFuture<SendResult<Integer, String>> listenableFuture =  kafkaTemplate.sendDefault(key, value);
+        long sendStartNanos = System.nanoTime();
+        ListenableFuture<SendResult<Long, LibraryEvent>> listenableFuture =  kafkaTemplate.send(buildProducerRecord(key, libraryEvent, TOPIC_NAME));
+        producerMetrics.instrument(sendStartNanos, listenableFuture, producerMetrics.defaultAckTimer());
 
         /**
-         * ListenableFuture has a option of add  call back
+         * ListenableFuture has a option of add  call back.
+         * The callback doesn't capture anything, key and value are taken from the SendResult, so the same
+         * instance is shared by all the sends
          */
-        listenableFuture.addCallback(new ListenableFutureCallback<SendResult<Integer, String>>() {
-
-            /**
-             * This method get invoked if the message that published is ended up with failure
-             * @param throwable
-             */
-            @Override
-            public void onFailure(Throwable throwable) {
-                handleFailure(key, value, throwable);
-            }
+        listenableFuture.addCallback(spoolingCallback);
 
-            /**
-             * This method gets invoked if the publish is successful
-             *
-             * @param result
-             */
-            @Override
-            public void onSuccess(SendResult<Integer, String> result) {
-                handleSuccess(key, value, result);
-            }
-        });
+    }
+
+    public ListenableFuture<SendResult<Long, LibraryEvent>> sendLibraryEvent_Approach2(final LibraryEvent libraryEvent) {
+        Long key = libraryEventIdGenerator.assignIfAbsent(libraryEvent);
+        return sendLibraryEvent_Approach2(key, libraryEvent, libraryEventIdGenerator.nextId());
+    }
 
+    /**
+     * Same as {@link #sendLibraryEvent_Approach2(LibraryEvent)}, with an event-sequence which was taken earlier,
+     * e.g. when a coalesced UPDATE was submitted rather than when its window closes.
+     */
+    public ListenableFuture<SendResult<Long, LibraryEvent>> sendLibraryEvent_Approach2(final LibraryEvent libraryEvent,
+                                                                                        final long eventSequence) {
+        Long key = libraryEventIdGenerator.assignIfAbsent(libraryEvent);
+        return sendLibraryEvent_Approach2(key, libraryEvent, eventSequence);
     }
 
-    public ListenableFuture<SendResult<Integer, String>> sendLibraryEvent_Approach2(final LibraryEvent libraryEvent) throws JsonProcessingException {
-        Integer key = libraryEvent.getLibraryEventId();
-        String value = objectMapper.writeValueAsString(libraryEvent);
+    private ListenableFuture<SendResult<Long, LibraryEvent>> sendLibraryEvent_Approach2(Long key, LibraryEvent libraryEvent,
+                                                                                         long eventSequence) {
+        if (libraryEventOutbox.isStrict()) {
+            return spool(key, libraryEvent, eventSequence);
+        }
 
         /**
          * This is an asynchronous call. Which is going to return immediately as soon as this KafkaTemplate method
@@ -81,60 +127,147 @@ public class LibraryEventProducer {
          * By using KafkaTemplate send() using another overloaded method which is accepting {@link ProducerRecord}.
          * So, it will take information from the ProducerRecord.
          */
-        ProducerRecord<Integer, String> producerRecord = buildProducerRecord(key, value, TOPIC_NAME);
-        ListenableFuture<SendResult<Integer, String>> listenableFuture =  kafkaTemplate.send(producerRecord);
+        ProducerRecord<Long, LibraryEvent> producerRecord =
+                new ProducerRecord<>(TOPIC_NAME, null, null, key, libraryEvent, recordHeaders(eventSequence));
+        long sendStartNanos = System.nanoTime();
+        ListenableFuture<SendResult<Long, LibraryEvent>> listenableFuture =  kafkaTemplate.send(producerRecord);
+        producerMetrics.instrument(sendStartNanos, listenableFuture, producerMetrics.defaultAckTimer());
 
         /**
-         * ListenableFuture has a option of add  call back
+         * ListenableFuture has a option of add  call back.
+         * The callback doesn't capture anything, key and value are taken from the SendResult, so the same
+         * instance is shared by all the sends
          */
-        listenableFuture.addCallback(new ListenableFutureCallback<SendResult<Integer, String>>() {
-
-            /**
-             * This method get invoked if the message that published is ended up with failure
-             * @param throwable
-             */
-            @Override
-            public void onFailure(Throwable throwable) {
-                handleFailure(key, value, throwable);
-            }
+        listenableFuture.addCallback(spoolingCallback);
 
-            /**
-             * This method gets invoked if the publish is successful
-             *
-             * @param result
-             */
-            @Override
-            public void onSuccess(SendResult<Integer, String> result) {
-                handleSuccess(key, value, result);
-            }
-        });
+        return listenableFuture;
+    }
 
+    /**
+     * Sends a LibraryEvent of the {@link LibraryEventOutbox} again, with the key and event-sequence it was written with.
+     * A failure is only logged, the LibraryEvent is still in the outbox.
+     */
+    public ListenableFuture<SendResult<Long, LibraryEvent>> replayLibraryEvent(long key, long eventSequence, LibraryEvent libraryEvent) {
+        ProducerRecord<Long, LibraryEvent> producerRecord =
+                new ProducerRecord<>(TOPIC_NAME, null, null, key, libraryEvent, recordHeaders(eventSequence));
+        long sendStartNanos = System.nanoTime();
+        ListenableFuture<SendResult<Long, LibraryEvent>> listenableFuture = kafkaTemplate.send(producerRecord);
+        producerMetrics.instrument(sendStartNanos, listenableFuture, producerMetrics.defaultAckTimer());
+        listenableFuture.addCallback(loggingCallback);
         return listenableFuture;
     }
 
-    private ProducerRecord<Integer, String> buildProducerRecord(Integer key, String value, String topic) {
+    /**
+     * Writes the LibraryEvent to the outbox instead of sending it, the drainer publishes it.
+     * The returned future completes once it is in the outbox, without RecordMetadata as it isn't in Kafka yet.
+     */
+    private ListenableFuture<SendResult<Long, LibraryEvent>> spool(Long key, LibraryEvent libraryEvent, long eventSequence) {
+        SettableListenableFuture<SendResult<Long, LibraryEvent>> spooled = new SettableListenableFuture<>();
+        try {
+            libraryEventOutbox.append(key, eventSequence, libraryEvent);
+            spooled.set(new SendResult<>(new ProducerRecord<>(TOPIC_NAME, null, null, key, libraryEvent, recordHeaders(eventSequence)), null));
+        } catch (RuntimeException e) {
+            log.error("Writing the LibraryEvent with key {} to the outbox failed and the exception is {}", key, e.getMessage());
+            spooled.setException(e);
+        }
+        return spooled;
+    }
+
+    /**
+     * Publishes with the producer which is configured for the requested {@link DeliveryMode} and records
+     * the acknowledgement latency of that mode.
+     */
+    public ListenableFuture<SendResult<Long, LibraryEvent>> sendLibraryEvent(final LibraryEvent libraryEvent,
+                                                                                final DeliveryMode deliveryMode) {
+        Long key = libraryEventIdGenerator.assignIfAbsent(libraryEvent);
+
+        ProducerRecord<Long, LibraryEvent> producerRecord = buildProducerRecord(key, libraryEvent, TOPIC_NAME);
+        Timer ackTimer = deliveryModeTemplates.ackTimer(deliveryMode);
+        long sendStartNanos = System.nanoTime();
+        ListenableFuture<SendResult<Long, LibraryEvent>> listenableFuture =
+                deliveryModeTemplates.kafkaTemplate(deliveryMode).send(producerRecord);
+        producerMetrics.instrument(sendStartNanos, listenableFuture, ackTimer);
+        listenableFuture.addCallback(loggingCallback);
 
-        List<Header> recordHeaders = List.of(new RecordHeader("event-source", "scanner".getBytes()));
+        return listenableFuture;
+    }
 
-        return new ProducerRecord<>(topic, null, key, value, recordHeaders);
+    /**
+     * Publishes all the given LibraryEvents without waiting in between the sends.
+     * KafkaTemplate only enqueues the record into the producer buffer, so the whole batch is pipelined
+     * to the brokers and the caller can wait for all the acknowledgements at once.
+     *
+     * With a transactional KafkaTemplate ("transactional" profile) the batch is written in one transaction:
+     * read_committed consumers see either all of the LibraryEvents or none of them. If the transaction
+     * is aborted every future fails with the cause, even the ones whose record had been acknowledged.
+     *
+     * @return one future per LibraryEvent, in the same order as the input
+     */
+    public List<ListenableFuture<SendResult<Long, LibraryEvent>>> sendLibraryEvents(final List<LibraryEvent> libraryEvents) {
+        if (!kafkaTemplate.isTransactional()) {
+            return sendLibraryEvents(kafkaTemplate, libraryEvents);
+        }
+
+        try {
+            return kafkaTemplate.executeInTransaction(operations -> sendLibraryEvents(operations, libraryEvents));
+        } catch (RuntimeException e) {
+            log.error("Transaction for the batch of {} LibraryEvents is aborted and the exception is {}", libraryEvents.size(), e.getMessage());
+            SettableListenableFuture<SendResult<Long, LibraryEvent>> aborted = new SettableListenableFuture<>();
+            aborted.setException(e);
+            return Collections.nCopies(libraryEvents.size(), aborted);
+        }
+    }
+
+    private List<ListenableFuture<SendResult<Long, LibraryEvent>>> sendLibraryEvents(KafkaOperations<Long, LibraryEvent> operations,
+                                                                                          List<LibraryEvent> libraryEvents) {
+        List<ListenableFuture<SendResult<Long, LibraryEvent>>> futures = new ArrayList<>(libraryEvents.size());
+        for (LibraryEvent libraryEvent : libraryEvents) {
+            ProducerRecord<Long, LibraryEvent> producerRecord =
+                    buildProducerRecord(libraryEventIdGenerator.assignIfAbsent(libraryEvent), libraryEvent, TOPIC_NAME);
+            long sendStartNanos = System.nanoTime();
+            ListenableFuture<SendResult<Long, LibraryEvent>> listenableFuture = operations.send(producerRecord);
+            producerMetrics.instrument(sendStartNanos, listenableFuture, producerMetrics.defaultAckTimer());
+            listenableFuture.addCallback(loggingCallback);
+            futures.add(listenableFuture);
+        }
+        return futures;
     }
 
-    public SendResult<Integer, String> sendLibraryEventSynchronous(final LibraryEvent libraryEvent)
-            throws JsonProcessingException, ExecutionException, InterruptedException, TimeoutException {
-        Integer key = libraryEvent.getLibraryEventId();
-        String value = objectMapper.writeValueAsString(libraryEvent);
+    private ProducerRecord<Long, LibraryEvent> buildProducerRecord(Long key, LibraryEvent value, String topic) {
+
+        return new ProducerRecord<>(topic, null, null, key, value, recordHeaders(libraryEventIdGenerator.nextId()));
+    }
+
+    /**
+     * @param eventSequence time ordered, taken from the LibraryEventIdGenerator when the record is built
+     *                      (or when a coalesced UPDATE was submitted)
+     */
+    static List<Header> recordHeaders(long eventSequence) {
+        return List.of(EVENT_SOURCE_HEADER,
+                new RecordHeader(EVENT_SEQUENCE_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(eventSequence).array()));
+    }
+
+    public SendResult<Long, LibraryEvent> sendLibraryEventSynchronous(final LibraryEvent libraryEvent)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        Long key = libraryEventIdGenerator.assignIfAbsent(libraryEvent);
 
         /**
          * When you use get(), you are going to wait until the future returned successfully.
          * Basically it's going to wait until the future is resolved to on success or on failure
          */
-        SendResult<Integer, String> sendResult;
+        SendResult<Long, LibraryEvent> sendResult;
         try {
+            long sendStartNanos = System.nanoTime();
+            //with the event-sequence and event-source headers, like every other send
+            ListenableFuture<SendResult<Long, LibraryEvent>> listenableFuture = kafkaTemplate.send(buildProducerRecord(key, libraryEvent, TOPIC_NAME));
+            //a timed out get() leaves the send running, the callback records how it ends
+            producerMetrics.instrument(sendStartNanos, listenableFuture, producerMetrics.defaultAckTimer());
+
             //Without Timeout
-            //sendResult = kafkaTemplate.sendDefault(key, value).get();
+            //sendResult = listenableFuture.get();
 
             //With TimeOut: It would wait max 1 seconds to get the response from the Kafka, else timeout
-            sendResult = kafkaTemplate.sendDefault(key, value).get(1, TimeUnit.SECONDS);
+            sendResult = listenableFuture.get(1, TimeUnit.SECONDS);
         } catch (InterruptedException | ExecutionException e) {
             log.error("InterruptedException/ExecutionException sending the message and the exception is {}", e.getMessage());
             throw  e;
@@ -146,17 +279,91 @@ public class LibraryEventProducer {
         return sendResult;
     }
 
-    private void handleFailure(Integer key, String value, Throwable ex) {
-        log.error("Error sending the message and the exception is {}", ex.getMessage());
-        try {
-            throw ex;
-        } catch (Throwable throwable) {
-            log.error("Error in OnFailure {}", throwable.getMessage());
+    /**
+     * Per record log lines are sampled (see {@link LogSampling}) and carry the record coordinates only,
+     * the LibraryEvent itself is logged at DEBUG
+     */
+    private void handleFailure(Long key, LibraryEvent value, Throwable ex) {
+        if (logSampling.sample(SEND_FAILED_STAGE)) {
+            log.error("stage={} key={} exception={} suppressed={}", SEND_FAILED_STAGE, key, ex.getMessage(), logSampling.suppressed(SEND_FAILED_STAGE));
+        }
+        log.debug("stage={} key={} value={}", SEND_FAILED_STAGE, key, value);
+    }
+
+    private void handleSuccess(Long key, LibraryEvent value, SendResult<Long, LibraryEvent> result) {
+        if (logSampling.sample(PRODUCED_STAGE)) {
+            RecordMetadata recordMetadata = result.getRecordMetadata();
+            log.info("stage={} key={} partition={} offset={} suppressed={}", PRODUCED_STAGE, key,
+                    recordMetadata.partition(), recordMetadata.offset(), logSampling.suppressed(PRODUCED_STAGE));
+        }
+        log.debug("stage={} key={} value={}", PRODUCED_STAGE, key, value);
+    }
+
+    /**
+     * Keeps the LibraryEvent of a failed send in the outbox, the drainer replays it once the brokers are back
+     */
+    private class SpoolingCallback extends LoggingCallback {
+
+        @Override
+        void failed(Throwable throwable) {
+            super.failed(throwable);
+            if (!libraryEventOutbox.isEnabled() || !(throwable instanceof KafkaProducerException)) {
+                return;
+            }
+            ProducerRecord<Long, LibraryEvent> failedRecord = ((KafkaProducerException) throwable).getFailedProducerRecord();
+            Header sequenceHeader = failedRecord.headers().lastHeader(EVENT_SEQUENCE_HEADER);
+            long eventSequence = sequenceHeader != null
+                    ? ByteBuffer.wrap(sequenceHeader.value()).getLong()
+                    : libraryEventIdGenerator.nextId();
+            try {
+                libraryEventOutbox.append(failedRecord.key(), eventSequence, failedRecord.value());
+                if (logSampling.sample(SPOOLED_STAGE)) {
+                    log.info("stage={} key={} suppressed={}", SPOOLED_STAGE, failedRecord.key(), logSampling.suppressed(SPOOLED_STAGE));
+                }
+            } catch (RuntimeException e) {
+                log.error("LibraryEvent with key {} is lost, writing it to the outbox failed and the exception is {}", failedRecord.key(), e.getMessage());
+            }
         }
     }
 
-    private void handleSuccess(Integer key, String value, SendResult<Integer, String> result) {
-        log.info("Message send successfully for the key: {} and the value is {}, partition info is {}", key, value, result.getRecordMetadata().partition());
+    /**
+     * Invoked on the producer network thread, the work is handed over to the {@link LibraryEventCallbackExecutor}
+     */
+    private class LoggingCallback implements ListenableFutureCallback<SendResult<Long, LibraryEvent>> {
+
+        /**
+         * This method get invoked if the message that published is ended up with failure.
+         * @param throwable
+         */
+        @Override
+        public void onFailure(Throwable throwable) {
+            callbackExecutor.execute(() -> failed(throwable));
+        }
+
+        /**
+         * KafkaTemplate reports send failures as KafkaProducerException, which carries the failed record
+         */
+        void failed(Throwable throwable) {
+            if (throwable instanceof KafkaProducerException) {
+                ProducerRecord<Long, LibraryEvent> failedRecord = ((KafkaProducerException) throwable).getFailedProducerRecord();
+                handleFailure(failedRecord.key(), failedRecord.value(), throwable);
+            } else {
+                handleFailure(null, null, throwable);
+            }
+        }
+
+        /**
+         * This method gets invoked if the publish is successful
+         *
+         * @param result
+         */
+        @Override
+        public void onSuccess(SendResult<Long, LibraryEvent> result) {
+            callbackExecutor.execute(() -> {
+                ProducerRecord<Long, LibraryEvent> producerRecord = result.getProducerRecord();
+                handleSuccess(producerRecord.key(), producerRecord.value(), result);
+            });
+        }
     }
 
 }
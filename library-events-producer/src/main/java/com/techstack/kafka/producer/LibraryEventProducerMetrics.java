@@ -0,0 +1,107 @@
+package com.techstack.kafka.producer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.kafka.core.KafkaProducerException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the {@link LibraryEventProducer} hot path.
+ *
+ * Enqueue time is how long KafkaTemplate.send blocks the caller (serialization, partitioning, waiting for
+ * buffer memory or metadata). Ack latency is measured from before the send to the callback, so it includes
+ * linger.ms, the time in the record accumulator and the broker round trip.
+ *
+ * Every send path goes through one of the instrument() wrappers, the KafkaTemplate ones (asynchronous, synchronous,
+ * per delivery mode) and the reactive one, so the meters compare the paths like for like.
+ */
+@Component
+public class LibraryEventProducerMetrics {
+
+    public static final String ENQUEUE_METRIC = "library.events.producer.send.enqueue";
+    public static final String FAILURE_METRIC = "library.events.producer.send.failures";
+
+    /**
+     * Ack latency tag of the sends without a {@link com.techstack.kafka.domain.DeliveryMode}
+     */
+    public static final String DEFAULT_MODE = "default";
+
+    private final MeterRegistry meterRegistry;
+    private final Timer enqueueTimer;
+    private final Timer defaultAckTimer;
+
+    public LibraryEventProducerMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.enqueueTimer = Timer.builder(ENQUEUE_METRIC)
+                .description("Time KafkaTemplate.send blocks until the record is in the producer buffer")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.defaultAckTimer = Timer.builder(DeliveryModeTemplates.ACK_LATENCY_METRIC)
+                .description("Time between handing the record to the producer and the broker acknowledgement")
+                .tag("mode", DEFAULT_MODE)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records how long the send blocked and, once the callback runs, the ack latency or the failure
+     */
+    public void instrument(long sendStartNanos, ListenableFuture<?> listenableFuture, Timer ackTimer) {
+        recordEnqueue(System.nanoTime() - sendStartNanos);
+        listenableFuture.addCallback(
+                result -> ackTimer.record(System.nanoTime() - sendStartNanos, TimeUnit.NANOSECONDS),
+                this::recordFailure);
+    }
+
+    /**
+     * Same meters for a reactive send. It's lazy, the record is handed to the producer when the Mono is subscribed
+     * to: reactor-kafka calls Producer.send on the subscribing thread, so the enqueue time is how long the subscribe
+     * blocks. The acknowledgement is emitted on the sender scheduler.
+     */
+    public <T> Mono<T> instrument(Mono<T> send, Timer ackTimer) {
+        return Mono.create(sink -> {
+            long sendStartNanos = System.nanoTime();
+            Disposable subscription = send.subscribe(
+                    result -> {
+                        ackTimer.record(System.nanoTime() - sendStartNanos, TimeUnit.NANOSECONDS);
+                        sink.success(result);
+                    },
+                    throwable -> {
+                        recordFailure(throwable);
+                        sink.error(throwable);
+                    },
+                    sink::success);
+            recordEnqueue(System.nanoTime() - sendStartNanos);
+            sink.onDispose(subscription);
+        });
+    }
+
+    public void recordEnqueue(long nanos) {
+        enqueueTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public Timer defaultAckTimer() {
+        return defaultAckTimer;
+    }
+
+    /**
+     * Counted per exception type; KafkaTemplate wraps the producer exception into a KafkaProducerException,
+     * the tag is the type of the cause (e.g. TimeoutException, RecordTooLargeException)
+     */
+    public void recordFailure(Throwable throwable) {
+        Throwable cause = throwable instanceof KafkaProducerException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+        Counter.builder(FAILURE_METRIC)
+                .description("Sends which ended with an exception in the producer callback")
+                .tag("exception", cause.getClass().getSimpleName())
+                .register(meterRegistry)
+                .increment();
+    }
+}
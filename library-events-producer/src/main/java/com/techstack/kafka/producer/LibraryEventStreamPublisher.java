@@ -0,0 +1,129 @@
+package com.techstack.kafka.producer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.domain.LibraryEventStreamResult;
+import com.techstack.kafka.validation.LibraryEventValidator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads newline-delimited LibraryEvent JSON from an InputStream and produces every LibraryEvent as soon
+ * as it has been parsed.
+ *
+ * Jackson's MappingIterator pulls one root level value at a time from the streaming parser, so only the
+ * current LibraryEvent is held in memory. The number of records waiting for an acknowledgement is bounded by
+ * a Semaphore: when the producer can't keep up, the request thread blocks and stops reading the InputStream,
+ * which pushes back on the HTTP client through TCP flow control.
+ */
+@Slf4j
+@Component
+public class LibraryEventStreamPublisher {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private final LibraryEventProducer libraryEventProducer;
+    private final LibraryEventValidator libraryEventValidator;
+    private final LibraryEventsProperties.Stream streamProperties;
+    private final ObjectReader libraryEventReader;
+
+    public LibraryEventStreamPublisher(LibraryEventProducer libraryEventProducer,
+                                       LibraryEventValidator libraryEventValidator,
+                                       LibraryEventsProperties libraryEventsProperties,
+                                       ObjectMapper objectMapper) {
+        this.libraryEventProducer = libraryEventProducer;
+        this.libraryEventValidator = libraryEventValidator;
+        this.streamProperties = libraryEventsProperties.getStream();
+        this.libraryEventReader = objectMapper.readerFor(LibraryEvent.class);
+    }
+
+    public LibraryEventStreamResult publish(InputStream inputStream) throws IOException, InterruptedException {
+        int maxInFlight = streamProperties.getMaxInFlight();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicLong published = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        List<String> errors = new ArrayList<>();
+        long received = 0;
+        long rejected = 0;
+
+        try (MappingIterator<LibraryEvent> iterator = libraryEventReader.readValues(inputStream)) {
+            while (iterator.hasNextValue()) {
+                LibraryEvent libraryEvent = iterator.nextValue();
+                long recordNumber = ++received;
+
+                String errorMessage = libraryEventValidator.validate(libraryEvent);
+                if (errorMessage != null) {
+                    rejected++;
+                    addError(errors, "Record " + recordNumber + " : " + errorMessage);
+                    continue;
+                }
+
+                //Blocks the request thread (and so the reading of the body) while the producer is saturated
+                inFlight.acquire();
+                try {
+                    libraryEventProducer.sendLibraryEvent_Approach2(libraryEvent).addCallback(
+                            result -> {
+                                published.incrementAndGet();
+                                inFlight.release();
+                            },
+                            throwable -> {
+                                failed.incrementAndGet();
+                                addError(errors, "Record " + recordNumber + " : " + throwable.getMessage());
+                                inFlight.release();
+                            });
+                } catch (RuntimeException e) {
+                    //e.g. the KafkaTemplate buffer stayed full for longer than max.block.ms
+                    inFlight.release();
+                    failed.incrementAndGet();
+                    addError(errors, "Record " + recordNumber + " : " + e.getMessage());
+                }
+            }
+        } catch (JsonProcessingException e) {
+            //The rest of the body can't be parsed reliably, everything up to here has been produced already
+            received++;
+            rejected++;
+            int lineNr = e.getLocation() == null ? -1 : e.getLocation().getLineNr();
+            addError(errors, "Malformed JSON at line " + lineNr + " : " + e.getOriginalMessage());
+            log.error("Stopped reading the stream after {} records : {}", received, e.getOriginalMessage());
+        }
+
+        if (!inFlight.tryAcquire(maxInFlight, streamProperties.getAckTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            int pending = maxInFlight - inFlight.availablePermits();
+            failed.addAndGet(pending);
+            addError(errors, "Timed out waiting for " + pending + " acknowledgements");
+        }
+
+        synchronized (errors) {
+            return LibraryEventStreamResult.builder()
+                    .received(received)
+                    .published(published.get())
+                    .rejected(rejected)
+                    .failed(failed.get())
+                    .errors(new ArrayList<>(errors))
+                    .build();
+        }
+    }
+
+    /**
+     * Called from the request thread and from the producer callbacks
+     */
+    private void addError(List<String> errors, String errorMessage) {
+        synchronized (errors) {
+            if (errors.size() < streamProperties.getMaxErrors()) {
+                errors.add(errorMessage);
+            }
+        }
+    }
+}
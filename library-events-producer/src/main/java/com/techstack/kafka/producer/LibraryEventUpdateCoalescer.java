@@ -0,0 +1,166 @@
+package com.techstack.kafka.producer;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.outbox.LibraryEventOutbox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional coalescing window for UPDATEs ("library-events.coalesce.enabled").
+ *
+ * Scanners send bursts of PUTs for the same LibraryEvent within milliseconds. Every UPDATE carries the whole
+ * LibraryEvent, so only the last one of a burst matters: the first UPDATE of a libraryEventId opens a window,
+ * the following ones replace it, and when the window closes only the latest state is handed to the
+ * {@link LibraryEventProducer}. NEW events never come here.
+ *
+ * The pending UPDATE lives in a ConcurrentHashMap, put and remove are atomic per key, so an UPDATE which arrives
+ * while its window is being flushed either makes it into that flush or opens the next window; none is lost.
+ *
+ * The event-sequence is taken when the UPDATE is submitted, not when its window closes. An UPDATE which is
+ * published directly in the meantime (another instance, or a delivery mode) is newer and keeps a higher sequence,
+ * so the consumer skips the coalesced state instead of overwriting the newer one with it.
+ *
+ * A flush runs on the scheduler thread, which has no caller to report to. When handing the UPDATE to the producer
+ * fails there, it is logged and written to the {@link LibraryEventOutbox} when that is enabled.
+ */
+@Slf4j
+@Component
+public class LibraryEventUpdateCoalescer implements DisposableBean {
+
+    public static final String COALESCED_METRIC = "library.events.producer.coalesced";
+    public static final String PENDING_METRIC = "library.events.producer.coalesce.pending";
+
+    private final LibraryEventProducer libraryEventProducer;
+    private final LibraryEventIdGenerator libraryEventIdGenerator;
+    private final LibraryEventOutbox libraryEventOutbox;
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxPending;
+    private final Counter coalescedCounter;
+
+    private final Map<Long, PendingUpdate> pendingUpdates = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public LibraryEventUpdateCoalescer(LibraryEventProducer libraryEventProducer,
+                                       LibraryEventIdGenerator libraryEventIdGenerator,
+                                       LibraryEventOutbox libraryEventOutbox,
+                                       LibraryEventsProperties libraryEventsProperties,
+                                       MeterRegistry meterRegistry) {
+        LibraryEventsProperties.Coalesce coalesce = libraryEventsProperties.getCoalesce();
+        this.libraryEventProducer = libraryEventProducer;
+        this.libraryEventIdGenerator = libraryEventIdGenerator;
+        this.libraryEventOutbox = libraryEventOutbox;
+        this.enabled = coalesce.isEnabled();
+        this.window = coalesce.getWindow();
+        this.maxPending = coalesce.getMaxPending();
+        this.coalescedCounter = Counter.builder(COALESCED_METRIC)
+                .description("UPDATEs replaced by a later UPDATE of the same LibraryEvent before being published")
+                .register(meterRegistry);
+        Gauge.builder(PENDING_METRIC, pendingUpdates, Map::size)
+                .description("UPDATEs waiting for their coalescing window to close")
+                .register(meterRegistry);
+        this.scheduler = enabled ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "library-events-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Holds the UPDATE until the window of its libraryEventId closes. When too many LibraryEvents are pending
+     * already, an UPDATE which would open a new window is published right away instead.
+     */
+    public void submit(LibraryEvent libraryEvent) {
+        Long libraryEventId = libraryEvent.getLibraryEventId();
+
+        if (pendingUpdates.size() >= maxPending && !pendingUpdates.containsKey(libraryEventId)) {
+            libraryEventProducer.sendLibraryEvent_Approach2(libraryEvent);
+            return;
+        }
+
+        PendingUpdate replaced = pendingUpdates.put(libraryEventId,
+                new PendingUpdate(libraryEvent, libraryEventIdGenerator.nextId()));
+        if (replaced == null) {
+            scheduler.schedule(() -> flush(libraryEventId), window.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            coalescedCounter.increment();
+        }
+    }
+
+    /**
+     * Drops the pending UPDATE of the LibraryEvent, for a newer state which is published directly
+     * (e.g. with a delivery mode). Otherwise the older pending state would be published after it.
+     */
+    public void discardPending(Long libraryEventId) {
+        if (pendingUpdates.remove(libraryEventId) != null) {
+            coalescedCounter.increment();
+        }
+    }
+
+    private void flush(Long libraryEventId) {
+        PendingUpdate pendingUpdate = pendingUpdates.remove(libraryEventId);
+        if (pendingUpdate == null) {
+            return;
+        }
+        try {
+            libraryEventProducer.sendLibraryEvent_Approach2(pendingUpdate.getLibraryEvent(), pendingUpdate.getEventSequence());
+        } catch (RuntimeException e) {
+            log.error("Flushing the coalesced UPDATE of LibraryEvent {} failed and the exception is {}", libraryEventId, e.getMessage());
+            spool(libraryEventId, pendingUpdate);
+        }
+    }
+
+    private void spool(Long libraryEventId, PendingUpdate pendingUpdate) {
+        if (!libraryEventOutbox.isEnabled()) {
+            log.error("Coalesced UPDATE of LibraryEvent {} is lost, the outbox is disabled", libraryEventId);
+            return;
+        }
+        try {
+            libraryEventOutbox.append(libraryEventId, pendingUpdate.getEventSequence(), pendingUpdate.getLibraryEvent());
+        } catch (RuntimeException e) {
+            log.error("Coalesced UPDATE of LibraryEvent {} is lost, writing it to the outbox failed and the exception is {}",
+                    libraryEventId, e.getMessage());
+        }
+    }
+
+    /**
+     * Publishes whatever is still pending, the producer is shut down after this bean
+     */
+    @Override
+    public void destroy() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        pendingUpdates.keySet().forEach(this::flush);
+        log.info("Coalescer stopped, pending UPDATEs flushed");
+    }
+
+    /**
+     * The latest UPDATE of a window with the event-sequence it was submitted with
+     */
+    @Getter
+    @AllArgsConstructor
+    private static class PendingUpdate {
+        private final LibraryEvent libraryEvent;
+        private final long eventSequence;
+    }
+}
@@ -0,0 +1,68 @@
+package com.techstack.kafka.producer;
+
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.logging.LogSampling;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.kafka.sender.SenderResult;
+
+/**
+ * Non blocking counterpart of {@link LibraryEventProducer#sendLibraryEventSynchronous(LibraryEvent)}.
+ *
+ * Nothing waits on get() here. The returned Mono completes from the producer callback once the broker has
+ * acknowledged the record, so no thread is parked while the acknowledgement is on its way. Metered like the
+ * KafkaTemplate sends (see {@link LibraryEventProducerMetrics}).
+ */
+@Slf4j
+@Component
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveLibraryEventProducer {
+
+    private static final String TOPIC_NAME = "library-events";
+    private static final String PRODUCED_STAGE = "produced";
+    private static final String SEND_FAILED_STAGE = "send-failed";
+
+    private final ReactiveKafkaProducerTemplate<Long, LibraryEvent> reactiveKafkaProducerTemplate;
+    private final LibraryEventIdGenerator libraryEventIdGenerator;
+    private final LibraryEventProducerMetrics producerMetrics;
+    private final LogSampling logSampling;
+
+    public Mono<SenderResult<Void>> sendLibraryEvent(final LibraryEvent libraryEvent) {
+        Long key = libraryEventIdGenerator.assignIfAbsent(libraryEvent);
+
+        Mono<SenderResult<Void>> send = reactiveKafkaProducerTemplate.send(buildProducerRecord(key, libraryEvent, TOPIC_NAME));
+        return producerMetrics.instrument(send, producerMetrics.defaultAckTimer())
+                .doOnSuccess(result -> handleSuccess(key, libraryEvent, result))
+                .doOnError(throwable -> handleFailure(key, libraryEvent, throwable));
+    }
+
+    private ProducerRecord<Long, LibraryEvent> buildProducerRecord(Long key, LibraryEvent value, String topic) {
+
+        return new ProducerRecord<>(topic, null, null, key, value,
+                LibraryEventProducer.recordHeaders(libraryEventIdGenerator.nextId()));
+    }
+
+    /**
+     * Sampled like the callbacks of {@link LibraryEventProducer}, the LibraryEvent itself is logged at DEBUG
+     */
+    private void handleFailure(Long key, LibraryEvent value, Throwable ex) {
+        if (logSampling.sample(SEND_FAILED_STAGE)) {
+            log.error("stage={} key={} exception={} suppressed={}", SEND_FAILED_STAGE, key, ex.getMessage(), logSampling.suppressed(SEND_FAILED_STAGE));
+        }
+        log.debug("stage={} key={} value={}", SEND_FAILED_STAGE, key, value);
+    }
+
+    private void handleSuccess(Long key, LibraryEvent value, SenderResult<Void> result) {
+        if (logSampling.sample(PRODUCED_STAGE)) {
+            log.info("stage={} key={} partition={} offset={} suppressed={}", PRODUCED_STAGE, key,
+                    result.recordMetadata().partition(), result.recordMetadata().offset(), logSampling.suppressed(PRODUCED_STAGE));
+        }
+        log.debug("stage={} key={} value={}", PRODUCED_STAGE, key, value);
+    }
+}
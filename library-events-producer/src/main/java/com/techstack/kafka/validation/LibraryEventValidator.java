@@ -0,0 +1,72 @@
+package com.techstack.kafka.validation;
+
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.domain.LibraryEventType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Programmatic validation for the endpoints which can't rely on @Valid, because they receive many
+ * LibraryEvents in one request and have to report the outcome per LibraryEvent.
+ *
+ * Same rules as the single event endpoints: type defaults to NEW, UPDATE needs a LibraryEventId and
+ * the bean validation constraints of LibraryEvent / Book have to be satisfied.
+ */
+@Component
+public class LibraryEventValidator {
+
+    public static final String VALIDATION_METRIC = "library.events.producer.validation";
+
+    private final Validator validator;
+    private final Timer validationTimer;
+
+    public LibraryEventValidator(Validator validator, MeterRegistry meterRegistry) {
+        this.validator = validator;
+        this.validationTimer = Timer.builder(VALIDATION_METRIC)
+                .description("Time to validate a LibraryEvent of a batch / stream request")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the error message in the same format as LibraryEventControllerAdvice, or null if the LibraryEvent is valid
+     */
+    public String validate(LibraryEvent libraryEvent) {
+        long startNanos = System.nanoTime();
+        try {
+            return doValidate(libraryEvent);
+        } finally {
+            validationTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String doValidate(LibraryEvent libraryEvent) {
+        if (Objects.isNull(libraryEvent)) {
+            return "LibraryEvent must not be null";
+        }
+        if (Objects.isNull(libraryEvent.getLibraryEventType())) {
+            libraryEvent.setLibraryEventType(LibraryEventType.NEW);
+        }
+        if (libraryEvent.getLibraryEventType() == LibraryEventType.UPDATE
+                && Objects.isNull(libraryEvent.getLibraryEventId())) {
+            return "Please pass the LibraryEventId";
+        }
+
+        Set<ConstraintViolation<LibraryEvent>> violations = validator.validate(libraryEvent);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + " - " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+}
@@ -4,7 +4,7 @@ import com.techstack.kafka.domain.Book;
 import com.techstack.kafka.domain.LibraryEvent;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.common.serialization.IntegerDeserializer;
+import org.apache.kafka.common.serialization.LongDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -30,6 +30,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 
@@ -60,12 +62,12 @@ public class LibraryEventControllerIntegrationTest {
     @Autowired
     private EmbeddedKafkaBroker embeddedKafkaBroker;
 
-    private Consumer<Integer, String> consumer;
+    private Consumer<Long, String> consumer;
 
     @BeforeEach
     void setUp() {
         Map<String, Object> configs = new HashMap<>(KafkaTestUtils.consumerProps("group1", "true", embeddedKafkaBroker));
-        consumer = new DefaultKafkaConsumerFactory<>(configs, new IntegerDeserializer(), new StringDeserializer()).createConsumer();
+        consumer = new DefaultKafkaConsumerFactory<>(configs, new LongDeserializer(), new StringDeserializer()).createConsumer();
         embeddedKafkaBroker.consumeFromAllEmbeddedTopics(consumer);
     }
 
@@ -98,16 +100,28 @@ public class LibraryEventControllerIntegrationTest {
         assertEquals(HttpStatus.CREATED, responseEntity.getStatusCode());
 
         //Read the record from KafkaConsumer
-        ConsumerRecord<Integer, String> consumerRecord = KafkaTestUtils.getSingleRecord(consumer, "library-events");
+        ConsumerRecord<Long, String> consumerRecord = KafkaTestUtils.getSingleRecord(consumer, "library-events");
 
         //Here, why I added Thread.sleep means, your Kafka call is Async. It will be running in a different Thread.
         //Consumer application also runs in another Thread.
         //Option1: use Thread.sleep
         //Thread.sleep(3000);
 
-        String expectedRecord = "{\"libraryEventId\":null,\"libraryEventType\":\"NEW\",\"book\":{\"bookId\":123,\"bookName\":\"TDD\",\"bookAuthor\":\"Karthi\"}}";
+        //The producer assigns the libraryEventId, it's the record key as well
+        Long libraryEventId = responseEntity.getBody().getLibraryEventId();
+        assertNotNull(libraryEventId);
+        assertEquals(libraryEventId, consumerRecord.key());
+
+        String expectedRecord = "{\"libraryEventId\":" + libraryEventId + ",\"libraryEventType\":\"NEW\",\"book\":{\"bookId\":123,\"bookName\":\"TDD\",\"bookAuthor\":\"Karthi\"}}";
         String value = consumerRecord.value();
         assertEquals(expectedRecord, value);
+
+        //The producer hot path and the Kafka producer metrics are scraped from the Prometheus endpoint
+        String prometheus = testRestTemplate.getForObject("/actuator/prometheus", String.class);
+        assertTrue(prometheus.contains("library_events_producer_send_enqueue_seconds_count"));
+        assertTrue(prometheus.contains("library_events_producer_ack_latency_seconds_count{mode=\"default\""));
+        assertTrue(prometheus.contains("library_events_producer_payload_size_bytes_count{format=\"json\""));
+        assertTrue(prometheus.contains("kafka_producer_batch_size_avg"));
     }
 
     @Test
@@ -121,7 +135,7 @@ public class LibraryEventControllerIntegrationTest {
                 .build();
 
         LibraryEvent libraryEvent = LibraryEvent.builder()
-                .libraryEventId(123)
+                .libraryEventId(123L)
                 .book(book)
                 .build();
         HttpHeaders headers = new HttpHeaders();
@@ -134,7 +148,7 @@ public class LibraryEventControllerIntegrationTest {
         //then
         assertEquals(HttpStatus.OK, responseEntity.getStatusCode());
 
-        ConsumerRecord<Integer, String> consumerRecord = KafkaTestUtils.getSingleRecord(consumer, "library-events");
+        ConsumerRecord<Long, String> consumerRecord = KafkaTestUtils.getSingleRecord(consumer, "library-events");
         //Thread.sleep(3000);
         String expectedRecord = "{\"libraryEventId\":123,\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":456,\"bookName\":\"Kafka using Spring Boot\",\"bookAuthor\":\"Karthi\"}}";
         String value = consumerRecord.value();
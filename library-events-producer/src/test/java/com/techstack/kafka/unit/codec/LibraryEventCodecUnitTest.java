@@ -0,0 +1,104 @@
+package com.techstack.kafka.unit.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techstack.kafka.codec.BinaryLibraryEventCodec;
+import com.techstack.kafka.codec.JsonLibraryEventCodec;
+import com.techstack.kafka.codec.LibraryEventCodec;
+import com.techstack.kafka.codec.LibraryEventCodecs;
+import com.techstack.kafka.codec.LibraryEventSerializer;
+import com.techstack.kafka.domain.Book;
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.domain.LibraryEventType;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LibraryEventCodecUnitTest {
+
+    /**
+     * The consumer has to decode exactly these bytes, its codec test uses the same vector
+     */
+    private static final String BINARY_HEX = "013ff601019007174b61666b61205573696e6720537072696e6720426f6f740544696c6970";
+
+    private final LibraryEvent libraryEvent = LibraryEvent.builder()
+            .libraryEventId(123L)
+            .libraryEventType(LibraryEventType.UPDATE)
+            .book(Book.builder().bookId(456).bookName("Kafka Using Spring Boot").bookAuthor("Dilip").build())
+            .build();
+
+    @Test
+    void binary_roundTrip() {
+        LibraryEventCodec codec = new BinaryLibraryEventCodec();
+
+        byte[] data = codec.encode(libraryEvent);
+
+        assertEquals(BINARY_HEX, toHex(data));
+        assertEquals(libraryEvent, codec.decode(data));
+    }
+
+    @Test
+    void binary_nullFields() {
+        LibraryEventCodec codec = new BinaryLibraryEventCodec();
+        LibraryEvent newEvent = LibraryEvent.builder()
+                .libraryEventType(LibraryEventType.NEW)
+                .book(Book.builder().bookId(-1).bookName("").build())
+                .build();
+
+        assertEquals(newEvent, codec.decode(codec.encode(newEvent)));
+    }
+
+    @Test
+    void binary_isSmallerThanJson() {
+        byte[] binary = new BinaryLibraryEventCodec().encode(libraryEvent);
+        byte[] json = new JsonLibraryEventCodec().encode(libraryEvent);
+
+        assertTrue(binary.length * 3 < json.length, binary.length + " bytes vs " + json.length + " bytes");
+    }
+
+    @Test
+    void binary_truncated() {
+        LibraryEventCodec codec = new BinaryLibraryEventCodec();
+        byte[] data = codec.encode(libraryEvent);
+
+        assertThrows(SerializationException.class, () -> codec.decode(Arrays.copyOf(data, data.length - 3)));
+    }
+
+    @Test
+    void json_sameBytesAsObjectMapper() throws Exception {
+        byte[] json = new JsonLibraryEventCodec().encode(libraryEvent);
+
+        assertArrayEquals(new ObjectMapper().writeValueAsBytes(libraryEvent), json);
+    }
+
+    @Test
+    void serializer_tagsFormatHeader() {
+        LibraryEventSerializer serializer = new LibraryEventSerializer();
+        serializer.configure(Map.of(LibraryEventCodecs.CODEC_CONFIG, BinaryLibraryEventCodec.FORMAT), false);
+        Headers headers = new RecordHeaders();
+
+        byte[] data = serializer.serialize("library-events", headers, libraryEvent);
+
+        assertEquals(BINARY_HEX, toHex(data));
+        assertEquals("binary", new String(headers.lastHeader(LibraryEventCodec.FORMAT_HEADER).value(), StandardCharsets.UTF_8));
+        assertEquals(BinaryLibraryEventCodec.FORMAT, LibraryEventCodecs.forHeaders(headers).format());
+        assertEquals(JsonLibraryEventCodec.FORMAT, LibraryEventCodecs.forHeaders(new RecordHeaders()).format());
+    }
+
+    private static String toHex(byte[] data) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : data) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -3,22 +3,44 @@ package com.techstack.kafka.unit.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.techstack.kafka.controller.LibraryEventsController;
 import com.techstack.kafka.domain.Book;
+import com.techstack.kafka.domain.DeliveryMode;
 import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.domain.LibraryEventStreamResult;
 import com.techstack.kafka.producer.LibraryEventProducer;
+import com.techstack.kafka.producer.LibraryEventStreamPublisher;
+import com.techstack.kafka.producer.LibraryEventUpdateCoalescer;
+import com.techstack.kafka.validation.LibraryEventValidator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
+import java.io.InputStream;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -27,6 +49,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  */
 @WebMvcTest(controllers = LibraryEventsController.class)
 @AutoConfigureMockMvc
+@Import({LibraryEventValidator.class, SimpleMeterRegistry.class})
 public class LibraryEventControllerUnitTest {
 
     @Autowired
@@ -35,6 +58,12 @@ public class LibraryEventControllerUnitTest {
     @MockBean //Controller depends on this LibraryEventProducer
     LibraryEventProducer libraryEventProducer;
 
+    @MockBean
+    LibraryEventStreamPublisher libraryEventStreamPublisher;
+
+    @MockBean
+    LibraryEventUpdateCoalescer libraryEventUpdateCoalescer;
+
     ObjectMapper objectMapper = new ObjectMapper();
 
     @Test
@@ -97,7 +126,7 @@ public class LibraryEventControllerUnitTest {
                 .build();
 
         LibraryEvent libraryEvent = LibraryEvent.builder()
-                .libraryEventId(123)
+                .libraryEventId(123L)
                 .book(book)
                 .build();
         String json = objectMapper.writeValueAsString(libraryEvent);
@@ -112,6 +141,27 @@ public class LibraryEventControllerUnitTest {
 
     }
 
+    @Test
+    @DisplayName("PUT hands the UPDATE to the coalescer when coalescing is enabled")
+    void updateLibraryEvent_coalesced() throws Exception {
+
+        //given
+        Book book = Book.builder().bookId(123).bookAuthor("Karthi").bookName("Kafka Using Spring Boot").build();
+        LibraryEvent libraryEvent = LibraryEvent.builder().libraryEventId(123L).book(book).build();
+        String json = objectMapper.writeValueAsString(libraryEvent);
+        when(libraryEventUpdateCoalescer.isEnabled()).thenReturn(true);
+
+        //expect
+        mockMvc.perform(
+                put("/v1/library-event")
+                        .content(json)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        verify(libraryEventUpdateCoalescer).submit(isA(LibraryEvent.class));
+        verify(libraryEventProducer, never()).sendLibraryEvent_Approach2(any());
+    }
+
     @Test
     void updateLibraryEvent_withNullLibraryEventId() throws Exception {
 
@@ -138,4 +188,142 @@ public class LibraryEventControllerUnitTest {
                 .andExpect(content().string("Please pass the LibraryEventId"));
 
     }
+
+    @Test
+    @DisplayName("Test Post Library Event with the leader-ack delivery mode")
+    void postLibraryEvent_leaderAck() throws Exception {
+        //Given
+        Book book = Book.builder().bookId(123).bookAuthor("Karthi").bookName("TDD").build();
+        LibraryEvent libraryEvent = LibraryEvent.builder().libraryEventId(null).book(book).build();
+        String json = objectMapper.writeValueAsString(libraryEvent);
+
+        //When
+        when(libraryEventProducer.sendLibraryEvent(isA(LibraryEvent.class), eq(DeliveryMode.LEADER_ACK)))
+                .thenReturn(acknowledged(0, 1L));
+
+        //Then
+        mockMvc.perform(post("/v1/library-event")
+                .header("X-Delivery-Mode", "leader-ack")
+                .content(json)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+    }
+
+    @Test
+    @DisplayName("Test Post Library Event with the all-replicas-ack delivery mode when the send fails")
+    void postLibraryEvent_allReplicasAckFailed() throws Exception {
+        //Given
+        Book book = Book.builder().bookId(123).bookAuthor("Karthi").bookName("TDD").build();
+        LibraryEvent libraryEvent = LibraryEvent.builder().libraryEventId(null).book(book).build();
+        String json = objectMapper.writeValueAsString(libraryEvent);
+
+        //When
+        SettableListenableFuture<SendResult<Long, LibraryEvent>> failed = new SettableListenableFuture<>();
+        failed.setException(new KafkaException("Not enough replicas"));
+        when(libraryEventProducer.sendLibraryEvent(isA(LibraryEvent.class), eq(DeliveryMode.ALL_REPLICAS_ACK)))
+                .thenReturn(failed);
+
+        //Then
+        mockMvc.perform(post("/v1/library-event")
+                .header("X-Delivery-Mode", "all-replicas-ack")
+                .content(json)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(content().string("Delivery mode all-replicas-ack : the send failed, Not enough replicas"));
+    }
+
+    @Test
+    @DisplayName("Test Put Library Event with an unknown delivery mode")
+    void updateLibraryEvent_unknownDeliveryMode() throws Exception {
+        //Given
+        Book book = Book.builder().bookId(123).bookAuthor("Karthi").bookName("TDD").build();
+        LibraryEvent libraryEvent = LibraryEvent.builder().libraryEventId(123L).book(book).build();
+        String json = objectMapper.writeValueAsString(libraryEvent);
+
+        //Then
+        mockMvc.perform(put("/v1/library-event")
+                .param("deliveryMode", "exactly-twice")
+                .content(json)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Unknown delivery mode : exactly-twice"));
+    }
+
+    @Test
+    @DisplayName("Test Post Batch of Library Events")
+    void postLibraryEvents() throws Exception {
+        //Given
+        Book book = Book.builder().bookId(123).bookAuthor("Karthi").bookName("TDD").build();
+        LibraryEvent libraryEvent = LibraryEvent.builder().libraryEventId(null).book(book).build();
+
+        String json = objectMapper.writeValueAsString(List.of(libraryEvent, libraryEvent));
+
+        //When
+        when(libraryEventProducer.sendLibraryEvents(anyList()))
+                .thenReturn(List.of(acknowledged(0, 10L), acknowledged(1, 11L)));
+
+        //Then
+        mockMvc.perform(post("/v1/library-events/batch")
+                .content(json)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$[0].partition").value(0))
+                .andExpect(jsonPath("$[0].offset").value(10))
+                .andExpect(jsonPath("$[1].partition").value(1))
+                .andExpect(jsonPath("$[1].offset").value(11));
+    }
+
+    @Test
+    @DisplayName("Test Post Batch of Library Events with an invalid and a failed event")
+    void postLibraryEvents_207() throws Exception {
+        //Given
+        Book book = Book.builder().bookId(123).bookAuthor("Karthi").bookName("TDD").build();
+        Book invalidBook = Book.builder().bookId(null).bookAuthor(null).bookName("TDD").build();
+
+        String json = objectMapper.writeValueAsString(List.of(
+                LibraryEvent.builder().book(book).build(),
+                LibraryEvent.builder().book(invalidBook).build(),
+                LibraryEvent.builder().book(book).build()));
+
+        SettableListenableFuture<SendResult<Long, LibraryEvent>> failed = new SettableListenableFuture<>();
+        failed.setException(new RuntimeException("Exception Calling Kafka"));
+
+        //When
+        when(libraryEventProducer.sendLibraryEvents(anyList())).thenReturn(List.of(acknowledged(2, 5L), failed));
+
+        //Then
+        mockMvc.perform(post("/v1/library-events/batch")
+                .content(json)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$[0].offset").value(5))
+                .andExpect(jsonPath("$[1].error").value("book.bookAuthor - must not be blank, book.bookId - must not be null"))
+                .andExpect(jsonPath("$[2].error").value("Exception Calling Kafka"));
+    }
+
+    @Test
+    @DisplayName("Test Post NDJSON stream of Library Events")
+    void streamLibraryEvents() throws Exception {
+        //Given
+        LibraryEventStreamResult result = LibraryEventStreamResult.builder()
+                .received(2).published(2).errors(List.of()).build();
+
+        //When
+        when(libraryEventStreamPublisher.publish(any(InputStream.class))).thenReturn(result);
+
+        //Then
+        mockMvc.perform(post("/v1/library-events/stream")
+                .content("{}\n{}\n")
+                .contentType(LibraryEventStreamPublisher.APPLICATION_NDJSON_VALUE))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.published").value(2));
+    }
+
+    private SettableListenableFuture<SendResult<Long, LibraryEvent>> acknowledged(int partition, long offset) {
+        SettableListenableFuture<SendResult<Long, LibraryEvent>> future = new SettableListenableFuture<>();
+        RecordMetadata recordMetadata = new RecordMetadata(new TopicPartition("library-events", partition),
+                offset, 0, System.currentTimeMillis(), 1L, 1, 2);
+        future.set(new SendResult<>(new ProducerRecord<Long, LibraryEvent>("library-events", null, new LibraryEvent()), recordMetadata));
+        return future;
+    }
 }
@@ -0,0 +1,91 @@
+package com.techstack.kafka.unit.controller;
+
+import com.techstack.kafka.controller.ReactiveLibraryEventsController;
+import com.techstack.kafka.domain.Book;
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.producer.ReactiveLibraryEventProducer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.kafka.sender.SenderResult;
+
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * When you use @WebFluxTest it would scan this Controller class.
+ * The "reactive" profile is needed, because the reactive controller is only active with that profile.
+ */
+@WebFluxTest(controllers = ReactiveLibraryEventsController.class)
+@ActiveProfiles("reactive")
+public class ReactiveLibraryEventControllerUnitTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @MockBean //Controller depends on this ReactiveLibraryEventProducer
+    ReactiveLibraryEventProducer reactiveLibraryEventProducer;
+
+    @Test
+    @DisplayName("Test Post Library Event completes after the acknowledgement")
+    @SuppressWarnings("unchecked")
+    void postLibraryEvent() {
+        //Given
+        Book book = Book.builder().bookId(123).bookAuthor("Karthi").bookName("TDD").build();
+        LibraryEvent libraryEvent = LibraryEvent.builder().libraryEventId(null).book(book).build();
+
+        //When
+        when(reactiveLibraryEventProducer.sendLibraryEvent(isA(LibraryEvent.class)))
+                .thenReturn(Mono.just(mock(SenderResult.class)));
+
+        //Then
+        webTestClient.post().uri("/v1/library-event")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(libraryEvent)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody().jsonPath("$.libraryEventType").isEqualTo("NEW");
+    }
+
+    @Test
+    @DisplayName("Test Post Library Event to verify 4xx")
+    void postLibraryEvent_4xx() {
+        //Given
+        Book book = Book.builder().bookId(null).bookAuthor(null).bookName("TDD").build();
+        LibraryEvent libraryEvent = LibraryEvent.builder().libraryEventId(null).book(book).build();
+
+        //Then
+        webTestClient.post().uri("/v1/library-event")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(libraryEvent)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("book.bookAuthor - must not be blank, book.bookId - must not be null");
+    }
+
+    @Test
+    void updateLibraryEvent_failure() {
+        //Given
+        Book book = Book.builder().bookId(123).bookAuthor("Karthi").bookName("TDD").build();
+        LibraryEvent libraryEvent = LibraryEvent.builder().libraryEventId(123L).book(book).build();
+
+        //When
+        when(reactiveLibraryEventProducer.sendLibraryEvent(isA(LibraryEvent.class)))
+                .thenReturn(Mono.error(new RuntimeException("Exception Calling Kafka")));
+
+        //Then
+        webTestClient.put().uri("/v1/library-event")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(libraryEvent)
+                .exchange()
+                .expectStatus().is5xxServerError()
+                .expectBody(String.class).isEqualTo("Error sending the LibraryEvent : Exception Calling Kafka");
+    }
+}
@@ -0,0 +1,43 @@
+package com.techstack.kafka.unit.logging;
+
+import com.techstack.kafka.logging.LogSampling;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogSamplingUnitTest {
+
+    @Test
+    void sample_ratePerSecondAndStage() {
+        AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+        LogSampling logSampling = new LogSampling(2, clock::get);
+
+        assertTrue(logSampling.sample("produced"));
+        assertTrue(logSampling.sample("produced"));
+        assertFalse(logSampling.sample("produced"));
+        assertFalse(logSampling.sample("produced"));
+        //every stage has its own rate
+        assertTrue(logSampling.sample("send-failed"));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        assertTrue(logSampling.sample("produced"));
+        assertEquals(2, logSampling.suppressed("produced"));
+        assertEquals(0, logSampling.suppressed("produced"));
+    }
+
+    @Test
+    void sample_zeroRateLogsEverything() {
+        LogSampling logSampling = new LogSampling(0, System::nanoTime);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(logSampling.sample("produced"));
+        }
+        assertEquals(0, logSampling.suppressed("produced"));
+    }
+}
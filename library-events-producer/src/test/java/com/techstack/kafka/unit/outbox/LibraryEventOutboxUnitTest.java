@@ -0,0 +1,162 @@
+package com.techstack.kafka.unit.outbox;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.domain.Book;
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.domain.LibraryEventType;
+import com.techstack.kafka.outbox.LibraryEventOutbox;
+import com.techstack.kafka.outbox.LibraryEventOutboxDrainer;
+import com.techstack.kafka.outbox.OutboxRecord;
+import com.techstack.kafka.producer.LibraryEventProducer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.util.unit.DataSize;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LibraryEventOutboxUnitTest {
+
+    @TempDir
+    Path directory;
+
+    List<LibraryEventOutbox> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(LibraryEventOutbox::destroy);
+    }
+
+    @Test
+    void append_peek_commit() {
+        LibraryEventOutbox outbox = open(DataSize.ofMegabytes(1));
+
+        outbox.append(1L, 10L, libraryEvent(1L));
+        outbox.append(2L, 20L, libraryEvent(2L));
+        outbox.append(3L, 30L, libraryEvent(3L));
+
+        List<OutboxRecord> records = outbox.peek(2);
+        assertEquals(2, records.size());
+        assertEquals(1L, records.get(0).getKey());
+        assertEquals(10L, records.get(0).getEventSequence());
+        assertEquals(libraryEvent(1L), records.get(0).getLibraryEvent());
+
+        outbox.commit(records.subList(0, 1));
+
+        assertEquals(List.of(2L, 3L), keys(outbox.peek(10)));
+        assertEquals(2, outbox.pending());
+    }
+
+    @Test
+    void segments_rollAndSurviveRestart() throws Exception {
+        LibraryEventOutbox outbox = open(DataSize.ofBytes(256));
+        for (long key = 1; key <= 10; key++) {
+            outbox.append(key, key, libraryEvent(key));
+        }
+        outbox.commit(outbox.peek(4));
+        outbox.destroy();
+
+        LibraryEventOutbox reopened = open(DataSize.ofBytes(256));
+
+        assertEquals(6, reopened.pending());
+        assertEquals(List.of(5L, 6L, 7L, 8L, 9L, 10L), keys(reopened.peek(100)));
+        reopened.append(11L, 11L, libraryEvent(11L));
+        assertEquals(11L, reopened.peek(100).get(6).getKey());
+        try (Stream<Path> files = Files.list(directory)) {
+            //the drained segments are deleted
+            assertTrue(files.filter(path -> path.toString().endsWith(".log")).count() < 10);
+        }
+    }
+
+    @Test
+    void tornRecord_isDiscardedOnRestart() throws Exception {
+        LibraryEventOutbox outbox = open(DataSize.ofMegabytes(1));
+        outbox.append(1L, 1L, libraryEvent(1L));
+        outbox.append(2L, 2L, libraryEvent(2L));
+        int secondRecordEnd = outbox.peek(2).get(1).getNextPosition();
+        outbox.destroy();
+
+        //a crash in the middle of writing the second record leaves its body incomplete
+        try (RandomAccessFile segment = new RandomAccessFile(directory.resolve("outbox-00000000000000000000.log").toFile(), "rw")) {
+            segment.seek(secondRecordEnd - 1);
+            segment.write(0x7f);
+        }
+
+        LibraryEventOutbox reopened = open(DataSize.ofMegabytes(1));
+        reopened.append(3L, 3L, libraryEvent(3L));
+
+        assertEquals(List.of(1L, 3L), keys(reopened.peek(10)));
+    }
+
+    @Test
+    void drain_stopsAtTheFirstFailure() {
+        LibraryEventOutbox outbox = open(DataSize.ofMegabytes(1));
+        for (long key = 1; key <= 3; key++) {
+            outbox.append(key, key, libraryEvent(key));
+        }
+
+        SettableListenableFuture<SendResult<Long, LibraryEvent>> acknowledged = new SettableListenableFuture<>();
+        acknowledged.set(null);
+        SettableListenableFuture<SendResult<Long, LibraryEvent>> failed = new SettableListenableFuture<>();
+        failed.setException(new RuntimeException("Brokers unavailable"));
+        LibraryEventProducer producer = mock(LibraryEventProducer.class);
+        when(producer.replayLibraryEvent(eq(1L), anyLong(), isA(LibraryEvent.class))).thenReturn(acknowledged);
+        when(producer.replayLibraryEvent(eq(2L), anyLong(), isA(LibraryEvent.class))).thenReturn(failed);
+        when(producer.replayLibraryEvent(eq(3L), anyLong(), isA(LibraryEvent.class))).thenReturn(acknowledged);
+
+        LibraryEventOutboxDrainer drainer = new LibraryEventOutboxDrainer(outbox, producer, properties(DataSize.ofMegabytes(1)));
+        try {
+            assertEquals(1, drainer.drain());
+        } finally {
+            drainer.destroy();
+        }
+
+        assertEquals(List.of(2L, 3L), keys(outbox.peek(10)));
+    }
+
+    private LibraryEventOutbox open(DataSize segmentSize) {
+        LibraryEventOutbox outbox = new LibraryEventOutbox(properties(segmentSize), new SimpleMeterRegistry());
+        opened.add(outbox);
+        return outbox;
+    }
+
+    private LibraryEventsProperties properties(DataSize segmentSize) {
+        LibraryEventsProperties properties = new LibraryEventsProperties();
+        properties.getOutbox().setEnabled(true);
+        properties.getOutbox().setDirectory(directory.toString());
+        properties.getOutbox().setSegmentSize(segmentSize);
+        properties.getOutbox().setDrainInterval(Duration.ofHours(1));
+        return properties;
+    }
+
+    private static List<Long> keys(List<OutboxRecord> records) {
+        return records.stream().map(OutboxRecord::getKey).collect(Collectors.toList());
+    }
+
+    private static LibraryEvent libraryEvent(Long libraryEventId) {
+        Book book = Book.builder().bookId(123).bookAuthor("Karthi").bookName("Kafka Using Spring Boot").build();
+        return LibraryEvent.builder()
+                .libraryEventId(libraryEventId)
+                .libraryEventType(LibraryEventType.NEW)
+                .book(book)
+                .build();
+    }
+}
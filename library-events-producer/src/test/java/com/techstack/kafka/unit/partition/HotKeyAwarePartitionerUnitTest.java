@@ -0,0 +1,84 @@
+package com.techstack.kafka.unit.partition;
+
+import com.techstack.kafka.partition.HotKeyAwarePartitioner;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HotKeyAwarePartitionerUnitTest {
+
+    private static final String TOPIC = "library-events";
+
+    private final Node node = new Node(0, "localhost", 9092);
+    private final Cluster cluster = new Cluster("cluster", List.of(node),
+            List.of(new PartitionInfo(TOPIC, 0, node, null, null),
+                    new PartitionInfo(TOPIC, 1, node, null, null),
+                    new PartitionInfo(TOPIC, 2, node, null, null)),
+            Collections.emptySet(), Collections.emptySet());
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HotKeyAwarePartitioner partitioner = new HotKeyAwarePartitioner();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+        partitioner.configure(Map.of(
+                HotKeyAwarePartitioner.HOT_KEY_THRESHOLD_CONFIG, "10",
+                HotKeyAwarePartitioner.HOT_KEY_WINDOW_MS_CONFIG, "60000",
+                HotKeyAwarePartitioner.HOT_KEY_PARTITIONS_CONFIG, "1-2"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        partitioner.close();
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void coldKey_sameAsDefaultPartitioner() {
+        byte[] keyBytes = new LongSerializer().serialize(TOPIC, 123L);
+
+        for (int i = 0; i < 9; i++) {
+            assertEquals(Utils.toPositive(Utils.murmur2(keyBytes)) % 3, partition(123L, keyBytes));
+        }
+    }
+
+    @Test
+    void hotKey_spreadOverHotPartitions() {
+        byte[] keyBytes = new LongSerializer().serialize(TOPIC, 456L);
+
+        Set<Integer> hotKeyPartitions = new TreeSet<>();
+        for (int i = 0; i < 100; i++) {
+            int partition = partition(456L, keyBytes);
+            if (i >= 9) {
+                hotKeyPartitions.add(partition);
+            }
+        }
+
+        assertEquals(Set.of(1, 2), hotKeyPartitions);
+        double hotRecords = meterRegistry.find(HotKeyAwarePartitioner.PARTITION_RECORDS_METRIC).tag("hot", "true")
+                .counters().stream().mapToDouble(counter -> counter.count()).sum();
+        assertEquals(91, hotRecords);
+        assertTrue(meterRegistry.find(HotKeyAwarePartitioner.PARTITION_SKEW_METRIC).gauge() != null);
+    }
+
+    private int partition(Long key, byte[] keyBytes) {
+        return partitioner.partition(TOPIC, key, keyBytes, null, null, cluster);
+    }
+}
@@ -0,0 +1,92 @@
+package com.techstack.kafka.unit.producer;
+
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.producer.LibraryEventIdGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LibraryEventIdGeneratorUnitTest {
+
+    private static final long NOW = LibraryEventIdGenerator.EPOCH + 1_000;
+
+    @Test
+    void nextId_layout() {
+        LibraryEventIdGenerator generator = new LibraryEventIdGenerator(5, () -> NOW);
+
+        long first = generator.nextId();
+        long second = generator.nextId();
+
+        assertEquals(1_000L, first >>> 22);
+        assertEquals(5L, (first >>> 12) & 1023);
+        assertEquals(0L, first & 4095);
+        assertEquals(first + 1, second);
+    }
+
+    @Test
+    void nextId_sequenceExhaustedAndClockGoingBackwards() {
+        AtomicLong clock = new AtomicLong(NOW);
+        LibraryEventIdGenerator generator = new LibraryEventIdGenerator(1, clock::get);
+
+        long previous = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (i == 5_000) {
+                clock.addAndGet(-500);
+            }
+            long id = generator.nextId();
+            assertTrue(id > previous, "ids must keep increasing");
+            assertEquals(1L, (id >>> 12) & 1023);
+            previous = id;
+        }
+    }
+
+    @Test
+    void nextId_uniqueAcrossThreads() throws Exception {
+        LibraryEventIdGenerator generator = new LibraryEventIdGenerator(0, System::currentTimeMillis);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            Set<Future<?>> futures = IntStream.range(0, 4)
+                    .mapToObj(thread -> executorService.submit(() -> {
+                        for (int i = 0; i < 25_000; i++) {
+                            ids.add(generator.nextId());
+                        }
+                    }))
+                    .collect(Collectors.toSet());
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertEquals(100_000, ids.size());
+    }
+
+    @Test
+    void assignIfAbsent() {
+        LibraryEventIdGenerator generator = new LibraryEventIdGenerator(0, () -> NOW);
+        LibraryEvent newEvent = LibraryEvent.builder().build();
+        LibraryEvent updateEvent = LibraryEvent.builder().libraryEventId(123L).build();
+
+        assertEquals(1_000L << 22, generator.assignIfAbsent(newEvent));
+        assertEquals(1_000L << 22, newEvent.getLibraryEventId());
+        assertEquals(123L, generator.assignIfAbsent(updateEvent));
+    }
+
+    @Test
+    void workerId_outOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new LibraryEventIdGenerator(1024, () -> NOW));
+    }
+}
@@ -1,44 +1,91 @@
 package com.techstack.kafka.unit.producer;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.techstack.kafka.domain.Book;
+import com.techstack.kafka.domain.DeliveryMode;
 import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.outbox.LibraryEventOutbox;
+import com.techstack.kafka.producer.DeliveryModeTemplates;
+import com.techstack.kafka.producer.LibraryEventCallbackExecutor;
+import com.techstack.kafka.producer.LibraryEventIdGenerator;
 import com.techstack.kafka.producer.LibraryEventProducer;
+import com.techstack.kafka.producer.LibraryEventProducerMetrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaProducerException;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.SettableListenableFuture;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class LibraryEventProducerUnitTest {
 
     @Mock
-    KafkaTemplate<Integer,String> kafkaTemplate;
+    KafkaTemplate<Long,LibraryEvent> kafkaTemplate;
+
+    @Mock
+    DeliveryModeTemplates deliveryModeTemplates;
+
+    @Mock
+    LibraryEventIdGenerator libraryEventIdGenerator;
+
+    @Mock
+    LibraryEventOutbox libraryEventOutbox;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     @Spy
-    ObjectMapper objectMapper = new ObjectMapper();
+    LibraryEventProducerMetrics producerMetrics = new LibraryEventProducerMetrics(meterRegistry);
+
+    @Mock
+    LibraryEventCallbackExecutor callbackExecutor;
+
+    @Mock
+    LogSampling logSampling;
 
     @InjectMocks
     LibraryEventProducer eventProducer;
 
+    @BeforeEach
+    void setUp() {
+        //the callbacks run right away instead of on the callback thread
+        lenient().doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(callbackExecutor).execute(any(Runnable.class));
+    }
+
     @Test
-    void sendLibraryEvent_Approach2_failure() throws JsonProcessingException, ExecutionException, InterruptedException {
+    void sendLibraryEvent_Approach2_failure() throws ExecutionException, InterruptedException {
         //Given
         Book book = Book.builder()
                 .bookId(123)
@@ -63,7 +110,66 @@ public class LibraryEventProducerUnitTest {
     }
 
     @Test
-    void sendLibraryEvent_Approach2_success() throws JsonProcessingException, ExecutionException, InterruptedException {
+    void sendLibraryEvent_Approach2_kafkaProducerException() {
+        //Given
+        Book book = Book.builder()
+                .bookId(123)
+                .bookAuthor("Dilip")
+                .bookName("Kafka using Spring Boot")
+                .build();
+
+        LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventId(123L)
+                .book(book)
+                .build();
+
+        ArgumentCaptor<ProducerRecord<Long, LibraryEvent>> producerRecordCaptor = ArgumentCaptor.forClass(ProducerRecord.class);
+        SettableListenableFuture future = new SettableListenableFuture();
+
+        //When
+        when(kafkaTemplate.send(producerRecordCaptor.capture())).thenReturn(future);
+        ListenableFuture<SendResult<Long,LibraryEvent>> listenableFuture = eventProducer.sendLibraryEvent_Approach2(libraryEvent);
+        future.setException(new KafkaProducerException(producerRecordCaptor.getValue(), "Failed to send", new RuntimeException("Exception Calling Kafka")));
+
+        //Then
+        assertThrows(ExecutionException.class, listenableFuture::get);
+        Header eventSource = producerRecordCaptor.getValue().headers().lastHeader("event-source");
+        assertEquals("scanner", new String(eventSource.value(), StandardCharsets.UTF_8));
+        assertEquals(1, meterRegistry.counter(LibraryEventProducerMetrics.FAILURE_METRIC, "exception", "RuntimeException").count());
+        assertEquals(1, meterRegistry.timer(LibraryEventProducerMetrics.ENQUEUE_METRIC).count());
+    }
+
+    @Test
+    void sendLibraryEvent_Approach2_failure_keptInOutbox() {
+        //Given
+        Book book = Book.builder()
+                .bookId(123)
+                .bookAuthor("Dilip")
+                .bookName("Kafka using Spring Boot")
+                .build();
+
+        LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventId(123L)
+                .book(book)
+                .build();
+
+        ArgumentCaptor<ProducerRecord<Long, LibraryEvent>> producerRecordCaptor = ArgumentCaptor.forClass(ProducerRecord.class);
+        SettableListenableFuture future = new SettableListenableFuture();
+
+        //When
+        when(libraryEventIdGenerator.assignIfAbsent(libraryEvent)).thenReturn(123L);
+        when(libraryEventIdGenerator.nextId()).thenReturn(42L);
+        when(libraryEventOutbox.isEnabled()).thenReturn(true);
+        when(kafkaTemplate.send(producerRecordCaptor.capture())).thenReturn(future);
+        eventProducer.sendLibraryEvent_Approach2(libraryEvent);
+        future.setException(new KafkaProducerException(producerRecordCaptor.getValue(), "Failed to send", new RuntimeException("Exception Calling Kafka")));
+
+        //Then
+        verify(libraryEventOutbox).append(123L, 42L, libraryEvent);
+    }
+
+    @Test
+    void sendLibraryEvent_Approach2_success() throws ExecutionException, InterruptedException {
         //given
         Book book = Book.builder()
                 .bookId(123)
@@ -76,34 +182,132 @@ public class LibraryEventProducerUnitTest {
                 .book(book)
                 .build();
 
-        String record = objectMapper.writeValueAsString(libraryEvent);
-
         //=>1
         SettableListenableFuture future = new SettableListenableFuture();
 
         //=>2
-        ProducerRecord<Integer, String> producerRecord = new ProducerRecord("library-events", libraryEvent.getLibraryEventId(), record);
+        ProducerRecord<Long, LibraryEvent> producerRecord = new ProducerRecord("library-events", libraryEvent.getLibraryEventId(), libraryEvent);
 
         //=>3
         RecordMetadata recordMetadata = new RecordMetadata(new TopicPartition("library-events", 1),
                 1,1,342, System.currentTimeMillis(), 1, 2);
 
         //=>4
-        SendResult<Integer, String> sendResult = new SendResult<>(producerRecord, recordMetadata);
+        SendResult<Long, LibraryEvent> sendResult = new SendResult<>(producerRecord, recordMetadata);
 
         //=>5
         future.set(sendResult);
 
         //when
-        //In actual code when we call kafkaTemplate.send() this would return ListenableFuture<SendResult<Integer, String>>
+        //In actual code when we call kafkaTemplate.send() this would return ListenableFuture<SendResult<Long, LibraryEvent>>
         //We have to mock this using SettableListenableFuture
         when(kafkaTemplate.send(isA(ProducerRecord.class))).thenReturn(future);
 
-        ListenableFuture<SendResult<Integer,String>> listenableFuture =  eventProducer.sendLibraryEvent_Approach2(libraryEvent);
+        ListenableFuture<SendResult<Long,LibraryEvent>> listenableFuture =  eventProducer.sendLibraryEvent_Approach2(libraryEvent);
 
         //then
-        SendResult<Integer,String> sendResult1 = listenableFuture.get();
+        SendResult<Long,LibraryEvent> sendResult1 = listenableFuture.get();
         assert sendResult1.getRecordMetadata().partition() == 1;
 
     }
+
+    @Test
+    void sendLibraryEvent_deliveryMode_recordsAckLatency() throws ExecutionException, InterruptedException {
+        //given
+        Book book = Book.builder()
+                .bookId(123)
+                .bookAuthor("Dilip")
+                .bookName("Kafka using Spring Boot")
+                .build();
+
+        LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventId(123L)
+                .book(book)
+                .build();
+
+        SettableListenableFuture future = new SettableListenableFuture();
+        ProducerRecord<Long, LibraryEvent> producerRecord = new ProducerRecord("library-events", 123L, libraryEvent);
+        RecordMetadata recordMetadata = new RecordMetadata(new TopicPartition("library-events", 2),
+                1,1,342, System.currentTimeMillis(), 1, 2);
+        future.set(new SendResult<>(producerRecord, recordMetadata));
+
+        Timer ackTimer = new SimpleMeterRegistry().timer(DeliveryModeTemplates.ACK_LATENCY_METRIC);
+        KafkaTemplate<Long,LibraryEvent> leaderAckKafkaTemplate = mock(KafkaTemplate.class);
+
+        //when
+        when(deliveryModeTemplates.kafkaTemplate(DeliveryMode.LEADER_ACK)).thenReturn(leaderAckKafkaTemplate);
+        when(deliveryModeTemplates.ackTimer(DeliveryMode.LEADER_ACK)).thenReturn(ackTimer);
+        when(leaderAckKafkaTemplate.send(isA(ProducerRecord.class))).thenReturn(future);
+
+        SendResult<Long,LibraryEvent> sendResult = eventProducer.sendLibraryEvent(libraryEvent, DeliveryMode.LEADER_ACK).get();
+
+        //then
+        assert sendResult.getRecordMetadata().partition() == 2;
+        assertEquals(1, ackTimer.count());
+    }
+
+    @Test
+    void sendLibraryEventSynchronous_recordsEnqueueAckLatencyAndFailures() throws Exception {
+        //given
+        Book book = Book.builder()
+                .bookId(123)
+                .bookAuthor("Dilip")
+                .bookName("Kafka using Spring Boot")
+                .build();
+
+        LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventId(123L)
+                .book(book)
+                .build();
+
+        SettableListenableFuture acknowledged = new SettableListenableFuture();
+        RecordMetadata recordMetadata = new RecordMetadata(new TopicPartition("library-events", 0),
+                1,1,342, System.currentTimeMillis(), 1, 2);
+        acknowledged.set(new SendResult<>(new ProducerRecord("library-events", 123L, libraryEvent), recordMetadata));
+        SettableListenableFuture failed = new SettableListenableFuture();
+        failed.setException(new RuntimeException("Exception Calling Kafka"));
+
+        //when
+        when(libraryEventIdGenerator.assignIfAbsent(libraryEvent)).thenReturn(123L);
+        when(libraryEventIdGenerator.nextId()).thenReturn(42L);
+        ArgumentCaptor<ProducerRecord<Long, LibraryEvent>> producerRecordCaptor = ArgumentCaptor.forClass(ProducerRecord.class);
+        when(kafkaTemplate.send(producerRecordCaptor.capture())).thenReturn(acknowledged, failed);
+
+        eventProducer.sendLibraryEventSynchronous(libraryEvent);
+        assertThrows(ExecutionException.class, () -> eventProducer.sendLibraryEventSynchronous(libraryEvent));
+
+        //then
+        Header eventSequence = producerRecordCaptor.getValue().headers().lastHeader(LibraryEventProducer.EVENT_SEQUENCE_HEADER);
+        assertEquals(42L, ByteBuffer.wrap(eventSequence.value()).getLong());
+        assertEquals(2, meterRegistry.timer(LibraryEventProducerMetrics.ENQUEUE_METRIC).count());
+        assertEquals(1, producerMetrics.defaultAckTimer().count());
+        assertEquals(1, meterRegistry.counter(LibraryEventProducerMetrics.FAILURE_METRIC, "exception", "RuntimeException").count());
+    }
+
+    @Test
+    void sendLibraryEvents_transactional_aborted() {
+        //given
+        Book book = Book.builder()
+                .bookId(123)
+                .bookAuthor("Dilip")
+                .bookName("Kafka using Spring Boot")
+                .build();
+
+        List<LibraryEvent> libraryEvents = List.of(
+                LibraryEvent.builder().libraryEventId(1L).book(book).build(),
+                LibraryEvent.builder().libraryEventId(2L).book(book).build());
+
+        //when
+        when(kafkaTemplate.isTransactional()).thenReturn(true);
+        when(kafkaTemplate.executeInTransaction(any())).thenThrow(new KafkaException("Producer fenced"));
+
+        List<ListenableFuture<SendResult<Long,LibraryEvent>>> futures = eventProducer.sendLibraryEvents(libraryEvents);
+
+        //then
+        assertEquals(2, futures.size());
+        for (ListenableFuture<SendResult<Long,LibraryEvent>> future : futures) {
+            ExecutionException exception = assertThrows(ExecutionException.class, future::get);
+            assertEquals("Producer fenced", exception.getCause().getMessage());
+        }
+    }
 }
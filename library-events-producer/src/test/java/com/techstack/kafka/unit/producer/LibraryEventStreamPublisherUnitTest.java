@@ -0,0 +1,105 @@
+package com.techstack.kafka.unit.producer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.domain.LibraryEventStreamResult;
+import com.techstack.kafka.producer.LibraryEventProducer;
+import com.techstack.kafka.producer.LibraryEventStreamPublisher;
+import com.techstack.kafka.validation.LibraryEventValidator;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class LibraryEventStreamPublisherUnitTest {
+
+    private static final String VALID = "{\"libraryEventId\":null,\"book\":{\"bookId\":456,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
+    private static final String INVALID = "{\"libraryEventId\":null,\"book\":{\"bookId\":null,\"bookName\":\"Kafka Using Spring Boot\",\"bookAuthor\":\"Dilip\"}}";
+
+    @Mock
+    LibraryEventProducer libraryEventProducer;
+
+    LibraryEventStreamPublisher streamPublisher;
+
+    @BeforeEach
+    void setUp() {
+        LibraryEventValidator validator = new LibraryEventValidator(Validation.buildDefaultValidatorFactory().getValidator(), new SimpleMeterRegistry());
+        streamPublisher = new LibraryEventStreamPublisher(libraryEventProducer, validator,
+                new LibraryEventsProperties(), new ObjectMapper());
+    }
+
+    @Test
+    void publish_validAndInvalidRecords() throws Exception {
+        //given
+        String ndjson = VALID + "\n" + INVALID + "\n" + VALID + "\n";
+        when(libraryEventProducer.sendLibraryEvent_Approach2(isA(LibraryEvent.class))).thenAnswer(invocation -> acknowledged());
+
+        //when
+        LibraryEventStreamResult result = streamPublisher.publish(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        //then
+        verify(libraryEventProducer, times(2)).sendLibraryEvent_Approach2(isA(LibraryEvent.class));
+        assertEquals(3, result.getReceived());
+        assertEquals(2, result.getPublished());
+        assertEquals(1, result.getRejected());
+        assertEquals(0, result.getFailed());
+        assertEquals("Record 2 : book.bookId - must not be null", result.getErrors().get(0));
+    }
+
+    @Test
+    void publish_malformedRecordStopsTheStream() throws Exception {
+        //given
+        String ndjson = VALID + "\n{\"libraryEventId\":\n";
+        when(libraryEventProducer.sendLibraryEvent_Approach2(isA(LibraryEvent.class))).thenAnswer(invocation -> acknowledged());
+
+        //when
+        LibraryEventStreamResult result = streamPublisher.publish(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        //then
+        assertEquals(2, result.getReceived());
+        assertEquals(1, result.getPublished());
+        assertEquals(1, result.getRejected());
+    }
+
+    @Test
+    void publish_failedSend() throws Exception {
+        //given
+        SettableListenableFuture<SendResult<Long, LibraryEvent>> future = new SettableListenableFuture<>();
+        future.setException(new RuntimeException("Exception Calling Kafka"));
+        when(libraryEventProducer.sendLibraryEvent_Approach2(isA(LibraryEvent.class))).thenReturn(future);
+
+        //when
+        LibraryEventStreamResult result = streamPublisher.publish(new ByteArrayInputStream(VALID.getBytes(StandardCharsets.UTF_8)));
+
+        //then
+        assertEquals(1, result.getFailed());
+        assertEquals("Record 1 : Exception Calling Kafka", result.getErrors().get(0));
+    }
+
+    private SettableListenableFuture<SendResult<Long, LibraryEvent>> acknowledged() {
+        SettableListenableFuture<SendResult<Long, LibraryEvent>> future = new SettableListenableFuture<>();
+        RecordMetadata recordMetadata = new RecordMetadata(new TopicPartition("library-events", 0),
+                1, 0, System.currentTimeMillis(), 1L, 1, 2);
+        future.set(new SendResult<>(new ProducerRecord<Long, LibraryEvent>("library-events", null, new LibraryEvent()), recordMetadata));
+        return future;
+    }
+}
@@ -0,0 +1,103 @@
+package com.techstack.kafka.unit.producer;
+
+import com.techstack.kafka.config.LibraryEventsProperties;
+import com.techstack.kafka.domain.Book;
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.outbox.LibraryEventOutbox;
+import com.techstack.kafka.producer.LibraryEventIdGenerator;
+import com.techstack.kafka.producer.LibraryEventProducer;
+import com.techstack.kafka.producer.LibraryEventUpdateCoalescer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LibraryEventUpdateCoalescerUnitTest {
+
+    LibraryEventProducer libraryEventProducer = mock(LibraryEventProducer.class);
+    LibraryEventIdGenerator libraryEventIdGenerator = mock(LibraryEventIdGenerator.class);
+    LibraryEventOutbox libraryEventOutbox = mock(LibraryEventOutbox.class);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    LibraryEventUpdateCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        LibraryEventsProperties properties = new LibraryEventsProperties();
+        properties.getCoalesce().setEnabled(true);
+        properties.getCoalesce().setWindow(Duration.ofMillis(100));
+        coalescer = new LibraryEventUpdateCoalescer(libraryEventProducer, libraryEventIdGenerator, libraryEventOutbox,
+                properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.destroy();
+    }
+
+    @Test
+    void submit_publishesLatestUpdatePerLibraryEvent() {
+        for (int i = 1; i <= 4; i++) {
+            coalescer.submit(libraryEvent(123L, "Kafka Using Spring Boot v" + i));
+        }
+        coalescer.submit(libraryEvent(456L, "TDD"));
+
+        ArgumentCaptor<LibraryEvent> published = ArgumentCaptor.forClass(LibraryEvent.class);
+        verify(libraryEventProducer, timeout(2000).times(2)).sendLibraryEvent_Approach2(published.capture(), anyLong());
+
+        LibraryEvent first = published.getAllValues().stream()
+                .filter(libraryEvent -> libraryEvent.getLibraryEventId() == 123L).findFirst().orElseThrow();
+        assertEquals("Kafka Using Spring Boot v4", first.getBook().getBookName());
+        assertEquals(3.0, meterRegistry.counter(LibraryEventUpdateCoalescer.COALESCED_METRIC).count());
+    }
+
+    @Test
+    void destroy_flushesPendingUpdates() {
+        coalescer.submit(libraryEvent(123L, "Kafka Using Spring Boot"));
+
+        coalescer.destroy();
+
+        verify(libraryEventProducer).sendLibraryEvent_Approach2(eq(libraryEvent(123L, "Kafka Using Spring Boot")), anyLong());
+    }
+
+    @Test
+    void flush_usesEventSequenceOfSubmit() {
+        when(libraryEventIdGenerator.nextId()).thenReturn(41L, 42L, 43L);
+        coalescer.submit(libraryEvent(123L, "Kafka Using Spring Boot v1"));
+        coalescer.submit(libraryEvent(123L, "Kafka Using Spring Boot v2"));
+
+        // sequences taken after the submits, e.g. by a direct send, must not end up on the coalesced record
+        libraryEventIdGenerator.nextId();
+
+        verify(libraryEventProducer, timeout(2000))
+                .sendLibraryEvent_Approach2(libraryEvent(123L, "Kafka Using Spring Boot v2"), 42L);
+    }
+
+    @Test
+    void flush_spoolsUpdateWhenSendFails() {
+        LibraryEvent libraryEvent = libraryEvent(123L, "Kafka Using Spring Boot");
+        when(libraryEventIdGenerator.nextId()).thenReturn(42L);
+        when(libraryEventOutbox.isEnabled()).thenReturn(true);
+        when(libraryEventProducer.sendLibraryEvent_Approach2(libraryEvent, 42L))
+                .thenThrow(new IllegalStateException("buffer exhausted"));
+
+        coalescer.submit(libraryEvent);
+
+        verify(libraryEventOutbox, timeout(2000)).append(123L, 42L, libraryEvent);
+    }
+
+    private static LibraryEvent libraryEvent(Long libraryEventId, String bookName) {
+        Book book = Book.builder().bookId(1).bookAuthor("Karthi").bookName(bookName).build();
+        return LibraryEvent.builder().libraryEventId(libraryEventId).book(book).build();
+    }
+}
@@ -0,0 +1,77 @@
+package com.techstack.kafka.unit.producer;
+
+import com.techstack.kafka.domain.Book;
+import com.techstack.kafka.domain.LibraryEvent;
+import com.techstack.kafka.logging.LogSampling;
+import com.techstack.kafka.producer.LibraryEventIdGenerator;
+import com.techstack.kafka.producer.LibraryEventProducerMetrics;
+import com.techstack.kafka.producer.ReactiveLibraryEventProducer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.reactive.ReactiveKafkaProducerTemplate;
+import reactor.core.publisher.Mono;
+import reactor.kafka.sender.SenderResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReactiveLibraryEventProducerUnitTest {
+
+    @SuppressWarnings("unchecked")
+    ReactiveKafkaProducerTemplate<Long, LibraryEvent> reactiveKafkaProducerTemplate = mock(ReactiveKafkaProducerTemplate.class);
+
+    LibraryEventIdGenerator libraryEventIdGenerator = mock(LibraryEventIdGenerator.class);
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    LibraryEventProducerMetrics producerMetrics = new LibraryEventProducerMetrics(meterRegistry);
+
+    ReactiveLibraryEventProducer eventProducer = new ReactiveLibraryEventProducer(reactiveKafkaProducerTemplate,
+            libraryEventIdGenerator, producerMetrics, mock(LogSampling.class));
+
+    LibraryEvent libraryEvent = LibraryEvent.builder()
+            .libraryEventId(123L)
+            .book(Book.builder().bookId(123).bookAuthor("Dilip").bookName("Kafka using Spring Boot").build())
+            .build();
+
+    @BeforeEach
+    void setUp() {
+        when(libraryEventIdGenerator.assignIfAbsent(libraryEvent)).thenReturn(123L);
+    }
+
+    @Test
+    void sendLibraryEvent_recordsEnqueueAndAckLatency() {
+        RecordMetadata recordMetadata = new RecordMetadata(new TopicPartition("library-events", 1),
+                1,1,342, System.currentTimeMillis(), 1, 2);
+        @SuppressWarnings("unchecked")
+        SenderResult<Void> senderResult = mock(SenderResult.class);
+        when(senderResult.recordMetadata()).thenReturn(recordMetadata);
+        when(reactiveKafkaProducerTemplate.send(isA(ProducerRecord.class))).thenReturn(Mono.just(senderResult));
+
+        Mono<SenderResult<Void>> send = eventProducer.sendLibraryEvent(libraryEvent);
+        //lazy, nothing is sent before the subscription
+        assertEquals(0, meterRegistry.timer(LibraryEventProducerMetrics.ENQUEUE_METRIC).count());
+
+        assertSame(senderResult, send.block());
+        assertEquals(1, meterRegistry.timer(LibraryEventProducerMetrics.ENQUEUE_METRIC).count());
+        assertEquals(1, producerMetrics.defaultAckTimer().count());
+    }
+
+    @Test
+    void sendLibraryEvent_recordsFailure() {
+        when(reactiveKafkaProducerTemplate.send(isA(ProducerRecord.class))).thenReturn(Mono.error(new RuntimeException("Exception Calling Kafka")));
+
+        assertThrows(RuntimeException.class, () -> eventProducer.sendLibraryEvent(libraryEvent).block());
+
+        assertEquals(1, meterRegistry.counter(LibraryEventProducerMetrics.FAILURE_METRIC, "exception", "RuntimeException").count());
+        assertEquals(0, producerMetrics.defaultAckTimer().count());
+    }
+}